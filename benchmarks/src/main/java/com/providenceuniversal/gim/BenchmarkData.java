@@ -0,0 +1,93 @@
+package com.providenceuniversal.gim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The {@code BenchmarkData} class generates the deterministic (seeded) test data shared by the
+ * benchmarks, and the serialization helpers used to measure the message codec.
+ * <p>
+ * Every benchmark uses fixed warm-up/measurement settings, a fixed heap and this data, so that two runs on
+ * the same machine are comparable. To judge a change, record a baseline before it and compare against a
+ * run after it:
+ * <pre>
+ * mvn -B install &amp;&amp; mvn -B -f benchmarks/pom.xml package
+ * java -jar benchmarks/target/benchmarks.jar -rf json -rff baseline.json
+ * </pre>
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class BenchmarkData {
+
+	//Fixed seed and base time so that every run works on identical data
+	static final long SEED = 4279L;
+	static final LocalDateTime BASE_TIME = LocalDateTime.of(2018, 12, 12, 9, 0);
+	private static final String[] WORDS = {"hello", "meeting", "tomorrow", "lunch", "project", "deadline",
+			"call", "me", "when", "you", "are", "free", "the", "report", "is", "ready", "thanks", "see", "later"};
+
+	private BenchmarkData() {}
+
+	static String username(int index) {
+		return "user" + index;
+	}
+
+	//Method generating a message body of a few random words
+	static String body(Random random) {
+		StringBuilder body = new StringBuilder();
+		int words = 3 + random.nextInt(12);
+		for (int word = 0; word < words; word++) {
+			body.append(word == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return body.toString();
+	}
+
+	//Method generating a conversation of the given size between two users
+	static List<ChatMessage> conversation(int size, Random random) {
+		List<ChatMessage> chats = new ArrayList<ChatMessage>(size);
+		for (int index = 0; index < size; index++) {
+			boolean fromFirst = random.nextBoolean();
+			chats.add(new ChatMessage(fromFirst ? username(0) : username(1), fromFirst ? username(1) : username(0),
+					body(random), BASE_TIME.plusSeconds(index * 30L)));
+		}
+		return chats;
+	}
+
+	//Method generating a contact list of the given size, one in ten contacts being online
+	static ContactList contactList(int size) {
+		String[] names = new String[size];
+		boolean[] online = new boolean[size];
+		long[] lastSeen = new long[size];
+		long baseTime = BASE_TIME.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		for (int index = 0; index < size; index++) {
+			names[index] = username(index);
+			online[index] = index % 10 == 0;
+			lastSeen[index] = online[index] ? 0 : baseTime;
+		}
+		return new ContactList(names, online, lastSeen, null);
+	}
+
+	//Method serializing an object the way a freshly connected client or handler would
+	static byte[] serialize(Serializable message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(message);
+		}
+		return bytes.toByteArray();
+	}
+
+	static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return input.readObject();
+		}
+	}
+}
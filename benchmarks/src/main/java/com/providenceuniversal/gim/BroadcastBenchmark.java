@@ -0,0 +1,102 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the fan-out of a presence notification to every online user: serializing the notification
+ * into each recipient's object stream (how broadcasts were written before they were pre-encoded)
+ * against encoding it once into a {@code MessageFrame} written to every recipient's socket. The
+ * sockets are stood in for by streams which discard (but count) what they are written.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class BroadcastBenchmark {
+
+	/**
+	 * Socket stand-in discarding what it is written.
+	 */
+	static final class DiscardingOutputStream extends OutputStream {
+		long written;
+
+		@Override
+		public void write(int b) {
+			written++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			written += len;
+		}
+	}
+
+	/**
+	 * Connections of the given number of online users, re-created every iteration since the object
+	 * streams retain every notification they serialize.
+	 */
+	@State(Scope.Benchmark)
+	public static class RecipientsState {
+		@Param({"1000", "10000"})
+		int recipients;
+		DiscardingOutputStream[] sockets;
+		ObjectOutputStream[] connections;
+		int notifications;
+
+		@Setup(Level.Iteration)
+		public void setUp() throws IOException {
+			sockets = new DiscardingOutputStream[recipients];
+			connections = new ObjectOutputStream[recipients];
+			for (int index = 0; index < recipients; index++) {
+				sockets[index] = new DiscardingOutputStream();
+				connections[index] = new ObjectOutputStream(sockets[index]);
+			}
+		}
+
+		//Method creating the next notification, a new one being broadcast every time
+		ServerNotification nextNotification() {
+			String username = BenchmarkData.username(notifications++);
+			return new PresenceNotification("User '" + username + "', is now online.", username,
+					PresenceNotification.Status.ONLINE, BenchmarkData.BASE_TIME);
+		}
+	}
+
+	@Benchmark
+	public long perRecipientSerialization(RecipientsState state) throws IOException {
+		ServerNotification notification = state.nextNotification();
+		for (ObjectOutputStream connection : state.connections) {
+			connection.writeObject(notification);
+			connection.flush();
+		}
+		return state.sockets[0].written;
+	}
+
+	@Benchmark
+	public long preEncodedFrame(RecipientsState state) throws IOException {
+		MessageFrame frame = MessageFrame.encode(state.nextNotification());
+		for (DiscardingOutputStream socket : state.sockets) {
+			frame.writeTo(socket);
+		}
+		return state.sockets[0].written;
+	}
+}
@@ -0,0 +1,123 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import storage.Database;
+
+/**
+ * Measures the storage engines of the chats: storing a chat as it is sent, and retrieving the
+ * history of a conversation, from the {@code Chat_Messages} table (each insert committing on its own)
+ * against the append-only {@code MessageLog} (forced to disk periodically rather than per chat) and the
+ * {@code MemoryChatStore}, which sets the baseline of no disk I/O at all. The engines start out holding
+ * the same conversations, the files of the first two in a temporary directory.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ChatStoreBenchmark {
+
+	//Users conversing, the retrieved conversation being that of the first two
+	private static final int USERS = 20;
+
+	/**
+	 * A storage engine holding {@code chats} chats spread over the conversations of {@code USERS}
+	 * users.
+	 */
+	@State(Scope.Benchmark)
+	public static class StoreState {
+		@Param({"database", "log", "memory"})
+		String engine;
+		@Param({"10000"})
+		int chats;
+		Path directory;
+		Database database;
+		ChatStore store;
+		Random random;
+		long sent;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException, SQLException {
+			directory = Files.createTempDirectory("chat-store");
+			if (engine.equals("memory")) {
+				store = new MemoryChatStore(new UserDirectory());
+			}
+			else if (engine.equals("log")) {
+				store = new MessageLog(directory.resolve("messages"), 64 << 20, new UserDirectory());
+			}
+			else {
+				database = new Database(directory.resolve("g_im.db").toString());
+				try (Statement statement = database.getDatabaseMetaData().getConnection().createStatement()) {
+					statement.execute("CREATE TABLE Chat_Messages (ID INT PRIMARY KEY NOT NULL, Sender VARCHAR (45)"
+							+ " COLLATE NOCASE NOT NULL, Receiver VARCHAR (45) NOT NULL COLLATE NOCASE,"
+							+ " Body TEXT (2000), Timestamp DATETIME NOT NULL)");
+					statement.execute("CREATE INDEX Chat_Messages_Conversation ON Chat_Messages (Sender, Receiver, Timestamp)");
+				}
+				MessageArchive messageArchive = new MessageArchive(directory.resolve("archive"));
+				ServerMetrics metrics = new ServerMetrics();
+				MessageIndex messageIndex = new MessageIndex(database.getDatabaseMetaData().getConnection(),
+						messageArchive, metrics);
+				messageIndex.create();
+				store = new DatabaseChatStore(database, messageIndex, messageArchive, metrics);
+			}
+			random = new Random(BenchmarkData.SEED);
+			for (int chat = 0; chat < chats; chat++)
+				store.store(nextChat());
+		}
+
+		//Method creating the next chat, between two random users and a little after the previous one
+		ChatMessage nextChat() {
+			int sender = random.nextInt(USERS), recipient = (sender + 1 + random.nextInt(USERS - 1)) % USERS;
+			return new ChatMessage(BenchmarkData.username(sender), BenchmarkData.username(recipient),
+					BenchmarkData.body(random), BenchmarkData.BASE_TIME.plusNanos(1000 * sent++));
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException, SQLException {
+			store.close();
+			if (database != null)
+				database.close();
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted((path1, path2) -> path2.compareTo(path1)).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@Benchmark
+	public ChatMessage store(StoreState state) throws SQLException, IOException {
+		ChatMessage chat = state.nextChat();
+		state.store.store(chat);
+		return chat;
+	}
+
+	@Benchmark
+	public List<ChatMessage> retrieve(StoreState state) throws SQLException, IOException {
+		return state.store.retrieve(BenchmarkData.username(0), BenchmarkData.username(1), null);
+	}
+}
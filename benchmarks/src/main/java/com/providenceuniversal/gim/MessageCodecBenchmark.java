@@ -0,0 +1,78 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures serialization round-trips (encode then decode) of the messages exchanged between
+ * the client and the server.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class MessageCodecBenchmark {
+
+	/**
+	 * A single chat message, as sent by a client and pushed to its recipient.
+	 */
+	@State(Scope.Benchmark)
+	public static class ChatState {
+		ChatMessage chat;
+
+		@Setup
+		public void setUp() {
+			chat = new ChatMessage(BenchmarkData.username(0), BenchmarkData.username(1),
+					BenchmarkData.body(new Random(BenchmarkData.SEED)), BenchmarkData.BASE_TIME);
+		}
+	}
+
+	/**
+	 * Contact lists and chat histories of the given number of entries.
+	 */
+	@State(Scope.Benchmark)
+	public static class PayloadState {
+		@Param({"100", "1000", "10000"})
+		int size;
+		ContactList contacts;
+		ChatHistory history;
+
+		@Setup
+		public void setUp() {
+			contacts = BenchmarkData.contactList(size);
+			history = new ChatHistory(BenchmarkData.conversation(size, new Random(BenchmarkData.SEED)));
+		}
+	}
+
+	@Benchmark
+	public Object chatMessage(ChatState state) throws IOException, ClassNotFoundException {
+		return BenchmarkData.deserialize(BenchmarkData.serialize(state.chat));
+	}
+
+	@Benchmark
+	public Object contactList(PayloadState state) throws IOException, ClassNotFoundException {
+		return BenchmarkData.deserialize(BenchmarkData.serialize(state.contacts));
+	}
+
+	@Benchmark
+	public Object chatHistory(PayloadState state) throws IOException, ClassNotFoundException {
+		return BenchmarkData.deserialize(BenchmarkData.serialize(state.history));
+	}
+}
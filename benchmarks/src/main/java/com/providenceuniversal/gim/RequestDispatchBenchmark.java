@@ -0,0 +1,115 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code ClientRequestHandler.handleRequest}: the bare dispatch cost (using a request type
+ * the server rejects without further work) and contact paging for directories of 1k, 10k and
+ * 100k users, one in ten of which are online: the first page of everyone, a prefix search and the
+ * first page of the online users.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RequestDispatchBenchmark {
+
+	/**
+	 * A handler detached from any client; its socket is never connected.
+	 */
+	@State(Scope.Benchmark)
+	public static class HandlerState {
+		Socket socket;
+		Server.ClientRequestHandler handler;
+		ClientMessage invalidRequest;
+
+		@Setup
+		public void setUp() throws SQLException {
+			socket = new Socket();
+			handler = new Server.ClientRequestHandler(socket);
+			invalidRequest = new User(BenchmarkData.username(0));
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Server directory of the given number of users.
+	 */
+	@State(Scope.Benchmark)
+	public static class DirectoryState {
+		@Param({"1000", "10000", "100000"})
+		int users;
+		ContactsRequest request, searchRequest, onlineRequest;
+
+		@Setup
+		public void setUp(HandlerState handlerState) throws IOException {
+			Server.onlineUsers.clear();
+			Server.contactIndex.clear();
+			for (int index = 0; index < users; index++) {
+				if (index % 10 == 0) {
+					Server.onlineUsers.put(Server.userDirectory.register(BenchmarkData.username(index)), handlerState.handler);
+					Server.cluster.claim(BenchmarkData.username(index));
+					Server.contactIndex.online(BenchmarkData.username(index));
+				}
+				else
+					Server.contactIndex.offline(BenchmarkData.username(index), BenchmarkData.BASE_TIME.plusMinutes(index));
+			}
+			request = new ContactsRequest();
+			//Matching the users whose numbers start with 42, wherever they sort in the directory
+			searchRequest = new ContactsRequest("user42", false, 0);
+			onlineRequest = new ContactsRequest("", true, 0);
+		}
+
+		@TearDown
+		public void tearDown() {
+			for (int index = 0; index < users; index += 10)
+				Server.cluster.release(BenchmarkData.username(index));
+			Server.onlineUsers.clear();
+			Server.contactIndex.clear();
+		}
+	}
+
+	@Benchmark
+	public ServerMessage dispatch(HandlerState state) {
+		return state.handler.handleRequest(state.invalidRequest);
+	}
+
+	@Benchmark
+	public ServerMessage retrieveContacts(HandlerState state, DirectoryState directory) {
+		return state.handler.handleRequest(directory.request);
+	}
+
+	@Benchmark
+	public ServerMessage searchContacts(HandlerState state, DirectoryState directory) {
+		return state.handler.handleRequest(directory.searchRequest);
+	}
+
+	@Benchmark
+	public ServerMessage retrieveOnlineContacts(HandlerState state, DirectoryState directory) {
+		return state.handler.handleRequest(directory.onlineRequest);
+	}
+}
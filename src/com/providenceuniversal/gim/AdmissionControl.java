@@ -0,0 +1,167 @@
+package com.providenceuniversal.gim;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code AdmissionControl} class decides whether the server handles a client request or turns it
+ * away at once with a {@code ServerBusyError}. A request is turned away if its connection or its user
+ * exceeded their request rate (each limited by a {@code TokenBucket}), or if the server is already
+ * handling as many requests as it allows at a time. Decisions only involve memory, so turning a request
+ * away costs next to nothing.
+ * <p>
+ * Typing indicators and receipts, which the server answers with nothing, are limited by a bucket of
+ * their connection of their own, so that a client busy typing never turns its own chats away.
+ * <p>
+ * Requests releasing resources (logouts) and handshakes are always admitted. Requests sent before a user
+ * logs in are only limited by their connection, so that usernames which were never authenticated never
+ * get a bucket of their own. Users' buckets are released when they log out, or once they have refilled if
+ * still depleted then, so that logging out and back in does not lift the limit.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class AdmissionControl {
+
+	/**
+	 * Enumeration which stores the limits a request can be turned away by
+	 */
+	enum Limit {CONNECTION_RATE, USER_RATE, CONCURRENCY, EPHEMERAL_RATE}
+
+	//Time clients are advised to wait when the server is handling too many requests
+	private static final long BUSY_RETRY_AFTER = 100;
+
+	private final ServerConfiguration configuration;
+	private final ServerMetrics metrics;
+	private final TimingWheel timingWheel;
+	private final ConcurrentHashMap<String, TokenBucket> userBuckets;
+	private final AtomicInteger requestsInFlight;
+
+	/**
+	 * Creates new {@code AdmissionControl} with the limits of the given configuration.
+	 *
+	 * @param configuration Server configuration holding the limits
+	 * @param metrics Statistics the rejected requests are recorded in
+	 * @param timingWheel Timer releasing the buckets of users who logged out once they have refilled
+	 */
+	AdmissionControl(ServerConfiguration configuration, ServerMetrics metrics, TimingWheel timingWheel) {
+		this.configuration = configuration;
+		this.metrics = metrics;
+		this.timingWheel = timingWheel;
+		userBuckets = new ConcurrentHashMap<String, TokenBucket>();
+		requestsInFlight = new AtomicInteger();
+	}
+
+	/**
+	 * Creates the rate limiter of a new connection.
+	 *
+	 * @return Token bucket of the connection
+	 */
+	TokenBucket newConnectionBucket() {
+		return new TokenBucket(configuration.getConnectionRate(), configuration.getConnectionBurst());
+	}
+
+	/**
+	 * Creates the rate limiter of a new connection's typing indicators and receipts.
+	 *
+	 * @return Token bucket of the connection's messages answered with nothing
+	 */
+	TokenBucket newEphemeralBucket() {
+		return new TokenBucket(configuration.getEphemeralRate(), configuration.getEphemeralBurst());
+	}
+
+	/**
+	 * Decides whether a request is handled. Every admitted request must be followed by a call to
+	 * {@link #complete()} once handled.
+	 *
+	 * @param request The request
+	 * @param connectionBucket Token bucket of the connection the request was sent on
+	 * @param currentUser Stored username of the user logged in on the connection, or {@code null}
+	 * @return {@code null} if the request is admitted, otherwise the error to answer it with
+	 */
+	ServerBusyError admit(ClientMessage request, TokenBucket connectionBucket, String currentUser) {
+		boolean exempt = request instanceof UserDisconnection || request instanceof Handshake;
+		if (!exempt) {
+			long wait = connectionBucket.tryAcquire();
+			if (wait > 0)
+				return reject(Limit.CONNECTION_RATE, wait);
+			if (currentUser != null) {
+				wait = userBucket(currentUser).tryAcquire();
+				if (wait > 0)
+					return reject(Limit.USER_RATE, wait);
+			}
+		}
+		if (requestsInFlight.incrementAndGet() > configuration.getMaxRequestsInFlight() && !exempt) {
+			requestsInFlight.decrementAndGet();
+			return reject(Limit.CONCURRENCY, TimeUnit.MILLISECONDS.toNanos(BUSY_RETRY_AFTER));
+		}
+		return null;
+	}
+
+	/**
+	 * Decides whether a message the server answers with nothing (a typing indicator or receipts) is
+	 * handled, charging it to its connection's bucket of such messages only. Such messages are never
+	 * counted as in flight.
+	 *
+	 * @param ephemeralBucket Token bucket of the typing indicators and receipts of the connection the
+	 * message was sent on
+	 * @return Whether the message is handled, those over the limit being dropped silently
+	 */
+	boolean admitUnanswered(TokenBucket ephemeralBucket) {
+		if (ephemeralBucket.tryAcquire() == 0)
+			return true;
+		metrics.recordRejection(Limit.EPHEMERAL_RATE);
+		return false;
+	}
+
+	/**
+	 * Releases the rate limiter of a user who logged out, at once if it is full and otherwise once it has
+	 * refilled.
+	 *
+	 * @param user Stored username of the user
+	 */
+	void release(String user) {
+		String key = user.toLowerCase(Locale.ROOT);
+		TokenBucket bucket = userBuckets.get(key);
+		if (bucket != null)
+			releaseWhenFull(key, bucket);
+	}
+
+	/**
+	 * Records that an admitted request has been handled.
+	 */
+	void complete() {
+		requestsInFlight.decrementAndGet();
+	}
+
+	int getRequestsInFlight() {
+		return requestsInFlight.get();
+	}
+
+	//Method returning the rate limiter of a user, usernames being case insensitive
+	private TokenBucket userBucket(String user) {
+		String key = user.toLowerCase(Locale.ROOT);
+		TokenBucket bucket = userBuckets.get(key);
+		return bucket != null ? bucket : userBuckets.computeIfAbsent(key,
+				username -> new TokenBucket(configuration.getUserRate(), configuration.getUserBurst()));
+	}
+
+	/*Method dropping a bucket once it is full, when replacing it with a new bucket would change nothing,
+	 *checking again on the timing wheel until then
+	 */
+	private void releaseWhenFull(String key, TokenBucket bucket) {
+		long untilFull = bucket.nanosUntilFull();
+		if (untilFull == 0)
+			userBuckets.remove(key, bucket);
+		else if (userBuckets.get(key) == bucket)
+			timingWheel.schedule(() -> releaseWhenFull(key, bucket), untilFull, TimeUnit.NANOSECONDS);
+	}
+
+	//Method recording a rejection and creating the error answering it
+	private ServerBusyError reject(Limit limit, long waitNanos) {
+		metrics.recordRejection(limit);
+		return new ServerBusyError(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+	}
+}
@@ -0,0 +1,124 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code Attachment} class describes a file shared in a conversation. The file itself is uploaded to
+ * the server apart from the chats (see {@link ClientConnection#uploadAttachment(Path)}), where it is stored
+ * once per content, addressed by its SHA-256 hash; the chat sharing it merely carries its reference
+ * (e.g. "[Attachment: photo.jpg, 52731 bytes, 9f86d0...]"), from which recipients download it.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class Attachment implements Serializable {
+
+	private static final long serialVersionUID = 4418209767162039513L;
+	//References carried by the chats sharing attachments
+	private static final Pattern REFERENCE = Pattern.compile("\\[Attachment: (.+?), (\\d+) bytes, ([0-9a-f]{64})\\]");
+	//Size of the buffer files are hashed through
+	private static final int HASH_BUFFER_SIZE = 64 << 10;
+	private final String name, hash;
+	private final long size;
+
+	/**
+	 * Creates new {@code Attachment} object with the given parameters.
+	 *
+	 * @param name Name of the file, without its directory
+	 * @param size Size of the file in bytes
+	 * @param hash Lower case hexadecimal SHA-256 hash of the file's content
+	 */
+	public Attachment(String name, long size, String hash) {
+		this.name = name;
+		this.size = size;
+		this.hash = hash;
+	}
+
+	/**
+	 * Describes a file to be shared, hashing its content.
+	 *
+	 * @param file The file
+	 * @return The attachment
+	 * @throws IOException If the file cannot be read
+	 */
+	public static Attachment of(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new Attachment(file.getFileName().toString(), channel.size(), hash(channel));
+		}
+	}
+
+	/**
+	 * Finds the attachments a chat's body refers to.
+	 *
+	 * @param body The chat's body
+	 * @return The attachments, in the order they are referred to
+	 */
+	public static List<Attachment> find(String body) {
+		List<Attachment> attachments = new ArrayList<Attachment>();
+		Matcher reference = REFERENCE.matcher(body);
+		while (reference.find())
+			attachments.add(new Attachment(reference.group(1), Long.parseLong(reference.group(2)), reference.group(3)));
+		return attachments;
+	}
+
+	//Method hashing a file's content, through a direct buffer rather than the heap
+	static String hash(FileChannel channel) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+		for (long position = 0; channel.read(buffer, position) > 0; buffer.clear()) {
+			buffer.flip();
+			position += buffer.remaining();
+			digest.update(buffer);
+		}
+		StringBuilder hash = new StringBuilder();
+		for (byte value : digest.digest())
+			hash.append(String.format("%02x", value));
+		return hash.toString();
+	}
+
+	//Method checking that a hash is one the attachments are stored under (and thus safe as a file name)
+	static boolean isHash(String hash) {
+		return hash != null && hash.matches("[0-9a-f]{64}");
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getName() {
+		return name;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	//____________________________________________________________________________________________________
+
+	/**
+	 * Returns the reference a chat carries to share the attachment.
+	 */
+	@Override
+	public String toString() {
+		return "[Attachment: " + name + ", " + size + " bytes, " + hash + "]";
+	}
+}
@@ -0,0 +1,50 @@
+package com.providenceuniversal.gim;
+
+/**
+ * The {@code AttachmentRequest} class represents a request to upload or download an attachment. The
+ * server answers with an {@code AttachmentTicket}, which the file's bytes are then transferred with over
+ * a connection of their own, so that large files never hold up the chats of the requesting connection.
+ * It is one of the types of {@code ClientMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class AttachmentRequest implements ClientMessage {
+
+	/**
+	 * Enumeration which stores the directions of the transfer
+	 */
+	public static enum Mode {UPLOAD, DOWNLOAD}
+
+	private static final long serialVersionUID = -3187042516926485130L;
+	private final Mode mode;
+	private final String hash;
+	private final long size;
+
+	/**
+	 * Creates new {@code AttachmentRequest} object with the given parameters.
+	 *
+	 * @param mode Direction of the transfer
+	 * @param hash SHA-256 hash of the attachment's content
+	 * @param size Size of the attachment in bytes (only needed to upload it)
+	 */
+	public AttachmentRequest(Mode mode, String hash, long size) {
+		this.mode = mode;
+		this.hash = hash;
+		this.size = size;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public long getSize() {
+		return size;
+	}
+}
@@ -0,0 +1,306 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code AttachmentServer} class serves the transfers of attachments, on a port of its own and a
+ * thread pool of its own, so that files being uploaded or downloaded never hold up the chats, even those
+ * of the connection requesting the transfer. A client handler issues a ticket per transfer to the logged
+ * in user ({@link #issue(String, AttachmentRequest)}), which the client presents on a new connection to
+ * this server before transferring the file in the {@code AttachmentTransfer} format. Downloads are sent
+ * with {@code FileChannel.transferTo} and uploads received with {@code transferFrom}, so the files' bytes
+ * never enter the Java heap.
+ * <p>
+ * Users may only download the attachments shared with them (see {@link #share(String, ChatMessage)}),
+ * and may only have a few uploads unfinished at a time, unfinished uploads being discarded after a while
+ * (see {@link #expirePartials(Duration)}).
+ * <p>
+ * Transfer connections are blocking channels, which ignore socket timeouts, so each connection is closed
+ * from the timing wheel should no chunk go through for the idle timeout.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class AttachmentServer implements Runnable, AutoCloseable {
+
+	/**
+	 * The {@code Ticket} class holds what a ticket grants: one transfer of an attachment by a user.
+	 */
+	private static final class Ticket {
+		private final String user, hash;
+		private final AttachmentRequest.Mode mode;
+		private final long size;
+
+		Ticket(String user, AttachmentRequest request, long size) {
+			this.user = user;
+			hash = request.getHash();
+			mode = request.getMode();
+			this.size = size;
+		}
+	}
+
+	/**
+	 * The {@code Transfer} class is a transfer connection along with the time it last made progress.
+	 */
+	private final class Transfer {
+		private final SocketChannel channel;
+		private volatile long lastActivity;
+
+		Transfer(SocketChannel channel) {
+			this.channel = channel;
+			lastActivity = System.nanoTime();
+		}
+
+		/*Method scheduling the check of whether the transfer has been idle for the idle timeout, which
+		 *closes the connection from the timing wheel, failing the transfer's blocked read or write
+		 */
+		void scheduleIdleTimeout(long delay) {
+			timingWheel.schedule(() -> {
+				long idle = System.nanoTime() - lastActivity;
+				if (!channel.isOpen())
+					return;
+				if (idle < idleTimeout)
+					scheduleIdleTimeout(idleTimeout - idle);
+				else
+					closeQuietly(channel);
+			}, delay, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private final ServerSocketChannel serverChannel;
+	//Uploads a user may have started and not completed at a time
+	private static final int MAX_PARTIAL_UPLOADS = 4;
+	private final AttachmentStore store;
+	private final ExecutorService transferExecutor;
+	private final TimingWheel timingWheel;
+	private final long idleTimeout, maxSize;
+	private final int chunkSize;
+	private final ServerMetrics metrics;
+	//Tickets issued and not used yet, keyed by token
+	private final ConcurrentHashMap<UUID, Ticket> tickets;
+	//Partial files being uploaded to, each by a single connection at a time
+	private final Set<Path> activeUploads;
+
+	/**
+	 * Creates new {@code AttachmentServer}.
+	 *
+	 * @param serverChannel Bound channel the transfer connections are accepted on
+	 * @param store Store of the attachments
+	 * @param transferExecutor Executor serving the transfer connections, rejecting those it cannot take on
+	 * @param timingWheel Timing wheel the idle timeouts and the expiry of the tickets are scheduled on
+	 * @param idleTimeout Time after which tickets expire and idle transfer connections are closed
+	 * @param unit Unit of the idle timeout
+	 * @param chunkSize Largest chunk uploaded at a time, in bytes
+	 * @param maxSize Largest attachment accepted, in bytes
+	 * @param metrics Statistics the transfers are recorded in
+	 */
+	AttachmentServer(ServerSocketChannel serverChannel, AttachmentStore store, ExecutorService transferExecutor,
+			TimingWheel timingWheel, long idleTimeout, TimeUnit unit, int chunkSize, long maxSize, ServerMetrics metrics) {
+		this.serverChannel = serverChannel;
+		this.store = store;
+		this.transferExecutor = transferExecutor;
+		this.timingWheel = timingWheel;
+		this.idleTimeout = unit.toNanos(idleTimeout);
+		this.chunkSize = chunkSize;
+		this.maxSize = maxSize;
+		this.metrics = metrics;
+		tickets = new ConcurrentHashMap<UUID, Ticket>();
+		activeUploads = ConcurrentHashMap.newKeySet();
+	}
+
+	/**
+	 * Issues a ticket for the transfer of an attachment.
+	 *
+	 * @param user The stored username of the logged in user
+	 * @param request The request
+	 * @return The ticket, or a {@code ServerError} if the transfer is not allowed
+	 * @throws IOException If the bytes already uploaded cannot be read
+	 */
+	ServerMessage issue(String user, AttachmentRequest request) throws IOException {
+		if (request.getMode() == null || !Attachment.isHash(request.getHash()))
+			return new ServerError("Invalid attachment request");
+		long size, offset = 0;
+		if (request.getMode() == AttachmentRequest.Mode.UPLOAD) {
+			if (request.getSize() < 1 || request.getSize() > maxSize)
+				return new ServerError("Attachments must be 1 to " + maxSize + " bytes long.");
+			size = request.getSize();
+			offset = store.uploaded(user, request.getHash(), size);
+			//Sparing the upload of a file stored already
+			if (offset == size)
+				metrics.recordDeduplicatedAttachment();
+			//Bounding the space a user's unfinished uploads take, resuming one being always allowed
+			else if (offset == 0 && !Files.exists(store.partialFile(user, request.getHash()))
+					&& store.partialUploads(user) >= MAX_PARTIAL_UPLOADS)
+				return new ServerError("Please finish your other uploads before starting another.");
+		}
+		else {
+			//Answering alike whether the attachment does not exist or was not shared with the user
+			Path attachment = store.find(request.getHash());
+			if (attachment == null || !store.isShared(request.getHash(), user))
+				return new ServerError("There is no such attachment.");
+			size = attachment.toFile().length();
+		}
+		UUID token = UUID.randomUUID();
+		tickets.put(token, new Ticket(user, request, size));
+		timingWheel.schedule(() -> tickets.remove(token), idleTimeout, TimeUnit.NANOSECONDS);
+		return new AttachmentTicket(token, serverChannel.socket().getLocalPort(), chunkSize, offset, size);
+	}
+
+	/**
+	 * Shares the attachments a chat refers to with its recipient, those of them shared with the sender.
+	 *
+	 * @param sender The stored username of the user who sent the chat
+	 * @param chat The chat
+	 * @throws IOException If a share cannot be recorded
+	 */
+	void share(String sender, ChatMessage chat) throws IOException {
+		for (Attachment attachment : Attachment.find(chat.getBody())) {
+			if (store.isShared(attachment.getHash(), sender))
+				store.share(attachment.getHash(), chat.getRecipient());
+		}
+	}
+
+	/**
+	 * Discards the unfinished uploads no chunk was received for in the given time.
+	 *
+	 * @param expiry Time after the last chunk an unfinished upload is discarded
+	 * @return Number of uploads discarded
+	 * @throws IOException If the unfinished uploads cannot be listed
+	 */
+	int expirePartials(Duration expiry) throws IOException {
+		return store.expirePartials(expiry, activeUploads);
+	}
+
+	/**
+	 * Accepts the transfer connections until the server is closed.
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			SocketChannel channel;
+			try {
+				channel = serverChannel.accept();
+			}
+			catch (ClosedChannelException ex) {
+				return;
+			}
+			catch (IOException ex) {
+				System.err.println("Failed to accept an attachment transfer: (" + ex + ")");
+				continue;
+			}
+			try {
+				transferExecutor.execute(() -> serve(channel));
+			}
+			//Closing the connection in case the server is serving as many transfers as it can
+			catch (RejectedExecutionException ex) {
+				closeQuietly(channel);
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting transfer connections.
+	 */
+	@Override
+	public void close() {
+		try {
+			serverChannel.close();
+		}
+		catch (IOException ex) {}
+	}
+
+	//Method serving a transfer connection, closing it once the transfer ends or fails
+	private void serve(SocketChannel channel) {
+		Transfer transfer = new Transfer(channel);
+		transfer.scheduleIdleTimeout(idleTimeout);
+		try {
+			Ticket ticket = tickets.remove(AttachmentTransfer.readToken(channel));
+			if (ticket == null)
+				AttachmentTransfer.writeAnswer(channel, AttachmentTransfer.REJECTED, 0);
+			else if (ticket.mode == AttachmentRequest.Mode.UPLOAD)
+				receive(transfer, ticket);
+			else
+				send(transfer, ticket);
+		}
+		catch (IOException ex) {}
+		finally {
+			closeQuietly(channel);
+		}
+	}
+
+	//Method receiving the chunks of an upload
+	private void receive(Transfer transfer, Ticket ticket) throws IOException {
+		SocketChannel channel = transfer.channel;
+		Path partial = store.partialFile(ticket.user, ticket.hash);
+		if (!activeUploads.add(partial)) {
+			AttachmentTransfer.writeAnswer(channel, AttachmentTransfer.REJECTED, 0);
+			return;
+		}
+		try {
+			long uploaded = store.uploaded(ticket.user, ticket.hash, ticket.size);
+			while (uploaded < ticket.size) {
+				ByteBuffer header = AttachmentTransfer.readFully(channel, AttachmentTransfer.CHUNK_HEADER_LENGTH);
+				long offset = header.getLong();
+				int length = header.getInt();
+				if (length < 1 || length > chunkSize || offset < 0 || offset > uploaded || offset + length > ticket.size) {
+					AttachmentTransfer.writeAnswer(channel, AttachmentTransfer.REJECTED, uploaded);
+					return;
+				}
+				uploaded = store.write(ticket.user, ticket.hash, channel, offset, length);
+				transfer.lastActivity = System.nanoTime();
+				metrics.recordAttachmentUpload(length);
+				if (uploaded < ticket.size)
+					AttachmentTransfer.writeAnswer(channel, AttachmentTransfer.CONTINUE, uploaded);
+			}
+			//Storing the attachment once every byte has arrived, unless it does not match its hash
+			AttachmentTransfer.writeAnswer(channel, store.complete(ticket.user, ticket.hash) ? AttachmentTransfer.COMPLETE
+					: AttachmentTransfer.REJECTED, ticket.size);
+		}
+		finally {
+			activeUploads.remove(partial);
+		}
+	}
+
+	//Method sending an attachment from the offset the client resumes from, a chunk at a time
+	private void send(Transfer transfer, Ticket ticket) throws IOException {
+		SocketChannel channel = transfer.channel;
+		long offset = AttachmentTransfer.readFully(channel, Long.BYTES).getLong();
+		Path attachment = store.find(ticket.hash);
+		if (attachment == null || offset < 0 || offset > ticket.size) {
+			AttachmentTransfer.writeAnswer(channel, AttachmentTransfer.REJECTED, ticket.size);
+			return;
+		}
+		try (FileChannel file = FileChannel.open(attachment, StandardOpenOption.READ)) {
+			AttachmentTransfer.writeAnswer(channel, AttachmentTransfer.CONTINUE, ticket.size);
+			for (long position = offset; position < ticket.size; position += chunkSize) {
+				long length = Math.min(chunkSize, ticket.size - position);
+				AttachmentTransfer.send(file, position, length, channel);
+				transfer.lastActivity = System.nanoTime();
+				metrics.recordAttachmentDownload(length);
+			}
+		}
+	}
+
+	//Method closing a connection, without blocking
+	private static void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		}
+		catch (IOException ex) {}
+	}
+}
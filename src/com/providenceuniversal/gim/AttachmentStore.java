@@ -0,0 +1,231 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The {@code AttachmentStore} class keeps the attachments on local disk, each in a file named after the
+ * SHA-256 hash of its content, so that a file shared any number of times is stored once. Uploads are
+ * written to a partial file of their own per uploader, which survives disconnections so that the upload
+ * can resume from the bytes already received, and which is only moved among the attachments once its
+ * content matches its hash. Partial files left unfinished for long enough are discarded.
+ * <p>
+ * Only the users an attachment was shared with may download it: its uploader, and the recipients of the
+ * chats referring to it sent by users it was shared with. Each share is an empty marker file, in a
+ * directory per attachment, so the shares are kept with the attachments themselves.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class AttachmentStore {
+
+	//Locks serializing the completion of uploads, striped by hash
+	private static final int LOCK_STRIPES = 64;
+	//Length of a hash in hexadecimal digits
+	private static final int HASH_LENGTH = 64;
+	private final Path directory, partialDirectory, sharesDirectory;
+	private final Object[] locks;
+
+	/**
+	 * Creates new {@code AttachmentStore}, creating its directories if they do not exist yet.
+	 *
+	 * @param directory Directory of the attachments
+	 * @throws IOException If the directories cannot be created
+	 */
+	AttachmentStore(Path directory) throws IOException {
+		this.directory = directory;
+		partialDirectory = directory.resolve("partial");
+		sharesDirectory = directory.resolve("shares");
+		Files.createDirectories(partialDirectory);
+		Files.createDirectories(sharesDirectory);
+		locks = new Object[LOCK_STRIPES];
+		for (int stripe = 0; stripe < LOCK_STRIPES; stripe++)
+			locks[stripe] = new Object();
+	}
+
+	/**
+	 * Returns the file of a stored attachment.
+	 *
+	 * @param hash The attachment's hash
+	 * @return The file, or {@code null} if no such attachment was stored
+	 */
+	Path find(String hash) {
+		Path attachment = directory.resolve(hash);
+		return Files.isRegularFile(attachment) ? attachment : null;
+	}
+
+	/**
+	 * Returns whether an attachment was shared with a user.
+	 *
+	 * @param hash The attachment's hash
+	 * @param user The username of the user
+	 * @return Whether the user may download the attachment
+	 */
+	boolean isShared(String hash, String user) {
+		return Files.exists(shareFile(hash, user));
+	}
+
+	/**
+	 * Shares an attachment with a user.
+	 *
+	 * @param hash The attachment's hash
+	 * @param user The username of the user
+	 * @throws IOException If the share cannot be recorded
+	 */
+	void share(String hash, String user) throws IOException {
+		Path share = shareFile(hash, user);
+		Files.createDirectories(share.getParent());
+		try {
+			Files.createFile(share);
+		}
+		catch (FileAlreadyExistsException ex) {}
+	}
+
+	/**
+	 * Returns the bytes of an attachment a user has uploaded so far.
+	 *
+	 * @param uploader The stored username of the user
+	 * @param hash The attachment's hash
+	 * @param size The attachment's size
+	 * @return The bytes, {@code size} if the attachment is stored and was shared with the user already,
+	 * so that nobody learns whether others stored a file by trying to upload it
+	 * @throws IOException If the partial file cannot be read
+	 */
+	long uploaded(String uploader, String hash, long size) throws IOException {
+		if (isShared(hash, uploader) && find(hash) != null)
+			return size;
+		Path partial = partialFile(uploader, hash);
+		return Files.exists(partial) ? Math.min(Files.size(partial), size) : 0;
+	}
+
+	/**
+	 * Writes a chunk of an upload straight from the socket into the uploader's partial file.
+	 *
+	 * @param uploader The stored username of the user
+	 * @param hash The attachment's hash
+	 * @param source Channel the chunk is read from
+	 * @param offset Position of the chunk in the attachment, at most the bytes uploaded so far
+	 * @param length Length of the chunk
+	 * @return The bytes uploaded so far, including the chunk
+	 * @throws IOException If the chunk cannot be read or written, or leaves a gap in the file
+	 */
+	long write(String uploader, String hash, ReadableByteChannel source, long offset, int length) throws IOException {
+		try (FileChannel partial = FileChannel.open(partialFile(uploader, hash), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE)) {
+			if (offset > partial.size())
+				throw new IOException("Chunk at " + offset + " leaves a gap after " + partial.size() + " bytes");
+			AttachmentTransfer.receive(source, partial, offset, length);
+			return partial.size();
+		}
+	}
+
+	/**
+	 * Completes an upload, storing the partial file as the attachment and sharing it with the uploader
+	 * if its content matches its hash.
+	 *
+	 * @param uploader The stored username of the user
+	 * @param hash The attachment's hash
+	 * @return Whether the attachment is stored, its partial file being discarded either way
+	 * @throws IOException If the partial file cannot be read or moved
+	 */
+	boolean complete(String uploader, String hash) throws IOException {
+		Path partial = partialFile(uploader, hash);
+		String actualHash;
+		try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.READ)) {
+			actualHash = Attachment.hash(channel);
+		}
+		if (!actualHash.equals(hash)) {
+			Files.delete(partial);
+			return false;
+		}
+		synchronized (locks[Math.floorMod(hash.hashCode(), LOCK_STRIPES)]) {
+			//Keeping the copy of whoever completed the same attachment first
+			try {
+				if (find(hash) == null)
+					Files.move(partial, directory.resolve(hash), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (FileAlreadyExistsException ex) {}
+			Files.deleteIfExists(partial);
+		}
+		share(hash, uploader);
+		return true;
+	}
+
+	/**
+	 * Returns the number of uploads a user has started and not completed.
+	 *
+	 * @param uploader The stored username of the user
+	 * @return The number of the user's partial files
+	 * @throws IOException If the partial files cannot be listed
+	 */
+	int partialUploads(String uploader) throws IOException {
+		String prefix = fileName(uploader) + "-";
+		int count = 0;
+		try (DirectoryStream<Path> partials = Files.newDirectoryStream(partialDirectory, prefix + "*")) {
+			for (Path partial : partials) {
+				//Leaving out the partial files of users whose encoded names merely start with the uploader's
+				if (partial.getFileName().toString().length() == prefix.length() + HASH_LENGTH)
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Discards the partial files no chunk was written to for the given time, but for those in use.
+	 *
+	 * @param expiry Time after the last chunk a partial file is discarded
+	 * @param inUse Partial files being uploaded to, which are kept
+	 * @return Number of partial files discarded
+	 * @throws IOException If the partial files cannot be listed
+	 */
+	int expirePartials(Duration expiry, Set<Path> inUse) throws IOException {
+		long cutoff = System.currentTimeMillis() - expiry.toMillis();
+		int expired = 0;
+		try (DirectoryStream<Path> partials = Files.newDirectoryStream(partialDirectory)) {
+			for (Path partial : partials) {
+				try {
+					if (!inUse.contains(partial) && Files.getLastModifiedTime(partial).toMillis() < cutoff
+							&& Files.deleteIfExists(partial))
+						expired++;
+				}
+				//Skipping a partial file completed or discarded concurrently
+				catch (NoSuchFileException ex) {}
+			}
+		}
+		return expired;
+	}
+
+	//Method returning the partial file of a user's upload
+	Path partialFile(String uploader, String hash) {
+		return partialDirectory.resolve(fileName(uploader) + "-" + hash);
+	}
+
+	//Method returning the marker file of an attachment's share with a user
+	private Path shareFile(String hash, String user) {
+		return sharesDirectory.resolve(hash).resolve(fileName(user));
+	}
+
+	//Method encoding a username into a safe file name, usernames being case insensitive
+	private static String fileName(String username) {
+		try {
+			return URLEncoder.encode(username.toLowerCase(Locale.ROOT), "UTF-8");
+		}
+		catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+}
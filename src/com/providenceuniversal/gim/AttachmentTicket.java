@@ -0,0 +1,61 @@
+package com.providenceuniversal.gim;
+
+import java.util.UUID;
+
+/**
+ * The {@code AttachmentTicket} class grants a single transfer of an attachment, in response to an
+ * {@code AttachmentRequest}: the client connects to the server's attachment port, presents the ticket's
+ * token and transfers the file in chunks. An upload resumes from the bytes the server already holds
+ * (all of them when another user shared the same file before, in which case nothing is sent at all).
+ * Tickets expire if they are not used shortly.
+ * It is one of the types of {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class AttachmentTicket implements ServerMessage {
+
+	private static final long serialVersionUID = 7526310824473903811L;
+	private final UUID token;
+	private final int port, chunkSize;
+	private final long offset, size;
+
+	/**
+	 * Creates new {@code AttachmentTicket} object with the given parameters.
+	 *
+	 * @param token Token presented on the transfer connection
+	 * @param port Port of the transfer connection
+	 * @param chunkSize Largest chunk uploaded at a time, in bytes
+	 * @param offset Bytes of the attachment the server holds already
+	 * @param size Size of the attachment in bytes
+	 */
+	AttachmentTicket(UUID token, int port, int chunkSize, long offset, long size) {
+		this.token = token;
+		this.port = port;
+		this.chunkSize = chunkSize;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public UUID getToken() {
+		return token;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public long getSize() {
+		return size;
+	}
+}
@@ -0,0 +1,90 @@
+package com.providenceuniversal.gim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.UUID;
+
+/**
+ * The {@code AttachmentTransfer} class holds the wire format of the connections attachments are
+ * transferred over, shared by the {@code AttachmentServer} and {@code ClientConnection}. Every field is
+ * big-endian and the file's bytes are moved between the socket and the file by the channels themselves
+ * ({@code FileChannel.transferTo} and {@code transferFrom}), never through the Java heap.
+ * <p>
+ * The client first sends its ticket's token (16 bytes). To upload, it then sends chunks of at most the
+ * ticket's chunk size, each headed by its offset (8 bytes) and length (4 bytes), and the server answers
+ * each with a status (1 byte) and the bytes it now holds (8 bytes), until the status is {@code COMPLETE}.
+ * To download, the client sends the offset to resume from (8 bytes), and the server answers with a
+ * status and the attachment's size before streaming the rest of the file.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class AttachmentTransfer {
+
+	//Statuses of the server's answers
+	static final byte CONTINUE = 0, COMPLETE = 1, REJECTED = 2;
+	//Sizes of the token, the chunk headers and the server's answers
+	static final int TOKEN_LENGTH = 16, CHUNK_HEADER_LENGTH = 12, ANSWER_LENGTH = 9;
+
+	private AttachmentTransfer() {}
+
+	//Method writing a ticket's token
+	static void writeToken(WritableByteChannel channel, UUID token) throws IOException {
+		writeFully(channel, ByteBuffer.allocate(TOKEN_LENGTH).putLong(token.getMostSignificantBits())
+				.putLong(token.getLeastSignificantBits()));
+	}
+
+	//Method reading a ticket's token
+	static UUID readToken(ReadableByteChannel channel) throws IOException {
+		ByteBuffer token = readFully(channel, TOKEN_LENGTH);
+		return new UUID(token.getLong(), token.getLong());
+	}
+
+	//Method writing an answer of the server
+	static void writeAnswer(WritableByteChannel channel, byte status, long value) throws IOException {
+		writeFully(channel, ByteBuffer.allocate(ANSWER_LENGTH).put(status).putLong(value));
+	}
+
+	//Method reading exactly the given number of bytes, flipped for reading
+	static ByteBuffer readFully(ReadableByteChannel channel, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0)
+				throw new EOFException("The transfer connection was closed");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	//Method writing a buffer from its start
+	static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	//Method sending part of a file, in as many calls as the operating system needs
+	static void send(FileChannel file, long position, long count, WritableByteChannel target) throws IOException {
+		for (long end = position + count; position < end; ) {
+			long sent = file.transferTo(position, end - position, target);
+			if (sent <= 0)
+				throw new EOFException("The attachment is shorter than expected");
+			position += sent;
+		}
+	}
+
+	//Method receiving part of a file, in as many calls as the operating system needs
+	static void receive(ReadableByteChannel source, FileChannel file, long position, long count) throws IOException {
+		for (long end = position + count; position < end; ) {
+			long received = file.transferFrom(source, position, end - position);
+			//A blocking channel only transfers nothing once it reaches its end
+			if (received <= 0)
+				throw new EOFException("The transfer connection was closed");
+			position += received;
+		}
+	}
+}
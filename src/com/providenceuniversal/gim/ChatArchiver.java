@@ -0,0 +1,158 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code ChatArchiver} class moves the chats older than a given age out of {@code Chat_Messages}
+ * into the {@code MessageArchive}, so that the table (and its indexes) stays small enough to be held in
+ * memory however long the server runs. Each run archives every conversation's due chats in segments of
+ * bounded size, only deleting chats from the table once their segment is durably archived; a run
+ * interrupted in between leaves chats in both tiers, which readers merge. Archived chats keep their
+ * postings in the {@code MessageIndex}, which records the segment each was archived in, so that searches
+ * still find them.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class ChatArchiver implements Runnable {
+
+	//Chats archived per segment, bounding the memory a run takes however many chats are due
+	private static final int SEGMENT_SIZE = 10000;
+	//Chats deleted per statement
+	private static final int DELETIONS_PER_STATEMENT = 500;
+
+	private final Connection connection;
+	private final MessageArchive archive;
+	private final MessageIndex messageIndex;
+	private final Duration age;
+	private final ServerMetrics metrics;
+
+	/**
+	 * Creates new {@code ChatArchiver}.
+	 *
+	 * @param connection Connection to the database holding {@code Chat_Messages}
+	 * @param archive Archive the chats are moved to
+	 * @param messageIndex Search index recording the segment each chat is archived in
+	 * @param age Age from which chats are archived
+	 * @param metrics Statistics the database calls are recorded in
+	 */
+	ChatArchiver(Connection connection, MessageArchive archive, MessageIndex messageIndex, Duration age,
+			ServerMetrics metrics) {
+		this.connection = connection;
+		this.archive = archive;
+		this.messageIndex = messageIndex;
+		this.age = age;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void run() {
+		try {
+			long archived = archive(LocalDateTime.now().minus(age));
+			if (archived > 0)
+				Server.logInformation("Archived " + archived + " chats", false);
+		}
+		catch (SQLException | IOException ex) {
+			try {
+				Server.logInformation("Failed to archive chats: (" + ex + ")", false);
+			}
+			catch (IOException e) {
+				System.err.println("Failed to write to log file: (" + e + ")");
+			}
+		}
+	}
+
+	/**
+	 * Archives the chats sent before the given time.
+	 *
+	 * @param cutoff Time before which chats are archived
+	 * @return Number of chats archived
+	 * @throws SQLException If the chats cannot be read or deleted
+	 * @throws IOException If the chats cannot be archived
+	 */
+	long archive(LocalDateTime cutoff) throws SQLException, IOException {
+		String before = Timestamp.valueOf(cutoff).toString();
+		//Finding the conversations with chats due, each once whichever participant sent them
+		Set<List<String>> conversations = new LinkedHashSet<List<String>>();
+		try (PreparedStatement conversationsQuery = connection.prepareStatement(
+				"SELECT DISTINCT Sender, Receiver FROM Chat_Messages WHERE Timestamp < ?")) {
+			conversationsQuery.setString(1, before);
+			try (ResultSet participants = conversationsQuery.executeQuery()) {
+				while (participants.next()) {
+					String[] pair = {participants.getString(1), participants.getString(2)};
+					Arrays.sort(pair);
+					conversations.add(Arrays.asList(pair));
+				}
+			}
+		}
+		long archived = 0;
+		for (List<String> conversation : conversations) {
+			Map<Integer, ChatMessage> chats;
+			do {
+				chats = metrics.timeDatabaseCall("Chat_Messages.archive",
+						() -> dueChats(conversation.get(0), conversation.get(1), before));
+				long segment = archive.append(conversation.get(0), conversation.get(1), chats);
+				//Removing the chats from the hot tier only once searches find them in the archive
+				Map<Integer, ChatMessage> archivedChats = chats;
+				metrics.timeDatabaseUpdate("Archived_Chats.insert",
+						() -> messageIndex.archived(segment, archivedChats));
+				metrics.timeDatabaseUpdate("Chat_Messages.delete", () -> delete(archivedChats.keySet()));
+				archived += chats.size();
+			}
+			while (chats.size() == SEGMENT_SIZE);
+		}
+		return archived;
+	}
+
+	//Method reading the oldest segment's worth of a conversation's due chats, keyed by ID
+	private Map<Integer, ChatMessage> dueChats(String participant1, String participant2, String before)
+			throws SQLException {
+		Map<Integer, ChatMessage> chats = new LinkedHashMap<Integer, ChatMessage>();
+		try (PreparedStatement chatsQuery = connection.prepareStatement("SELECT ID, Sender, Receiver, Body, Timestamp"
+				+ " FROM Chat_Messages WHERE ((Sender = ? AND Receiver = ?) OR (Sender = ? AND Receiver = ?))"
+				+ " AND Timestamp < ? ORDER BY Timestamp LIMIT " + SEGMENT_SIZE)) {
+			chatsQuery.setString(1, participant1);
+			chatsQuery.setString(2, participant2);
+			chatsQuery.setString(3, participant2);
+			chatsQuery.setString(4, participant1);
+			chatsQuery.setString(5, before);
+			try (ResultSet rows = chatsQuery.executeQuery()) {
+				while (rows.next()) {
+					chats.put(rows.getInt(1), new ChatMessage(rows.getString(2), rows.getString(3), rows.getString(4),
+							Timestamp.valueOf(rows.getString(5)).toLocalDateTime()));
+				}
+			}
+		}
+		return chats;
+	}
+
+	//Method deleting chats from Chat_Messages by ID, many per statement
+	private void delete(Set<Integer> ids) throws SQLException {
+		List<Integer> remaining = new ArrayList<Integer>(ids);
+		for (int start = 0; start < remaining.size(); start += DELETIONS_PER_STATEMENT) {
+			List<Integer> chunk = remaining.subList(start, Math.min(start + DELETIONS_PER_STATEMENT, remaining.size()));
+			try (PreparedStatement deletion = connection.prepareStatement("DELETE FROM Chat_Messages WHERE ID IN ("
+					+ String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")")) {
+				int parameter = 1;
+				for (int id : chunk)
+					deletion.setInt(parameter++, id);
+				deletion.executeUpdate();
+			}
+		}
+	}
+}
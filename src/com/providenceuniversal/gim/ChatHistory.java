@@ -1,8 +1,7 @@
 package com.providenceuniversal.gim;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 
 /**
@@ -19,17 +18,11 @@ public class ChatHistory implements ServerMessage{
 	
 	/**
 	 * Creates new {@code ChatHistory} object and initializes chats list with
-	 * the {@code chatsQuery} values.
-	 * @param chatsQuery ResultSet storing database query containing chat messages
-	 * @throws SQLException
+	 * the {@code chats} values.
+	 * @param chats Chat messages, in chronological order
 	 */
-	public ChatHistory(ResultSet chatsQuery) throws SQLException {
-		chats = new ArrayList<ChatMessage>();
-		while(chatsQuery.next()) {
-			ChatMessage chat = new ChatMessage(chatsQuery.getString(2), chatsQuery.getString(3),
-					chatsQuery.getString(4), chatsQuery.getTimestamp(5).toLocalDateTime());
-			chats.add(chat);
-		}
+	ChatHistory(List<ChatMessage> chats) {
+		this.chats = new ArrayList<ChatMessage>(chats);
 	}
 
 	//_________________________________Getters and setters for each field_________________________________
@@ -1,7 +1,12 @@
 package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+
 /**
  * The {@code ChatHistoryRequest} class stores a list of participants to be used 
- * to retrieve the chat history between the participants.
+ * to retrieve the chat history between the participants. It can optionally be limited to
+ * the chats sent since a given time, so that clients holding part of the history only
+ * retrieve what they are missing.
  * It is one of the types of {@code ClientMessage}.
  * 
  * @author Garikai Gumbo<br>
@@ -12,6 +17,7 @@ public class ChatHistoryRequest implements ClientMessage{
 	private static final long serialVersionUID = 4017620732994082282L;
 	private final String participant1;
 	private final String participant2;
+	private final LocalDateTime since;
 	
 	/**
 	 * Creates new {@code ChatHistoryRequest} object and initializes the participants list with
@@ -21,9 +27,22 @@ public class ChatHistoryRequest implements ClientMessage{
 	 * @param participant2 The other of the participants
 	 */
 	public ChatHistoryRequest(String participant1, String participant2) {
+		this(participant1, participant2, null);
+	}
+	
+	/**
+	 * Creates new {@code ChatHistoryRequest} object limited to the chats sent at or after
+	 * the given time.
+	 * 
+	 * @param participant1 One of the participants
+	 * @param participant2 The other of the participants
+	 * @param since Time stamp of the earliest chat to retrieve, or {@code null} for the full history
+	 */
+	public ChatHistoryRequest(String participant1, String participant2, LocalDateTime since) {
 		super();
 		this.participant1 = participant1;
 		this.participant2 = participant2;
+		this.since = since;
 	}
 
 	//_________________________________Getters and setters for each field_________________________________
@@ -35,4 +54,8 @@ public class ChatHistoryRequest implements ClientMessage{
 	public String getParticipant2() {
 		return participant2;
 	}
+
+	public LocalDateTime getSince() {
+		return since;
+	}
 }
@@ -0,0 +1,58 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The {@code ChatStore} interface is the storage engine of the one-to-one chats, selected when the
+ * server starts (see {@link ServerConfiguration#getStorage()}). Users, their credentials and group
+ * conversations stay in the database whichever engine stores the chats.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+interface ChatStore {
+
+	/**
+	 * Stores a chat that has just been sent.
+	 *
+	 * @param chat The chat
+	 * @throws SQLException If the database cannot store the chat
+	 * @throws IOException If a file cannot store the chat
+	 */
+	void store(ChatMessage chat) throws SQLException, IOException;
+
+	/**
+	 * Retrieves the chats between two participants sent at or after the given time.
+	 *
+	 * @param participant1 One of the participants
+	 * @param participant2 The other of the participants
+	 * @param since Time stamp of the earliest chat to retrieve, or {@code null} for all of them
+	 * @return The chats, in chronological order
+	 * @throws SQLException If the database cannot be read
+	 * @throws IOException If a file cannot be read
+	 */
+	List<ChatMessage> retrieve(String participant1, String participant2, LocalDateTime since)
+			throws SQLException, IOException;
+
+	/**
+	 * Flushes and closes the files the engine holds open.
+	 *
+	 * @throws IOException If a file cannot be flushed or closed
+	 */
+	void close() throws IOException;
+
+	/**
+	 * Returns the key of a conversation, the same whichever participant is named first.
+	 *
+	 * @param participant1 One of the participants
+	 * @param participant2 The other of the participants
+	 * @return The key
+	 */
+	static String conversation(String participant1, String participant2) {
+		return participant1.compareTo(participant2) <= 0 ? participant1 + '\n' + participant2
+				: participant2 + '\n' + participant1;
+	}
+}
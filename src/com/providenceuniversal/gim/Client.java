@@ -1,14 +1,13 @@
 package com.providenceuniversal.gim;
 
 import java.io.*;
-import java.net.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
-import javax.swing.JOptionPane;
-
 /**
  * The {@code Client} class is half of the core of G-Instant Messenger� (aside {@code Server} class).
  * It acts as a client, facilitating communication with the server and providing a user-friendly CLI
@@ -19,25 +18,41 @@ import javax.swing.JOptionPane;
  */
 public class Client {
 	private static Scanner keyboardInput;
+	private final ClientConnection connection;
 	private User currentUser;
 	private ContactList contacts;
-	private ObjectInputStream incomingResponses;
-	private ObjectOutputStream outgoingRequests;
-	private ExecutorService idleNotificationExecutor;
-	private volatile ServerMessage latestServerResponse;
+	private GroupList groups;
+	private NotificationDispatcher notificationDispatcher;
+	private ContactCache contactCache;
+	private LocalMessageStore messageStore;
+	private ReceiptBatcher receiptBatcher;
+	//Maximum number of notifications waiting to be displayed
+	private static final int NOTIFICATION_CAPACITY = 256;
+	//Minutes after which the contact cache is reloaded even though presence changes keep it up to date
+	private static final int CONTACTS_TIME_TO_LIVE = 5;
+	//Milliseconds the receipts of the chats received and read are held for, to be sent together
+	private static final int RECEIPT_INTERVAL = 1000;
+	//Prefix of the messages sharing a file rather than text
+	private static final String ATTACH_COMMAND = "/attach ";
+	
+	/**
+	 * Creates new client communicating with the server over the given connection.
+	 * 
+	 * @param connection {@code ClientConnection} to the server
+	 */
+	public Client(ClientConnection connection) {
+		super();
+		this.connection = connection;
+	}
 	
 	/**
-	 * Creates new client and initializes the client's {@code incomingResponses, outgoingRequests} and
-	 * {@code keyboardInput} instance variables respectively, with the corresponding parameter values.
+	 * Creates new client and initializes the client's connection with the corresponding parameter values.
 	 * 
 	 * @param incomingResponses {@code ObjectInputStream} storing responses coming from server
 	 * @param outgoingRequests {@code ObjectOutputStream} storing client requests bound for server
-	 * @param keyboardInput {@code Scanner} storing the keyboardInput stream
 	 */
 	public Client(ObjectInputStream incomingResponses, ObjectOutputStream outgoingRequests) {
-		super();
-		this.incomingResponses = incomingResponses;
-		this.outgoingRequests = outgoingRequests; 
+		this(new ClientConnection(incomingResponses, outgoingRequests));
 	}
 
 	public static void main(String[] args) {
@@ -46,13 +61,11 @@ public class Client {
 		keyboardInput = new Scanner(System.in);
 		System.out.println("Please enter the server address (or Computer name)");
 		
-		//Try-with-resources block setting up the resources to be used by the client
-		try (Socket socket = new Socket(keyboardInput.nextLine(), 4279);
-				ObjectOutputStream outgoingRequests = new ObjectOutputStream(socket.getOutputStream());
-				ObjectInputStream incomingResponses = new ObjectInputStream(socket.getInputStream())) {
+		//Try-with-resources block setting up the connection to be used by the client
+		try (ClientConnection connection = ClientConnection.connect(keyboardInput.nextLine(), 4279)) {
 
 			//Client object to operate in non-static contexts
-			Client newOnlineClient = new Client(incomingResponses, outgoingRequests);
+			Client newOnlineClient = new Client(connection);
 			System.out.println("Welcome to G-Instant Messenger\n");
 			
 			//Loop to cycle through initial options
@@ -109,54 +122,17 @@ public class Client {
 	public void login(String username, String password) throws IOException{
 		//If statement to sanity check credentials
 		if (credentialsSanityCheck(username, password)) {
-			int timeoutCounter = 1;
-			//Loop to retry logging user in with provided credentials in case there are network problems
-			while (true) {
-				try {
-					//Creating the login request and declaring variable to store subsequent response from server
-					ClientMessage credentials = new Authentication(username.trim(), password.trim(),
-							Authentication.Type.LOGIN);
-					ServerMessage response;
-
-					outgoingRequests.writeObject(credentials);
-					outgoingRequests.flush();
-
-					System.out.println("Logging in ...\n");
-
-					//Assigning response from server to response variable
-					response = (ServerMessage) incomingResponses.readObject();
-
-					//If login is successful
-					if (response instanceof User) {
-						/*Assigning User object obtained from server to client's currentUser instance variable
-						 *and entering the main menu
-						 */
-						currentUser = (User) response;
-						enterMainMenu();
-					}
-					//If login is unsuccessful
-					else {
-						ServerError error = (ServerError) response;
-						System.out.println(error + "\n");
-					}
-					break;
-				}
-				catch (IOException | ClassNotFoundException ex) {
-					/*Incrementing the timeout counter in case 
-					 *there is an error communicating with server
-					 */
-					if (timeoutCounter < 3) {
-						timeoutCounter++;
-						try {
-							Thread.sleep(3000);
-						} catch (InterruptedException e) {
-						}
-					} else {
-						//Throwing new IOException if the timeout has expired
-						throw new IOException(ex);
-					}
-				}
-			} 
+			System.out.println("Logging in ...\n");
+			//Waiting for the login response; a failed login has already been reported
+			User user = awaitResponse(connection.login(username.trim(), password.trim()));
+			//If login is successful
+			if (user != null) {
+				/*Assigning User object obtained from server to client's currentUser instance variable
+				 *and entering the main menu
+				 */
+				currentUser = user;
+				enterMainMenu();
+			}
 		}
 		else {
 			//In case credentials fail sanity check
@@ -169,55 +145,17 @@ public class Client {
 	public void signUp(String username, String password) throws IOException{
 		//If statement to sanity check credentials
 		if (credentialsSanityCheck(username, password)) {
-			int timeoutCounter = 1;
-			//Loop to retry signing user up using provided credentials in case there are network problems
-			while (true) {
-				try {
-					//Creating the signup request and declaring variable to store subsequent response from server
-					ClientMessage credentials = new Authentication(username.trim(), password.trim(),
-					Authentication.Type.ACCOUNT_CREATION);
-					ServerMessage response;
-
-					outgoingRequests.writeObject(credentials);
-					outgoingRequests.flush();
-
-					System.out.println("Signing up ...\n");
-
-					//Assigning response from server to response variable
-					response = (ServerMessage) incomingResponses.readObject();
-
-					//If sign up is successful
-					if (response instanceof User) {
-						/*Assigning User object obtained from server to client's currentUser instance variable
-						 *and entering the main menu
-						 */
-						currentUser = (User) response;
-						enterMainMenu();
-					}
-					//If signup is unsuccessful
-					else {
-						ServerError error = (ServerError) response;
-						System.out.println(error + "\n");
-					}
-					break;
-				}
-				catch (IOException | ClassNotFoundException ex) {
-					/*Incrementing the timeout counter in case 
-					 *there is an error communicating with server
-					 */
-					if (timeoutCounter < 3) {
-						timeoutCounter++;
-						try {
-							Thread.sleep(3000);
-						}
-						catch (InterruptedException e) {}
-					}
-					else {
-						//Throwing new IOException if the timeout has expired
-						throw new IOException(ex);
-					}
-				}
-			} 
+			System.out.println("Signing up ...\n");
+			//Waiting for the sign up response; a failed sign up has already been reported
+			User user = awaitResponse(connection.signUp(username.trim(), password.trim()));
+			//If sign up is successful
+			if (user != null) {
+				/*Assigning User object obtained from server to client's currentUser instance variable
+				 *and entering the main menu
+				 */
+				currentUser = user;
+				enterMainMenu();
+			}
 		}
 		//In case credentials fail sanity check
 		else {
@@ -230,50 +168,12 @@ public class Client {
 	public void deleteAccount(String username, String password) throws IOException{
 		//If statement to sanity check credentials
 		if (credentialsSanityCheck(username, password)) {
-			int timeoutCounter = 1;
-			//Loop to retry deleting user using provided credentials in case there are network problems
-			while (true) {
-				try {
-					//Creating the deletion request and declaring variable to store subsequent response from server
-					ClientMessage credentials = new Authentication(username, password,
-							Authentication.Type.ACCOUNT_DELETION);
-					ServerMessage response;
-
-					outgoingRequests.writeObject(credentials);
-					outgoingRequests.flush();
-
-					System.out.println("Deleting account ...\n");
-
-					//Assigning response from server to response variable
-					response = (ServerMessage) incomingResponses.readObject();
-
-					//If deletion is successful
-					if (response instanceof CommitMessage) {
-						System.out.println((CommitMessage) response + "\n");
-					}
-					//If deletion is unsuccessful
-					else {
-						ServerError error = (ServerError) response;
-						System.out.println(error + "\n");
-					}
-					break;
-				}
-				catch (IOException | ClassNotFoundException ex) {
-					/*Incrementing the timeout counter in case 
-					 *there is an error communicating with server
-					 */
-					if (timeoutCounter < 3) {
-						timeoutCounter++;
-						try {
-							Thread.sleep(3000);
-						} catch (InterruptedException e) {
-						}
-					} else {
-						//Throwing new IOException if the timeout has expired
-						throw new IOException(ex);
-					}
-				}
-			} 
+			System.out.println("Deleting account ...\n");
+			CommitMessage confirmation = awaitResponse(connection.deleteAccount(username, password));
+			//If deletion is successful
+			if (confirmation != null) {
+				System.out.println(confirmation + "\n");
+			}
 		}
 		//In case credentials fail sanity check
 		else {
@@ -284,23 +184,21 @@ public class Client {
 	
 	//Method to expose main menu options to user
 	private void enterMainMenu() throws IOException {
-		idleNotificationExecutor = Executors.newCachedThreadPool();
-		idleNotificationExecutor.execute(new Runnable(){
-			@Override
-			public void run() {
-				try {
-					while (!idleNotificationExecutor.isShutdown()) {
-						handleNotification(readFromServer());
-					}
-				}
-				catch (IOException | ClassNotFoundException ex) {}
-			}
-		});
+		//Displaying pushed messages and notifications while the user is logged in
+		notificationDispatcher = new NotificationDispatcher(NOTIFICATION_CAPACITY);
+		connection.addListener(notificationDispatcher);
+		//Keeping the contacts up to date from pushed presence changes
+		contactCache = new ContactCache(connection, CONTACTS_TIME_TO_LIVE, TimeUnit.MINUTES);
+		//Keeping the user's chats on disk, so that opening a chat only retrieves what is missing
+		messageStore = new LocalMessageStore(currentUser.getUsername());
+		connection.addListener(messageStore);
+		//Acknowledging the chats received and read, a batch of receipts at a time
+		receiptBatcher = new ReceiptBatcher(connection, RECEIPT_INTERVAL, TimeUnit.MILLISECONDS);
 		//Loop to cycle through menu options multiple times
 		while (true) {
 			System.out.println("Welcome " + currentUser.getUsername() + 
 					", please enter one of the numerical options to continue:\n"
-					+ "1. Send Message 2. View Contacts 3. Open Chat 4. Logout");
+					+ "1. Send Message 2. View Contacts 3. Open Chat 4. Conversations 5. Groups 6. Search Chats 7. Logout");
 			
 			//String storing option keyed in by user
 			String option = keyboardInput.nextLine();
@@ -309,65 +207,62 @@ public class Client {
 			try {
 				//Sending Message
 				if (option.equals("1")) {
-					//Update contact list object stored by client and display the contacts
-					retrieveContacts();
-					System.out.println("Enter the number corresponding with the desired contact:");
-					System.out.println(contacts + "\n" + "0. Cancel");
-
-					//Read input
-					int selection = Integer.parseInt(keyboardInput.nextLine());
-					if (selection != 0) {
-						//Sanity checking the input
-						if (selection > 0 && selection <= contacts.getTotalNumberOfContacts()) {
-							System.out.println("Now type in the message you want to send:");
-							String messageBody = keyboardInput.nextLine();
-							sendMessage(selection, messageBody); //Send the message
-						}
-						//In case input is invalid
-						else {
-							System.out.println("You have entered an invalid option, please try again.\n");
-						} 
+					String contact = selectContact();
+					if (contact != null) {
+						System.out.println("Now type in the message you want to send (or /attach followed by the path"
+								+ " of a file to share):");
+						//Letting the contact know a message is being typed
+						connection.sendTypingIndicator(contact, TypingIndicator.Activity.TYPING);
+						String messageBody = keyboardInput.nextLine();
+						sendMessage(contact, messageBody); //Send the message
 					}
 				}
 				//View contacts
 				else if (option.equals("2")) {
-					//Update contact list object stored by client and display the contacts
-					retrieveContacts();
-					System.out.println(contacts + "\n");
+					//Reload the first page of the contacts from the server, then display the pages asked for
+					retrieveContacts(true);
+					while (contacts != null) {
+						System.out.println(contacts + "\n");
+						System.out.println("Enter " + (contacts.getNextPage() != null ? "N for the next page, " : "")
+								+ "O for the online contacts only, or anything else to continue:");
+						String input = keyboardInput.nextLine().trim();
+						if (input.equalsIgnoreCase("N") && contacts.getNextPage() != null) {
+							contacts = awaitResponse(connection.retrieveContacts(contacts.getNextPage()));
+						}
+						else if (input.equalsIgnoreCase("O")) {
+							contacts = awaitResponse(connection.retrieveContacts(new ContactsRequest("", true, 0)));
+						}
+						else {
+							break;
+						}
+					}
 				}
 				//Open chat
 				else if (option.equals("3")) {
-					//Update contact list object stored by client and display the contacts
-					retrieveContacts();
-					System.out.println("Enter the number corresponding with the desired contact:");
-					System.out.println(contacts + "\n" + "0. Cancel");
-					
-					//Read input
-					int selection = Integer.parseInt(keyboardInput.nextLine());
-					if (selection != 0) {
-						//Sanity checking input
-						if (selection > 0 && selection <= contacts.getTotalNumberOfContacts()) {
-							retrieveChatHistory(selection); //Retrieve Chats 
-							System.out.println();
-						}
-						//In case input is invalid
-						else {
-							System.out.println("You have entered an invalid option, please try again.\n");
-						} 
+					String contact = selectContact();
+					if (contact != null) {
+						retrieveChatHistory(contact); //Retrieve Chats 
+						System.out.println();
 					}
 				}
-				//Log out
+				//Conversations
 				else if (option.equals("4")) {
-					//Shutdown notification listener
-					idleNotificationExecutor.shutdown();
+					openConversation();
+				}
+				//Group conversations
+				else if (option.equals("5")) {
+					enterGroupsMenu();
+				}
+				//Search chats
+				else if (option.equals("6")) {
+					System.out.println("Enter the words to search your chats for:");
+					searchChats(keyboardInput.nextLine());
+				}
+				//Log out
+				else if (option.equals("7")) {
+					//Shutdown notification display
+					stopNotifications();
 					logout();
-					//Wait for notification executor termination confirmation
-					try {
-						idleNotificationExecutor.awaitTermination(2, TimeUnit.SECONDS);
-					}
-					catch (InterruptedException e) {}
-					idleNotificationExecutor = null;
-					latestServerResponse = null;
 					break; //Break out of options loop
 				}
 				//In case selection is invalid
@@ -378,288 +273,334 @@ public class Client {
 			}
 			catch (NumberFormatException ex) {
 				System.out.println("Numerical input only please, do try again.\n");
-			}	
+			}
+			//Shutting down the notification display in case the connection to the server is lost
+			catch (IOException ex) {
+				stopNotifications();
+				throw ex;
+			}
 		}
 	}
 	
-	//Method to send message
-		private void sendMessage(int recipientOption, String messageBody) throws IOException{
-			
-			int timeoutCounter = 1;
-			//Loop to retry sending message user using provided credentials in case there are network problems
-			while (true) {
-				try {
-					/*Creating the send message request and declaring 
-					 *variable to store subsequent response from server
-					 */
-					ClientMessage chatMessage = new ChatMessage(currentUser.getUsername(),
-					contacts.getContactName(recipientOption), messageBody);
-					//Sending the request to the server
-					outgoingRequests.writeObject(chatMessage);
-					outgoingRequests.flush();
-					
-					System.out.println("Sending message ...\n");
-					
-					//Loop to listen until relevant response is sent from server
-					while (true) {
-						//Assigning response from server to response variable
-						final ServerMessage response = readFromServer();
-						latestServerResponse = null;
-						//If message successfully sent
-						if (response instanceof CommitMessage) {
-							System.out.println((CommitMessage) response + "\n");
-							break;
-						}
-						//If message not sent
-						else if (response instanceof ServerError) {
-							System.out.println((ServerError) response + "\n");
-							break;
-						}
-						//If the server message is a notification
-						else {
-							idleNotificationExecutor.execute(() -> handleNotification(response));
-						}
-					}
-					break; //Breaking out of the outer loop
-				}
-				catch (IOException | ClassNotFoundException ex) {
-					/*Incrementing the timeout counter in case 
-					 *there is an error communicating with server
-					 */
-					if (timeoutCounter < 3) {
-						timeoutCounter++;
-						try {
-							Thread.sleep(3000);
-						}
-						catch (InterruptedException e) {}
-					}
-					//Throwing new IOException and shutting down notifications listener if the timeout has expired
-					else {
-						idleNotificationExecutor.shutdown();
-						try {
-							idleNotificationExecutor.awaitTermination(2, TimeUnit.SECONDS);
-						}
-						catch (InterruptedException e) {}
-						throw new IOException(ex);
-					}
-				}
+	//Method to display the user's conversations and open the chat history of the one they select
+	private void openConversation() throws IOException {
+		ConversationList conversations = awaitResponse(connection.retrieveConversations());
+		if (conversations == null) {
+			return;
+		}
+		System.out.println(conversations + "\n");
+		if (conversations.getTotalNumberOfConversations() == 0) {
+			return;
+		}
+		System.out.println("Enter the number of the conversation to open, or 0 to go back:");
+		int selection = Integer.parseInt(keyboardInput.nextLine());
+		//Sanity checking input
+		if (selection > 0 && selection <= conversations.getTotalNumberOfConversations()) {
+			retrieveChatHistory(conversations.getPartner(selection));
+			System.out.println();
+		}
+		else if (selection != 0) {
+			System.out.println("You have entered an invalid option, please try again.\n");
+		}
+	}
+	
+	//Method to display the results of a search, one page at a time
+	private void searchChats(String query) throws IOException {
+		SearchResults results = awaitResponse(connection.searchChats(query));
+		while (results != null) {
+			System.out.println(results + "\n");
+			if (results.getNextPage() == null) {
+				break;
 			}
+			System.out.println("Enter 1 to view more results, or anything else to stop:");
+			results = keyboardInput.nextLine().equals("1")
+					? awaitResponse(connection.searchChats(results.getNextPage())) : null;
 		}
-
-	//Method to retrieve chat history
-	private void retrieveChatHistory(int recipientOption) throws IOException{
-		
-		int timeoutCounter = 1;
-		//Loop to retry retrieving chats in case there are network problems
-		while (true) {
-			try {
-				/*Creating the chat history request and declaring
-				 *variable to store subsequent response from server
-				 */
-				ClientMessage chatsRequest = new ChatHistoryRequest(currentUser.getUsername(),
-				contacts.getContactName(recipientOption));
-				//Sending the request to the server
-				outgoingRequests.writeObject(chatsRequest);
-				outgoingRequests.flush();
-
-				while (true) {
-					//Assigning response from server to response variable
-					final ServerMessage response = readFromServer();
-					latestServerResponse = null;
-					//If chats request is successful
-					if (response instanceof ChatHistory) {
-						ChatHistory chatHistory = (ChatHistory) response;
-						System.out.println(chatHistory);
-						break;
-					}
-					//If chats request is unsuccessful
-					else if (response instanceof ServerError) {
-						System.out.println((ServerError) response + "\n");
-						break;
-					}
-					//If the server message is a notification
-					else {
-						idleNotificationExecutor.execute(() -> handleNotification(response));
-					}
+	}
+	
+	//Method to expose group conversation options to user
+	private void enterGroupsMenu() throws IOException {
+		System.out.println("Please enter one of the numerical options to continue:\n"
+				+ "1. Send Group Message 2. Open Group Chat 3. Create Group 4. Add Members 5. Leave Group 0. Back");
+		String option = keyboardInput.nextLine();
+		//Create group
+		if (option.equals("3")) {
+			System.out.println("Enter the name of the new group:");
+			String group = keyboardInput.nextLine();
+			System.out.println("Enter the usernames of the members, separated by commas:");
+			Group newGroup = awaitResponse(connection.createGroup(group, readUsernames()));
+			if (newGroup != null) {
+				System.out.println("Created the group " + newGroup + "\n");
+			}
+		}
+		//Options acting on one of the user's groups
+		else if (option.equals("1") || option.equals("2") || option.equals("4") || option.equals("5")) {
+			String group = selectGroup();
+			if (group == null) {
+				return;
+			}
+			//Send group message
+			if (option.equals("1")) {
+				System.out.println("Now type in the message you want to send:");
+				String messageBody = keyboardInput.nextLine();
+				System.out.println("Sending message ...\n");
+				CommitMessage confirmation = awaitResponse(connection.sendGroupMessage(group, messageBody));
+				if (confirmation != null) {
+					System.out.println(confirmation + "\n");
 				}
-				break; //Breaking out of the outer loop
 			}
-			catch (IOException | ClassNotFoundException ex) {
-				/*Incrementing the timeout counter in case 
-				 *there is an error communicating with server
-				 */
-				if (timeoutCounter < 3) {
-					timeoutCounter++;
-					try {
-						Thread.sleep(3000);
-					}
-					catch (InterruptedException e) {}
+			//Open group chat
+			else if (option.equals("2")) {
+				ChatHistory groupHistory = awaitResponse(connection.retrieveGroupHistory(group, null));
+				if (groupHistory != null) {
+					System.out.println(groupHistory + "\n");
 				}
-				//Throwing new IOException and shutting down notifications listener if the timeout has expired
-				else {
-					idleNotificationExecutor.shutdown();
-					try {
-						idleNotificationExecutor.awaitTermination(2, TimeUnit.SECONDS);
-					}
-					catch (InterruptedException e) {}
-					throw new IOException(ex);
+			}
+			//Add members
+			else if (option.equals("4")) {
+				System.out.println("Enter the usernames of the new members, separated by commas:");
+				Group updatedGroup = awaitResponse(connection.addGroupMembers(group, readUsernames()));
+				if (updatedGroup != null) {
+					System.out.println("Updated the group " + updatedGroup + "\n");
 				}
 			}
+			//Leave group
+			else {
+				CommitMessage confirmation = awaitResponse(connection.leaveGroup(group));
+				if (confirmation != null) {
+					System.out.println(confirmation + "\n");
+				}
+			}
+		}
+		//In case selection is invalid
+		else if (!option.equals("0")) {
+			System.out.println("Invalid selection, please check your input and try again.\n");
 		}
 	}
 	
-	//Method to retrieve contacts
-	private void retrieveContacts() throws IOException {
-		
-		int timeoutCounter = 1;
-		//Loop to retry retrieving contacts in case there are network problems
-		while (true) {
-			try {
-				//Creating the contacts request and declaring variable to store subsequent response from server
-				ClientMessage contactsRequest = new ContactsRequest();
-				//Sending the request to the server
-				outgoingRequests.writeObject(contactsRequest);
-				outgoingRequests.flush();
-				
-				while (true) {
-					//Assigning response from server to response variable
-					final ServerMessage response = readFromServer();
-					latestServerResponse = null;
-					//If contacts request is successful
-					if (response instanceof ContactList) {
-						contacts = (ContactList) response;
-						break;
-					}
-					//If contacts request is unsuccessful
-					else if (response instanceof ServerError) {
-						System.out.println((ServerError) response + "\n");
-						break;
-					}
-					//If the server message is a notification
-					else {
-						idleNotificationExecutor.execute(() -> handleNotification(response));
-					}
-				}
-				break; //Breaking out of the outer loop
+	//Method letting the user pick one of their groups, returning null if they cancel or have none
+	private String selectGroup() throws IOException {
+		groups = awaitResponse(connection.retrieveGroups());
+		if (groups == null) {
+			return null;
+		}
+		if (groups.getTotalNumberOfGroups() == 0) {
+			System.out.println("You are not a member of any group yet.\n");
+			return null;
+		}
+		System.out.println("Enter the number corresponding with the desired group:");
+		System.out.println(groups + "\n" + "0. Cancel");
+		int selection = Integer.parseInt(keyboardInput.nextLine());
+		//Sanity checking input
+		if (selection > 0 && selection <= groups.getTotalNumberOfGroups()) {
+			return groups.getGroupName(selection);
+		}
+		else if (selection != 0) {
+			System.out.println("You have entered an invalid option, please try again.\n");
+		}
+		return null;
+	}
+	
+	//Method reading a comma separated list of usernames
+	private static String[] readUsernames() {
+		return Arrays.stream(keyboardInput.nextLine().split(",")).map(String::trim)
+				.filter(username -> !username.isEmpty()).toArray(String[]::new);
+	}
+	
+	//Method to send message
+	private void sendMessage(String recipient, String messageBody) throws IOException{
+		//Uploading the file to share first, the chat then carrying its reference
+		if (messageBody.startsWith(ATTACH_COMMAND)) {
+			System.out.println("Uploading attachment ...\n");
+			Attachment attachment = awaitTransfer(connection.uploadAttachment(
+					Paths.get(messageBody.substring(ATTACH_COMMAND.length()).trim())));
+			if (attachment == null) {
+				return;
 			}
-			catch(IOException | ClassNotFoundException ex) {
-				/*Incrementing the timeout counter in case 
-				 *there is an error communicating with server
-				 */
-				if (timeoutCounter < 3) {
-					timeoutCounter++;
-					try {
-						Thread.sleep(3000);
-					}
-					catch (InterruptedException e) {}
-				}
-				//Throwing new IOException and shutting down notifications listener if the timeout has expired
-				else {
-					idleNotificationExecutor.shutdown();
-					try {
-						idleNotificationExecutor.awaitTermination(2, TimeUnit.SECONDS);
-					}
-					catch (InterruptedException e) {}
-					throw new IOException(ex);
-				}
+			messageBody = attachment.toString();
+		}
+		System.out.println("Sending message ...\n");
+		CommitMessage confirmation = awaitResponse(connection.sendMessage(recipient, messageBody));
+		//If message successfully sent
+		if (confirmation != null) {
+			System.out.println(confirmation + "\n");
+		}
+	}
+
+	//Method to retrieve chat history
+	private void retrieveChatHistory(String contact) throws IOException{
+		//Only retrieving the chats sent since the stored chats were last synchronized
+		ChatHistory chatHistory = awaitResponse(connection.retrieveChatHistory(contact,
+				messageStore.getWatermark(contact)));
+		//If chats request is successful
+		if (chatHistory != null) {
+			ChatHistory synchronizedHistory = new ChatHistory(messageStore.synchronize(contact, chatHistory));
+			System.out.println(synchronizedHistory);
+			//Letting the contact know their chats have been read
+			List<ChatMessage> chats = synchronizedHistory.getChats();
+			if (!chats.isEmpty())
+				receiptBatcher.read(contact, chats.get(chats.size() - 1).getTimeStamp());
+			downloadAttachments(chats);
+		}
+	}
+	
+	//Method to offer the attachments shared in a chat history for download
+	private void downloadAttachments(List<ChatMessage> chats) throws IOException {
+		List<Attachment> attachments = new ArrayList<Attachment>();
+		for (ChatMessage chat : chats) {
+			attachments.addAll(Attachment.find(chat.getBody()));
+		}
+		if (attachments.isEmpty()) {
+			return;
+		}
+		System.out.println("\nAttachments:");
+		for (int index = 0; index < attachments.size(); index++) {
+			System.out.println((index + 1) + ". " + attachments.get(index).getName() + " ("
+					+ attachments.get(index).getSize() + " bytes)");
+		}
+		System.out.println("Enter the number of an attachment to download, or 0 to continue:");
+		int selection = Integer.parseInt(keyboardInput.nextLine());
+		//Sanity checking input
+		if (selection > 0 && selection <= attachments.size()) {
+			Attachment attachment = attachments.get(selection - 1);
+			File downloads = new File(System.getProperty("user.home") + "/G-Instant Messenger/downloads");
+			downloads.mkdirs();
+			System.out.println("Downloading attachment ...\n");
+			Path target = awaitTransfer(connection.downloadAttachment(attachment,
+					new File(downloads, new File(attachment.getName()).getName()).toPath()));
+			if (target != null) {
+				System.out.println("Saved the attachment to " + target + "\n");
 			}
 		}
+		else if (selection != 0) {
+			System.out.println("You have entered an invalid option, please try again.\n");
+		}
 	}
 	
-	//Method to log user out
-	private void logout() throws IOException{
-		
-		int timeoutCounter = 0;
-		while (true) {
-			try {
-				//Creating the disconnect request
-				ClientMessage disconnectRequest = new UserDisconnection();
-				//Sending the request to the server
-				outgoingRequests.writeObject(disconnectRequest);
-				outgoingRequests.flush();
-				
-				while (true) {
-					//Assigning response from server to response variable
-					final ServerMessage response = readFromServer();
-					//If log out is successful
-					if (response instanceof CommitMessage) {
-						currentUser = null;
-						contacts = null;
-						System.out.println((CommitMessage) response + "\n");
-						break;
-					}
-					//If logout is unsuccessful
-					else if (response instanceof ServerError) {
-						currentUser = null;
-						contacts = null;
-						System.out.println((ServerError) response + "\n");
-						break;
-					}
-					//If the server message is a notification
-					else {
-						idleNotificationExecutor.execute(() -> handleNotification(response));
-					}
-				}
-				break; //Breaking out of the outer loop
+	//Method to retrieve contacts from the cache, only contacting the server if it is stale or a reload is forced
+	private void retrieveContacts(boolean reload) throws IOException {
+		try {
+			contacts = reload ? contactCache.refresh() : contactCache.snapshot();
+		}
+		//In case the server refuses the contacts request
+		catch (ServerErrorException ex) {
+			System.out.println(ex.getServerError() + "\n");
+		}
+	}
+	
+	/*Method letting the user select a contact from the cached first page of the contacts, the following
+	 *pages or the results of a search by name, each retrieved from the server. Selections are resolved
+	 *against the displayed page. Returns null in case the user cancels or enters an invalid option
+	 */
+	private String selectContact() throws IOException {
+		retrieveContacts(false);
+		while (contacts != null) {
+			System.out.println("Enter the number corresponding with the desired contact, or the start of a name to"
+					+ " search for:");
+			System.out.println(contacts + "\n" + (contacts.getNextPage() != null ? "N. Next page\n" : "")
+					+ "0. Cancel");
+			
+			//Read input
+			String input = keyboardInput.nextLine().trim();
+			if (input.equals("0")) {
+				return null;
 			}
-			catch (IOException | ClassNotFoundException ex) {
-				/*Incrementing the timeout counter in case 
-				 *there is an error communicating with server
-				 */
-				if (timeoutCounter < 3) {
-					timeoutCounter++;
-					try {
-						Thread.sleep(3000);
-					}
-					catch (InterruptedException e) {}
-				}
-				//Throwing new IOException if the timeout has expired
-				else {
-					try {
-						idleNotificationExecutor.awaitTermination(2, TimeUnit.SECONDS);
-					}
-					catch (InterruptedException e) {}
-					throw new IOException(ex);
+			//Displaying the next page or the search results
+			else if (input.equalsIgnoreCase("N") && contacts.getNextPage() != null) {
+				contacts = awaitResponse(connection.retrieveContacts(contacts.getNextPage()));
+			}
+			else if (!input.chars().allMatch(Character::isDigit)) {
+				contacts = awaitResponse(connection.retrieveContacts(new ContactsRequest(input, false, 0)));
+			}
+			else {
+				int selection = Integer.parseInt(input);
+				//Sanity checking input
+				if (selection > 0 && selection <= contacts.getTotalNumberOfContacts()) {
+					return contacts.getContactName(selection);
 				}
-			} 
-		}	
+				//In case input is invalid
+				System.out.println("You have entered an invalid option, please try again.\n");
+				return null;
+			}
+		}
+		return null;
 	}
 	
-	//Method to sanity check, authentication credentials
-	private boolean credentialsSanityCheck(String username, String password) {
-		return (!username.trim().isEmpty() && !username.contains("'") &&
-				password.trim().length() >= 4  && !password.contains("'")) ? true: false;
+	//Method to log user out
+	private void logout() throws IOException{
+		CommitMessage confirmation = awaitResponse(connection.logout());
+		//Forgetting the user whether or not the logout was successful
+		currentUser = null;
+		contacts = null;
+		groups = null;
+		if (confirmation != null) {
+			System.out.println(confirmation + "\n");
+		}
 	}
 	
-	//Method to handle notifications
-	private void handleNotification(ServerMessage notification) {
-		//Execute if notification is a chat message
-		if (notification instanceof ChatMessage) {
-			ChatMessage chat = (ChatMessage) notification;
-			JOptionPane.showMessageDialog(null, "New message from " + chat.getSender() + ":\n"
-					+ chat, "New message", JOptionPane.INFORMATION_MESSAGE);
-		}
-		//Execute if notification is a broadcast server notification
-		else if (notification instanceof ServerNotification) {
-			JOptionPane.showMessageDialog(null, "New notification:\n"
-			+ (ServerNotification) notification, "Notification", JOptionPane.INFORMATION_MESSAGE);
+	/*Method waiting for the server's response to a request. Returns null after displaying the
+	 *error in case the server returns an error, and throws IOException if the connection fails
+	 */
+	private <T extends ServerMessage> T awaitResponse(CompletableFuture<T> response) throws IOException {
+		try {
+			return response.get();
+		}
+		catch (ExecutionException ex) {
+			//Execute if the server responded with an error
+			if (ex.getCause() instanceof ServerErrorException) {
+				System.out.println(((ServerErrorException) ex.getCause()).getServerError() + "\n");
+				return null;
+			}
+			throw new IOException(ex.getCause());
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
 		}
 	}
 	
-	//Synchronized method to server responses and notifications
-	private synchronized ServerMessage readFromServer() throws IOException, ClassNotFoundException{
-		//Execute if there are no pending server responses to be executed
-		if (latestServerResponse == null) {
-			ServerMessage response = (ServerMessage) incomingResponses.readObject();
-			//Execute if server message is a response to a request command
-			if (!(response instanceof ServerNotification || response instanceof ChatMessage)) {
-				latestServerResponse = response;
+	/*Method waiting for the transfer of an attachment. Returns null after displaying the error in case
+	 *the transfer fails, and throws IOException only if the connection to the server fails
+	 */
+	private <T> T awaitTransfer(CompletableFuture<T> transfer) throws IOException {
+		try {
+			return transfer.get();
+		}
+		catch (ExecutionException ex) {
+			if (connection.isClosed()) {
+				throw new IOException(ex.getCause());
+			}
+			//Execute if the server refused the transfer
+			if (ex.getCause() instanceof ServerErrorException) {
+				System.out.println(((ServerErrorException) ex.getCause()).getServerError() + "\n");
+			}
+			else {
+				System.out.println("Unable to transfer the attachment: " + ex.getCause().getMessage() + "\n");
 			}
-			return response;
+			return null;
 		}
-		//Execute if there are pending server responses to be processed
-		else {
-			return latestServerResponse;
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
 		}
 	}
+	
+	//Method to sanity check, authentication credentials
+	private boolean credentialsSanityCheck(String username, String password) {
+		return (!username.trim().isEmpty() && !username.contains("'") &&
+				password.trim().length() >= 4  && !password.contains("'")) ? true: false;
+	}
+	
+	//Method to stop displaying notifications
+	private void stopNotifications() {
+		connection.removeListener(notificationDispatcher);
+		notificationDispatcher.close();
+		notificationDispatcher = null;
+		connection.removeListener(contactCache);
+		contactCache = null;
+		connection.removeListener(messageStore);
+		messageStore = null;
+		receiptBatcher.close();
+		receiptBatcher = null;
+	}
 }
@@ -0,0 +1,699 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code ClientConnection} class is an embeddable, asynchronous connection to a G-Instant Messenger
+ * server. Requests are written on the calling thread and return immediately with a
+ * {@code CompletableFuture} of the expected response; a single dedicated reader thread per connection
+ * completes those futures and delivers pushed chat messages and notifications to the registered
+ * {@code ClientListener}s. It holds no console or UI state, so many connections can be managed by one
+ * process (e.g. in bots and gateways).
+ * <p>
+ * The server answers the requests of a connection in the order they were sent, so pending requests
+ * are matched to responses in first-in first-out order. Each connection starts with a {@code Handshake}
+ * offering compression of large responses, which are then decoded transparently. When otherwise idle, the
+ * connection sends the server a {@code Heartbeat} at the interval the server negotiated, and closes itself
+ * if the server sends nothing for several intervals. Attachments are transferred over connections of
+ * their own, so that they never hold up the connection's chats.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ClientConnection implements AutoCloseable {
+
+	/**
+	 * The {@code PendingRequest} class pairs a sent request's future with the response type it expects.
+	 *
+	 * @param <T> Expected response type
+	 */
+	private static final class PendingRequest<T extends ServerMessage> {
+		private final Class<T> responseType;
+		private final CompletableFuture<T> response;
+
+		PendingRequest(Class<T> responseType) {
+			this.responseType = responseType;
+			response = new CompletableFuture<T>();
+		}
+
+		//Method completing the future with the server's response
+		void complete(ServerMessage message) {
+			if (responseType.isInstance(message))
+				response.complete(responseType.cast(message));
+			else if (message instanceof ServerError)
+				response.completeExceptionally(new ServerErrorException((ServerError) message));
+			else
+				response.completeExceptionally(new ProtocolException("Expected " + responseType.getSimpleName()
+				+ " but the server responded with " + message.getClass().getSimpleName()));
+		}
+	}
+
+	/**
+	 * The {@code Heartbeats} class holds the timer sending the heartbeats of all the connections of the
+	 * process, only created once a connection needs it.
+	 */
+	private static final class Heartbeats {
+		private static final TimingWheel timer = new TimingWheel("gim-heartbeats", 100, TimeUnit.MILLISECONDS, 512);
+	}
+
+	/**
+	 * The {@code Transfers} class holds the threads transferring the attachments of all the connections of
+	 * the process, only created once a connection needs them.
+	 */
+	private static final class Transfers {
+		private static final AtomicInteger threadCounter = new AtomicInteger();
+		private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			Thread transferThread = new Thread(runnable, "gim-transfer-" + threadCounter.incrementAndGet());
+			transferThread.setDaemon(true);
+			return transferThread;
+		});
+	}
+
+	private static final AtomicInteger connectionCounter = new AtomicInteger();
+	//Heartbeat intervals without anything from the server after which it is deemed to have stopped responding
+	private static final int HEARTBEAT_MISSES = 3;
+
+	private final Socket socket;
+	private final ObjectInputStream incomingResponses;
+	private final ObjectOutputStream outgoingRequests;
+	private final Queue<PendingRequest<?>> pendingRequests;
+	private final List<ClientListener> listeners;
+	private final Thread reader;
+	private volatile User currentUser;
+	private volatile boolean closed;
+	//Times (System.nanoTime) a request was last sent and a message last received
+	private volatile long lastSent, lastReceived;
+	//Whether the connection was closed because the server stopped responding
+	private volatile boolean serverUnresponsive;
+
+	/**
+	 * Creates new {@code ClientConnection} over an already connected socket and starts its reader thread.
+	 *
+	 * @param socket Socket connected to the server
+	 * @throws IOException If the object streams cannot be set up
+	 */
+	public ClientConnection(Socket socket) throws IOException {
+		this(socket, new ObjectOutputStream(socket.getOutputStream()));
+	}
+
+	private ClientConnection(Socket socket, ObjectOutputStream outgoingRequests) throws IOException {
+		this(socket, openInput(socket, outgoingRequests), outgoingRequests);
+	}
+
+	/**
+	 * Creates new {@code ClientConnection} over already established object streams and starts its reader thread.
+	 *
+	 * @param incomingResponses {@code ObjectInputStream} storing responses coming from server
+	 * @param outgoingRequests {@code ObjectOutputStream} storing client requests bound for server
+	 */
+	public ClientConnection(ObjectInputStream incomingResponses, ObjectOutputStream outgoingRequests) {
+		this(null, incomingResponses, outgoingRequests);
+	}
+
+	private ClientConnection(Socket socket, ObjectInputStream incomingResponses, ObjectOutputStream outgoingRequests) {
+		this.socket = socket;
+		this.incomingResponses = incomingResponses;
+		this.outgoingRequests = outgoingRequests;
+		pendingRequests = new ConcurrentLinkedQueue<PendingRequest<?>>();
+		listeners = new CopyOnWriteArrayList<ClientListener>();
+		lastSent = lastReceived = System.nanoTime();
+		reader = new Thread(this::readFromServer, "gim-reader-" + connectionCounter.incrementAndGet());
+		reader.setDaemon(true);
+		reader.start();
+		//Offering compression, servers which do not support handshakes simply refuse the request
+		request(new Handshake(Handshake.Compression.DEFLATE), Handshake.class)
+		.thenAccept(handshake -> {
+			long interval = handshake.getHeartbeatInterval(TimeUnit.NANOSECONDS);
+			if (interval > 0)
+				scheduleHeartbeat(interval, interval);
+		});
+	}
+
+	/**
+	 * Connects to the server at the given address.
+	 *
+	 * @param host Server address (or computer name)
+	 * @param port Server port
+	 * @return The new connection
+	 * @throws IOException If the connection cannot be established
+	 */
+	public static ClientConnection connect(String host, int port) throws IOException {
+		Socket socket = new Socket(host, port);
+		try {
+			return new ClientConnection(socket);
+		}
+		catch (IOException ex) {
+			socket.close();
+			throw ex;
+		}
+	}
+
+	//Method flushing the stream header before the input stream creation blocks waiting for the server's
+	private static ObjectInputStream openInput(Socket socket, ObjectOutputStream outgoingRequests) throws IOException {
+		outgoingRequests.flush();
+		return new ObjectInputStream(socket.getInputStream());
+	}
+
+	//__________________________________________________Listeners__________________________________________________
+
+	public void addListener(ClientListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(ClientListener listener) {
+		listeners.remove(listener);
+	}
+
+	//__________________________________________________Requests___________________________________________________
+
+	/**
+	 * Logs in with the given credentials.
+	 *
+	 * @param username Username
+	 * @param password Password
+	 * @return Future of the logged in user
+	 */
+	public CompletableFuture<User> login(String username, String password) {
+		return authenticate(new Authentication(username, password, Authentication.Type.LOGIN));
+	}
+
+	/**
+	 * Creates a new account with the given credentials and logs into it.
+	 *
+	 * @param username Username
+	 * @param password Password
+	 * @return Future of the newly created (and logged in) user
+	 */
+	public CompletableFuture<User> signUp(String username, String password) {
+		return authenticate(new Authentication(username, password, Authentication.Type.ACCOUNT_CREATION));
+	}
+
+	/**
+	 * Deletes the account with the given credentials.
+	 *
+	 * @param username Username
+	 * @param password Password
+	 * @return Future of the server's confirmation
+	 */
+	public CompletableFuture<CommitMessage> deleteAccount(String username, String password) {
+		return request(new Authentication(username, password, Authentication.Type.ACCOUNT_DELETION),
+				CommitMessage.class);
+	}
+
+	/**
+	 * Sends a chat message from the logged in user.
+	 *
+	 * @param recipient Recipient's username
+	 * @param body Message body
+	 * @return Future of the server's confirmation
+	 */
+	public CompletableFuture<CommitMessage> sendMessage(String recipient, String body) {
+		return request(new ChatMessage(getUsername(), recipient, body), CommitMessage.class);
+	}
+
+	/**
+	 * Retrieves the first page of all other users and their activity status.
+	 *
+	 * @return Future of the contact list
+	 */
+	public CompletableFuture<ContactList> retrieveContacts() {
+		return retrieveContacts(new ContactsRequest());
+	}
+
+	/**
+	 * Retrieves a page of the other users matching a search, such as the next page of a contact list
+	 * ({@link ContactList#getNextPage()}).
+	 *
+	 * @param request The search
+	 * @return Future of the contact list
+	 */
+	public CompletableFuture<ContactList> retrieveContacts(ContactsRequest request) {
+		return request(request, ContactList.class);
+	}
+
+	/**
+	 * Retrieves the chat history between the logged in user and the given contact.
+	 *
+	 * @param contact Contact's username
+	 * @return Future of the chat history
+	 */
+	public CompletableFuture<ChatHistory> retrieveChatHistory(String contact) {
+		return request(new ChatHistoryRequest(getUsername(), contact), ChatHistory.class);
+	}
+
+	/**
+	 * Retrieves the chats between the logged in user and the given contact sent at or after the given time.
+	 *
+	 * @param contact Contact's username
+	 * @param since Time stamp of the earliest chat to retrieve, or {@code null} for the full history
+	 * @return Future of the chat history
+	 */
+	public CompletableFuture<ChatHistory> retrieveChatHistory(String contact, LocalDateTime since) {
+		return request(new ChatHistoryRequest(getUsername(), contact, since), ChatHistory.class);
+	}
+
+	/**
+	 * Creates a group conversation made up of the logged in user and the given members.
+	 *
+	 * @param group Name of the group
+	 * @param members Usernames of the other members
+	 * @return Future of the new group
+	 */
+	public CompletableFuture<Group> createGroup(String group, String... members) {
+		return request(new GroupRequest(GroupRequest.Type.CREATION, group, members), Group.class);
+	}
+
+	/**
+	 * Adds members to a group conversation the logged in user is a member of.
+	 *
+	 * @param group Name of the group
+	 * @param members Usernames of the new members
+	 * @return Future of the group, with its new members
+	 */
+	public CompletableFuture<Group> addGroupMembers(String group, String... members) {
+		return request(new GroupRequest(GroupRequest.Type.ADDITION, group, members), Group.class);
+	}
+
+	/**
+	 * Removes the logged in user from a group conversation.
+	 *
+	 * @param group Name of the group
+	 * @return Future of the server's confirmation
+	 */
+	public CompletableFuture<CommitMessage> leaveGroup(String group) {
+		return request(new GroupRequest(GroupRequest.Type.DEPARTURE, group), CommitMessage.class);
+	}
+
+	/**
+	 * Retrieves the group conversations the logged in user is a member of.
+	 *
+	 * @return Future of the group list
+	 */
+	public CompletableFuture<GroupList> retrieveGroups() {
+		return request(new GroupRequest(GroupRequest.Type.LISTING, null), GroupList.class);
+	}
+
+	/**
+	 * Sends a message from the logged in user to a group conversation.
+	 *
+	 * @param group Name of the group
+	 * @param body Message body
+	 * @return Future of the server's confirmation
+	 */
+	public CompletableFuture<CommitMessage> sendGroupMessage(String group, String body) {
+		return request(new GroupMessage(getUsername(), group, body), CommitMessage.class);
+	}
+
+	/**
+	 * Retrieves the messages sent to a group conversation at or after the given time.
+	 *
+	 * @param group Name of the group
+	 * @param since Time stamp of the earliest message to retrieve, or {@code null} for the full history
+	 * @return Future of the chat history, made up of {@code GroupMessage}s
+	 */
+	public CompletableFuture<ChatHistory> retrieveGroupHistory(String group, LocalDateTime since) {
+		return request(new GroupHistoryRequest(group, since), ChatHistory.class);
+	}
+
+	/**
+	 * Retrieves the summaries of the logged in user's conversations: the last message of each and the
+	 * number of messages not read yet, which opening the conversation's chat history clears.
+	 *
+	 * @return Future of the conversation list, the most recently active conversation first
+	 */
+	public CompletableFuture<ConversationList> retrieveConversations() {
+		return request(new ConversationsRequest(), ConversationList.class);
+	}
+
+	/**
+	 * Searches the logged in user's chats for those containing every word of the query, newest first.
+	 *
+	 * @param query Words the chats must contain
+	 * @return Future of the first page of results
+	 */
+	public CompletableFuture<SearchResults> searchChats(String query) {
+		return searchChats(new SearchRequest(query));
+	}
+
+	/**
+	 * Retrieves a page of search results, e.g. the page following previous results
+	 * ({@link SearchResults#getNextPage()}).
+	 *
+	 * @param request The search request
+	 * @return Future of the page of results
+	 */
+	public CompletableFuture<SearchResults> searchChats(SearchRequest request) {
+		return request(request, SearchResults.class);
+	}
+
+	/**
+	 * Uploads a file to be shared in a conversation, by sending the returned attachment's reference (its
+	 * {@code toString()}) in a chat. The file is hashed and transferred on another thread, over a transfer
+	 * connection of its own, in chunks. An upload that fails resumes from the bytes the server received
+	 * when it is retried, and a file the server already stores is not transferred at all.
+	 *
+	 * @param file The file
+	 * @return Future of the attachment, once the server stores it
+	 */
+	public CompletableFuture<Attachment> uploadAttachment(Path file) {
+		CompletableFuture<Attachment> attachment = CompletableFuture.supplyAsync(() -> {
+			try {
+				return Attachment.of(file);
+			}
+			catch (IOException ex) {
+				throw new CompletionException(ex);
+			}
+		}, Transfers.executor);
+		return attachment.thenCompose(hashed -> request(new AttachmentRequest(AttachmentRequest.Mode.UPLOAD,
+				hashed.getHash(), hashed.getSize()), AttachmentTicket.class))
+		.thenApplyAsync(ticket -> {
+			try {
+				//Only connecting if the server is missing some of the file
+				if (ticket.getOffset() < ticket.getSize())
+					upload(ticket, file);
+				return attachment.join();
+			}
+			catch (IOException ex) {
+				throw new CompletionException(ex);
+			}
+		}, Transfers.executor);
+	}
+
+	/**
+	 * Downloads an attachment shared in a conversation, on another thread, over a transfer connection of
+	 * its own. The bytes are received into a partial file next to the target, which a failed download
+	 * resumes from when it is retried, and which is moved to the target once its content matches the
+	 * attachment's hash.
+	 *
+	 * @param attachment The attachment, found in a chat (see {@link Attachment#find(String)})
+	 * @param target File to save the attachment to, replaced if it exists
+	 * @return Future of the target, once the attachment is saved
+	 */
+	public CompletableFuture<Path> downloadAttachment(Attachment attachment, Path target) {
+		return request(new AttachmentRequest(AttachmentRequest.Mode.DOWNLOAD, attachment.getHash(), 0),
+				AttachmentTicket.class).thenApplyAsync(ticket -> {
+					try {
+						download(ticket, attachment, target);
+						return target;
+					}
+					catch (IOException ex) {
+						throw new CompletionException(ex);
+					}
+				}, Transfers.executor);
+	}
+
+	/**
+	 * Logs the current user out, keeping the connection open.
+	 *
+	 * @return Future of the server's confirmation
+	 */
+	public CompletableFuture<CommitMessage> logout() {
+		CompletableFuture<CommitMessage> response = request(new UserDisconnection(), CommitMessage.class);
+		//The server forgets the user whether or not the logout succeeds
+		return response.whenComplete((confirmation, ex) -> currentUser = null);
+	}
+
+	/**
+	 * Sends an arbitrary request to the server.
+	 *
+	 * @param request The request
+	 * @param responseType The type of response expected on success
+	 * @return Future completed with the response, or exceptionally with a {@code ServerErrorException} if the
+	 * server returns an error, or an {@code IOException} if the connection fails
+	 */
+	public <T extends ServerMessage> CompletableFuture<T> request(ClientMessage request, Class<T> responseType) {
+		PendingRequest<T> pendingRequest = new PendingRequest<T>(responseType);
+		//Writing under the stream's lock so that the pending queue has the same order as the wire
+		synchronized (outgoingRequests) {
+			if (closed) {
+				pendingRequest.response.completeExceptionally(new IOException("The connection is closed"));
+				return pendingRequest.response;
+			}
+			pendingRequests.add(pendingRequest);
+			write(request);
+		}
+		return pendingRequest.response;
+	}
+
+	/**
+	 * Tells a user what the logged in user is doing in their conversation. The indicator is sent without
+	 * awaiting a response, and the server delivers it only if the user is online, possibly coalesced
+	 * with later indicators, or not at all when busy.
+	 *
+	 * @param recipient The user
+	 * @param activity The logged in user's activity
+	 */
+	public void sendTypingIndicator(String recipient, TypingIndicator.Activity activity) {
+		synchronized (outgoingRequests) {
+			if (!closed)
+				write(new TypingIndicator(getUsername(), recipient, activity));
+		}
+	}
+
+	/**
+	 * Acknowledges the chats of conversations as delivered to or read by the logged in user. The receipts
+	 * are sent in one message without awaiting a response; the server stores them periodically and
+	 * pushes them to the senders of the chats, coalesced with later receipts.
+	 *
+	 * @param receipts The receipts, at most one per sender and type
+	 */
+	public void sendReceipts(List<Receipt> receipts) {
+		synchronized (outgoingRequests) {
+			if (!closed)
+				write(new ReceiptBatch(receipts));
+		}
+	}
+
+	//Method writing a message to the server, under the stream's lock
+	private void write(ClientMessage message) {
+		try {
+			outgoingRequests.writeObject(message);
+			//Resetting so that the stream does not retain every request ever sent
+			outgoingRequests.reset();
+			outgoingRequests.flush();
+			lastSent = System.nanoTime();
+		}
+		catch (IOException ex) {
+			disconnect(ex);
+		}
+	}
+
+	//Method sending the chunks of a file the server is missing, from the offset of its ticket
+	private void upload(AttachmentTicket ticket, Path file) throws IOException {
+		try (SocketChannel channel = openTransfer(ticket);
+				FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (long offset = ticket.getOffset(); ; ) {
+				int length = (int) Math.min(ticket.getChunkSize(), ticket.getSize() - offset);
+				AttachmentTransfer.writeFully(channel, ByteBuffer.allocate(AttachmentTransfer.CHUNK_HEADER_LENGTH)
+						.putLong(offset).putInt(length));
+				AttachmentTransfer.send(source, offset, length, channel);
+				ByteBuffer answer = AttachmentTransfer.readFully(channel, AttachmentTransfer.ANSWER_LENGTH);
+				byte status = answer.get();
+				if (status == AttachmentTransfer.COMPLETE)
+					return;
+				if (status != AttachmentTransfer.CONTINUE)
+					throw new IOException("The server rejected the attachment (e.g. the file changed while it was sent)");
+				offset = answer.getLong();
+			}
+		}
+	}
+
+	//Method receiving an attachment into its partial file, resuming after the bytes received before
+	private void download(AttachmentTicket ticket, Attachment attachment, Path target) throws IOException {
+		Path partial = target.resolveSibling(target.getFileName() + ".part");
+		boolean intact;
+		try (SocketChannel channel = openTransfer(ticket); FileChannel file = FileChannel.open(partial,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long offset = Math.min(file.size(), ticket.getSize());
+			file.truncate(offset);
+			AttachmentTransfer.writeFully(channel, ByteBuffer.allocate(Long.BYTES).putLong(offset));
+			if (AttachmentTransfer.readFully(channel, AttachmentTransfer.ANSWER_LENGTH).get() != AttachmentTransfer.CONTINUE)
+				throw new IOException("The server refused to send the attachment");
+			AttachmentTransfer.receive(channel, file, offset, ticket.getSize() - offset);
+			intact = Attachment.hash(file).equals(attachment.getHash());
+		}
+		if (!intact) {
+			Files.delete(partial);
+			throw new IOException("The attachment was corrupted in transfer");
+		}
+		Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	//Method opening a transfer connection to the server and presenting a ticket on it
+	private SocketChannel openTransfer(AttachmentTicket ticket) throws IOException {
+		if (socket == null)
+			throw new IOException("Attachments can only be transferred by connections created over a socket");
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress(socket.getInetAddress(), ticket.getPort()));
+		try {
+			AttachmentTransfer.writeToken(channel, ticket.getToken());
+			return channel;
+		}
+		catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	//Method sending an authentication request and recording the user on success
+	private CompletableFuture<User> authenticate(Authentication credentials) {
+		return request(credentials, User.class).thenApply(user -> {
+			currentUser = user;
+			return user;
+		});
+	}
+
+	//___________________________________________________State____________________________________________________
+
+	/**
+	 * Returns the logged in user, or {@code null} if no user is logged in on this connection.
+	 *
+	 * @return The logged in user
+	 */
+	public User getCurrentUser() {
+		return currentUser;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Closes the connection. Pending requests complete exceptionally.
+	 */
+	@Override
+	public void close() {
+		disconnect(new IOException("The connection was closed"));
+	}
+
+	private String getUsername() {
+		User user = currentUser;
+		return user == null ? null : user.getUsername();
+	}
+
+	//________________________________________________Reader thread________________________________________________
+
+	//Method reading server messages until the connection closes
+	private void readFromServer() {
+		try {
+			while (true) {
+				ServerMessage message = (ServerMessage) incomingResponses.readObject();
+				lastReceived = System.nanoTime();
+				//Decoding messages the server sent serialized (and possibly compressed)
+				if (message instanceof EncodedMessage)
+					message = ((EncodedMessage) message).decode();
+				dispatch(message);
+			}
+		}
+		catch (IOException | ClassNotFoundException | RuntimeException ex) {
+			disconnect(serverUnresponsive ? new SocketTimeoutException("The server stopped responding") : ex);
+		}
+	}
+
+	//________________________________________________Heartbeats________________________________________________
+
+	/*Method scheduling the next heartbeat check, which sends a heartbeat if nothing was sent for the interval.
+	 *The check runs on the shared timer, so it neither writes nor disconnects itself: the heartbeat is
+	 *sent on another thread, and an unresponsive server's connection is closed, failing the reader's read
+	 */
+	private void scheduleHeartbeat(long interval, long delay) {
+		Heartbeats.timer.schedule(() -> {
+			if (closed)
+				return;
+			long now = System.nanoTime();
+			if (now - lastReceived > HEARTBEAT_MISSES * interval) {
+				serverUnresponsive = true;
+				closeStreams();
+				return;
+			}
+			long sinceSent = now - lastSent;
+			if (sinceSent >= interval) {
+				CompletableFuture.runAsync(() -> request(new Heartbeat(), Heartbeat.class));
+				sinceSent = 0;
+			}
+			scheduleHeartbeat(interval, interval - sinceSent);
+		}, delay, TimeUnit.NANOSECONDS);
+	}
+
+	//Method routing a server message to its pending request or to the listeners
+	private void dispatch(ServerMessage message) throws ProtocolException {
+		//Execute if message is a chat message pushed to the user
+		if (message instanceof ChatMessage) {
+			for (ClientListener listener : listeners) {
+				try {
+					listener.chatMessageReceived((ChatMessage) message);
+				}
+				catch (RuntimeException ex) {}
+			}
+		}
+		//Execute if message is a broadcast server notification
+		else if (message instanceof ServerNotification) {
+			for (ClientListener listener : listeners) {
+				try {
+					listener.notificationReceived((ServerNotification) message);
+				}
+				catch (RuntimeException ex) {}
+			}
+		}
+		//Execute if message is a response to a request
+		else {
+			PendingRequest<?> pendingRequest = pendingRequests.poll();
+			if (pendingRequest == null)
+				throw new ProtocolException("Unsolicited server response: " + message.getClass().getSimpleName());
+			pendingRequest.complete(message);
+		}
+	}
+
+	//Method closing the connection and failing every pending request
+	private void disconnect(Throwable cause) {
+		synchronized (outgoingRequests) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		closeStreams();
+		IOException failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+		for (PendingRequest<?> pendingRequest = pendingRequests.poll(); pendingRequest != null;
+				pendingRequest = pendingRequests.poll()) {
+			pendingRequest.response.completeExceptionally(failure);
+		}
+		currentUser = null;
+		for (ClientListener listener : listeners) {
+			listener.disconnected(cause);
+		}
+	}
+
+	//Method closing the socket (or the streams when created over them), without blocking
+	private void closeStreams() {
+		try {
+			if (socket != null)
+				socket.close();
+			else
+				incomingResponses.close();
+		}
+		catch (IOException ex) {}
+	}
+}
@@ -0,0 +1,34 @@
+package com.providenceuniversal.gim;
+
+/**
+ * The {@code ClientListener} interface receives the messages a {@code ClientConnection} is pushed by the
+ * server outside of any request, as well as notice of the connection being lost. The methods are called
+ * on the connection's reader thread, so implementations should hand any lengthy work off to another thread.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public interface ClientListener {
+
+	/**
+	 * Called when a chat message addressed to the logged in user, or to one of their groups (in which case
+	 * it is a {@code GroupMessage}), arrives.
+	 *
+	 * @param message The chat message
+	 */
+	default void chatMessageReceived(ChatMessage message) {}
+
+	/**
+	 * Called when a broadcast server notification arrives.
+	 *
+	 * @param notification The server notification
+	 */
+	default void notificationReceived(ServerNotification notification) {}
+
+	/**
+	 * Called once when the connection to the server is lost or closed.
+	 *
+	 * @param cause The reason for the disconnection
+	 */
+	default void disconnected(Throwable cause) {}
+}
@@ -0,0 +1,72 @@
+package com.providenceuniversal.gim;
+
+import java.io.Serializable;
+
+/**
+ * The {@code ClusterMessage} class is the envelope of every message exchanged between the nodes of a
+ * server cluster, whether it is a call to the node owning a shard of the presence directory, the reply
+ * to such a call, or a chat message or notification forwarded to the node a user is connected to.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class ClusterMessage implements Serializable {
+
+	/**
+	 * Enumeration which stores the types of cluster messages
+	 */
+	enum Type {
+		//Announces the sending node once a link is established
+		HELLO,
+		//Calls to the owner of a user's directory entry, answered with a REPLY
+		CLAIM, LOCATE, SNAPSHOT, REPLY,
+		//One-way messages
+		RELEASE, DELIVER, BROADCAST
+	}
+
+	private static final long serialVersionUID = -5482871380615330974L;
+	private final Type type;
+	private final int origin;
+	private final long callId;
+	private final String username;
+	private final Serializable payload;
+
+	/**
+	 * Creates new {@code ClusterMessage} and initializes its fields with the parameter values.
+	 *
+	 * @param type Message type
+	 * @param origin Node sending the message
+	 * @param callId Identifier pairing a call with its reply (0 for one-way messages)
+	 * @param username User the message is about, if any
+	 * @param payload Message payload (reply value, chat message or notification), if any
+	 */
+	ClusterMessage(Type type, int origin, long callId, String username, Serializable payload) {
+		this.type = type;
+		this.origin = origin;
+		this.callId = callId;
+		this.username = username;
+		this.payload = payload;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	Type getType() {
+		return type;
+	}
+
+	int getOrigin() {
+		return origin;
+	}
+
+	long getCallId() {
+		return callId;
+	}
+
+	String getUsername() {
+		return username;
+	}
+
+	Serializable getPayload() {
+		return payload;
+	}
+}
@@ -0,0 +1,440 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code ClusterNode} class is one node of a cluster of servers sharing a single presence directory.
+ * The directory, mapping each online user to the node their client is connected to, is sharded by
+ * username: every user's entry is owned by exactly one node, which serializes the logins of that user
+ * across the whole cluster. Messages for users connected to other nodes are forwarded to the owner
+ * of the recipient's entry, which passes them on to the recipient's node, and notifications are
+ * broadcast to every node.
+ * <p>
+ * A cluster of a single node (the default) never touches its transport, so a standalone server behaves
+ * exactly as a cluster of one.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class ClusterNode implements AutoCloseable {
+
+	/**
+	 * Interface representing the delivery of messages to the clients connected to this node.
+	 */
+	interface LocalDelivery {
+
+		/**
+		 * Delivers a message to its recipient if they are connected to this node.
+		 *
+		 * @param recipient The recipient's username
+		 * @param message The message (e.g. a chat message, or a group message encoded once for all its recipients)
+		 * @return Whether the recipient is connected to this node
+		 */
+		boolean deliver(String recipient, ServerMessage message);
+
+		/**
+		 * Delivers a notification to every user connected to this node.
+		 *
+		 * @param notification The notification
+		 * @param excludedUser User the notification is not delivered to (usually its subject), or {@code null}
+		 */
+		void broadcast(ServerNotification notification, String excludedUser);
+
+		/**
+		 * Applies a presence change which took place on another node.
+		 *
+		 * @param presence The presence change
+		 */
+		void presenceChanged(PresenceNotification presence);
+	}
+
+	/**
+	 * The {@code Location} class is a directory entry: an online user and the node they are connected to.
+	 */
+	private static final class Location {
+		private final String username;
+		private final int node;
+
+		Location(String username, int node) {
+			this.username = username;
+			this.node = node;
+		}
+	}
+
+	//Node value of users who are not online anywhere in the cluster
+	static final int NOWHERE = -1;
+	//Time allowed for calls to other nodes
+	private static final long CALL_TIMEOUT = 2;
+
+	private final int nodeId, nodeCount;
+	private final ClusterTransport transport;
+	private final LocalDelivery delivery;
+	private final Executor deliveryExecutor;
+	//This node's shard of the presence directory, keyed by lower case username
+	private final ConcurrentHashMap<String, Location> directory;
+	//Users connected to this node, re-registered with their owner should it restart
+	private final Set<String> localUsers;
+	private final ConcurrentHashMap<Long, CompletableFuture<Serializable>> pendingCalls;
+	private final AtomicLong callCounter;
+
+	/**
+	 * Creates new standalone {@code ClusterNode}.
+	 *
+	 * @param delivery Delivery to the clients connected to this node
+	 * @param deliveryExecutor Executor delivering the messages received from other nodes
+	 */
+	ClusterNode(LocalDelivery delivery, Executor deliveryExecutor) {
+		this(0, 1, null, delivery, deliveryExecutor);
+	}
+
+	/**
+	 * Creates new {@code ClusterNode}. The node does not receive messages until it is started.
+	 *
+	 * @param nodeId Identifier of this node, from 0 to {@code nodeCount} - 1
+	 * @param nodeCount Number of nodes in the cluster
+	 * @param transport Links to the other nodes
+	 * @param delivery Delivery to the clients connected to this node
+	 * @param deliveryExecutor Executor delivering the messages received from other nodes
+	 */
+	ClusterNode(int nodeId, int nodeCount, ClusterTransport transport, LocalDelivery delivery,
+			Executor deliveryExecutor) {
+		if (nodeId < 0 || nodeId >= nodeCount)
+			throw new IllegalArgumentException("Node " + nodeId + " is not part of a cluster of " + nodeCount);
+		this.nodeId = nodeId;
+		this.nodeCount = nodeCount;
+		this.transport = transport;
+		this.delivery = delivery;
+		this.deliveryExecutor = deliveryExecutor;
+		directory = new ConcurrentHashMap<String, Location>();
+		localUsers = ConcurrentHashMap.newKeySet();
+		pendingCalls = new ConcurrentHashMap<Long, CompletableFuture<Serializable>>();
+		callCounter = new AtomicLong();
+	}
+
+	/**
+	 * Starts receiving messages from the other nodes.
+	 *
+	 * @throws IOException If the transport cannot be started
+	 */
+	void start() throws IOException {
+		if (transport != null)
+			transport.start(this);
+	}
+
+	@Override
+	public void close() {
+		if (transport != null)
+			transport.close();
+	}
+
+	//______________________________________________Presence______________________________________________
+
+	/**
+	 * Registers a user as online on this node, unless they are already online anywhere in the cluster.
+	 *
+	 * @param username The user
+	 * @return Whether the user was registered
+	 * @throws IOException If the node owning the user's entry cannot be reached
+	 */
+	boolean claim(String username) throws IOException {
+		boolean claimed = (Boolean) call(ClusterMessage.Type.CLAIM, username);
+		if (claimed)
+			localUsers.add(username);
+		return claimed;
+	}
+
+	/**
+	 * Registers a user as no longer online on this node.
+	 *
+	 * @param username The user
+	 */
+	void release(String username) {
+		localUsers.remove(username);
+		int owner = owner(username);
+		if (owner == nodeId)
+			remove(username, nodeId);
+		else
+			sendQuietly(owner, new ClusterMessage(ClusterMessage.Type.RELEASE, nodeId, 0, username, null));
+	}
+
+	/**
+	 * Returns the node a user is online on.
+	 *
+	 * @param username The user
+	 * @return The node the user is online on, or {@link #NOWHERE} if they are offline
+	 * @throws IOException If the node owning the user's entry cannot be reached
+	 */
+	int locate(String username) throws IOException {
+		return (Integer) call(ClusterMessage.Type.LOCATE, username);
+	}
+
+	/**
+	 * Returns every online user in the cluster, gathered from all the directory shards. The shards of
+	 * unreachable nodes are left out, so their users appear to be offline.
+	 *
+	 * @return Nodes the online users are connected to, keyed by username
+	 */
+	Map<String, Integer> onlineUsers() {
+		List<CompletableFuture<Serializable>> shards = new ArrayList<CompletableFuture<Serializable>>();
+		for (int node = 0; node < nodeCount; node++) {
+			if (node != nodeId)
+				shards.add(callAsync(node, ClusterMessage.Type.SNAPSHOT, null));
+		}
+		Map<String, Integer> onlineUsers = snapshot();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CALL_TIMEOUT);
+		for (CompletableFuture<Serializable> shard : shards) {
+			try {
+				@SuppressWarnings("unchecked")
+				Map<String, Integer> entries = (Map<String, Integer>) shard.get(Math.max(0,
+						deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				onlineUsers.putAll(entries);
+			}
+			catch (ExecutionException | TimeoutException ex) {
+				shard.cancel(false);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				shards.forEach(unanswered -> unanswered.cancel(false));
+				break;
+			}
+		}
+		return onlineUsers;
+	}
+
+	//______________________________________________Routing_______________________________________________
+
+	/**
+	 * Delivers a message to a user wherever they are connected. Messages for offline users are dropped,
+	 * since they are already stored.
+	 *
+	 * @param recipient The recipient's username
+	 * @param message The message
+	 */
+	void route(String recipient, ServerMessage message) {
+		if (delivery.deliver(recipient, message))
+			return;
+		int owner = owner(recipient);
+		if (owner == nodeId)
+			forward(recipient, message);
+		else
+			sendQuietly(owner, new ClusterMessage(ClusterMessage.Type.DELIVER, nodeId, 0, recipient, message));
+	}
+
+	/**
+	 * Delivers a notification to every user in the cluster.
+	 *
+	 * @param notification The notification
+	 * @param excludedUser User the notification is not delivered to, or {@code null}
+	 */
+	void broadcast(ServerNotification notification, String excludedUser) {
+		delivery.broadcast(notification, excludedUser);
+		for (int node = 0; node < nodeCount; node++) {
+			if (node != nodeId)
+				sendQuietly(node, new ClusterMessage(ClusterMessage.Type.BROADCAST, nodeId, 0, excludedUser,
+						notification));
+		}
+	}
+
+	//Method passing a message this node owns the recipient's entry of on to the recipient's node
+	private void forward(String recipient, ServerMessage message) {
+		Location location = directory.get(key(recipient));
+		if (location == null)
+			return;
+		int node = location.node;
+		if (node == nodeId)
+			delivery.deliver(recipient, message);
+		else
+			sendQuietly(node, new ClusterMessage(ClusterMessage.Type.DELIVER, nodeId, 0, recipient, message));
+	}
+
+	//______________________________________________Receiving_____________________________________________
+
+	/**
+	 * Handles a message received from another node. Called by the transport, in the order the
+	 * messages were sent by each node.
+	 *
+	 * @param message The message
+	 */
+	void receive(ClusterMessage message) {
+		switch (message.getType()) {
+		case CLAIM:
+		case LOCATE:
+		case SNAPSHOT:
+			sendQuietly(message.getOrigin(), new ClusterMessage(ClusterMessage.Type.REPLY, nodeId,
+					message.getCallId(), null, answer(message.getType(), message.getOrigin(), message.getUsername())));
+			break;
+		case REPLY:
+			CompletableFuture<Serializable> call = pendingCalls.remove(message.getCallId());
+			if (call != null)
+				call.complete(message.getPayload());
+			break;
+		case RELEASE:
+			remove(message.getUsername(), message.getOrigin());
+			break;
+		case DELIVER:
+			String recipient = message.getUsername();
+			ServerMessage delivered = (ServerMessage) message.getPayload();
+			//Forwarding if this node owns the recipient's entry, delivering if it is the recipient's node
+			deliverLater(() -> {
+				if (!delivery.deliver(recipient, delivered) && owner(recipient) == nodeId)
+					forward(recipient, delivered);
+			});
+			break;
+		case BROADCAST:
+			ServerNotification notification = (ServerNotification) message.getPayload();
+			deliverLater(() -> {
+				if (notification instanceof PresenceNotification)
+					delivery.presenceChanged((PresenceNotification) notification);
+				delivery.broadcast(notification, message.getUsername());
+			});
+			break;
+		case HELLO:
+			break;
+		}
+	}
+
+	/**
+	 * Re-registers the users connected to this node whose entries a peer owns, since a peer coming
+	 * (back) up starts with an empty shard.
+	 *
+	 * @param node The peer
+	 */
+	void peerUp(int node) {
+		for (String username : localUsers) {
+			if (owner(username) == node)
+				callAsync(node, ClusterMessage.Type.CLAIM, username);
+		}
+	}
+
+	/**
+	 * Removes the users connected to a peer which went down from this node's shard.
+	 *
+	 * @param node The peer
+	 */
+	void peerDown(int node) {
+		directory.values().removeIf(location -> location.node == node);
+	}
+
+	//Method answering a call about this node's shard
+	private Serializable answer(ClusterMessage.Type type, int origin, String username) {
+		switch (type) {
+		case CLAIM:
+			return directory.putIfAbsent(key(username), new Location(username, origin)) == null;
+		case LOCATE:
+			Location location = directory.get(key(username));
+			return location == null ? NOWHERE : location.node;
+		default:
+			return snapshot();
+		}
+	}
+
+	//Method removing a user's entry from this node's shard, provided they are still online on the given node
+	private void remove(String username, int node) {
+		directory.computeIfPresent(key(username), (key, location) -> location.node == node ? null : location);
+	}
+
+	//Method copying this node's shard, keyed by stored username
+	private HashMap<String, Integer> snapshot() {
+		HashMap<String, Integer> entries = new HashMap<String, Integer>();
+		for (Location location : directory.values())
+			entries.put(location.username, location.node);
+		return entries;
+	}
+
+	//Method running a delivery on the delivery executor, dropping it if the server is shutting down
+	private void deliverLater(Runnable delivery) {
+		try {
+			deliveryExecutor.execute(delivery);
+		}
+		catch (RejectedExecutionException ex) {}
+	}
+
+	//______________________________________________Calls_________________________________________________
+
+	//Method calling the owner of a user's entry and waiting for the answer
+	private Serializable call(ClusterMessage.Type type, String username) throws IOException {
+		int owner = owner(username);
+		if (owner == nodeId)
+			return answer(type, nodeId, username);
+		CompletableFuture<Serializable> answer = callAsync(owner, type, username);
+		try {
+			return answer.get(CALL_TIMEOUT, TimeUnit.SECONDS);
+		}
+		catch (ExecutionException ex) {
+			throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+		}
+		catch (TimeoutException ex) {
+			answer.cancel(false);
+			throw new IOException("Node " + owner + " did not answer in time");
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		}
+	}
+
+	//Method calling a node, returning the future answer
+	private CompletableFuture<Serializable> callAsync(int node, ClusterMessage.Type type, String username) {
+		long callId = callCounter.incrementAndGet();
+		CompletableFuture<Serializable> answer = new CompletableFuture<Serializable>();
+		pendingCalls.put(callId, answer);
+		try {
+			transport.send(node, new ClusterMessage(type, nodeId, callId, username, null));
+		}
+		catch (IOException ex) {
+			pendingCalls.remove(callId);
+			answer.completeExceptionally(ex);
+		}
+		//Forgetting the call once answered, failed or cancelled by a caller which gave up waiting
+		answer.whenComplete((value, ex) -> pendingCalls.remove(callId));
+		return answer;
+	}
+
+	//Method sending a one-way message, the failure of which only affects pushed deliveries
+	private void sendQuietly(int node, ClusterMessage message) {
+		try {
+			transport.send(node, message);
+		}
+		catch (IOException ex) {}
+	}
+
+	/**
+	 * Returns the node owning a user's directory entry. Usernames are case insensitive.
+	 *
+	 * @param username The user
+	 * @return The owning node
+	 */
+	int owner(String username) {
+		return Math.floorMod(key(username).hashCode(), nodeCount);
+	}
+
+	//Method returning the key a user's directory entry is held under
+	private static String key(String username) {
+		return username.toLowerCase(Locale.ROOT);
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	int getNodeId() {
+		return nodeId;
+	}
+
+	int getNodeCount() {
+		return nodeCount;
+	}
+}
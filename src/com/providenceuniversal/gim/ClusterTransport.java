@@ -0,0 +1,38 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+
+/**
+ * The {@code ClusterTransport} interface represents the links between the nodes of a server cluster.
+ * Messages sent to a node must be received in the order they were sent by a given node.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+interface ClusterTransport extends AutoCloseable {
+
+	/**
+	 * Starts accepting messages on behalf of the given node, passing them to
+	 * {@link ClusterNode#receive(ClusterMessage)}, and reporting peers coming up or going down to
+	 * {@link ClusterNode#peerUp(int)} and {@link ClusterNode#peerDown(int)}.
+	 *
+	 * @param node The local node
+	 * @throws IOException If the transport cannot start listening
+	 */
+	void start(ClusterNode node) throws IOException;
+
+	/**
+	 * Sends a message to the given node.
+	 *
+	 * @param node Identifier of the receiving node
+	 * @param message The message
+	 * @throws IOException If the node cannot be reached
+	 */
+	void send(int node, ClusterMessage message) throws IOException;
+
+	/**
+	 * Closes all links to the other nodes.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,92 @@
+package com.providenceuniversal.gim;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The {@code CoalescingRelay} class relays ephemeral messages (e.g. {@code TypingIndicator}s, or the
+ * {@code Receipt}s pushed to the senders of chats) to their recipients over a lossy channel of its own,
+ * apart from the chats and their notification threads. The messages relayed under the same key (e.g.
+ * those one user sends another) are coalesced over a short window: the first schedules a delivery on
+ * the timing wheel at the end of the window, and the later ones merely replace it, so that however
+ * fast they are sent, at most one message per key and window is delivered, the latest. Deliveries the
+ * delivery executor cannot take at once are dropped, since a later message supersedes them anyway.
+ *
+ * @param <T> Type of the messages relayed
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class CoalescingRelay<T extends ServerMessage> {
+
+	private final String name;
+	private final TimingWheel timingWheel;
+	private final long window;
+	private final Executor deliveryExecutor;
+	private final Consumer<T> delivery;
+	private final ServerMetrics metrics;
+	//Latest message of each key awaiting the end of its window
+	private final ConcurrentHashMap<String, T> pendingMessages;
+
+	/**
+	 * Creates new {@code CoalescingRelay}.
+	 *
+	 * @param name Name the coalesced and dropped messages are recorded under
+	 * @param timingWheel Timing wheel the ends of the windows are scheduled on
+	 * @param window Time over which the messages of a key are coalesced
+	 * @param unit Unit of the window
+	 * @param deliveryExecutor Executor delivering the messages, rejecting deliveries it cannot take at once
+	 * @param delivery Delivery of a message to its recipient, wherever they are online
+	 * @param metrics Statistics the coalesced and dropped messages are recorded in
+	 */
+	CoalescingRelay(String name, TimingWheel timingWheel, long window, TimeUnit unit, Executor deliveryExecutor,
+			Consumer<T> delivery, ServerMetrics metrics) {
+		this.name = name;
+		this.timingWheel = timingWheel;
+		this.window = unit.toNanos(window);
+		this.deliveryExecutor = deliveryExecutor;
+		this.delivery = delivery;
+		this.metrics = metrics;
+		pendingMessages = new ConcurrentHashMap<String, T>();
+	}
+
+	/**
+	 * Relays a message at the end of the current window of its key, unless a later message of the key
+	 * replaces it first.
+	 *
+	 * @param key Key of the message (e.g. its sender and recipient)
+	 * @param message The message
+	 */
+	void relay(String key, T message) {
+		//Only the first message of a window scheduling a delivery, the later ones replacing it
+		if (pendingMessages.put(key, message) == null)
+			timingWheel.schedule(() -> deliver(key), window, TimeUnit.NANOSECONDS);
+		else
+			metrics.recordCoalesced(name);
+	}
+
+	/**
+	 * Discards the message of a key if it has not been delivered yet (e.g. the typing indicator a chat
+	 * supersedes, so that the recipient is not told the sender is typing the chat they already received).
+	 *
+	 * @param key Key of the message
+	 */
+	void discard(String key) {
+		pendingMessages.remove(key);
+	}
+
+	//Method handing the latest message of a key over for delivery, on the timer thread so without blocking
+	private void deliver(String key) {
+		T message = pendingMessages.remove(key);
+		if (message == null)
+			return;
+		try {
+			deliveryExecutor.execute(() -> delivery.accept(message));
+		}
+		catch (RejectedExecutionException ex) {
+			metrics.recordDropped(name);
+		}
+	}
+}
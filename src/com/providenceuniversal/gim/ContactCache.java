@@ -0,0 +1,193 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code ContactCache} class keeps a client-side copy of the first page of the contact list of a
+ * {@code ClientConnection}. It is loaded once from the server and then kept up to date from the
+ * {@code PresenceNotification}s the server pushes, so that showing or selecting contacts normally costs no
+ * round trip at all. The cache is only reloaded when it is older than its time-to-live, when the connection
+ * drops, or on demand. Further pages and searches are retrieved from the server as they are needed.
+ * <p>
+ * Contacts are ordered by name, so that the positions of a {@link #snapshot()} are stable and selections
+ * made against a displayed snapshot can be resolved against that same snapshot. Users coming online within
+ * the page push its last contact onto the next page, which the page's next page request then starts with.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ContactCache implements ClientListener {
+
+	private final ClientConnection connection;
+	private final long timeToLive;
+	//Times the contacts were last seen in epoch milliseconds, null for those online
+	private final TreeMap<String, Long> contacts;
+	//Presence changes received while a reload is in flight, re-applied on top of the reloaded list
+	private List<PresenceNotification> changesDuringRefresh;
+	private long lastRefresh;
+	private boolean loaded;
+	private ContactList snapshot;
+	//Size of the cached page, and the request for the page following it, null if it is the last page
+	private int pageSize;
+	private ContactsRequest nextPage;
+
+	/**
+	 * Creates new {@code ContactCache} for the given connection and registers it for presence notifications.
+	 *
+	 * @param connection Connection to the server
+	 * @param timeToLive Time after which the cache is considered stale and is reloaded
+	 * @param unit Unit of the time-to-live
+	 */
+	public ContactCache(ClientConnection connection, long timeToLive, TimeUnit unit) {
+		this.connection = connection;
+		this.timeToLive = unit.toNanos(timeToLive);
+		contacts = new TreeMap<String, Long>(String.CASE_INSENSITIVE_ORDER);
+		connection.addListener(this);
+	}
+
+	/**
+	 * Returns the cached contact list, reloading it first only if it has never been loaded or is stale.
+	 *
+	 * @return Contact list with stable positions
+	 * @throws IOException If a reload is needed and fails
+	 * @throws ServerErrorException If a reload is needed and the server refuses it
+	 */
+	public ContactList snapshot() throws IOException, ServerErrorException {
+		synchronized (this) {
+			if (loaded && System.nanoTime() - lastRefresh < timeToLive) {
+				if (snapshot == null)
+					snapshot = toContactList();
+				return snapshot;
+			}
+		}
+		return refresh();
+	}
+
+	/**
+	 * Reloads the contact list from the server.
+	 *
+	 * @return The reloaded contact list
+	 * @throws IOException If the reload fails
+	 * @throws ServerErrorException If the server refuses the request
+	 */
+	public ContactList refresh() throws IOException, ServerErrorException {
+		synchronized (this) {
+			changesDuringRefresh = new ArrayList<PresenceNotification>();
+		}
+		CompletableFuture<ContactList> response = connection.retrieveContacts();
+		ContactList contactList;
+		try {
+			contactList = response.get();
+		}
+		catch (ExecutionException ex) {
+			synchronized (this) {
+				changesDuringRefresh = null;
+			}
+			if (ex.getCause() instanceof ServerErrorException)
+				throw (ServerErrorException) ex.getCause();
+			throw new IOException(ex.getCause());
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		}
+		synchronized (this) {
+			contacts.clear();
+			for (int position = 1; position <= contactList.getTotalNumberOfContacts(); position++) {
+				contacts.put(contactList.getContactName(position), contactList.isOnline(position) ? null
+						: contactList.getLastSeen(position).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+			}
+			pageSize = contacts.size();
+			nextPage = contactList.getNextPage();
+			changesDuringRefresh.forEach(this::apply);
+			changesDuringRefresh = null;
+			lastRefresh = System.nanoTime();
+			loaded = true;
+			snapshot = toContactList();
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Discards the cached contacts, so that the next snapshot reloads them.
+	 */
+	public synchronized void invalidate() {
+		loaded = false;
+		contacts.clear();
+		nextPage = null;
+		snapshot = null;
+	}
+
+	@Override
+	public synchronized void notificationReceived(ServerNotification notification) {
+		if (notification instanceof PresenceNotification) {
+			PresenceNotification presence = (PresenceNotification) notification;
+			if (changesDuringRefresh != null)
+				changesDuringRefresh.add(presence);
+			apply(presence);
+		}
+	}
+
+	@Override
+	public void disconnected(Throwable cause) {
+		invalidate();
+	}
+
+	//Method laying the cached contacts out in the parallel arrays of a ContactList
+	private ContactList toContactList() {
+		String[] names = new String[contacts.size()];
+		boolean[] online = new boolean[names.length];
+		long[] lastSeen = new long[names.length];
+		int index = 0;
+		for (Map.Entry<String, Long> contact : contacts.entrySet()) {
+			names[index] = contact.getKey();
+			online[index] = contact.getValue() == null;
+			if (!online[index])
+				lastSeen[index] = contact.getValue();
+			index++;
+		}
+		return new ContactList(names, online, lastSeen, nextPage);
+	}
+
+	//Method listing a contact with its activity status, provided they belong on the cached page
+	private void put(String username, Long lastSeen) {
+		if (nextPage != null && String.CASE_INSENSITIVE_ORDER.compare(username, nextPage.getAfter()) > 0)
+			return;
+		contacts.put(username, lastSeen);
+		//Pushing the page's last contact onto the next page
+		if (nextPage != null && contacts.size() > pageSize) {
+			contacts.pollLastEntry();
+			nextPage = nextPage.next(contacts.lastKey());
+		}
+	}
+
+	//Method applying a presence change to the cached contacts
+	private void apply(PresenceNotification presence) {
+		User currentUser = connection.getCurrentUser();
+		//The server never lists users to themselves
+		if (currentUser != null && currentUser.getUsername().equalsIgnoreCase(presence.getUsername()))
+			return;
+		switch (presence.getStatus()) {
+		case ONLINE:
+			put(presence.getUsername(), null);
+			break;
+		case OFFLINE:
+			put(presence.getUsername(), presence.getTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+			break;
+		case DELETED:
+			//Leaving the page a contact short, the next page still starting after its last contact
+			contacts.remove(presence.getUsername());
+			break;
+		}
+		snapshot = null;
+	}
+
+}
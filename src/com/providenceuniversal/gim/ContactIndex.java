@@ -0,0 +1,166 @@
+package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The {@code ContactIndex} class keeps the users of G-Instant Messenger and their activity status sorted by
+ * name, in skip lists which are read without locking while users sign up, log in and out, or leave. A page
+ * of contacts is read by seeking to the first matching name and walking from there, so that searching and
+ * paging cost the length of the page rather than the number of users. Online users are kept in a skip
+ * list of their own, so that listing only them is just as cheap however few of the users they are. The
+ * updates are serialized so that a user's entries in both skip lists agree once an update returns.
+ * <p>
+ * Users are keyed by their lower case names, since usernames are unique regardless of case. Pages continue
+ * after the key of the last name of the previous page rather than from a position, so they neither repeat
+ * nor skip anyone as users come and go in between. Last seen times are kept in epoch milliseconds, which
+ * the pages carry as they are for the clients to format.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class ContactIndex {
+
+	/**
+	 * The {@code Contact} class is a user along with their activity status.
+	 */
+	private static final class Contact {
+		private final String username;
+		private final boolean online;
+		//Time the user was last seen in epoch milliseconds, 0 while they are online
+		private final long lastSeen;
+
+		Contact(String username, boolean online, long lastSeen) {
+			this.username = username;
+			this.online = online;
+			this.lastSeen = lastSeen;
+		}
+	}
+
+	private final ConcurrentSkipListMap<String, Contact> contacts, onlineContacts;
+
+	/**
+	 * Creates new, empty {@code ContactIndex}.
+	 */
+	ContactIndex() {
+		contacts = new ConcurrentSkipListMap<String, Contact>();
+		onlineContacts = new ConcurrentSkipListMap<String, Contact>();
+	}
+
+	/**
+	 * Lists a user as online.
+	 *
+	 * @param username The stored username of the user
+	 */
+	synchronized void online(String username) {
+		Contact contact = new Contact(username, true, 0);
+		onlineContacts.put(key(username), contact);
+		contacts.put(key(username), contact);
+	}
+
+	/**
+	 * Lists a user as offline.
+	 *
+	 * @param username The stored username of the user
+	 * @param lastSeen Time the user was last seen
+	 */
+	synchronized void offline(String username, LocalDateTime lastSeen) {
+		contacts.put(key(username), new Contact(username, false,
+				lastSeen.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+		onlineContacts.remove(key(username));
+	}
+
+	/**
+	 * Lists every given user as offline.
+	 *
+	 * @param lastSeenTimes Times the users were last seen, keyed by stored username
+	 */
+	synchronized void offline(Map<String, LocalDateTime> lastSeenTimes) {
+		lastSeenTimes.forEach(this::offline);
+	}
+
+	/**
+	 * Removes a user from the index.
+	 *
+	 * @param username The username of the user
+	 */
+	synchronized void remove(String username) {
+		contacts.remove(key(username));
+		onlineContacts.remove(key(username));
+	}
+
+	/**
+	 * Finds a user.
+	 *
+	 * @param username The username, regardless of case
+	 * @return The stored username, or {@code null} if the index does not list the user
+	 */
+	String find(String username) {
+		Contact contact = contacts.get(key(username));
+		return contact == null ? null : contact.username;
+	}
+
+	/**
+	 * Removes every user from the index.
+	 */
+	synchronized void clear() {
+		contacts.clear();
+		onlineContacts.clear();
+	}
+
+	/**
+	 * Returns a page of the contacts a user sees.
+	 *
+	 * @param request The request
+	 * @param pageSize Largest number of contacts listed
+	 * @param currentUser The stored username of the user, who is never listed to themselves
+	 * @return The page, with the request for the next one if more contacts match
+	 */
+	ContactList page(ContactsRequest request, int pageSize, String currentUser) {
+		String prefix = key(request.getPrefix());
+		ConcurrentSkipListMap<String, Contact> index = request.isOnlineOnly() ? onlineContacts : contacts;
+		//Seeking to the first matching name, or past the last name of the previous page
+		Map<String, Contact> matches = request.getAfter() == null || key(request.getAfter()).compareTo(prefix) < 0
+				? index.tailMap(prefix, true) : index.tailMap(key(request.getAfter()), false);
+		String excluded = currentUser == null ? null : key(currentUser);
+		List<Contact> page = new ArrayList<Contact>(Math.min(pageSize, 64));
+		ContactsRequest nextPage = null;
+		for (Map.Entry<String, Contact> entry : matches.entrySet()) {
+			if (!entry.getKey().startsWith(prefix))
+				break;
+			if (entry.getKey().equals(excluded))
+				continue;
+			//Only offering a next page once a contact beyond this one is known to exist
+			if (page.size() == pageSize) {
+				nextPage = request.next(page.get(pageSize - 1).username);
+				break;
+			}
+			page.add(entry.getValue());
+		}
+		return toContactList(page, nextPage);
+	}
+
+	//Method laying a page of contacts out in the parallel arrays of a ContactList
+	private static ContactList toContactList(List<Contact> page, ContactsRequest nextPage) {
+		String[] names = new String[page.size()];
+		boolean[] online = new boolean[page.size()];
+		long[] lastSeen = new long[page.size()];
+		for (int index = 0; index < names.length; index++) {
+			Contact contact = page.get(index);
+			names[index] = contact.username;
+			online[index] = contact.online;
+			lastSeen[index] = contact.lastSeen;
+		}
+		return new ContactList(names, online, lastSeen, nextPage);
+	}
+
+	//Method returning the key a username is indexed by
+	private static String key(String username) {
+		return username.toLowerCase(Locale.ROOT);
+	}
+}
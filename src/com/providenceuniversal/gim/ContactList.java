@@ -1,12 +1,18 @@
 package com.providenceuniversal.gim;
 
-import java.util.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
- * The {@code ContactList} class stores a list of all the users of G-Instant 
- * Messenger, and indicates their activity status. 
+ * The {@code ContactList} class stores a page of the users of G-Instant 
+ * Messenger in order of name, and indicates their activity status. A page never
+ * changes once received, so that users may be selected by their position on it.
+ * The contacts are held in parallel arrays of names, online flags and last seen
+ * times in epoch milliseconds, which the client formats itself, in its own time zone.
  * It is one of the types of {@code ServerMessage}.
  * 
  * @author Garikai Gumbo<br>
@@ -14,33 +20,66 @@ import java.util.stream.IntStream;
  */
 public class ContactList implements ServerMessage{
 
-	private static final long serialVersionUID = -8209371024479092657L;
-	private final HashMap<String, String> contactsMap;
+	private static final long serialVersionUID = 3310528894046287719L;
+	//Format of the last seen times of offline contacts
+	static final DateTimeFormatter LAST_SEEN_FORMAT = DateTimeFormatter.ofPattern("dd MMMM yy, HH:mm");
 	private final String[] contactNames;
+	private final boolean[] online;
+	//Times the offline contacts were last seen, in epoch milliseconds
+	private final long[] lastSeen;
+	private final ContactsRequest nextPage;
 	
 	/**
-	 * Creates {@code ContactList} object and fills the contact list with parameter value
-	 * @param contactsMap HashMap containing the contacts
+	 * Creates {@code ContactList} object holding a page of the contacts, each at the same index of every array
+	 * @param contactNames Names of the contacts, in the order they are listed
+	 * @param online Whether each contact is online
+	 * @param lastSeen Time each offline contact was last seen, in epoch milliseconds
+	 * @param nextPage Request for the following page, or {@code null} if this is the last page
 	 */
-	public ContactList(HashMap<String, String> contactsMap) {
-		this.contactsMap = contactsMap;
-		contactNames = contactsMap.keySet().toArray(new String[] {});
+	ContactList(String[] contactNames, boolean[] online, long[] lastSeen, ContactsRequest nextPage) {
+		this.contactNames = contactNames;
+		this.online = online;
+		this.lastSeen = lastSeen;
+		this.nextPage = nextPage;
 	}
 	
 	//_________________________________Getters and setters for each field_________________________________
 
-	public HashMap<String, String> getContactsMap() {
-		return contactsMap;
-	}
-
 	public String getContactName(int position) {
 		return contactNames[position - 1];
 	}
+
+	public boolean isOnline(int position) {
+		return online[position - 1];
+	}
+
+	/**
+	 * Returns the time a contact was last seen, in the client's time zone.
+	 * @param position Position of the contact on the page, from 1
+	 * @return The time, or {@code null} if the contact is online
+	 */
+	public LocalDateTime getLastSeen(int position) {
+		return online[position - 1] ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(lastSeen[position - 1]),
+				ZoneId.systemDefault());
+	}
+
+	/**
+	 * Returns the request for the page following this one.
+	 * @return The request, or {@code null} if this is the last page
+	 */
+	public ContactsRequest getNextPage() {
+		return nextPage;
+	}
 	
 	//____________________________________________________________________________________________________
 	
 	int getTotalNumberOfContacts() {
-		return contactsMap.size();	
+		return contactNames.length;	
+	}
+	
+	//Method formatting the activity status of a contact
+	String getStatus(int position) {
+		return online[position - 1] ? "Online" : "Last seen " + getLastSeen(position).format(LAST_SEEN_FORMAT);
 	}
 	
 	@Override
@@ -50,9 +89,11 @@ public class ContactList implements ServerMessage{
 	 * [Contact name]:		[Activity Status]
 	 */
 	public String toString() {
-		return "Contacts on G-Instant Messenger:\n" + IntStream.range(0, contactNames.length)
-				.mapToObj(index -> index + 1 + ". " + contactNames[index] +
-						":\t" + contactsMap.get(contactNames[index]))
+		if (contactNames.length == 0)
+			return "Contacts on G-Instant Messenger:\nNo users found.";
+		return "Contacts on G-Instant Messenger:\n" + IntStream.rangeClosed(1, contactNames.length)
+				.mapToObj(position -> position + ". " + contactNames[position - 1] +
+						":\t" + getStatus(position))
 				.collect(Collectors.joining("\n"));
 	}
 	
@@ -1,12 +1,77 @@
 package com.providenceuniversal.gim;
 /**
- * The {@code ContactRequest} class represents a request for the user list
- * from the server and is used as such. It is one of the types of {@code ClientMessage}
+ * The {@code ContactRequest} class represents a request for a page of the user list
+ * from the server and is used as such. Users may be searched for by the start of their
+ * names and limited to those online. Pages are in order of name and each continues after
+ * the last name of the previous one ({@link ContactList#getNextPage()}), so that users
+ * signing up or leaving while the list is browsed never shift a page or repeat a name.
+ * It is one of the types of {@code ClientMessage}
  * 
  * @author Garikai Gumbo<br>
  * Providence Universal Studios<br>
  */
 public class ContactsRequest implements ClientMessage{
 	private static final long serialVersionUID = -5113311176549308080L;
+	private final String prefix, after;
+	private final boolean onlineOnly;
+	private final int pageSize;
 	
+	/**
+	 * Creates {@code ContactsRequest} object for the first page of all the users
+	 */
+	public ContactsRequest() {
+		this("", false, 0);
+	}
+	
+	/**
+	 * Creates {@code ContactsRequest} object for the first page of the users matching the parameter values
+	 * @param prefix Start of the users' names, regardless of case (empty for all users)
+	 * @param onlineOnly Whether only online users are listed
+	 * @param pageSize Largest number of users listed (0 for as many as the server allows)
+	 */
+	public ContactsRequest(String prefix, boolean onlineOnly, int pageSize) {
+		this(prefix, onlineOnly, pageSize, null);
+	}
+	
+	/**
+	 * Creates {@code ContactsRequest} object for the page following the given user name
+	 * @param prefix Start of the users' names, regardless of case (empty for all users)
+	 * @param onlineOnly Whether only online users are listed
+	 * @param pageSize Largest number of users listed (0 for as many as the server allows)
+	 * @param after Last user name of the previous page, or {@code null} for the first page
+	 */
+	ContactsRequest(String prefix, boolean onlineOnly, int pageSize, String after) {
+		this.prefix = prefix == null ? "" : prefix;
+		this.onlineOnly = onlineOnly;
+		this.pageSize = pageSize;
+		this.after = after;
+	}
+	
+	/**
+	 * Returns the request for the page following the given user name, with the same search
+	 * @param lastName Last user name of this request's page
+	 * @return The request for the next page
+	 */
+	ContactsRequest next(String lastName) {
+		return new ContactsRequest(prefix, onlineOnly, pageSize, lastName);
+	}
+	
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getPrefix() {
+		//Requests of earlier clients carry no prefix
+		return prefix == null ? "" : prefix;
+	}
+
+	public boolean isOnlineOnly() {
+		return onlineOnly;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public String getAfter() {
+		return after;
+	}
 }
@@ -0,0 +1,59 @@
+package com.providenceuniversal.gim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The {@code ConversationList} class stores the summaries of a user's conversations, the most recently
+ * active first.
+ * It is one of the types of {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ConversationList implements ServerMessage {
+
+	private static final long serialVersionUID = -1745160658023495318L;
+	private final ArrayList<ConversationSummary> conversations;
+
+	/**
+	 * Creates new {@code ConversationList} object with the given conversations.
+	 *
+	 * @param conversations Summaries of the conversations, the most recently active first
+	 */
+	public ConversationList(List<ConversationSummary> conversations) {
+		this.conversations = new ArrayList<ConversationSummary>(conversations);
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public List<ConversationSummary> getConversations() {
+		return Collections.unmodifiableList(conversations);
+	}
+
+	public String getPartner(int position) {
+		return conversations.get(position - 1).getPartner();
+	}
+
+	//____________________________________________________________________________________________________
+
+	int getTotalNumberOfConversations() {
+		return conversations.size();
+	}
+
+	/**
+	 * Returns a {@code String} representation of the conversation list in the given format: <br>
+	 * Conversations:<br>
+	 * [Position]. [ConversationSummary]
+	 */
+	@Override
+	public String toString() {
+		return "Conversations:\n" + (conversations.isEmpty() ? "You have no conversations yet."
+				: IntStream.range(0, conversations.size())
+				.mapToObj(index -> index + 1 + ". " + conversations.get(index))
+				.collect(Collectors.joining("\n")));
+	}
+}
@@ -0,0 +1,93 @@
+package com.providenceuniversal.gim;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * The {@code ConversationSummary} class stores what a user's chat list shows of one of their
+ * conversations: the other participant, the last message sent in it, and the number of messages the
+ * user has received in it since they last opened it, as well as the watermarks up to which the other
+ * participant has received and read the user's chats. Summaries are kept up to date as chats are sent
+ * and read, rather than computed from the chats.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ConversationSummary implements Serializable {
+
+	private static final long serialVersionUID = -6124503310893457122L;
+	private final String partner;
+	private final ChatMessage lastMessage;
+	private final int unread;
+	private final LocalDateTime deliveredUpTo, readUpTo;
+
+	/**
+	 * Creates new {@code ConversationSummary} object, without receipts from the other participant.
+	 *
+	 * @param partner Username of the other participant
+	 * @param lastMessage Last message sent in the conversation
+	 * @param unread Number of messages not read yet
+	 */
+	public ConversationSummary(String partner, ChatMessage lastMessage, int unread) {
+		this(partner, lastMessage, unread, null, null);
+	}
+
+	/**
+	 * Creates new {@code ConversationSummary} object.
+	 *
+	 * @param partner Username of the other participant
+	 * @param lastMessage Last message sent in the conversation
+	 * @param unread Number of messages not read yet
+	 * @param deliveredUpTo Time stamp up to which the other participant has received the user's chats, or
+	 * {@code null}
+	 * @param readUpTo Time stamp up to which the other participant has read the user's chats, or {@code null}
+	 */
+	public ConversationSummary(String partner, ChatMessage lastMessage, int unread, LocalDateTime deliveredUpTo,
+			LocalDateTime readUpTo) {
+		this.partner = partner;
+		this.lastMessage = lastMessage;
+		this.unread = unread;
+		this.deliveredUpTo = deliveredUpTo;
+		this.readUpTo = readUpTo;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getPartner() {
+		return partner;
+	}
+
+	public ChatMessage getLastMessage() {
+		return lastMessage;
+	}
+
+	public int getUnread() {
+		return unread;
+	}
+
+	public LocalDateTime getDeliveredUpTo() {
+		return deliveredUpTo;
+	}
+
+	public LocalDateTime getReadUpTo() {
+		return readUpTo;
+	}
+
+	//____________________________________________________________________________________________________
+
+	/**
+	 * Returns a {@code String} representation of the conversation in the given format: <br>
+	 * partner (unread unread): [timestamp] sender > body (read)
+	 */
+	@Override
+	public String toString() {
+		return partner + (unread == 0 ? "" : " (" + unread + " unread)") + ": " + lastMessage
+				+ (lastMessage.getSender().equalsIgnoreCase(partner) ? ""
+				: acknowledges(readUpTo) ? " (read)" : acknowledges(deliveredUpTo) ? " (delivered)" : "");
+	}
+
+	//Method checking whether a watermark reaches the last message
+	private boolean acknowledges(LocalDateTime upTo) {
+		return upTo != null && !upTo.isBefore(lastMessage.getTimeStamp());
+	}
+}
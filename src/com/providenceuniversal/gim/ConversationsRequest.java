@@ -0,0 +1,15 @@
+package com.providenceuniversal.gim;
+
+/**
+ * The {@code ConversationsRequest} class represents a request for the logged in user's conversations,
+ * each with its last message and the number of messages the user has not read yet. It is one of the
+ * types of {@code ClientMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ConversationsRequest implements ClientMessage {
+
+	private static final long serialVersionUID = 3390621947318467785L;
+
+}
@@ -0,0 +1,110 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import storage.Database;
+
+/**
+ * The {@code DatabaseChatStore} class stores the chats in the {@code Chat_Messages} table, indexing them
+ * for searches as they are sent, and reads through to the {@code MessageArchive} the older chats were
+ * moved to by the {@code ChatArchiver}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class DatabaseChatStore implements ChatStore {
+
+	private final Database database;
+	private final MessageIndex messageIndex;
+	private final MessageArchive messageArchive;
+	private final ServerMetrics metrics;
+
+	/**
+	 * Creates new {@code DatabaseChatStore}.
+	 *
+	 * @param database Database holding {@code Chat_Messages}
+	 * @param messageIndex Search index the chats are indexed in
+	 * @param messageArchive Archive the older chats were moved to
+	 * @param metrics Statistics the database calls are recorded in
+	 */
+	DatabaseChatStore(Database database, MessageIndex messageIndex, MessageArchive messageArchive,
+			ServerMetrics metrics) {
+		this.database = database;
+		this.messageIndex = messageIndex;
+		this.messageArchive = messageArchive;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void store(ChatMessage chat) throws SQLException {
+		metrics.timeDatabaseUpdate("Chat_Messages.insert", () -> database.addRecord("Chat_Messages",
+				Integer.toString(chat.hashCode()),
+				escape(chat.getSender()), escape(chat.getRecipient()), escape(chat.getBody()),
+				Timestamp.valueOf(chat.getTimeStamp()).toString()));
+
+		//Indexing the chat for searches, a chat failing to be indexed being sent all the same
+		try {
+			metrics.timeDatabaseUpdate("Message_Terms.insert", () -> messageIndex.index(chat.hashCode(), chat));
+		}
+		catch (SQLException ex) {
+			try {
+				Server.logInformation("Failed to index chat for searches: (" + ex + ")", false);
+			}
+			catch (IOException e) {
+				System.err.println("Failed to write to log file: (" + e + ")");
+			}
+		}
+	}
+
+	@Override
+	public List<ChatMessage> retrieve(String participant1, String participant2, LocalDateTime since)
+			throws SQLException, IOException {
+		//Timing both the query and the reading of its results, since the rows are fetched lazily
+		List<ChatMessage> recentChats = metrics.timeDatabaseCall("Chat_Messages.select", () -> {
+			try (ResultSet chatsQuery = database.retrieveRecords(new String[] { "Chat_Messages" },
+			"((Sender = '" + escape(participant1) + "' AND Receiver = '" + escape(participant2)
+			+ "') OR (Receiver = '" + escape(participant1) + "'AND Sender = '"
+			+ escape(participant2) + "'))"
+			//Only retrieving the chats the client does not hold yet, if it holds any
+			+ (since == null ? "" : " AND Timestamp >= '"
+			+ Timestamp.valueOf(since) + "'"), true, new String[] { "Timestamp" })) {
+
+				List<ChatMessage> chats = new ArrayList<ChatMessage>();
+				while (chatsQuery.next()) {
+					chats.add(new ChatMessage(chatsQuery.getString(2), chatsQuery.getString(3),
+							chatsQuery.getString(4), Timestamp.valueOf(chatsQuery.getString(5)).toLocalDateTime()));
+				}
+				return chats;
+			}
+		});
+		//Reading through to the archived chats the request reaches back to, if any
+		List<ChatMessage> archivedChats = messageArchive.read(participant1, participant2, since);
+		if (archivedChats.isEmpty())
+			return recentChats;
+		//Merging the tiers, chats an interrupted archiving run left in both only being returned once
+		Set<ChatMessage> chats = new LinkedHashSet<ChatMessage>(archivedChats);
+		chats.addAll(recentChats);
+		List<ChatMessage> history = new ArrayList<ChatMessage>(chats);
+		history.sort(Comparator.comparing(ChatMessage::getTimeStamp));
+		return history;
+	}
+
+	@Override
+	public void close() throws IOException {
+		messageArchive.close();
+	}
+
+	//Method escaping a value to be quoted in an SQL statement
+	private static String escape(String value) {
+		return value.replace("'", "''");
+	}
+}
@@ -0,0 +1,417 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import storage.Database;
+
+/**
+ * The {@code DatabaseStorageEngine} class stores the users and group conversations in the SQLite
+ * database, and the chats in the given {@code ChatStore} (the {@code Chat_Messages} table, or the
+ * message log). Every database call is timed in the server statistics.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class DatabaseStorageEngine implements StorageEngine {
+
+	//Parameters SQLite binds per statement at most
+	private static final int MAX_PARAMETERS = 999;
+
+	private final Database database;
+	private final ChatStore chatStore;
+	private final ServerMetrics metrics;
+
+	/**
+	 * Creates new {@code DatabaseStorageEngine}.
+	 *
+	 * @param database Database holding the tables created by {@link #createTables(Connection)}
+	 * @param chatStore Store of the one-to-one chats
+	 * @param metrics Statistics the database calls are recorded in
+	 */
+	DatabaseStorageEngine(Database database, ChatStore chatStore, ServerMetrics metrics) {
+		this.database = database;
+		this.chatStore = chatStore;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Creates the tables (and indexes) of the users, chats, conversation summaries, receipts and group
+	 * conversations if they do not exist yet.
+	 *
+	 * @param connection Connection to the database
+	 * @throws SQLException If the tables cannot be created
+	 */
+	static void createTables(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE IF NOT EXISTS Users (Username VARCHAR (45) NOT NULL COLLATE NOCASE"
+					+ " PRIMARY KEY, Password VARCHAR (45) NOT NULL, Last_Seen DATETIME NOT NULL)");
+			statement.execute("CREATE TABLE IF NOT EXISTS Chat_Messages (ID INT PRIMARY KEY NOT NULL,"
+					+ " Sender VARCHAR (45) COLLATE NOCASE NOT NULL REFERENCES Users (Username) ON DELETE CASCADE"
+					+ " ON UPDATE CASCADE, Receiver VARCHAR (45) NOT NULL COLLATE NOCASE REFERENCES Users (Username)"
+					+ " ON DELETE CASCADE ON UPDATE CASCADE, Body TEXT (2000), Timestamp DATETIME NOT NULL)");
+			//Indexing conversations, so that chat histories (and incremental syncs) are looked up rather than scanned
+			statement.execute("CREATE INDEX IF NOT EXISTS Chat_Messages_Conversation"
+					+ " ON Chat_Messages (Sender, Receiver, Timestamp)");
+			//Creating the group conversation tables, each group message being stored once for all members
+			statement.execute("CREATE TABLE IF NOT EXISTS Chat_Groups (Name VARCHAR (45) NOT NULL"
+					+ " COLLATE NOCASE PRIMARY KEY, Creator VARCHAR (45) NOT NULL COLLATE NOCASE,"
+					+ " Created DATETIME NOT NULL)");
+			statement.execute("CREATE TABLE IF NOT EXISTS Group_Members (Group_Name VARCHAR (45) NOT NULL"
+					+ " COLLATE NOCASE, Username VARCHAR (45) NOT NULL COLLATE NOCASE,"
+					+ " PRIMARY KEY (Group_Name, Username))");
+			statement.execute("CREATE INDEX IF NOT EXISTS Group_Members_Username ON Group_Members (Username)");
+			statement.execute("CREATE TABLE IF NOT EXISTS Group_Messages (ID INT PRIMARY KEY NOT NULL,"
+					+ " Group_Name VARCHAR (45) NOT NULL COLLATE NOCASE, Sender VARCHAR (45) NOT NULL"
+					+ " COLLATE NOCASE, Body TEXT (2000), Timestamp DATETIME NOT NULL)");
+			statement.execute("CREATE INDEX IF NOT EXISTS Group_Messages_Conversation"
+					+ " ON Group_Messages (Group_Name, Timestamp)");
+			//Creating the summaries of the users' conversations, one row per user per conversation
+			statement.execute("CREATE TABLE IF NOT EXISTS Conversations (Username VARCHAR (45) NOT NULL"
+					+ " COLLATE NOCASE, Partner VARCHAR (45) NOT NULL COLLATE NOCASE, Sender VARCHAR (45) NOT NULL,"
+					+ " Body TEXT (2000), Timestamp DATETIME NOT NULL, Unread INT NOT NULL DEFAULT 0,"
+					+ " PRIMARY KEY (Username, Partner))");
+			//Creating the receipts' watermarks, one row per reader, sender and type of receipt
+			statement.execute("CREATE TABLE IF NOT EXISTS Watermarks (Username VARCHAR (45) NOT NULL COLLATE NOCASE,"
+					+ " Partner VARCHAR (45) NOT NULL COLLATE NOCASE, Type VARCHAR (9) NOT NULL, Up_To DATETIME NOT NULL,"
+					+ " PRIMARY KEY (Username, Partner, Type))");
+			statement.execute("CREATE INDEX IF NOT EXISTS Watermarks_Partner ON Watermarks (Partner)");
+		}
+	}
+
+	//_____________________________________________Users______________________________________________
+
+	@Override
+	public String findUser(String username) throws SQLException {
+		return findUsername("Username = '" + escape(username) + "'");
+	}
+
+	@Override
+	public String authenticate(String username, String password) throws SQLException {
+		return findUsername("Username = '" + escape(username) + "' AND Password = '" + escape(password) + "'");
+	}
+
+	@Override
+	public void createUser(String username, String password, LocalDateTime lastSeen) throws SQLException {
+		metrics.timeDatabaseUpdate("Users.insert", () -> database.addRecord("Users",
+				new String[] {escape(username), escape(password), Timestamp.valueOf(lastSeen).toString()}));
+	}
+
+	@Override
+	public void deleteUser(String username) throws SQLException {
+		metrics.timeDatabaseUpdate("Users.delete", () -> database.deleteRecords("Users",
+				"Username = '" + escape(username) + "'"));
+		metrics.timeDatabaseUpdate("Conversations.delete", () -> database.deleteRecords("Conversations",
+				"Username = '" + escape(username) + "'"));
+		metrics.timeDatabaseUpdate("Watermarks.delete", () -> database.deleteRecords("Watermarks",
+				"Username = '" + escape(username) + "'"));
+	}
+
+	//____________________________________________Presence____________________________________________
+
+	@Override
+	public void updateLastSeen(String username, LocalDateTime lastSeen) throws SQLException {
+		metrics.timeDatabaseUpdate("Users.update", () -> database.updateRecord("Users",
+				new String[] { "Last_Seen" },
+				new String[] { Timestamp.valueOf(lastSeen).toString() },
+				"Username = '" + escape(username) + "'"));
+	}
+
+	@Override
+	public Map<String, LocalDateTime> lastSeenTimes() throws SQLException {
+		return metrics.timeDatabaseCall("Users.select", () -> {
+			try (ResultSet users = database.retrieveRecords(new String[] {"Users"}, true)) {
+				Map<String, LocalDateTime> lastSeenTimes = new LinkedHashMap<String, LocalDateTime>();
+				while (users.next()) {
+					lastSeenTimes.put(users.getString(1), Timestamp.valueOf(users.getString(3)).toLocalDateTime());
+				}
+				return lastSeenTimes;
+			}
+		});
+	}
+
+	//____________________________________________Messages____________________________________________
+
+	@Override
+	public ChatStore getChatStore() {
+		return chatStore;
+	}
+
+	@Override
+	public void storeGroupMessage(GroupMessage message) throws SQLException {
+		metrics.timeDatabaseUpdate("Group_Messages.insert", () -> database.addRecord("Group_Messages",
+				Integer.toString(message.hashCode()), escape(message.getGroup()), escape(message.getSender()),
+				escape(message.getBody()), Timestamp.valueOf(message.getTimeStamp()).toString()));
+	}
+
+	@Override
+	public List<ChatMessage> retrieveGroupMessages(String group, LocalDateTime since) throws SQLException {
+		return metrics.timeDatabaseCall("Group_Messages.select", () -> {
+			try (ResultSet messagesQuery = database.retrieveRecords(new String[] { "Group_Messages" },
+					"Group_Name = '" + escape(group) + "'"
+					//Only retrieving the messages the client does not hold yet, if it holds any
+					+ (since == null ? "" : " AND Timestamp >= '" + Timestamp.valueOf(since) + "'"),
+					false, new String[] { "Timestamp" })) {
+				List<ChatMessage> messages = new ArrayList<ChatMessage>();
+				while (messagesQuery.next()) {
+					messages.add(new GroupMessage(messagesQuery.getString(3), messagesQuery.getString(2),
+							messagesQuery.getString(4),
+							Timestamp.valueOf(messagesQuery.getString(5)).toLocalDateTime()));
+				}
+				return messages;
+			}
+		});
+	}
+
+	//__________________________________________Conversations_________________________________________
+
+	@Override
+	public void updateConversations(ChatMessage chat) throws SQLException {
+		metrics.timeDatabaseUpdate("Conversations.update", () -> {
+			//Serializing the updates, so that the summaries missing from an update are not created twice
+			synchronized (this) {
+				//Only creating the summaries the first time the participants chat, the update finding them after that
+				if (updateSummaries(chat) < 2)
+					insertSummaries(chat);
+			}
+		});
+	}
+
+	@Override
+	public void markConversationRead(String username, String partner) throws SQLException {
+		//Only writing to the database if there are unread messages to clear
+		metrics.timeDatabaseUpdate("Conversations.update", () -> database.updateRecord("Conversations",
+				new String[] { "Unread" }, new String[] { "0" }, "Username = '" + escape(username)
+				+ "' AND Partner = '" + escape(partner) + "' AND Unread > 0"));
+	}
+
+	@Override
+	public void storeReceipts(List<Receipt> receipts) throws SQLException {
+		//Writing many receipts per statement, since each statement commits on its own
+		metrics.timeDatabaseUpdate("Watermarks.insert", () -> executeInChunks("INSERT OR REPLACE INTO"
+				+ " Watermarks (Username, Partner, Type, Up_To) VALUES ", "(?, ?, ?, MAX(?, COALESCE((SELECT Up_To"
+				+ " FROM Watermarks WHERE Username = ? AND Partner = ? AND Type = ?), '')))", ", ", "", receipts,
+				receipt -> new String[] { receipt.getReader(), receipt.getSender(), receipt.getType().name(),
+						Timestamp.valueOf(receipt.getUpTo()).toString(), receipt.getReader(), receipt.getSender(),
+						receipt.getType().name() }));
+		//Clearing the unread messages of the conversations read up to their last message
+		List<Receipt> reads = new ArrayList<Receipt>();
+		for (Receipt receipt : receipts) {
+			if (receipt.getType() == Receipt.Type.READ)
+				reads.add(receipt);
+		}
+		if (!reads.isEmpty())
+			metrics.timeDatabaseUpdate("Conversations.update", () -> executeInChunks("UPDATE Conversations SET"
+					+ " Unread = 0 WHERE Unread > 0 AND (", "(Username = ? AND Partner = ? AND Timestamp <= ?)", " OR ",
+					")", reads, receipt -> new String[] { receipt.getReader(), receipt.getSender(),
+							Timestamp.valueOf(receipt.getUpTo()).toString() }));
+	}
+
+	@Override
+	public List<ConversationSummary> findConversations(String username) throws SQLException {
+		//Reading how far each other participant has received and read the user's chats
+		Map<String, LocalDateTime> delivered = new HashMap<String, LocalDateTime>(),
+				read = new HashMap<String, LocalDateTime>();
+		metrics.timeDatabaseCall("Watermarks.select", () -> {
+			try (ResultSet watermarks = database.retrieveRecords(new String[] { "Watermarks" },
+					"Partner = '" + escape(username) + "'", false)) {
+				while (watermarks.next()) {
+					Map<String, LocalDateTime> watermarksOfType = watermarks.getString(3).equals(Receipt.Type.READ.name())
+							? read : delivered;
+					watermarksOfType.put(watermarks.getString(1).toLowerCase(Locale.ROOT),
+							Timestamp.valueOf(watermarks.getString(4)).toLocalDateTime());
+				}
+				return null;
+			}
+		});
+		List<ConversationSummary> conversations = metrics.timeDatabaseCall("Conversations.select", () -> {
+			try (ResultSet summaries = database.retrieveRecords(new String[] { "Conversations" },
+					"Username = '" + escape(username) + "'", false)) {
+				List<ConversationSummary> matches = new ArrayList<ConversationSummary>();
+				while (summaries.next()) {
+					String partner = summaries.getString(2), sender = summaries.getString(3);
+					matches.add(new ConversationSummary(partner, new ChatMessage(sender,
+							sender.equalsIgnoreCase(partner) ? username : partner, summaries.getString(4),
+							Timestamp.valueOf(summaries.getString(5)).toLocalDateTime()), summaries.getInt(6),
+							delivered.get(partner.toLowerCase(Locale.ROOT)), read.get(partner.toLowerCase(Locale.ROOT))));
+				}
+				return matches;
+			}
+		});
+		conversations.sort(Comparator.comparing((ConversationSummary conversation) ->
+				conversation.getLastMessage().getTimeStamp()).reversed());
+		return conversations;
+	}
+
+	//_____________________________________________Groups_____________________________________________
+
+	@Override
+	public String findGroup(String group) throws SQLException {
+		return metrics.timeDatabaseCall("Chat_Groups.select", () -> {
+			try (ResultSet matches = database.retrieveRecords(new String[] { "Chat_Groups" },
+					"Name = '" + escape(group) + "'", false)) {
+				return matches.next() ? matches.getString(1) : null;
+			}
+		});
+	}
+
+	@Override
+	public void createGroup(String group, String creator, LocalDateTime created) throws SQLException {
+		metrics.timeDatabaseUpdate("Chat_Groups.insert", () -> database.addRecord("Chat_Groups",
+				escape(group), escape(creator), Timestamp.valueOf(created).toString()));
+	}
+
+	@Override
+	public void deleteGroup(String group) throws SQLException {
+		metrics.timeDatabaseUpdate("Group_Messages.delete", () -> database.deleteRecords("Group_Messages",
+				"Group_Name = '" + escape(group) + "'"));
+		metrics.timeDatabaseUpdate("Chat_Groups.delete", () -> database.deleteRecords("Chat_Groups",
+				"Name = '" + escape(group) + "'"));
+	}
+
+	@Override
+	public List<String> findGroupMembers(String group) throws SQLException {
+		return metrics.timeDatabaseCall("Group_Members.select", () -> {
+			try (ResultSet matches = database.retrieveRecords(new String[] { "Group_Members" },
+					"Group_Name = '" + escape(group) + "'", false)) {
+				List<String> members = new ArrayList<String>();
+				while (matches.next()) {
+					members.add(matches.getString(2));
+				}
+				return members;
+			}
+		});
+	}
+
+	@Override
+	public Map<String, List<String>> findGroups(String username) throws SQLException {
+		return metrics.timeDatabaseCall("Group_Members.select", () -> {
+			//Retrieving the members of all the user's groups at once
+			try (ResultSet memberships = database.retrieveRecords(new String[] { "Group_Members" },
+					"Group_Name IN (SELECT Group_Name FROM Group_Members WHERE Username = '" + escape(username) + "')",
+					false, new String[] { "Group_Name", "Username" })) {
+				Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+				while (memberships.next()) {
+					groups.computeIfAbsent(memberships.getString(1), group -> new ArrayList<String>())
+					.add(memberships.getString(2));
+				}
+				return groups;
+			}
+		});
+	}
+
+	@Override
+	public void addGroupMembers(String group, List<String> members) throws SQLException {
+		for (String member : members) {
+			metrics.timeDatabaseUpdate("Group_Members.insert", () -> database.addRecord("Group_Members",
+					escape(group), escape(member)));
+		}
+	}
+
+	@Override
+	public void removeGroupMember(String group, String member) throws SQLException {
+		metrics.timeDatabaseUpdate("Group_Members.delete", () -> database.deleteRecords("Group_Members",
+				"Group_Name = '" + escape(group) + "' AND Username = '" + escape(member) + "'"));
+	}
+
+	//_______________________________________________________________________________________________
+
+	@Override
+	public void close() throws IOException {
+		chatStore.close();
+	}
+
+	/*Method making a chat the last message of the existing summaries of its conversation (unless they hold
+	 *a later one) and counting it as unread by the recipient. Returns the number of summaries found
+	 */
+	private int updateSummaries(ChatMessage chat) throws SQLException {
+		String timeStamp = Timestamp.valueOf(chat.getTimeStamp()).toString();
+		try (PreparedStatement statement = database.getDatabaseMetaData().getConnection().prepareStatement(
+				"UPDATE Conversations SET Sender = CASE WHEN Timestamp > ? THEN Sender ELSE ? END,"
+				+ " Body = CASE WHEN Timestamp > ? THEN Body ELSE ? END, Timestamp = MAX(Timestamp, ?),"
+				+ " Unread = Unread + CASE WHEN Username = ? THEN 1 ELSE 0 END"
+				+ " WHERE (Username = ? AND Partner = ?) OR (Username = ? AND Partner = ?)")) {
+			statement.setString(1, timeStamp);
+			statement.setString(2, chat.getSender());
+			statement.setString(3, timeStamp);
+			statement.setString(4, chat.getBody());
+			statement.setString(5, timeStamp);
+			statement.setString(6, chat.getRecipient());
+			statement.setString(7, chat.getSender());
+			statement.setString(8, chat.getRecipient());
+			statement.setString(9, chat.getRecipient());
+			statement.setString(10, chat.getSender());
+			return statement.executeUpdate();
+		}
+	}
+
+	//Method creating the summaries of a conversation holding just the given chat, unless they exist already
+	private void insertSummaries(ChatMessage chat) throws SQLException {
+		String timeStamp = Timestamp.valueOf(chat.getTimeStamp()).toString();
+		try (PreparedStatement statement = database.getDatabaseMetaData().getConnection().prepareStatement(
+				"INSERT OR IGNORE INTO Conversations (Username, Partner, Sender, Body, Timestamp, Unread)"
+				+ " VALUES (?, ?, ?, ?, ?, 0), (?, ?, ?, ?, ?, 1)")) {
+			String[] participants = { chat.getSender(), chat.getRecipient() };
+			for (int participant = 0; participant < 2; participant++) {
+				statement.setString(5 * participant + 1, participants[participant]);
+				statement.setString(5 * participant + 2, participants[1 - participant]);
+				statement.setString(5 * participant + 3, chat.getSender());
+				statement.setString(5 * participant + 4, chat.getBody());
+				statement.setString(5 * participant + 5, timeStamp);
+			}
+			statement.executeUpdate();
+		}
+	}
+
+	/*Method running a statement over many rows, joining a copy of the row clause per row, in as few
+	 *statements as the limit on their parameters allows
+	 */
+	private <T> void executeInChunks(String statementStart, String row, String separator, String statementEnd,
+			List<T> rows, Function<T, String[]> parameters) throws SQLException {
+		if (rows.isEmpty())
+			return;
+		int rowsPerStatement = MAX_PARAMETERS / parameters.apply(rows.get(0)).length;
+		for (int start = 0; start < rows.size(); start += rowsPerStatement) {
+			List<T> chunk = rows.subList(start, Math.min(start + rowsPerStatement, rows.size()));
+			try (PreparedStatement statement = database.getDatabaseMetaData().getConnection().prepareStatement(
+					statementStart + String.join(separator, Collections.nCopies(chunk.size(), row)) + statementEnd)) {
+				int parameter = 1;
+				for (T chunkRow : chunk) {
+					for (String value : parameters.apply(chunkRow))
+						statement.setString(parameter++, value);
+				}
+				statement.executeUpdate();
+			}
+		}
+	}
+
+	//Method retrieving the name of the user matching the given condition, or null if there is none
+	private String findUsername(String condition) throws SQLException {
+		return metrics.timeDatabaseCall("Users.select", () -> {
+			//Closing the query, so that the database is not kept locked by an unfinished read
+			try (ResultSet matches = database.retrieveRecords(new String[] {"Users"}, condition, false)) {
+				return matches.next() ? matches.getString(1) : null;
+			}
+		});
+	}
+
+	//Method escaping a value to be quoted in an SQL statement
+	private static String escape(String value) {
+		return value.replace("'", "''");
+	}
+}
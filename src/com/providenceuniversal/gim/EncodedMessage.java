@@ -0,0 +1,98 @@
+package com.providenceuniversal.gim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The {@code EncodedMessage} class carries another {@code ServerMessage} in serialized form, optionally
+ * compressed with the codec negotiated by the connection's {@code Handshake}. The server only sends
+ * it to clients that took part in a handshake; {@code ClientConnection} decodes it transparently.
+ * It is one of the types of {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class EncodedMessage implements ServerMessage {
+
+	private static final long serialVersionUID = -1876259311650917004L;
+	private final byte[] payload;
+	private final boolean compressed;
+
+	/**
+	 * Creates new {@code EncodedMessage} from an already encoded payload.
+	 *
+	 * @param payload Serialized message, deflated if {@code compressed}
+	 * @param compressed Whether the payload is deflated
+	 */
+	EncodedMessage(byte[] payload, boolean compressed) {
+		this.payload = payload;
+		this.compressed = compressed;
+	}
+
+	/**
+	 * Serializes a message on its own.
+	 *
+	 * @param message The message
+	 * @return The serialized message
+	 * @throws IOException If the message cannot be serialized
+	 */
+	static byte[] serialize(ServerMessage message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(message);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Deflates a serialized message, favouring speed over compression ratio.
+	 *
+	 * @param serialized The serialized message
+	 * @return The deflated message
+	 */
+	static byte[] compress(byte[] serialized) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(serialized.length / 4);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (DeflaterOutputStream output = new DeflaterOutputStream(bytes, deflater)) {
+			output.write(serialized);
+		}
+		catch (IOException ex) {
+			throw new AssertionError(ex);
+		}
+		finally {
+			deflater.end();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the message carried by this {@code EncodedMessage}.
+	 *
+	 * @return The decoded message
+	 * @throws IOException If the payload is corrupt
+	 * @throws ClassNotFoundException If the message's class cannot be found
+	 */
+	public ServerMessage decode() throws IOException, ClassNotFoundException {
+		InputStream bytes = new ByteArrayInputStream(payload);
+		try (ObjectInputStream input = new ObjectInputStream(compressed ? new InflaterInputStream(bytes) : bytes)) {
+			return (ServerMessage) input.readObject();
+		}
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public int getPayloadLength() {
+		return payload.length;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+}
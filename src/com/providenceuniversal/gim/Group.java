@@ -0,0 +1,51 @@
+package com.providenceuniversal.gim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code Group} class stores the name and the members of a group conversation.
+ * It is one of the types of {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class Group implements ServerMessage {
+
+	private static final long serialVersionUID = 8841270126815536319L;
+	private final String name;
+	private final ArrayList<String> members;
+
+	/**
+	 * Creates new {@code Group} object with the given name and members.
+	 *
+	 * @param name Name of the group
+	 * @param members Usernames of the members
+	 */
+	public Group(String name, List<String> members) {
+		this.name = name;
+		this.members = new ArrayList<String>(members);
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getName() {
+		return name;
+	}
+
+	public List<String> getMembers() {
+		return Collections.unmodifiableList(members);
+	}
+
+	//____________________________________________________________________________________________________
+
+	/**
+	 * Returns a {@code String} representation of the group in the given format: <br>
+	 * name (member, member, ...)
+	 */
+	@Override
+	public String toString() {
+		return name + " (" + String.join(", ", members) + ")";
+	}
+}
@@ -0,0 +1,50 @@
+package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+
+/**
+ * The {@code GroupHistoryRequest} class stores the name of a group conversation to be used to retrieve
+ * the messages sent to the group, optionally limited to the messages sent since a given time.
+ * The server answers with a {@code ChatHistory} of {@code GroupMessage}s.
+ * It is one of the types of {@code ClientMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class GroupHistoryRequest implements ClientMessage {
+
+	private static final long serialVersionUID = 1402962383542710875L;
+	private final String group;
+	private final LocalDateTime since;
+
+	/**
+	 * Creates new {@code GroupHistoryRequest} object for the full history of the group.
+	 *
+	 * @param group Name of the group
+	 */
+	public GroupHistoryRequest(String group) {
+		this(group, null);
+	}
+
+	/**
+	 * Creates new {@code GroupHistoryRequest} object limited to the messages sent at or after the given time.
+	 *
+	 * @param group Name of the group
+	 * @param since Time stamp of the earliest message to retrieve, or {@code null} for the full history
+	 */
+	public GroupHistoryRequest(String group, LocalDateTime since) {
+		super();
+		this.group = group;
+		this.since = since;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getGroup() {
+		return group;
+	}
+
+	public LocalDateTime getSince() {
+		return since;
+	}
+}
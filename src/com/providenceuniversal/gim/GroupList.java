@@ -0,0 +1,57 @@
+package com.providenceuniversal.gim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The {@code GroupList} class stores the group conversations a user is a member of.
+ * It is one of the types of {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class GroupList implements ServerMessage {
+
+	private static final long serialVersionUID = -2370515941263893210L;
+	private final ArrayList<Group> groups;
+
+	/**
+	 * Creates new {@code GroupList} object with the given groups.
+	 *
+	 * @param groups The groups
+	 */
+	public GroupList(List<Group> groups) {
+		this.groups = new ArrayList<Group>(groups);
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public List<Group> getGroups() {
+		return Collections.unmodifiableList(groups);
+	}
+
+	public String getGroupName(int position) {
+		return groups.get(position - 1).getName();
+	}
+
+	//____________________________________________________________________________________________________
+
+	int getTotalNumberOfGroups() {
+		return groups.size();
+	}
+
+	/**
+	 * Returns a {@code String} representation of the group list in the given format: <br>
+	 * Groups:<br>
+	 * [Position]. [Group]
+	 */
+	@Override
+	public String toString() {
+		return "Groups:\n" + IntStream.range(0, groups.size())
+				.mapToObj(index -> index + 1 + ". " + groups.get(index))
+				.collect(Collectors.joining("\n"));
+	}
+}
@@ -0,0 +1,59 @@
+package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The {@code GroupMessage} class represents a chat message sent to a group conversation, its recipient
+ * being the name of the group. The server stores it once and pushes it to every other member of the
+ * group, so clients receive it as any other {@code ChatMessage}.
+ * It is one of the types of {@code ClientMessage} and {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class GroupMessage extends ChatMessage {
+
+	private static final long serialVersionUID = -3349518872960285043L;
+
+	/**
+	 * Creates {@code GroupMessage} object and sets the time stamp to {@code LocalDateTime.now()}.
+	 *
+	 * @param sender Sender
+	 * @param group Name of the group
+	 * @param body Message body
+	 */
+	public GroupMessage(String sender, String group, String body) {
+		super(sender, group, body);
+	}
+
+	/**
+	 * Creates {@code GroupMessage} object with the given time stamp.
+	 *
+	 * @param sender Sender
+	 * @param group Name of the group
+	 * @param body Message body
+	 * @param timeStamp Message time stamp
+	 */
+	public GroupMessage(String sender, String group, String body, LocalDateTime timeStamp) {
+		super(sender, group, body, timeStamp);
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getGroup() {
+		return getRecipient();
+	}
+
+	//____________________________________________________________________________________________________
+
+	/**
+	 * Returns a {@code String} representation of the group message in the given format: <br>
+	 * [timestamp] group: sender > body
+	 */
+	@Override
+	public String toString() {
+		return "[" + getTimeStamp().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"))
+		+ "] " + getGroup() + ": " + getSender() + "> " + getBody();
+	}
+}
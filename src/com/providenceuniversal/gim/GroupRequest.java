@@ -0,0 +1,56 @@
+package com.providenceuniversal.gim;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code GroupRequest} class stores a group conversation and the users to be used to create the
+ * group, add members to it, leave it, or list the groups of the logged in user;--based on the
+ * requestType assigned to the particular instance.
+ * It is one of the types of {@code ClientMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class GroupRequest implements ClientMessage {
+
+	/**
+	 * Enumeration which stores the types of GroupRequest
+	 */
+	public static enum Type {CREATION, ADDITION, DEPARTURE, LISTING}
+
+	private static final long serialVersionUID = -6174095583021546728L;
+	private final Type requestType;
+	private final String group;
+	private final String[] members;
+
+	/**
+	 * Creates new {@code GroupRequest} object and initializes the group, the users and the request type
+	 * with the parameter values.
+	 *
+	 * @param requestType Type of group request
+	 * @param group Name of the group, or {@code null} when listing groups
+	 * @param members Users to add to the group (besides the logged in user, on creation)
+	 */
+	public GroupRequest(Type requestType, String group, String... members) {
+		this.requestType = requestType;
+		this.group = group;
+		this.members = members.clone();
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	Type getRequestType() {
+		return requestType;
+	}
+
+	String getGroup() {
+		return group;
+	}
+
+	//Returning no members in case a faulty client sent none at all
+	List<String> getMembers() {
+		return members == null ? Collections.<String>emptyList() : Arrays.asList(members.clone());
+	}
+}
@@ -0,0 +1,72 @@
+package com.providenceuniversal.gim;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code Handshake} class negotiates the options of a connection. The client sends the options it
+ * supports when it connects, and the server answers with the options it selected, along with the interval
+ * at which the client must send a {@code Heartbeat} when otherwise idle. Clients that never send a
+ * handshake are served with the default options (e.g. uncompressed messages).
+ * It is one of the types of {@code ClientMessage} and {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class Handshake implements ClientMessage, ServerMessage {
+
+	/**
+	 * Enumeration which stores the payload compression codecs
+	 */
+	public static enum Compression {NONE, DEFLATE}
+
+	private static final long serialVersionUID = 3650473146120447528L;
+	private final Compression[] compressions;
+	private final long heartbeatInterval;
+
+	/**
+	 * Creates new {@code Handshake} with the given compression codecs, in order of preference
+	 * (when sent by the client), or with the selected codec (when sent by the server).
+	 *
+	 * @param compressions Compression codecs
+	 */
+	public Handshake(Compression... compressions) {
+		this(0, compressions);
+	}
+
+	/**
+	 * Creates new {@code Handshake} with the selected compression codec and heartbeat interval, as sent by
+	 * the server.
+	 *
+	 * @param heartbeatInterval Interval in milliseconds at which an idle client sends heartbeats
+	 * @param compression Selected compression codec
+	 */
+	Handshake(long heartbeatInterval, Compression compression) {
+		this(heartbeatInterval, new Compression[] {compression});
+	}
+
+	private Handshake(long heartbeatInterval, Compression[] compressions) {
+		super();
+		this.compressions = compressions.clone();
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	//Returning no codecs in case a faulty client sent none at all
+	public List<Compression> getCompressions() {
+		return compressions == null ? Collections.<Compression>emptyList() : Arrays.asList(compressions.clone());
+	}
+
+	/**
+	 * Returns the interval at which the client must send heartbeats when otherwise idle.
+	 *
+	 * @param unit Unit of the interval
+	 * @return The interval, or 0 if the server does not expect heartbeats (e.g. older servers)
+	 */
+	public long getHeartbeatInterval(TimeUnit unit) {
+		return unit.convert(heartbeatInterval, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,17 @@
+package com.providenceuniversal.gim;
+
+/**
+ * The {@code Heartbeat} class represents a message a client sends when it has sent nothing else for the
+ * heartbeat interval the server negotiated in its {@code Handshake}, which the server answers with a
+ * {@code Heartbeat} of its own. It keeps an idle connection from being timed out, and lets the client
+ * notice a server that stopped responding.
+ * It is one of the types of {@code ClientMessage} and {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class Heartbeat implements ClientMessage, ServerMessage {
+
+	private static final long serialVersionUID = -4061875203547781923L;
+
+}
@@ -0,0 +1,235 @@
+package com.providenceuniversal.gim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * The {@code IdMap} class is a concurrent hash map keyed by primitive {@code long}s, such as user IDs
+ * (see {@link UserDirectory}) or pairs of them, so that looking an entry up neither boxes its key nor
+ * hashes a string. The entries are spread over stripes, each an open addressing table of its own guarded
+ * by its own lock, so that threads working on different entries seldom contend.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class IdMap<V> {
+
+	/**
+	 * The {@code Stripe} class is an open addressing table with linear probing, an empty slot holding a
+	 * {@code null} value.
+	 */
+	private static final class Stripe {
+		private long[] keys = new long[8];
+		private Object[] values = new Object[8];
+		private int size;
+
+		//Method returning the slot holding a key, or the empty slot ending its probe sequence
+		int slot(long key) {
+			int mask = keys.length - 1, slot = home(key, mask);
+			while (values[slot] != null && keys[slot] != key)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+
+		Object put(long key, Object value) {
+			int slot = slot(key);
+			Object previous = values[slot];
+			keys[slot] = key;
+			values[slot] = value;
+			if (previous == null && ++size * 2 > keys.length)
+				resize(keys.length * 2);
+			return previous;
+		}
+
+		//Method emptying a slot, shifting back the entries that probed past it
+		void delete(int slot) {
+			int mask = keys.length - 1;
+			values[slot] = null;
+			size--;
+			for (int next = (slot + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+				int home = home(keys[next], mask);
+				//Moving the entry unless its home lies cyclically between the emptied slot and its own
+				if (slot <= next ? slot < home && home <= next : slot < home || home <= next)
+					continue;
+				keys[slot] = keys[next];
+				values[slot] = values[next];
+				values[next] = null;
+				slot = next;
+			}
+		}
+
+		void resize(int capacity) {
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+			keys = new long[capacity];
+			values = new Object[capacity];
+			for (int index = 0; index < oldKeys.length; index++) {
+				if (oldValues[index] != null) {
+					int slot = slot(oldKeys[index]);
+					keys[slot] = oldKeys[index];
+					values[slot] = oldValues[index];
+				}
+			}
+		}
+
+		private static int home(long key, int mask) {
+			return (int) (mix(key) >>> 32) & mask;
+		}
+	}
+
+	//Number of stripes, a power of two
+	private static final int STRIPES = 64;
+	private final Stripe[] stripes;
+
+	/**
+	 * Creates new, empty {@code IdMap}.
+	 */
+	IdMap() {
+		stripes = new Stripe[STRIPES];
+		for (int stripe = 0; stripe < STRIPES; stripe++)
+			stripes[stripe] = new Stripe();
+	}
+
+	/**
+	 * Returns the value of a key.
+	 *
+	 * @param key The key
+	 * @return The value, or {@code null} if the key has none
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			return (V) stripe.values[stripe.slot(key)];
+		}
+	}
+
+	/**
+	 * Sets the value of a key.
+	 *
+	 * @param key The key
+	 * @param value The value, not {@code null}
+	 * @return The previous value, or {@code null} if the key had none
+	 */
+	@SuppressWarnings("unchecked")
+	V put(long key, V value) {
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			return (V) stripe.put(key, value);
+		}
+	}
+
+	/**
+	 * Returns the value of a key, setting it to a new value first if the key has none.
+	 *
+	 * @param key The key
+	 * @param factory Function creating the new value, called while other threads wait for the key's stripe
+	 * @return The value
+	 */
+	@SuppressWarnings("unchecked")
+	V computeIfAbsent(long key, LongFunction<? extends V> factory) {
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			Object value = stripe.values[stripe.slot(key)];
+			if (value == null) {
+				value = factory.apply(key);
+				stripe.put(key, value);
+			}
+			return (V) value;
+		}
+	}
+
+	/**
+	 * Removes a key.
+	 *
+	 * @param key The key
+	 * @return The value the key had, or {@code null} if it had none
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(long key) {
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			int slot = stripe.slot(key);
+			Object value = stripe.values[slot];
+			if (value != null)
+				stripe.delete(slot);
+			return (V) value;
+		}
+	}
+
+	/**
+	 * Removes a key, provided it still has the given value.
+	 *
+	 * @param key The key
+	 * @param value The value
+	 * @return Whether the key was removed
+	 */
+	boolean remove(long key, V value) {
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			int slot = stripe.slot(key);
+			if (stripe.values[slot] == null || !stripe.values[slot].equals(value))
+				return false;
+			stripe.delete(slot);
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the values, copied one stripe at a time, so that the map is never locked while they are used.
+	 *
+	 * @return The values, in no particular order
+	 */
+	@SuppressWarnings("unchecked")
+	List<V> values() {
+		List<V> values = new ArrayList<V>();
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				for (Object value : stripe.values) {
+					if (value != null)
+						values.add((V) value);
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the number of keys.
+	 *
+	 * @return The number of keys
+	 */
+	int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Removes every key.
+	 */
+	void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				Arrays.fill(stripe.values, null);
+				stripe.size = 0;
+			}
+		}
+	}
+
+	private Stripe stripe(long key) {
+		return stripes[(int) mix(key) & (STRIPES - 1)];
+	}
+
+	//Method spreading the bits of a key, so that consecutive IDs land in different stripes and slots
+	private static long mix(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return key ^ (key >>> 29);
+	}
+}
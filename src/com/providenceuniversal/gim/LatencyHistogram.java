@@ -0,0 +1,144 @@
+package com.providenceuniversal.gim;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LatencyHistogram} class records durations (in nanoseconds) into log-linear buckets
+ * and answers percentile queries over them. Each power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, which bounds the relative error of any reported
+ * percentile to roughly 6%. Recording only ever touches atomic counters so that it can be called
+ * from any number of threads without locking.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class LatencyHistogram {
+
+	//Number of linear sub-buckets per power of two (must be a power of two itself)
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	//Highest power of two tracked; larger values are clamped into the last bucket (~36 minutes)
+	private static final int MAX_EXPONENT = 41;
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets;
+	private final LongAdder count, sum;
+	private final AtomicLong max;
+
+	/**
+	 * Creates new empty {@code LatencyHistogram}.
+	 */
+	LatencyHistogram() {
+		buckets = new AtomicLongArray(BUCKET_COUNT);
+		count = new LongAdder();
+		sum = new LongAdder();
+		max = new AtomicLong();
+	}
+
+	/**
+	 * Records a single duration.
+	 *
+	 * @param nanos Duration in nanoseconds (negative values are recorded as zero)
+	 */
+	void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		buckets.incrementAndGet(bucketIndex(value));
+		count.increment();
+		sum.add(value);
+		//Lock-free maximum update, retried only while another thread raises the maximum concurrently
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Returns the (approximate) duration below which the given fraction of recordings fall.
+	 *
+	 * @param fraction Fraction between 0 and 1 (e.g. 0.99 for the 99th percentile)
+	 * @return Duration in nanoseconds, or 0 if nothing has been recorded
+	 */
+	long percentile(double fraction) {
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		//Snapshotting the buckets so that the total matches the counts being walked
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			counts[index] = buckets.get(index);
+			total += counts[index];
+		}
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			seen += counts[index];
+			if (seen >= rank)
+				return Math.min(bucketUpperBound(index), max.get());
+		}
+		return max.get();
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	long getMean() {
+		long total = count.sum();
+		return total == 0 ? 0 : sum.sum() / total;
+	}
+
+	/**
+	 * Clears all recordings. Recordings made concurrently with the reset may be partially kept.
+	 */
+	void reset() {
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			buckets.set(index, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	/**
+	 * Returns a {@code String} summary of the histogram in the given format: <br>
+	 * count=[count] mean=[mean] p50=[p50] p99=[p99] p999=[p999] max=[max] (durations in microseconds)
+	 */
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + micros(getMean()) + " p50=" + micros(percentile(0.5))
+		+ " p99=" + micros(percentile(0.99)) + " p999=" + micros(percentile(0.999))
+		+ " max=" + micros(getMax());
+	}
+
+	//Method formatting a nanosecond duration as microseconds
+	private static String micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+	}
+
+	//Method mapping a value to its bucket; values below SUB_BUCKETS get exact buckets of their own
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT)
+			return BUCKET_COUNT - 1;
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	//Method returning the largest value that maps to the given bucket
+	private static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,346 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LoadGenerator} class is a headless load-testing tool for G-Instant Messenger. It opens
+ * a number of connections to a running {@code Server}, and drives each one through a scripted session
+ * (sign up or log in, then a weighted mix of contact list, send message, chat history, conversation
+ * list and logout/login operations) at a configurable rate, reporting throughput, error rates and latency
+ * percentiles per operation. It runs until the configured duration elapses, making it suitable for
+ * long soak tests as well as short bursts.
+ * <p>
+ * Options are passed as {@code --name=value} arguments:
+ * <ul>
+ * <li>{@code host} (localhost), {@code port} (4279): Server address</li>
+ * <li>{@code clients} (100): Number of simulated clients (connections)</li>
+ * <li>{@code rate} (1): Operations per second issued by each client</li>
+ * <li>{@code mix} (contacts:20,send:60,history:15,relogin:5): Relative weights of the operations, of
+ * which conversations is also available</li>
+ * <li>{@code duration} (60): Test duration in seconds</li>
+ * <li>{@code ramp-up} (10): Seconds over which the clients are connected</li>
+ * <li>{@code report-interval} (10): Seconds between intermediate reports</li>
+ * <li>{@code workers} (available processors x 4): Threads issuing operations, which never wait for their
+ * responses</li>
+ * <li>{@code timeout} (10): Seconds to wait for a response before counting the operation as failed</li>
+ * <li>{@code prefix} (load): Prefix of the simulated usernames</li>
+ * </ul>
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class LoadGenerator {
+
+	/**
+	 * Enumeration of the operations a simulated client performs.
+	 */
+	enum Operation {SIGN_UP, LOGIN, CONTACTS, SEND, HISTORY, CONVERSATIONS, RELOGIN, LOGOUT}
+
+	private static final String PASSWORD = "load-test";
+
+	private final Map<String, String> options;
+	private final String host, prefix;
+	private final int port, clients;
+	private final long operationInterval, timeout;
+	private final Operation[] mix;
+	private final EnumMap<Operation, ServerMetrics.Timer> timers;
+	private final LongAdder notifications, connectionFailures;
+	private final AtomicInteger connectedClients;
+	private final ScheduledExecutorService workers;
+	private volatile boolean running;
+
+	/**
+	 * Creates new {@code LoadGenerator} configured with the given options.
+	 *
+	 * @param options Options keyed by name (see the class description)
+	 */
+	public LoadGenerator(Map<String, String> options) {
+		this.options = options;
+		host = options.getOrDefault("host", "localhost");
+		port = Integer.parseInt(options.getOrDefault("port", "4279"));
+		clients = Integer.parseInt(options.getOrDefault("clients", "100"));
+		prefix = options.getOrDefault("prefix", "load");
+		operationInterval = (long) (TimeUnit.SECONDS.toNanos(1) / Double.parseDouble(options.getOrDefault("rate", "1")));
+		timeout = Long.parseLong(options.getOrDefault("timeout", "10"));
+		mix = parseMix(options.getOrDefault("mix", "contacts:20,send:60,history:15,relogin:5"));
+		timers = new EnumMap<Operation, ServerMetrics.Timer>(Operation.class);
+		for (Operation operation : Operation.values()) {
+			timers.put(operation, new ServerMetrics.Timer());
+		}
+		notifications = new LongAdder();
+		connectionFailures = new LongAdder();
+		connectedClients = new AtomicInteger();
+		ScheduledThreadPoolExecutor workers = new ScheduledThreadPoolExecutor(Integer.parseInt(options
+				.getOrDefault("workers", Integer.toString(Runtime.getRuntime().availableProcessors() * 4))));
+		workers.setRemoveOnCancelPolicy(true);
+		this.workers = workers;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String argument : args) {
+			//Parsing each --name=value argument
+			if (argument.startsWith("--") && argument.contains("=")) {
+				options.put(argument.substring(2, argument.indexOf('=')), argument.substring(argument.indexOf('=') + 1));
+			}
+			else {
+				System.err.println("Ignoring unrecognized argument: " + argument);
+			}
+		}
+		new LoadGenerator(options).run();
+	}
+
+	/**
+	 * Runs the load test to completion, printing intermediate and final reports to standard output.
+	 *
+	 * @throws InterruptedException If interrupted while waiting for the test to finish
+	 */
+	public void run() throws InterruptedException {
+		long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+		long rampUp = Long.parseLong(options.getOrDefault("ramp-up", "10"));
+		long reportInterval = Long.parseLong(options.getOrDefault("report-interval", "10"));
+		LocalDateTime startTime = LocalDateTime.now();
+		running = true;
+
+		System.out.println("Starting " + clients + " clients against " + host + ":" + port + " for " + duration + "s");
+		List<Session> sessions = new ArrayList<Session>(clients);
+		for (int index = 0; index < clients; index++) {
+			Session session = new Session(prefix + index);
+			sessions.add(session);
+			//Spreading the connections evenly over the ramp-up period
+			workers.schedule(session::start, TimeUnit.SECONDS.toNanos(rampUp) * index / Math.max(1, clients),
+					TimeUnit.NANOSECONDS);
+		}
+		workers.scheduleAtFixedRate(() -> System.out.println(report(startTime)), reportInterval, reportInterval,
+				TimeUnit.SECONDS);
+
+		//Waiting for the test to finish, then stopping every session
+		CountDownLatch finished = new CountDownLatch(1);
+		workers.schedule(finished::countDown, duration, TimeUnit.SECONDS);
+		finished.await();
+		running = false;
+		workers.shutdownNow();
+		workers.awaitTermination(timeout, TimeUnit.SECONDS);
+		//Logging every session out at once, then waiting for all the logouts within a single timeout
+		List<CompletableFuture<?>> logouts = new ArrayList<CompletableFuture<?>>(sessions.size());
+		sessions.forEach(session -> logouts.add(session.logout()));
+		try {
+			CompletableFuture.allOf(logouts.toArray(new CompletableFuture<?>[logouts.size()])).get(timeout,
+					TimeUnit.SECONDS);
+		}
+		catch (ExecutionException | TimeoutException ex) {}
+		sessions.forEach(Session::close);
+		System.out.println("Final results:" + System.lineSeparator() + report(startTime));
+	}
+
+	/**
+	 * Returns a report of the results so far, one line per operation.
+	 *
+	 * @param startTime Time the test started at
+	 * @return Report of the results
+	 */
+	String report(LocalDateTime startTime) {
+		long elapsedSeconds = Math.max(1, Duration.between(startTime, LocalDateTime.now()).getSeconds());
+		StringBuilder report = new StringBuilder();
+		report.append("Elapsed ").append(elapsedSeconds).append("s, connected clients=").append(connectedClients.get())
+		.append(", connection failures=").append(connectionFailures.sum())
+		.append(", notifications received=").append(notifications.sum()).append(System.lineSeparator());
+		timers.forEach((operation, timer) -> {
+			long count = timer.getLatency().getCount();
+			if (count > 0) {
+				report.append("  ").append(operation).append(": ").append(timer)
+				.append(" throughput=").append(count / elapsedSeconds).append("/s")
+				.append(String.format(" error-rate=%.2f%%", 100.0 * timer.getErrors() / count))
+				.append(System.lineSeparator());
+			}
+		});
+		return report.toString();
+	}
+
+	//Method expanding a weighted mix (e.g. contacts:20,send:80) into a table to draw operations from
+	private static Operation[] parseMix(String mix) {
+		List<Operation> table = new ArrayList<Operation>();
+		for (String entry : mix.split(",")) {
+			String[] weightedOperation = entry.trim().split(":");
+			Operation operation = Operation.valueOf(weightedOperation[0].trim().toUpperCase());
+			for (int weight = Integer.parseInt(weightedOperation[1].trim()); weight > 0; weight--) {
+				table.add(operation);
+			}
+		}
+		if (table.isEmpty())
+			throw new IllegalArgumentException("The operation mix is empty");
+		return table.toArray(new Operation[] {});
+	}
+
+	/**
+	 * The {@code Session} class is a single simulated client. Operations are issued from the shared
+	 * worker pool, one at a time, each continuing from its response rather than holding a worker while
+	 * it waits, so that the number of workers does not bound the operations in flight. The connection's
+	 * reader thread drains pushed notifications so that they never back up into the server.
+	 */
+	private class Session implements ClientListener {
+
+		private final String username;
+		private volatile ClientConnection connection;
+		private volatile boolean loggedIn;
+
+		Session(String username) {
+			this.username = username;
+		}
+
+		//Method connecting the session and signing it up (or in, if the account already exists)
+		void start() {
+			if (!running)
+				return;
+			try {
+				connection = ClientConnection.connect(host, port);
+			}
+			catch (IOException ex) {
+				connectionFailures.increment();
+				reconnect();
+				return;
+			}
+			connectedClients.incrementAndGet();
+			connection.addListener(this);
+			perform(Operation.SIGN_UP, new Authentication(username, PASSWORD, Authentication.Type.ACCOUNT_CREATION))
+			.thenComposeAsync(response -> response instanceof User ? CompletableFuture.completedFuture(response)
+					: perform(Operation.LOGIN, new Authentication(username, PASSWORD, Authentication.Type.LOGIN)), workers)
+			.whenComplete((response, ex) -> {
+				if (ex != null) {
+					connectionFailures.increment();
+					reconnect();
+					return;
+				}
+				loggedIn = response instanceof User;
+				scheduleNext();
+			});
+		}
+
+		//Method logging the session out if it is logged in, returning the logout's response
+		CompletableFuture<?> logout() {
+			if (loggedIn && connection != null && !connection.isClosed())
+				return perform(Operation.LOGOUT, new UserDisconnection());
+			return CompletableFuture.completedFuture(null);
+		}
+
+		@Override
+		public void chatMessageReceived(ChatMessage message) {
+			notifications.increment();
+		}
+
+		@Override
+		public void notificationReceived(ServerNotification notification) {
+			notifications.increment();
+		}
+
+		@Override
+		public void disconnected(Throwable cause) {
+			connectedClients.decrementAndGet();
+		}
+
+		//Method scheduling the next operation, with some jitter so that clients do not fire in lockstep
+		private void scheduleNext() {
+			if (running && !workers.isShutdown()) {
+				long delay = operationInterval / 2 + ThreadLocalRandom.current().nextLong(Math.max(1, operationInterval));
+				workers.schedule(this::next, delay, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		//Method performing the next operation drawn from the mix, scheduling the one after once it completes
+		private void next() {
+			CompletableFuture<?> operation;
+			if (!loggedIn) {
+				operation = perform(Operation.LOGIN, new Authentication(username, PASSWORD, Authentication.Type.LOGIN))
+						.thenAccept(response -> loggedIn = response instanceof User);
+			}
+			else {
+				String contact = prefix + ThreadLocalRandom.current().nextInt(clients);
+				switch (mix[ThreadLocalRandom.current().nextInt(mix.length)]) {
+				case CONTACTS:
+					operation = perform(Operation.CONTACTS, new ContactsRequest());
+					break;
+				case SEND:
+					operation = perform(Operation.SEND, new ChatMessage(username, contact, "Load test message at "
+							+ LocalDateTime.now()));
+					break;
+				case HISTORY:
+					operation = perform(Operation.HISTORY, new ChatHistoryRequest(username, contact));
+					break;
+				case CONVERSATIONS:
+					operation = perform(Operation.CONVERSATIONS, new ConversationsRequest());
+					break;
+				default:
+					//Logging out and straight back in again
+					long start = System.nanoTime();
+					operation = perform(Operation.LOGOUT, new UserDisconnection())
+							.thenComposeAsync(response -> response instanceof CommitMessage
+									? perform(Operation.LOGIN, new Authentication(username, PASSWORD,
+											Authentication.Type.LOGIN)).thenApply(login -> login instanceof User)
+									: CompletableFuture.completedFuture(false), workers)
+							.whenComplete((succeeded, ex) -> {
+								boolean loggedBackIn = ex == null && succeeded;
+								timers.get(Operation.RELOGIN).record(System.nanoTime() - start, !loggedBackIn);
+								loggedIn = loggedBackIn;
+							});
+				}
+			}
+			operation.whenComplete((result, ex) -> {
+				if (ex == null)
+					scheduleNext();
+				else
+					reconnect();
+			});
+		}
+
+		/*Method sending a request and timing the wait for its response, which fails if the connection does
+		 *or no response arrives within the timeout
+		 */
+		private CompletableFuture<ServerMessage> perform(Operation operation, ClientMessage request) {
+			long start = System.nanoTime();
+			//Accepting any response type, since server errors are counted rather than thrown
+			CompletableFuture<ServerMessage> response = connection.request(request, ServerMessage.class);
+			try {
+				ScheduledFuture<?> expiry = workers.schedule(() -> response.completeExceptionally(
+						new TimeoutException("Timed out waiting for a response to " + operation)), timeout, TimeUnit.SECONDS);
+				response.whenComplete((message, ex) -> expiry.cancel(false));
+			}
+			//Leaving the response to the caller's own wait, should the test be over
+			catch (RejectedExecutionException ex) {}
+			return response.whenComplete((message, ex) -> timers.get(operation).record(System.nanoTime() - start,
+					!(message instanceof User || message instanceof CommitMessage || message instanceof ContactList
+					|| message instanceof ChatHistory || message instanceof ConversationList)));
+		}
+
+		//Method dropping the connection and trying again after a pause
+		private void reconnect() {
+			close();
+			if (running && !workers.isShutdown())
+				workers.schedule(this::start, 1, TimeUnit.SECONDS);
+		}
+
+		void close() {
+			loggedIn = false;
+			if (connection != null)
+				connection.close();
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package com.providenceuniversal.gim;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code LocalMessageStore} class keeps the chats of one account on disk, one file per conversation,
+ * so that opening a conversation only requires the chats sent since it was last synchronized with the server.
+ * Chats pushed by the server are merged in as they arrive.
+ * <p>
+ * Each conversation file is an append-only sequence of records: chat messages, and watermarks recording
+ * the time stamp up to which the conversation is known to match the server. Pushed chats do not move the
+ * watermark, since chats sent before them may still be missing; the next synchronization re-requests
+ * from the watermark and discards the chats already held.
+ * <p>
+ * Chats are stamped by their senders' clocks, so a chat may be stored by the server after chats stamped
+ * later than it, and so after the watermark has moved past it. Synchronizations therefore re-request an
+ * overlap before the watermark, catching up with the chats stored late by up to that much.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class LocalMessageStore implements ClientListener {
+
+	/*Record types of the conversation files, chat records holding the body as modified UTF-8 (and so no
+	 *longer than 65535 bytes) and, as written now, long chat records as its length followed by its UTF-8 bytes
+	 */
+	private static final byte CHAT_RECORD = 'C', LONG_CHAT_RECORD = 'L';
+	private static final byte WATERMARK_RECORD = 'W';
+	//Time before the watermark synchronizations start from, for the chats stored after later stamped ones
+	private static final Duration SYNC_OVERLAP = Duration.ofMinutes(10);
+	private static final String FILE_EXTENSION = ".chats";
+
+	/**
+	 * The {@code Conversation} class holds the chats of one conversation in chronological order.
+	 */
+	private static final class Conversation {
+		private final File file;
+		private final List<ChatMessage> chats;
+		private final Set<ChatMessage> heldChats;
+		private LocalDateTime watermark;
+
+		Conversation(File file) {
+			this.file = file;
+			chats = new ArrayList<ChatMessage>();
+			heldChats = new HashSet<ChatMessage>();
+		}
+
+		//Method adding a chat in chronological order, returning false if it is already held
+		boolean add(ChatMessage chat) {
+			if (!heldChats.add(chat))
+				return false;
+			int position = chats.size();
+			while (position > 0 && chats.get(position - 1).getTimeStamp().isAfter(chat.getTimeStamp())) {
+				position--;
+			}
+			chats.add(position, chat);
+			return true;
+		}
+	}
+
+	private final String account;
+	private final File directory;
+	private final Map<String, Conversation> conversations;
+
+	/**
+	 * Creates new {@code LocalMessageStore} for the given account, stored in the user's home directory.
+	 *
+	 * @param account Username of the account
+	 */
+	public LocalMessageStore(String account) {
+		this(account, new File(System.getProperty("user.home") + "/G-Instant Messenger/messages", fileName(account)));
+	}
+
+	/**
+	 * Creates new {@code LocalMessageStore} for the given account, stored in the given directory.
+	 *
+	 * @param account Username of the account
+	 * @param directory Directory holding the conversation files of the account
+	 */
+	public LocalMessageStore(String account, File directory) {
+		this.account = account;
+		this.directory = directory;
+		conversations = new HashMap<String, Conversation>();
+	}
+
+	//__________________________________________________Queries____________________________________________________
+
+	/**
+	 * Returns the chats held for the conversation with the given contact.
+	 *
+	 * @param contact Contact's username
+	 * @return Chats in chronological order
+	 * @throws IOException If the conversation file cannot be read
+	 */
+	public synchronized List<ChatMessage> getChats(String contact) throws IOException {
+		return Collections.unmodifiableList(new ArrayList<ChatMessage>(getConversation(contact).chats));
+	}
+
+	/**
+	 * Returns the time stamp to synchronize the conversation with the given contact from: the time stamp
+	 * up to which it is known to match the server, less the overlap re-requested for chats stored late.
+	 *
+	 * @param contact Contact's username
+	 * @return Time stamp to synchronize from, or {@code null} if the conversation was never synchronized
+	 * @throws IOException If the conversation file cannot be read
+	 */
+	public synchronized LocalDateTime getWatermark(String contact) throws IOException {
+		LocalDateTime watermark = getConversation(contact).watermark;
+		return watermark == null ? null : watermark.minus(SYNC_OVERLAP);
+	}
+
+	//__________________________________________________Updates____________________________________________________
+
+	/**
+	 * Merges the chats retrieved from the server since the conversation's watermark, and moves the
+	 * watermark up to the latest of them.
+	 *
+	 * @param contact Contact's username
+	 * @param history Chats retrieved from the server since the watermark
+	 * @return All the chats held for the conversation, in chronological order
+	 * @throws IOException If the conversation file cannot be written
+	 */
+	public synchronized List<ChatMessage> synchronize(String contact, ChatHistory history) throws IOException {
+		Conversation conversation = getConversation(contact);
+		List<ChatMessage> newChats = new ArrayList<ChatMessage>();
+		LocalDateTime watermark = conversation.watermark;
+		for (ChatMessage chat : history.getChats()) {
+			if (conversation.add(chat))
+				newChats.add(chat);
+			if (watermark == null || chat.getTimeStamp().isAfter(watermark))
+				watermark = chat.getTimeStamp();
+		}
+		if (!newChats.isEmpty() || watermark != conversation.watermark) {
+			conversation.watermark = watermark;
+			append(conversation, newChats, watermark);
+		}
+		return getChats(contact);
+	}
+
+	@Override
+	public synchronized void chatMessageReceived(ChatMessage message) {
+		//Group conversations are not stored, they are retrieved from the server when opened
+		if (message instanceof GroupMessage)
+			return;
+		String contact = message.getSender().equalsIgnoreCase(account) ? message.getRecipient() : message.getSender();
+		try {
+			Conversation conversation = getConversation(contact);
+			if (conversation.add(message))
+				append(conversation, Collections.singletonList(message), null);
+		}
+		//The chat is still held in memory, and is retrieved again on the next synchronization otherwise
+		catch (IOException ex) {}
+	}
+
+	//__________________________________________________Storage____________________________________________________
+
+	//Method returning a conversation, loading it from its file the first time it is used
+	private Conversation getConversation(String contact) throws IOException {
+		String key = contact.toLowerCase(Locale.ROOT);
+		Conversation conversation = conversations.get(key);
+		if (conversation == null) {
+			conversation = new Conversation(new File(directory, fileName(contact) + FILE_EXTENSION));
+			if (conversation.file.exists())
+				load(conversation);
+			conversations.put(key, conversation);
+		}
+		return conversation;
+	}
+
+	//Method reading a conversation file, discarding a partially written last record
+	private static void load(Conversation conversation) throws IOException {
+		byte[] contents = Files.readAllBytes(conversation.file.toPath());
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(contents));
+		int validLength = 0;
+		try {
+			while (input.available() > 0) {
+				byte recordType = input.readByte();
+				if (recordType == CHAT_RECORD || recordType == LONG_CHAT_RECORD) {
+					String sender = input.readUTF(), recipient = input.readUTF();
+					String body;
+					if (recordType == LONG_CHAT_RECORD) {
+						byte[] bytes = new byte[input.readInt()];
+						input.readFully(bytes);
+						body = new String(bytes, StandardCharsets.UTF_8);
+					}
+					else
+						body = input.readUTF();
+					conversation.add(new ChatMessage(sender, recipient, body, LocalDateTime.parse(input.readUTF())));
+				}
+				else if (recordType == WATERMARK_RECORD) {
+					conversation.watermark = LocalDateTime.parse(input.readUTF());
+				}
+				else {
+					break;
+				}
+				validLength = contents.length - input.available();
+			}
+		}
+		catch (EOFException ex) {}
+		//Truncating whatever follows the last complete record, so that new records are appended after it
+		if (validLength < contents.length) {
+			try (RandomAccessFile file = new RandomAccessFile(conversation.file, "rw")) {
+				file.setLength(validLength);
+			}
+		}
+	}
+
+	//Method appending chats and optionally a watermark to a conversation file
+	private void append(Conversation conversation, List<ChatMessage> chats, LocalDateTime watermark)
+			throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Unable to create the message store directory " + directory);
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(conversation.file, true)))) {
+			for (ChatMessage chat : chats) {
+				byte[] body = chat.getBody().getBytes(StandardCharsets.UTF_8);
+				output.writeByte(LONG_CHAT_RECORD);
+				output.writeUTF(chat.getSender());
+				output.writeUTF(chat.getRecipient());
+				output.writeInt(body.length);
+				output.write(body);
+				output.writeUTF(chat.getTimeStamp().toString());
+			}
+			if (watermark != null) {
+				output.writeByte(WATERMARK_RECORD);
+				output.writeUTF(watermark.toString());
+			}
+		}
+	}
+
+	//Method encoding a username into a file name, usernames being case insensitive
+	private static String fileName(String username) {
+		try {
+			return URLEncoder.encode(username.toLowerCase(Locale.ROOT), "UTF-8");
+		}
+		catch (UnsupportedEncodingException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * The {@code LoopbackTransport} class is an in-process stand-in for {@code SocketTransport}, linking
+ * several {@code ClusterNode}s running in the same JVM, so that a whole cluster can be exercised on a
+ * single machine (e.g. in tests) without opening any sockets. Each node receives its messages on
+ * its own thread, in the order they were sent.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class LoopbackTransport implements ClusterTransport {
+
+	private final LoopbackTransport[] network;
+	private final int nodeId;
+	private final ExecutorService inbound;
+	private volatile ClusterNode node;
+
+	private LoopbackTransport(LoopbackTransport[] network, int nodeId) {
+		this.network = network;
+		this.nodeId = nodeId;
+		inbound = Executors.newSingleThreadExecutor(runnable -> {
+			Thread inboundThread = new Thread(runnable, "loopback-node-" + nodeId);
+			inboundThread.setDaemon(true);
+			return inboundThread;
+		});
+	}
+
+	/**
+	 * Creates the transports of a cluster of the given size, the transport of node {@code n} being at
+	 * index {@code n}.
+	 *
+	 * @param nodeCount Number of nodes in the cluster
+	 * @return Linked transports
+	 */
+	static LoopbackTransport[] network(int nodeCount) {
+		LoopbackTransport[] network = new LoopbackTransport[nodeCount];
+		for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+			network[nodeId] = new LoopbackTransport(network, nodeId);
+		}
+		return network;
+	}
+
+	@Override
+	public void start(ClusterNode node) {
+		this.node = node;
+		//Announcing this node to the nodes already running
+		for (LoopbackTransport peer : network) {
+			if (peer != this)
+				peer.enqueue(peerNode -> peerNode.peerUp(nodeId));
+		}
+	}
+
+	@Override
+	public void send(int node, ClusterMessage message) throws IOException {
+		if (!network[node].enqueue(peerNode -> peerNode.receive(message)))
+			throw new IOException("Node " + node + " is not running");
+	}
+
+	@Override
+	public void close() {
+		node = null;
+		inbound.shutdown();
+		for (LoopbackTransport peer : network) {
+			if (peer != this)
+				peer.enqueue(peerNode -> peerNode.peerDown(nodeId));
+		}
+	}
+
+	//Method queueing a task on this node's inbound thread, returning false if the node is not running
+	private boolean enqueue(Consumer<ClusterNode> task) {
+		ClusterNode node = this.node;
+		if (node == null)
+			return false;
+		try {
+			inbound.execute(() -> task.accept(node));
+			return true;
+		}
+		catch (RejectedExecutionException ex) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The {@code MemoryChatStore} class keeps the chats in memory, each conversation's in a list of its
+ * own, so that chats sent in different conversations never contend. Chats are lost when the server
+ * stops; the store serves benchmarks and load tests.
+ * <p>
+ * Conversations are keyed by the IDs of their participants, and every chat holds the names of the
+ * {@code UserDirectory} rather than copies of its own, so that millions of chats share a name per user.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class MemoryChatStore implements ChatStore {
+
+	private final UserDirectory users;
+	private final IdMap<List<ChatMessage>> conversations;
+
+	/**
+	 * Creates new, empty {@code MemoryChatStore}.
+	 *
+	 * @param users Directory the participants of the chats are identified by
+	 */
+	MemoryChatStore(UserDirectory users) {
+		this.users = users;
+		conversations = new IdMap<List<ChatMessage>>();
+	}
+
+	@Override
+	public void store(ChatMessage chat) {
+		int sender = users.id(chat.getSender()), recipient = users.id(chat.getRecipient());
+		List<ChatMessage> chats = conversations.computeIfAbsent(UserDirectory.conversation(sender, recipient),
+				key -> new ArrayList<ChatMessage>());
+		ChatMessage stored = new ChatMessage(users.name(sender), users.name(recipient), chat.getBody(),
+				chat.getTimeStamp());
+		synchronized (chats) {
+			chats.add(stored);
+		}
+	}
+
+	@Override
+	public List<ChatMessage> retrieve(String participant1, String participant2, LocalDateTime since) {
+		List<ChatMessage> matches = new ArrayList<ChatMessage>();
+		int id1 = users.find(participant1), id2 = users.find(participant2);
+		List<ChatMessage> chats = id1 == UserDirectory.UNKNOWN || id2 == UserDirectory.UNKNOWN ? null
+				: conversations.get(UserDirectory.conversation(id1, id2));
+		if (chats == null)
+			return matches;
+		synchronized (chats) {
+			for (ChatMessage chat : chats) {
+				if (since == null || !chat.getTimeStamp().isBefore(since))
+					matches.add(chat);
+			}
+		}
+		//Restoring chronological order, should chats have been sent out of it
+		matches.sort(Comparator.comparing(ChatMessage::getTimeStamp));
+		return matches;
+	}
+
+	@Override
+	public void close() {}
+}
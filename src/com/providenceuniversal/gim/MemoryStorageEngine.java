@@ -0,0 +1,269 @@
+package com.providenceuniversal.gim;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The {@code MemoryStorageEngine} class keeps the users, group conversations, chats, conversation
+ * summaries and receipts in concurrent maps rather than in the database, so that the server can be
+ * benchmarked and load tested without any disk I/O, and storage engines compared on the same workload.
+ * Everything is lost when the server stops. Names are looked up case insensitively, as the database's {@code NOCASE} columns are.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class MemoryStorageEngine implements StorageEngine {
+
+	/**
+	 * The {@code UserRecord} class holds a user's credentials and the time they were last seen online.
+	 */
+	private static final class UserRecord {
+		private final String username, password;
+		private volatile LocalDateTime lastSeen;
+
+		UserRecord(String username, String password, LocalDateTime lastSeen) {
+			this.username = username;
+			this.password = password;
+			this.lastSeen = lastSeen;
+		}
+	}
+
+	/**
+	 * The {@code GroupRecord} class holds a group's members and messages.
+	 */
+	private static final class GroupRecord {
+		private final String name;
+		private final List<String> members = new CopyOnWriteArrayList<String>();
+		private final List<GroupMessage> messages = new ArrayList<GroupMessage>();
+
+		GroupRecord(String name) {
+			this.name = name;
+		}
+	}
+
+	private final ConcurrentHashMap<String, UserRecord> users;
+	private final ConcurrentHashMap<String, GroupRecord> groups;
+	//Summaries of each user's conversations, keyed by user and then by the other participant
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, ConversationSummary>> conversations;
+	//Latest receipt of each watermark
+	private final ConcurrentHashMap<String, Receipt> receipts;
+	private final ChatStore chatStore;
+
+	/**
+	 * Creates new, empty {@code MemoryStorageEngine}.
+	 *
+	 * @param directory Directory the participants of the chats are identified by
+	 */
+	MemoryStorageEngine(UserDirectory directory) {
+		users = new ConcurrentHashMap<String, UserRecord>();
+		groups = new ConcurrentHashMap<String, GroupRecord>();
+		conversations = new ConcurrentHashMap<String, ConcurrentHashMap<String, ConversationSummary>>();
+		receipts = new ConcurrentHashMap<String, Receipt>();
+		chatStore = new MemoryChatStore(directory);
+	}
+
+	//_____________________________________________Users______________________________________________
+
+	@Override
+	public String findUser(String username) {
+		UserRecord user = users.get(key(username));
+		return user == null ? null : user.username;
+	}
+
+	@Override
+	public String authenticate(String username, String password) {
+		UserRecord user = users.get(key(username));
+		return user == null || !user.password.equals(password) ? null : user.username;
+	}
+
+	@Override
+	public void createUser(String username, String password, LocalDateTime lastSeen) throws SQLException {
+		if (users.putIfAbsent(key(username), new UserRecord(username, password, lastSeen)) != null)
+			throw new SQLException("The username '" + username + "' is already in use");
+	}
+
+	@Override
+	public void deleteUser(String username) {
+		users.remove(key(username));
+		conversations.remove(key(username));
+		receipts.values().removeIf(receipt -> receipt.getReader().equalsIgnoreCase(username));
+	}
+
+	//____________________________________________Presence____________________________________________
+
+	@Override
+	public void updateLastSeen(String username, LocalDateTime lastSeen) {
+		UserRecord user = users.get(key(username));
+		if (user != null)
+			user.lastSeen = lastSeen;
+	}
+
+	@Override
+	public Map<String, LocalDateTime> lastSeenTimes() {
+		Map<String, LocalDateTime> lastSeenTimes = new LinkedHashMap<String, LocalDateTime>();
+		for (UserRecord user : users.values())
+			lastSeenTimes.put(user.username, user.lastSeen);
+		return lastSeenTimes;
+	}
+
+	//____________________________________________Messages____________________________________________
+
+	@Override
+	public ChatStore getChatStore() {
+		return chatStore;
+	}
+
+	@Override
+	public void storeGroupMessage(GroupMessage message) {
+		GroupRecord group = groups.get(key(message.getGroup()));
+		if (group == null)
+			return;
+		synchronized (group.messages) {
+			group.messages.add(message);
+		}
+	}
+
+	@Override
+	public List<ChatMessage> retrieveGroupMessages(String group, LocalDateTime since) {
+		List<ChatMessage> matches = new ArrayList<ChatMessage>();
+		GroupRecord record = groups.get(key(group));
+		if (record == null)
+			return matches;
+		synchronized (record.messages) {
+			for (GroupMessage message : record.messages) {
+				if (since == null || !message.getTimeStamp().isBefore(since))
+					matches.add(message);
+			}
+		}
+		matches.sort(Comparator.comparing(ChatMessage::getTimeStamp));
+		return matches;
+	}
+
+	//__________________________________________Conversations_________________________________________
+
+	@Override
+	public void updateConversations(ChatMessage chat) {
+		updateSummary(chat.getSender(), chat.getRecipient(), chat, 0);
+		updateSummary(chat.getRecipient(), chat.getSender(), chat, 1);
+	}
+
+	@Override
+	public void markConversationRead(String username, String partner) {
+		ConcurrentHashMap<String, ConversationSummary> summaries = conversations.get(key(username));
+		if (summaries != null)
+			summaries.computeIfPresent(key(partner), (key, summary) -> summary.getUnread() == 0 ? summary
+					: new ConversationSummary(summary.getPartner(), summary.getLastMessage(), 0));
+	}
+
+	@Override
+	public void storeReceipts(List<Receipt> receipts) {
+		for (Receipt receipt : receipts) {
+			this.receipts.merge(receipt.watermark(), receipt, (stored, later) ->
+			stored.getUpTo().isAfter(later.getUpTo()) ? stored : later);
+			//Clearing the reader's unread messages once the receipt reaches the last of them
+			ConcurrentHashMap<String, ConversationSummary> summaries = conversations.get(key(receipt.getReader()));
+			if (receipt.getType() == Receipt.Type.READ && summaries != null)
+				summaries.computeIfPresent(key(receipt.getSender()), (key, summary) -> summary.getUnread() == 0
+						|| summary.getLastMessage().getTimeStamp().isAfter(receipt.getUpTo()) ? summary
+								: new ConversationSummary(summary.getPartner(), summary.getLastMessage(), 0));
+		}
+	}
+
+	@Override
+	public List<ConversationSummary> findConversations(String username) {
+		ConcurrentHashMap<String, ConversationSummary> summaries = conversations.get(key(username));
+		List<ConversationSummary> matches = new ArrayList<ConversationSummary>();
+		if (summaries != null) {
+			for (ConversationSummary summary : summaries.values()) {
+				//Adding how far the other participant has received and read the user's chats
+				matches.add(new ConversationSummary(summary.getPartner(), summary.getLastMessage(),
+						summary.getUnread(), upTo(summary.getPartner(), username, Receipt.Type.DELIVERED),
+						upTo(summary.getPartner(), username, Receipt.Type.READ)));
+			}
+		}
+		matches.sort(Comparator.comparing((ConversationSummary conversation) ->
+				conversation.getLastMessage().getTimeStamp()).reversed());
+		return matches;
+	}
+
+	//_____________________________________________Groups_____________________________________________
+
+	@Override
+	public String findGroup(String group) {
+		GroupRecord record = group == null ? null : groups.get(key(group));
+		return record == null ? null : record.name;
+	}
+
+	@Override
+	public void createGroup(String group, String creator, LocalDateTime created) throws SQLException {
+		if (groups.putIfAbsent(key(group), new GroupRecord(group)) != null)
+			throw new SQLException("The group name '" + group + "' is already in use");
+	}
+
+	@Override
+	public void deleteGroup(String group) {
+		groups.remove(key(group));
+	}
+
+	@Override
+	public List<String> findGroupMembers(String group) {
+		GroupRecord record = groups.get(key(group));
+		return record == null ? new ArrayList<String>() : new ArrayList<String>(record.members);
+	}
+
+	@Override
+	public Map<String, List<String>> findGroups(String username) {
+		Map<String, List<String>> memberships = new LinkedHashMap<String, List<String>>();
+		for (GroupRecord group : groups.values()) {
+			if (group.members.stream().anyMatch(member -> member.equalsIgnoreCase(username)))
+				memberships.put(group.name, new ArrayList<String>(group.members));
+		}
+		return memberships;
+	}
+
+	@Override
+	public void addGroupMembers(String group, List<String> members) {
+		GroupRecord record = groups.get(key(group));
+		if (record != null)
+			record.members.addAll(members);
+	}
+
+	@Override
+	public void removeGroupMember(String group, String member) {
+		GroupRecord record = groups.get(key(group));
+		if (record != null)
+			record.members.removeIf(name -> name.equalsIgnoreCase(member));
+	}
+
+	//_______________________________________________________________________________________________
+
+	@Override
+	public void close() {}
+
+	//Method recording a chat in a user's summary of a conversation, counting it as unread or not
+	private void updateSummary(String username, String partner, ChatMessage chat, int unread) {
+		conversations.computeIfAbsent(key(username), key -> new ConcurrentHashMap<String, ConversationSummary>())
+		.merge(key(partner), new ConversationSummary(partner, chat, unread), (summary, update) ->
+		new ConversationSummary(summary.getPartner(), summary.getLastMessage().getTimeStamp()
+				.isAfter(chat.getTimeStamp()) ? summary.getLastMessage() : chat, summary.getUnread() + unread));
+	}
+
+	//Method returning how far a reader has acknowledged the chats of a sender, or null if they have not
+	private LocalDateTime upTo(String reader, String sender, Receipt.Type type) {
+		Receipt receipt = receipts.get(Receipt.watermark(reader, sender, type));
+		return receipt == null ? null : receipt.getUpTo();
+	}
+
+	//Method returning the key a name is looked up by, names being case insensitive
+	private static String key(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+}
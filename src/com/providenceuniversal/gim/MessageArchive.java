@@ -0,0 +1,252 @@
+package com.providenceuniversal.gim;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The {@code MessageArchive} class is the cold tier of the chats: immutable, compressed segment files,
+ * each holding the chats of one conversation moved out of {@code Chat_Messages} by one archiving run.
+ * A small index file lists every segment's conversation and time span; it is held in memory, so that
+ * reading a conversation's history only opens the segments reaching the requested time. Archived chats
+ * found by a search are read from the one segment the {@code MessageIndex} recorded them in.
+ * <p>
+ * Chats are identified by their {@code Chat_Messages} ID, which is the chat's hash code and so may be
+ * taken again by a later chat once the first is archived. Reading a conversation only merges the chats of
+ * two segments which have both the same ID and equal contents, as an interrupted archiving run leaves.
+ * <p>
+ * A segment is written to a temporary file and renamed into place before its entry is appended to the
+ * index, so the index only ever lists complete segments. An entry cut short by a crash is dropped (and
+ * the index truncated) when the archive is opened.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class MessageArchive {
+
+	/**
+	 * The {@code Segment} class is the index entry of a segment file.
+	 */
+	private static final class Segment {
+		private final long number;
+		//Time stamp of the last chat of the segment
+		private final LocalDateTime last;
+
+		Segment(long number, LocalDateTime last) {
+			this.number = number;
+			this.last = last;
+		}
+	}
+
+	private static final String INDEX_FILE = "index", SEGMENT_EXTENSION = ".seg";
+	/*Identifies segment files and the version of their format, version 1 having written bodies as modified
+	 *UTF-8 and so no longer than 65535 bytes, and version 2 writing them as UTF-8 of any length
+	 */
+	private static final int SEGMENT_MAGIC = 0x47494D53, SEGMENT_VERSION = 2;
+
+	private final Path directory;
+	private final FileChannel index;
+	//Segments of each conversation, in the order they were archived (and so in chronological order)
+	private final ConcurrentHashMap<String, List<Segment>> conversations;
+	private long nextSegment;
+
+	/**
+	 * Opens the archive in the given directory, creating it if needed.
+	 *
+	 * @param directory Directory of the segment and index files
+	 * @throws IOException If the index cannot be read
+	 */
+	MessageArchive(Path directory) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		conversations = new ConcurrentHashMap<String, List<Segment>>();
+		index = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		loadIndex(Files.readAllBytes(directory.resolve(INDEX_FILE)));
+	}
+
+	//Method reading the index entries, truncating the index after the last complete one
+	private void loadIndex(byte[] contents) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(contents);
+		DataInputStream entries = new DataInputStream(bytes);
+		long validLength = 0;
+		try {
+			while (bytes.available() > 0) {
+				String participant1 = entries.readUTF(), participant2 = entries.readUTF();
+				long number = entries.readLong();
+				//Skipping the time stamp of the first chat, which only documents the segment's time span
+				entries.readUTF();
+				LocalDateTime last = Timestamp.valueOf(entries.readUTF()).toLocalDateTime();
+				segments(participant1, participant2).add(new Segment(number, last));
+				nextSegment = Math.max(nextSegment, number + 1);
+				validLength = contents.length - bytes.available();
+			}
+		}
+		//Reaching the middle of an entry cut short by a crash
+		catch (EOFException | IllegalArgumentException ex) {}
+		index.truncate(validLength);
+		index.position(validLength);
+	}
+
+	/**
+	 * Appends the chats of one conversation to the archive as a new segment, durably.
+	 *
+	 * @param participant1 One of the participants
+	 * @param participant2 The other of the participants
+	 * @param chats The chats keyed by their {@code Chat_Messages} ID, in chronological order
+	 * @return Number of the new segment, or -1 if there were no chats to append
+	 * @throws IOException If the segment or its index entry cannot be written
+	 */
+	synchronized long append(String participant1, String participant2, Map<Integer, ChatMessage> chats)
+			throws IOException {
+		if (chats.isEmpty())
+			return -1;
+		long number = nextSegment++;
+		Path temporary = directory.resolve(number + SEGMENT_EXTENSION + ".tmp");
+		try (FileChannel segment = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			segment.write(ByteBuffer.wrap(encode(chats)));
+			segment.force(true);
+		}
+		Files.move(temporary, segmentFile(number), StandardCopyOption.ATOMIC_MOVE);
+
+		List<ChatMessage> ordered = new ArrayList<ChatMessage>(chats.values());
+		LocalDateTime first = ordered.get(0).getTimeStamp(), last = ordered.get(ordered.size() - 1).getTimeStamp();
+		ByteArrayOutputStream entry = new ByteArrayOutputStream();
+		try (DataOutputStream entryOutput = new DataOutputStream(entry)) {
+			entryOutput.writeUTF(participant1);
+			entryOutput.writeUTF(participant2);
+			entryOutput.writeLong(number);
+			entryOutput.writeUTF(Timestamp.valueOf(first).toString());
+			entryOutput.writeUTF(Timestamp.valueOf(last).toString());
+		}
+		index.write(ByteBuffer.wrap(entry.toByteArray()));
+		index.force(false);
+		segments(participant1, participant2).add(new Segment(number, last));
+		return number;
+	}
+
+	/**
+	 * Reads the archived chats between two participants sent at or after the given time.
+	 *
+	 * @param participant1 One of the participants
+	 * @param participant2 The other of the participants
+	 * @param since Time stamp of the earliest chat to read, or {@code null} for all of them
+	 * @return The chats, in chronological order
+	 * @throws IOException If a segment cannot be read
+	 */
+	List<ChatMessage> read(String participant1, String participant2, LocalDateTime since) throws IOException {
+		List<ChatMessage> chats = new ArrayList<ChatMessage>();
+		List<Segment> segments = conversations.get(ChatStore.conversation(participant1, participant2));
+		if (segments == null)
+			return chats;
+		//Chats already read by ID, the same chat archived twice by an interrupted run being read once
+		Set<Map.Entry<Integer, ChatMessage>> seen = new HashSet<Map.Entry<Integer, ChatMessage>>();
+		for (Segment segment : segments) {
+			//Only opening the segments reaching the requested time
+			if (since != null && segment.last.isBefore(since))
+				continue;
+			for (Map.Entry<Integer, ChatMessage> chat : read(segment.number).entrySet()) {
+				if ((since == null || !chat.getValue().getTimeStamp().isBefore(since)) && seen.add(chat))
+					chats.add(chat.getValue());
+			}
+		}
+		return chats;
+	}
+
+	/**
+	 * Reads every chat of one segment, as a search resolves the archived chats it found.
+	 *
+	 * @param segment Number of the segment, as returned when it was appended
+	 * @return The chats keyed by their {@code Chat_Messages} ID, in chronological order
+	 * @throws IOException If the segment cannot be read
+	 */
+	Map<Integer, ChatMessage> read(long segment) throws IOException {
+		Map<Integer, ChatMessage> chats = new LinkedHashMap<Integer, ChatMessage>();
+		try (DataInputStream records = new DataInputStream(new InflaterInputStream(new BufferedInputStream(
+				Files.newInputStream(segmentFile(segment)))))) {
+			int version = records.readInt() == SEGMENT_MAGIC ? records.readInt() : 0;
+			if (version < 1 || version > SEGMENT_VERSION)
+				throw new IOException("Unrecognized archive segment " + segment);
+			for (int count = records.readInt(); count > 0; count--) {
+				int id = records.readInt();
+				String sender = records.readUTF(), recipient = records.readUTF();
+				String body = version == 1 ? records.readUTF() : readBody(records);
+				chats.put(id, new ChatMessage(sender, recipient, body,
+						Timestamp.valueOf(records.readUTF()).toLocalDateTime()));
+			}
+		}
+		return chats;
+	}
+
+	/**
+	 * Closes the index file.
+	 *
+	 * @throws IOException If the index cannot be closed
+	 */
+	void close() throws IOException {
+		index.close();
+	}
+
+	//Method encoding the chats of a segment, compressed
+	private static byte[] encode(Map<Integer, ChatMessage> chats) throws IOException {
+		ByteArrayOutputStream segment = new ByteArrayOutputStream();
+		try (DataOutputStream records = new DataOutputStream(new DeflaterOutputStream(segment))) {
+			records.writeInt(SEGMENT_MAGIC);
+			records.writeInt(SEGMENT_VERSION);
+			records.writeInt(chats.size());
+			for (Map.Entry<Integer, ChatMessage> chat : chats.entrySet()) {
+				records.writeInt(chat.getKey());
+				records.writeUTF(chat.getValue().getSender());
+				records.writeUTF(chat.getValue().getRecipient());
+				writeBody(records, chat.getValue().getBody());
+				records.writeUTF(Timestamp.valueOf(chat.getValue().getTimeStamp()).toString());
+			}
+		}
+		return segment.toByteArray();
+	}
+
+	//Method writing a chat's body as its length followed by its UTF-8 bytes, however long it is
+	private static void writeBody(DataOutputStream records, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		records.writeInt(bytes.length);
+		records.write(bytes);
+	}
+
+	private static String readBody(DataInputStream records) throws IOException {
+		byte[] bytes = new byte[records.readInt()];
+		records.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	//Method returning the segment list of a conversation, creating it if needed
+	private List<Segment> segments(String participant1, String participant2) {
+		return conversations.computeIfAbsent(ChatStore.conversation(participant1, participant2),
+				key -> new CopyOnWriteArrayList<Segment>());
+	}
+
+	private Path segmentFile(long number) {
+		return directory.resolve(number + SEGMENT_EXTENSION);
+	}
+}
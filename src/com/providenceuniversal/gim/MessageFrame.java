@@ -0,0 +1,70 @@
+package com.providenceuniversal.gim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * The {@code MessageFrame} class is a {@code ServerMessage} serialized once into an immutable frame of
+ * bytes, so that pushing a message to many clients (e.g. a broadcast notification or a group message)
+ * costs a single serialization however many recipients it has. The same frame is written to every
+ * recipient's socket as it is, beneath the connection's {@code ObjectOutputStream}.
+ * <p>
+ * A frame starts by resetting the client's stream, so that the handles of the serialized message match
+ * those of a new stream, and is read by the client as any other object; clients need no support for it.
+ * The connection's own stream must be reset before it writes anything after a frame.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class MessageFrame implements ServerMessage {
+
+	private static final long serialVersionUID = 6313409207953734472L;
+	//Length of the header every new ObjectOutputStream writes, which frames leave out
+	private static final int STREAM_HEADER_LENGTH = 4;
+	private final byte[] frame;
+
+	private MessageFrame(byte[] frame) {
+		this.frame = frame;
+	}
+
+	/**
+	 * Serializes a message into a frame.
+	 *
+	 * @param message The message
+	 * @return The frame
+	 * @throws IllegalArgumentException If the message cannot be serialized
+	 */
+	static MessageFrame encode(ServerMessage message) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.reset();
+			output.writeObject(message);
+		}
+		catch (IOException ex) {
+			throw new IllegalArgumentException("Unable to serialize " + message.getClass().getSimpleName(), ex);
+		}
+		byte[] serialized = bytes.toByteArray();
+		byte[] frame = new byte[serialized.length - STREAM_HEADER_LENGTH];
+		System.arraycopy(serialized, STREAM_HEADER_LENGTH, frame, 0, frame.length);
+		return new MessageFrame(frame);
+	}
+
+	/**
+	 * Writes the frame to a connection's socket, in a single write.
+	 *
+	 * @param socketOutput The socket's output stream, beneath the connection's {@code ObjectOutputStream}
+	 * @throws IOException If the frame cannot be written
+	 */
+	void writeTo(OutputStream socketOutput) throws IOException {
+		socketOutput.write(frame);
+		socketOutput.flush();
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	int getLength() {
+		return frame.length;
+	}
+}
@@ -0,0 +1,335 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code MessageIndex} class is the full-text index of the chats, an inverted index stored in the
+ * {@code Message_Terms} table beside {@code Chat_Messages}. Each word of a chat is posted once for the
+ * sender and once for the recipient, keyed by user, word and time stamp, so that searching a user's
+ * conversations for a word is a range scan of that user's postings of the word, newest first, however
+ * many chats other users exchanged. Chats are indexed as they are sent, and the index can be rebuilt
+ * from {@code Chat_Messages} at any time.
+ * <p>
+ * Chats moved to the {@code MessageArchive} keep their postings, the {@code Archived_Chats} table
+ * recording the segment each was archived in, so that a search resolves the archived chats it finds by
+ * reading only the segments holding them. Since archived chats never change, rebuilding the index keeps
+ * their postings. Chats are matched by both ID and time stamp, as the ID of an archived chat (its hash
+ * code) may be taken again by a later chat.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class MessageIndex {
+
+	/**
+	 * The {@code Hit} class is a chat found by a search, read from {@code Chat_Messages} or yet to be
+	 * read from the archive segment it was moved to.
+	 */
+	private static final class Hit {
+		private final int id;
+		private final LocalDateTime timeStamp;
+		private final ChatMessage chat;
+		private final long segment;
+
+		Hit(int id, LocalDateTime timeStamp, ChatMessage chat, long segment) {
+			this.id = id;
+			this.timeStamp = timeStamp;
+			this.chat = chat;
+			this.segment = segment;
+		}
+	}
+
+	//Longest word indexed, longer "words" (e.g. links) being left out
+	private static final int MAX_TERM_LENGTH = 45;
+	//Largest page of results served, whatever page size is requested
+	static final int MAX_PAGE_SIZE = 100;
+	//Postings inserted per statement, keeping within SQLite's limit of 999 parameters
+	private static final int POSTINGS_PER_STATEMENT = 240;
+	//Archived chats recorded per statement, keeping within the same limit
+	private static final int ARCHIVED_PER_STATEMENT = 320;
+	//Chats read at a time while rebuilding the index
+	private static final int REBUILD_BATCH_SIZE = 1000;
+
+	private final Connection connection;
+	private final MessageArchive archive;
+	private final ServerMetrics metrics;
+
+	/**
+	 * Creates new {@code MessageIndex} over the given database connection.
+	 *
+	 * @param connection Connection to the database holding {@code Chat_Messages}
+	 * @param archive Archive the archived chats found by searches are read from
+	 * @param metrics Statistics the searches are recorded in
+	 */
+	MessageIndex(Connection connection, MessageArchive archive, ServerMetrics metrics) {
+		this.connection = connection;
+		this.archive = archive;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Creates the index tables if they do not exist yet.
+	 *
+	 * @return Whether the table was created, in which case the index must be built
+	 * @throws SQLException If the table cannot be created
+	 */
+	boolean create() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			boolean existed;
+			try (ResultSet table = statement.executeQuery("SELECT 1 FROM sqlite_master"
+					+ " WHERE type = 'table' AND name = 'Message_Terms'")) {
+				existed = table.next();
+			}
+			statement.execute("CREATE TABLE IF NOT EXISTS Message_Terms (Username VARCHAR (45) NOT NULL"
+					+ " COLLATE NOCASE, Term VARCHAR (45) NOT NULL, Timestamp DATETIME NOT NULL,"
+					+ " Message_ID INT NOT NULL, PRIMARY KEY (Username, Term, Timestamp, Message_ID)) WITHOUT ROWID");
+			statement.execute("CREATE TABLE IF NOT EXISTS Archived_Chats (ID INT NOT NULL, Timestamp DATETIME NOT NULL,"
+					+ " Segment INT NOT NULL, PRIMARY KEY (ID, Timestamp)) WITHOUT ROWID");
+			return !existed;
+		}
+	}
+
+	/**
+	 * Splits text into the distinct words it is indexed and searched by: lower case runs of letters and
+	 * digits.
+	 *
+	 * @param text The text
+	 * @return The words, in order of appearance
+	 */
+	static Set<String> terms(String text) {
+		Set<String> terms = new LinkedHashSet<String>();
+		if (text == null)
+			return terms;
+		for (String term : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+			if (!term.isEmpty() && term.length() <= MAX_TERM_LENGTH)
+				terms.add(term);
+		}
+		return terms;
+	}
+
+	/**
+	 * Indexes a chat that has just been stored.
+	 *
+	 * @param id ID the chat is stored under in {@code Chat_Messages}
+	 * @param chat The chat
+	 * @throws SQLException If the postings cannot be stored
+	 */
+	void index(int id, ChatMessage chat) throws SQLException {
+		List<Object[]> postings = new ArrayList<Object[]>();
+		addPostings(postings, id, chat.getSender(), chat.getRecipient(), chat.getBody(),
+				Timestamp.valueOf(chat.getTimeStamp()).toString());
+		insert(postings);
+	}
+
+	/**
+	 * Records the archive segment chats were moved to, keeping their postings, so that searches still
+	 * find them once they left {@code Chat_Messages}.
+	 *
+	 * @param segment Number of the segment the chats were archived in
+	 * @param chats The chats keyed by the ID they were stored under
+	 * @throws SQLException If the segment cannot be recorded
+	 */
+	void archived(long segment, Map<Integer, ChatMessage> chats) throws SQLException {
+		List<Map.Entry<Integer, ChatMessage>> remaining
+				= new ArrayList<Map.Entry<Integer, ChatMessage>>(chats.entrySet());
+		for (int start = 0; start < remaining.size(); start += ARCHIVED_PER_STATEMENT) {
+			List<Map.Entry<Integer, ChatMessage>> chunk = remaining.subList(start,
+					Math.min(start + ARCHIVED_PER_STATEMENT, remaining.size()));
+			String rows = String.join(",", Collections.nCopies(chunk.size(), "(?, ?, ?)"));
+			//Replacing the segment of chats an interrupted run archived before, which are in both segments
+			try (PreparedStatement insertion = connection.prepareStatement(
+					"INSERT OR REPLACE INTO Archived_Chats (ID, Timestamp, Segment) VALUES " + rows)) {
+				int parameter = 1;
+				for (Map.Entry<Integer, ChatMessage> chat : chunk) {
+					insertion.setInt(parameter++, chat.getKey());
+					insertion.setString(parameter++, Timestamp.valueOf(chat.getValue().getTimeStamp()).toString());
+					insertion.setLong(parameter++, segment);
+				}
+				insertion.executeUpdate();
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the index from every chat stored in {@code Chat_Messages}, keeping the postings of the
+	 * archived chats.
+	 *
+	 * @return Number of chats indexed
+	 * @throws SQLException If the chats cannot be read or the postings stored
+	 */
+	long rebuild() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DELETE FROM Message_Terms WHERE NOT EXISTS (SELECT 1 FROM Archived_Chats"
+					+ " WHERE Archived_Chats.ID = Message_ID AND Archived_Chats.Timestamp = Message_Terms.Timestamp)");
+		}
+		long indexed = 0;
+		//Reading the chats in batches of ascending IDs, so that no batch rereads the previous ones
+		try (PreparedStatement batchQuery = connection.prepareStatement("SELECT ID, Sender, Receiver, Body,"
+				+ " Timestamp FROM Chat_Messages WHERE ID > ? ORDER BY ID LIMIT " + REBUILD_BATCH_SIZE)) {
+			long lastId = Long.MIN_VALUE;
+			while (true) {
+				List<Object[]> postings = new ArrayList<Object[]>();
+				int batchSize = 0;
+				batchQuery.setLong(1, lastId);
+				try (ResultSet chats = batchQuery.executeQuery()) {
+					while (chats.next()) {
+						lastId = chats.getLong(1);
+						addPostings(postings, chats.getInt(1), chats.getString(2), chats.getString(3),
+								chats.getString(4), chats.getString(5));
+						batchSize++;
+					}
+				}
+				insert(postings);
+				indexed += batchSize;
+				if (batchSize < REBUILD_BATCH_SIZE)
+					return indexed;
+			}
+		}
+	}
+
+	/**
+	 * Searches the conversations of a user for the chats containing every word of the query.
+	 *
+	 * @param username The user searching
+	 * @param request The search request, whose query has at least one word
+	 * @return The page of matching chats, newest first
+	 * @throws SQLException If the index cannot be read
+	 * @throws IOException If the archived chats found cannot be read
+	 */
+	SearchResults search(String username, SearchRequest request) throws SQLException, IOException {
+		//Scanning the postings of the longest word, likely the rarest, and checking the others per posting
+		List<String> terms = terms(request.getQuery()).stream()
+				.sorted(Comparator.comparingInt(String::length).reversed()).collect(Collectors.toList());
+		int pageSize = Math.max(1, Math.min(request.getPageSize(), MAX_PAGE_SIZE));
+		StringBuilder query = new StringBuilder("SELECT Message_Terms.Message_ID, Message_Terms.Timestamp,"
+				+ " Chat_Messages.ID, Sender, Receiver, Body, Archived_Chats.Segment FROM Message_Terms"
+				+ " LEFT JOIN Chat_Messages ON Chat_Messages.ID = Message_Terms.Message_ID"
+				+ " AND Chat_Messages.Timestamp = Message_Terms.Timestamp"
+				+ " LEFT JOIN Archived_Chats ON Archived_Chats.ID = Message_Terms.Message_ID"
+				+ " AND Archived_Chats.Timestamp = Message_Terms.Timestamp"
+				+ " WHERE Message_Terms.Username = ? AND Message_Terms.Term = ?"
+				+ " AND (Chat_Messages.ID IS NOT NULL OR Archived_Chats.ID IS NOT NULL)");
+		//Bounding the scan by the cursor's time stamp, SQLite not deriving a range from the OR
+		if (request.getBefore() != null)
+			query.append(" AND Message_Terms.Timestamp <= ? AND (Message_Terms.Timestamp < ?"
+					+ " OR Message_Terms.Message_ID < ?)");
+		for (int term = 1; term < terms.size(); term++)
+			query.append(" AND EXISTS (SELECT 1 FROM Message_Terms Other WHERE Other.Username = ? AND Other.Term = ?"
+					+ " AND Other.Timestamp = Message_Terms.Timestamp AND Other.Message_ID = Message_Terms.Message_ID)");
+		//Reading one result more than the page holds, to tell whether there is a following page
+		query.append(" ORDER BY Message_Terms.Timestamp DESC, Message_Terms.Message_ID DESC LIMIT " + (pageSize + 1));
+
+		List<Hit> hits = metrics.timeDatabaseCall("Message_Terms.select", () -> {
+			try (PreparedStatement search = connection.prepareStatement(query.toString())) {
+				int parameter = 1;
+				search.setString(parameter++, username);
+				search.setString(parameter++, terms.get(0));
+				if (request.getBefore() != null) {
+					String before = Timestamp.valueOf(request.getBefore()).toString();
+					search.setString(parameter++, before);
+					search.setString(parameter++, before);
+					search.setInt(parameter++, request.getBeforeId());
+				}
+				for (String term : terms.subList(1, terms.size())) {
+					search.setString(parameter++, username);
+					search.setString(parameter++, term);
+				}
+				List<Hit> results = new ArrayList<Hit>();
+				try (ResultSet rows = search.executeQuery()) {
+					while (rows.next()) {
+						LocalDateTime timeStamp = Timestamp.valueOf(rows.getString(2)).toLocalDateTime();
+						//Reading the chats still in Chat_Messages (even if also archived) from their row
+						if (rows.getObject(3) != null)
+							results.add(new Hit(rows.getInt(1), timeStamp, new ChatMessage(rows.getString(4),
+									rows.getString(5), rows.getString(6), timeStamp), -1));
+						else
+							results.add(new Hit(rows.getInt(1), timeStamp, null, rows.getLong(7)));
+					}
+				}
+				return results;
+			}
+		});
+		boolean more = hits.size() > pageSize;
+		if (more)
+			hits = hits.subList(0, pageSize);
+
+		//Reading the archived chats found, each segment once however many of its chats are on the page
+		Map<Long, Map<Integer, ChatMessage>> segments = new HashMap<Long, Map<Integer, ChatMessage>>();
+		List<ChatMessage> chats = new ArrayList<ChatMessage>();
+		for (Hit hit : hits) {
+			ChatMessage chat = hit.chat;
+			if (chat == null) {
+				Map<Integer, ChatMessage> segment = segments.get(hit.segment);
+				if (segment == null) {
+					segment = archive.read(hit.segment);
+					segments.put(hit.segment, segment);
+				}
+				chat = segment.get(hit.id);
+			}
+			if (chat != null)
+				chats.add(chat);
+		}
+		//The following page starts after the last chat of this one
+		SearchRequest nextPage = null;
+		if (more) {
+			Hit last = hits.get(hits.size() - 1);
+			nextPage = new SearchRequest(request.getQuery(), pageSize, last.timeStamp, last.id);
+		}
+		return new SearchResults(chats, nextPage);
+	}
+
+	//Method adding the postings of a chat for both its participants
+	private static void addPostings(List<Object[]> postings, int id, String sender, String recipient,
+			String body, String timestamp) {
+		List<String> participants = sender.equalsIgnoreCase(recipient) ? Arrays.asList(sender)
+				: Arrays.asList(sender, recipient);
+		Set<String> terms = terms(body);
+		for (String participant : participants) {
+			for (String term : terms)
+				postings.add(new Object[] {participant, term, timestamp, id});
+		}
+	}
+
+	//Method storing postings, many per statement since each statement commits on its own
+	private void insert(List<Object[]> postings) throws SQLException {
+		execute("INSERT OR IGNORE INTO Message_Terms (Username, Term, Timestamp, Message_ID) VALUES ",
+				"(?, ?, ?, ?)", ",", postings);
+	}
+
+	//Method running a statement over postings, many per statement, each bound to a copy of the row clause
+	private void execute(String statementStart, String row, String separator, List<Object[]> postings)
+			throws SQLException {
+		for (int start = 0; start < postings.size(); start += POSTINGS_PER_STATEMENT) {
+			List<Object[]> chunk = postings.subList(start, Math.min(start + POSTINGS_PER_STATEMENT, postings.size()));
+			String rows = String.join(separator, Collections.nCopies(chunk.size(), row));
+			try (PreparedStatement statement = connection.prepareStatement(statementStart + rows)) {
+				int parameter = 1;
+				for (Object[] posting : chunk) {
+					statement.setString(parameter++, (String) posting[0]);
+					statement.setString(parameter++, (String) posting[1]);
+					statement.setString(parameter++, (String) posting[2]);
+					statement.setInt(parameter++, (Integer) posting[3]);
+				}
+				statement.executeUpdate();
+			}
+		}
+	}
+}
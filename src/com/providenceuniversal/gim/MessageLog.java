@@ -0,0 +1,405 @@
+package com.providenceuniversal.gim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code MessageLog} class stores the chats in an append-only log rather than in the database: a
+ * directory of segment files of fixed size (or the size of a chat too long for one), chats being appended
+ * to the last segment until it is full and a new one is started. Appending a chat is a single positional
+ * write, so it costs the same however many chats are stored; segments are memory mapped, so reading a
+ * chat back is a copy out of memory. An index of each conversation's chat positions and time stamps is
+ * held in memory, built by scanning the segments when the log is opened.
+ * <p>
+ * Each record is prefixed with its length and checksum. The log is forced to disk periodically (see
+ * {@link #flush()}), so a crash may leave the last segment ending in a record cut short or never
+ * written; when the log is opened, the scan stops at the first record failing its checksum and the
+ * segment is truncated there, the following chats being appended in its place.
+ * <p>
+ * Records name the sender and recipient by their IDs in the {@code UserDirectory}, which the log keeps
+ * in a dictionary file of its own so that the IDs mean the same users when the log is opened again. A
+ * user's entry is forced to the dictionary before the first record naming them is written. Records
+ * written before the dictionary existed name the users in full, and are still read.
+ * <p>
+ * The chats stored in the log are neither searchable nor archived.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class MessageLog implements ChatStore {
+
+	/**
+	 * The {@code Conversation} class is the index of one conversation: the position and time stamp of
+	 * each of its chats, in the order they were appended.
+	 */
+	private static final class Conversation {
+		private long[] offsets = new long[16], timeStamps = new long[16];
+		private int size;
+		//Whether the chats were appended in chronological order, as they nearly always are
+		private boolean chronological = true;
+
+		synchronized void add(long offset, long timeStamp) {
+			if (size == offsets.length) {
+				offsets = Arrays.copyOf(offsets, size * 2);
+				timeStamps = Arrays.copyOf(timeStamps, size * 2);
+			}
+			chronological &= size == 0 || timeStamps[size - 1] <= timeStamp;
+			offsets[size] = offset;
+			timeStamps[size] = timeStamp;
+			size++;
+		}
+
+		//Method returning the positions of the chats sent at or after the given time
+		synchronized long[] since(long timeStamp) {
+			if (chronological) {
+				//Finding the first chat sent at or after the time, the ones after it all being sent later
+				int low = 0, high = size;
+				while (low < high) {
+					int middle = (low + high) >>> 1;
+					if (timeStamps[middle] < timeStamp)
+						low = middle + 1;
+					else
+						high = middle;
+				}
+				return Arrays.copyOfRange(offsets, low, size);
+			}
+			long[] matches = new long[size];
+			int count = 0;
+			for (int index = 0; index < size; index++) {
+				if (timeStamps[index] >= timeStamp)
+					matches[count++] = offsets[index];
+			}
+			return Arrays.copyOf(matches, count);
+		}
+	}
+
+	private static final String SEGMENT_EXTENSION = ".log";
+	private static final String DICTIONARY_FILE = "users.dict";
+	//Length and checksum preceding each record
+	private static final int RECORD_HEADER = 8;
+	/*First byte of the records naming the users by ID, with the body as modified UTF-8 (and so no longer
+	 *than 65535 bytes) or, as written now, as its length followed by its UTF-8 bytes; the records naming
+	 *the users in full start with the high byte of the sender's name length, which is 0
+	 */
+	private static final byte ID_RECORD = 1, LONG_BODY_RECORD = 2;
+
+	private final Path directory;
+	private final int segmentSize;
+	//Read only mappings of the segments, by segment number
+	private final ConcurrentHashMap<Integer, ByteBuffer> segments;
+	private final IdMap<Conversation> conversations;
+	private final UserDirectory users;
+	//Dictionary file, and the IDs held in it
+	private final FileChannel dictionary;
+	private final BitSet dictionaryIds;
+	//Segment being appended to, with its size and the position the next record is written at
+	private volatile FileChannel active;
+	private int activeNumber, activeSize, writePosition;
+
+	/**
+	 * Opens the log in the given directory, creating it if needed, and indexes its chats.
+	 *
+	 * @param directory Directory of the segment files
+	 * @param segmentSize Size in bytes of the segment files started from now on
+	 * @param users Directory the senders and recipients are identified by, into which the dictionary's
+	 * IDs are restored, so it must not have given out any ID yet
+	 * @throws IOException If the segments or the dictionary cannot be read
+	 */
+	MessageLog(Path directory, int segmentSize, UserDirectory users) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		this.users = users;
+		segments = new ConcurrentHashMap<Integer, ByteBuffer>();
+		conversations = new IdMap<Conversation>();
+		dictionaryIds = new BitSet();
+		dictionary = FileChannel.open(directory.resolve(DICTIONARY_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			loadDictionary();
+		}
+		catch (IOException ex) {
+			dictionary.close();
+			throw ex;
+		}
+
+		List<Integer> numbers = new ArrayList<Integer>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				numbers.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_EXTENSION.length())));
+			}
+		}
+		Collections.sort(numbers);
+		if (numbers.isEmpty()) {
+			startSegment(0, segmentSize);
+			return;
+		}
+		for (int number : numbers.subList(0, numbers.size() - 1)) {
+			try (FileChannel segment = FileChannel.open(segmentFile(number), StandardOpenOption.READ)) {
+				ByteBuffer mapped = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+				segments.put(number, mapped);
+				scan(number, mapped);
+			}
+		}
+		//Recovering the last segment, appending after its last complete record
+		activeNumber = numbers.get(numbers.size() - 1);
+		active = FileChannel.open(segmentFile(activeNumber), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		activeSize = (int) Math.max(active.size(), segmentSize);
+		writePosition = scan(activeNumber, active.map(FileChannel.MapMode.READ_ONLY, 0, active.size()));
+		//Zeroing whatever follows, so that no leftover of a torn record is mistaken for a record later
+		active.truncate(writePosition);
+		resize(active, activeSize);
+		segments.put(activeNumber, active.map(FileChannel.MapMode.READ_ONLY, 0, activeSize));
+	}
+
+	@Override
+	public synchronized void store(ChatMessage chat) throws IOException {
+		int sender = users.id(chat.getSender()), recipient = users.id(chat.getRecipient());
+		persist(sender);
+		persist(recipient);
+		ByteBuffer record = frame(encode(sender, recipient, chat));
+		if (writePosition + record.limit() > activeSize)
+			startSegment(activeNumber + 1, Math.max(segmentSize, record.limit()));
+		while (record.hasRemaining())
+			active.write(record, writePosition + record.position());
+		index(sender, recipient, chat.getTimeStamp(), position(activeNumber, writePosition));
+		writePosition += record.limit();
+	}
+
+	@Override
+	public List<ChatMessage> retrieve(String participant1, String participant2, LocalDateTime since)
+			throws IOException {
+		List<ChatMessage> chats = new ArrayList<ChatMessage>();
+		int id1 = users.find(participant1), id2 = users.find(participant2);
+		Conversation conversation = id1 == UserDirectory.UNKNOWN || id2 == UserDirectory.UNKNOWN ? null
+				: conversations.get(UserDirectory.conversation(id1, id2));
+		if (conversation == null)
+			return chats;
+		for (long position : conversation.since(since == null ? Long.MIN_VALUE : timeStamp(since))) {
+			ByteBuffer record = segments.get((int) (position >>> 32)).duplicate();
+			record.position((int) position);
+			byte[] payload = new byte[record.getInt()];
+			//Skipping the checksum, verified when the record was written or the log opened
+			record.getInt();
+			record.get(payload);
+			chats.add(decode(payload));
+		}
+		//Restoring chronological order, should chats have been appended out of it
+		chats.sort(Comparator.comparing(ChatMessage::getTimeStamp));
+		return chats;
+	}
+
+	/**
+	 * Forces the chats appended so far to disk.
+	 *
+	 * @throws IOException If the segment cannot be forced
+	 */
+	void flush() throws IOException {
+		try {
+			active.force(false);
+		}
+		//The segment was sealed in the meantime, which forces it
+		catch (ClosedChannelException ex) {}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		active.force(false);
+		active.close();
+		dictionary.close();
+	}
+
+	//Method restoring the IDs of the dictionary, truncating it after its last complete entry
+	private void loadDictionary() throws IOException {
+		ByteBuffer entries = dictionary.map(FileChannel.MapMode.READ_ONLY, 0, dictionary.size());
+		CRC32 checksum = new CRC32();
+		int position = 0;
+		while (entries.limit() - position >= RECORD_HEADER) {
+			int length = entries.getInt(position);
+			if (length <= 0 || length > entries.limit() - position - RECORD_HEADER)
+				break;
+			byte[] payload = new byte[length];
+			ByteBuffer entry = entries.duplicate();
+			entry.position(position + RECORD_HEADER);
+			entry.get(payload);
+			checksum.reset();
+			checksum.update(payload);
+			if ((int) checksum.getValue() != entries.getInt(position + 4))
+				break;
+			DataInputStream fields = new DataInputStream(new ByteArrayInputStream(payload));
+			int id = fields.readInt();
+			try {
+				users.restore(id, fields.readUTF());
+			}
+			catch (IllegalStateException ex) {
+				throw new IOException("The message log's dictionary does not match the users", ex);
+			}
+			dictionaryIds.set(id);
+			position += RECORD_HEADER + length;
+		}
+		dictionary.truncate(position);
+		dictionary.position(position);
+	}
+
+	//Method adding a user to the dictionary, unless they are in it already
+	private void persist(int id) throws IOException {
+		if (dictionaryIds.get(id))
+			return;
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+		try (DataOutputStream fields = new DataOutputStream(payload)) {
+			fields.writeInt(id);
+			fields.writeUTF(users.name(id));
+		}
+		ByteBuffer entry = frame(payload.toByteArray());
+		while (entry.hasRemaining())
+			dictionary.write(entry);
+		dictionary.force(false);
+		dictionaryIds.set(id);
+	}
+
+	//Method sealing the active segment and starting the given one, of the given size
+	private void startSegment(int number, int size) throws IOException {
+		if (active != null) {
+			active.force(false);
+			active.close();
+		}
+		FileChannel segment = FileChannel.open(segmentFile(number), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		resize(segment, size);
+		segments.put(number, segment.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		active = segment;
+		activeNumber = number;
+		activeSize = size;
+		writePosition = 0;
+	}
+
+	//Method indexing the records of a segment, returning the position its last complete record ends at
+	private int scan(int number, ByteBuffer segment) {
+		CRC32 checksum = new CRC32();
+		int position = 0;
+		while (segment.limit() - position >= RECORD_HEADER) {
+			int length = segment.getInt(position);
+			//Reaching the unwritten end of the segment, or a record cut short
+			if (length <= 0 || length > segment.limit() - position - RECORD_HEADER)
+				break;
+			byte[] payload = new byte[length];
+			ByteBuffer record = segment.duplicate();
+			record.position(position + RECORD_HEADER);
+			record.get(payload);
+			checksum.reset();
+			checksum.update(payload);
+			if ((int) checksum.getValue() != segment.getInt(position + 4))
+				break;
+			try {
+				ChatMessage chat = decode(payload);
+				index(users.id(chat.getSender()), users.id(chat.getRecipient()), chat.getTimeStamp(),
+						position(number, position));
+			}
+			catch (IOException ex) {
+				break;
+			}
+			position += RECORD_HEADER + length;
+		}
+		return position;
+	}
+
+	//Method adding a chat to the index of its conversation
+	private void index(int sender, int recipient, LocalDateTime time, long position) {
+		conversations.computeIfAbsent(UserDirectory.conversation(sender, recipient),
+				key -> new Conversation()).add(position, timeStamp(time));
+	}
+
+	//Method prefixing a payload with its length and checksum
+	private static ByteBuffer frame(byte[] payload) {
+		CRC32 checksum = new CRC32();
+		checksum.update(payload);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+		record.putInt(payload.length).putInt((int) checksum.getValue()).put(payload).flip();
+		return record;
+	}
+
+	//Method encoding the payload of a chat's record
+	private static byte[] encode(int sender, int recipient, ChatMessage chat) throws IOException {
+		byte[] body = chat.getBody().getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(32 + body.length);
+		try (DataOutputStream fields = new DataOutputStream(payload)) {
+			fields.writeByte(LONG_BODY_RECORD);
+			fields.writeInt(sender);
+			fields.writeInt(recipient);
+			fields.writeInt(body.length);
+			fields.write(body);
+			fields.writeLong(chat.getTimeStamp().toEpochSecond(ZoneOffset.UTC));
+			fields.writeInt(chat.getTimeStamp().getNano());
+		}
+		return payload.toByteArray();
+	}
+
+	//Method decoding the payload of a chat's record, the users named as the directory holds them
+	private ChatMessage decode(byte[] payload) throws IOException {
+		DataInputStream fields = new DataInputStream(new ByteArrayInputStream(payload));
+		String sender, recipient;
+		byte format = payload[0];
+		if (format == ID_RECORD || format == LONG_BODY_RECORD) {
+			fields.readByte();
+			sender = users.name(fields.readInt());
+			recipient = users.name(fields.readInt());
+			if (sender == null || recipient == null)
+				throw new IOException("The record names a user missing from the dictionary");
+		}
+		else {
+			sender = users.name(users.id(fields.readUTF()));
+			recipient = users.name(users.id(fields.readUTF()));
+		}
+		String body;
+		if (format == LONG_BODY_RECORD) {
+			byte[] bytes = new byte[fields.readInt()];
+			fields.readFully(bytes);
+			body = new String(bytes, StandardCharsets.UTF_8);
+		}
+		else
+			body = fields.readUTF();
+		return new ChatMessage(sender, recipient, body,
+				LocalDateTime.ofEpochSecond(fields.readLong(), fields.readInt(), ZoneOffset.UTC));
+	}
+
+	//Method extending a segment file to the given size, the extension reading as zeros
+	private static void resize(FileChannel segment, int size) throws IOException {
+		if (segment.size() < size)
+			segment.write(ByteBuffer.allocate(1), size - 1);
+	}
+
+	//Method returning the time stamp of a chat in nanoseconds, comparable as a number
+	private static long timeStamp(LocalDateTime time) {
+		return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+	}
+
+	//Method returning the position of a record, its segment number in the high half
+	private static long position(int segment, int position) {
+		return (long) segment << 32 | position;
+	}
+
+	private Path segmentFile(int number) {
+		return directory.resolve(number + SEGMENT_EXTENSION);
+	}
+}
@@ -0,0 +1,201 @@
+package com.providenceuniversal.gim;
+
+import java.awt.GraphicsEnvironment;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JOptionPane;
+
+/**
+ * The {@code NotificationDispatcher} class displays the chat messages and server notifications pushed to
+ * a {@code ClientConnection}. Notifications are queued into a bounded queue (never blocking the
+ * connection's reader thread, and dropping notifications if the queue is full) and displayed by a single
+ * dispatcher thread, which aggregates bursts into one summary (e.g. "12 new messages from 3 contacts").
+ * While a notification is being displayed (e.g. while a dialog is open), further notifications
+ * accumulate and are summarized together once it is dismissed.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class NotificationDispatcher implements ClientListener, AutoCloseable {
+
+	/**
+	 * Functional interface representing where notifications are displayed.
+	 */
+	@FunctionalInterface
+	public interface Display {
+
+		/**
+		 * Displays a notification. May block until the user acknowledges it.
+		 *
+		 * @param title Notification title
+		 * @param message Notification text
+		 */
+		void show(String title, String message);
+	}
+
+	//Time allowed for a burst of notifications to arrive before they are summarized
+	private static final long AGGREGATION_WINDOW = 200;
+	//Number of individual lines shown in a summary before the rest are counted
+	private static final int SUMMARY_LINES = 5;
+
+	private final BlockingQueue<ServerMessage> pendingNotifications;
+	private final AtomicInteger droppedNotifications;
+	private final Display display;
+	private final Thread dispatcher;
+	private volatile boolean closed;
+
+	/**
+	 * Creates new {@code NotificationDispatcher} showing dialogs, or printing to the console if
+	 * there is no display available.
+	 *
+	 * @param capacity Maximum number of notifications waiting to be displayed
+	 */
+	public NotificationDispatcher(int capacity) {
+		this(capacity, GraphicsEnvironment.isHeadless() ? consoleDisplay(System.out) : dialogDisplay());
+	}
+
+	/**
+	 * Creates new {@code NotificationDispatcher} showing notifications on the given display.
+	 *
+	 * @param capacity Maximum number of notifications waiting to be displayed
+	 * @param display Where the notifications are displayed
+	 */
+	public NotificationDispatcher(int capacity, Display display) {
+		pendingNotifications = new ArrayBlockingQueue<ServerMessage>(capacity);
+		droppedNotifications = new AtomicInteger();
+		this.display = display;
+		dispatcher = new Thread(this::dispatch, "gim-notifications");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Returns a display showing each notification in an information dialog.
+	 *
+	 * @return Dialog display
+	 */
+	public static Display dialogDisplay() {
+		return (title, message) -> JOptionPane.showMessageDialog(null, message, title,
+				JOptionPane.INFORMATION_MESSAGE);
+	}
+
+	/**
+	 * Returns a display printing each notification to the given stream.
+	 *
+	 * @param output Stream to print the notifications to
+	 * @return Console display
+	 */
+	public static Display consoleDisplay(PrintStream output) {
+		return (title, message) -> output.println("[" + title + "] " + message + "\n");
+	}
+
+	//______________________________________________Queueing______________________________________________
+
+	@Override
+	public void chatMessageReceived(ChatMessage message) {
+		enqueue(message);
+	}
+
+	@Override
+	public void notificationReceived(ServerNotification notification) {
+		/*Only showing that chats were read, since nearly every chat is delivered at once, and leaving out
+		 *typing indicators, which are stale by the time a queued popup shows them
+		 */
+		if (notification instanceof TypingIndicator)
+			return;
+		if (!(notification instanceof Receipt) || ((Receipt) notification).getType() == Receipt.Type.READ)
+			enqueue(notification);
+	}
+
+	//Method queueing a notification without ever blocking the caller
+	private void enqueue(ServerMessage notification) {
+		if (closed || !pendingNotifications.offer(notification))
+			droppedNotifications.incrementAndGet();
+	}
+
+	/**
+	 * Stops the dispatcher thread; notifications still queued are discarded.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		dispatcher.interrupt();
+	}
+
+	//______________________________________________Dispatching___________________________________________
+
+	//Method run by the dispatcher thread, summarizing and displaying each burst of notifications
+	private void dispatch() {
+		List<ServerMessage> burst = new ArrayList<ServerMessage>();
+		try {
+			while (!closed) {
+				burst.add(pendingNotifications.take());
+				//Giving the rest of the burst a moment to arrive, then collecting everything queued
+				Thread.sleep(AGGREGATION_WINDOW);
+				pendingNotifications.drainTo(burst);
+				try {
+					display(burst, droppedNotifications.getAndSet(0));
+				}
+				catch (RuntimeException ex) {}
+				burst.clear();
+			}
+		}
+		catch (InterruptedException ex) {}
+	}
+
+	//Method displaying a burst of notifications as chat message and server notification summaries
+	private void display(List<ServerMessage> burst, int dropped) {
+		List<ChatMessage> chats = new ArrayList<ChatMessage>();
+		List<ServerNotification> notifications = new ArrayList<ServerNotification>();
+		for (ServerMessage notification : burst) {
+			if (notification instanceof ChatMessage)
+				chats.add((ChatMessage) notification);
+			else
+				notifications.add((ServerNotification) notification);
+		}
+
+		if (chats.size() == 1) {
+			ChatMessage chat = chats.get(0);
+			display.show("New message", "New message from " + chat.getSender() + ":\n" + chat);
+		}
+		else if (!chats.isEmpty()) {
+			Set<String> senders = new LinkedHashSet<String>();
+			chats.forEach(chat -> senders.add(chat.getSender()));
+			display.show("New messages", chats.size() + " new messages from " + senders.size()
+			+ (senders.size() == 1 ? " contact" : " contacts") + " (" + String.join(", ", senders.stream()
+			.limit(SUMMARY_LINES).toArray(String[]::new)) + (senders.size() > SUMMARY_LINES ? ", ..." : "")
+			+ "):\n" + summarize(chats));
+		}
+
+		if (notifications.size() == 1) {
+			display.show("Notification", "New notification:\n" + notifications.get(0));
+		}
+		else if (!notifications.isEmpty()) {
+			display.show("Notifications", notifications.size() + " new notifications:\n"
+			+ summarize(notifications));
+		}
+
+		if (dropped > 0) {
+			display.show("Notifications", dropped + " further notifications arrived too quickly to be shown.");
+		}
+	}
+
+	//Method listing the most recent notifications of a burst, counting the rest
+	private static String summarize(List<? extends ServerMessage> notifications) {
+		StringBuilder summary = new StringBuilder();
+		int skipped = Math.max(0, notifications.size() - SUMMARY_LINES);
+		if (skipped > 0)
+			summary.append("... ").append(skipped).append(" earlier\n");
+		for (ServerMessage notification : notifications.subList(skipped, notifications.size())) {
+			summary.append(notification).append("\n");
+		}
+		return summary.toString().trim();
+	}
+}
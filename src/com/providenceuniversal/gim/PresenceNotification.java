@@ -0,0 +1,53 @@
+package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+
+/**
+ * The {@code PresenceNotification} class is a {@code ServerNotification} announcing a change in a user's
+ * activity status. Besides the displayable message it carries the user, the new status and the time of
+ * the change, so that clients can keep their contact lists up to date without requesting them again.
+ * 
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class PresenceNotification extends ServerNotification {
+
+	/**
+	 * Enumeration which stores the activity status changes a user can undergo
+	 */
+	public static enum Status {ONLINE, OFFLINE, DELETED}
+
+	private static final long serialVersionUID = -2270409457138553613L;
+	private final String username;
+	private final Status status;
+	private final LocalDateTime time;
+	
+	/**
+	 * Creates new {@code PresenceNotification} and initializes its fields with the parameter values.
+	 * 
+	 * @param message Displayable notification message
+	 * @param username User whose status changed
+	 * @param status The user's new status
+	 * @param time Time of the change (for {@code OFFLINE}, the time the user was last seen)
+	 */
+	public PresenceNotification(String message, String username, Status status, LocalDateTime time) {
+		super(message);
+		this.username = username;
+		this.status = status;
+		this.time = time;
+	}
+	
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getUsername() {
+		return username;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public LocalDateTime getTime() {
+		return time;
+	}
+}
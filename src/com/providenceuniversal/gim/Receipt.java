@@ -0,0 +1,74 @@
+package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * The {@code Receipt} class is a watermark acknowledging the chats of a conversation: the reader has
+ * received (or read) every chat the sender sent them up to the given time stamp. A single receipt thus
+ * acknowledges any number of chats, and a later receipt supersedes an earlier one. Clients send their
+ * receipts in a {@code ReceiptBatch}, and the server pushes them on to the sender as a
+ * {@code ServerNotification}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class Receipt extends ServerNotification {
+
+	/**
+	 * Enumeration which stores the types of receipt
+	 */
+	public static enum Type {DELIVERED, READ}
+
+	private static final long serialVersionUID = 6609471521862630914L;
+	private final String reader;
+	private final String sender;
+	private final Type type;
+	private final LocalDateTime upTo;
+
+	/**
+	 * Creates new {@code Receipt} and initializes its fields with the parameter values.
+	 *
+	 * @param reader User acknowledging the chats
+	 * @param sender User who sent the chats
+	 * @param type Whether the chats were received or read
+	 * @param upTo Time stamp of the latest chat acknowledged
+	 */
+	public Receipt(String reader, String sender, Type type, LocalDateTime upTo) {
+		super(reader + (type == Type.READ ? " has read" : " has received") + " your messages.");
+		this.reader = reader;
+		this.sender = sender;
+		this.type = type;
+		this.upTo = upTo;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getReader() {
+		return reader;
+	}
+
+	public String getSender() {
+		return sender;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public LocalDateTime getUpTo() {
+		return upTo;
+	}
+
+	//____________________________________________________________________________________________________
+
+	//Method returning the key of the watermark the receipt moves, a later receipt of the same key superseding it
+	String watermark() {
+		return watermark(reader, sender, type);
+	}
+
+	//Method returning the key of a reader's watermark over the chats of a sender
+	static String watermark(String reader, String sender, Type type) {
+		return reader.toLowerCase(Locale.ROOT) + '\n' + sender.toLowerCase(Locale.ROOT) + '\n' + type;
+	}
+}
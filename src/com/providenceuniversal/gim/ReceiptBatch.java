@@ -0,0 +1,37 @@
+package com.providenceuniversal.gim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code ReceiptBatch} class stores the {@code Receipt}s a client acknowledged the chats pushed to
+ * it and read with since its previous batch, at most one per conversation and type. Clients send it
+ * without awaiting a response.
+ * It is one of the types of {@code ClientMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ReceiptBatch implements ClientMessage {
+
+	private static final long serialVersionUID = -2952361173408257076L;
+	//Largest number of receipts the server records from one batch
+	static final int MAX_RECEIPTS = 256;
+	private final ArrayList<Receipt> receipts;
+
+	/**
+	 * Creates new {@code ReceiptBatch} object with the given receipts.
+	 *
+	 * @param receipts The receipts
+	 */
+	public ReceiptBatch(List<Receipt> receipts) {
+		this.receipts = new ArrayList<Receipt>(receipts);
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public List<Receipt> getReceipts() {
+		return Collections.unmodifiableList(receipts);
+	}
+}
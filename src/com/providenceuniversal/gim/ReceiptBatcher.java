@@ -0,0 +1,101 @@
+package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The {@code ReceiptBatcher} class acknowledges the chats of a {@code ClientConnection}: each chat pushed
+ * to the logged in user is acknowledged as delivered, and each conversation opened as read up to its last
+ * chat. Rather than sending a receipt per chat, the batcher keeps only the latest receipt of each
+ * conversation and type, and sends those it holds in one {@code ReceiptBatch} once per interval, so that
+ * a burst of chats costs a single message to the server.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ReceiptBatcher implements ClientListener, AutoCloseable {
+
+	//Timer shared by the batchers of all connections, handing each batch over to another thread to send
+	private static final TimingWheel timer = new TimingWheel("gim-receipts", 100, TimeUnit.MILLISECONDS, 64);
+
+	private final ClientConnection connection;
+	private final long interval;
+	//Latest unsent receipt of each watermark
+	private final ConcurrentHashMap<String, Receipt> pendingReceipts;
+	private final AtomicBoolean batchScheduled;
+
+	/**
+	 * Creates new {@code ReceiptBatcher} for the given connection and registers it for pushed chats.
+	 *
+	 * @param connection Connection to the server
+	 * @param interval Time the receipts are held for before they are sent
+	 * @param unit Unit of the interval
+	 */
+	public ReceiptBatcher(ClientConnection connection, long interval, TimeUnit unit) {
+		this.connection = connection;
+		this.interval = unit.toNanos(interval);
+		pendingReceipts = new ConcurrentHashMap<String, Receipt>();
+		batchScheduled = new AtomicBoolean();
+		connection.addListener(this);
+	}
+
+	@Override
+	public void chatMessageReceived(ChatMessage message) {
+		//Group messages having no single sender to acknowledge them to
+		if (!(message instanceof GroupMessage))
+			record(message.getSender(), Receipt.Type.DELIVERED, message.getTimeStamp());
+	}
+
+	/**
+	 * Acknowledges the chats a contact sent the logged in user as read, up to the given time.
+	 *
+	 * @param contact The contact
+	 * @param upTo Time stamp of the last chat read
+	 */
+	public void read(String contact, LocalDateTime upTo) {
+		record(contact, Receipt.Type.READ, upTo);
+	}
+
+	/**
+	 * Sends the receipts held at once, if any.
+	 */
+	public void flush() {
+		batchScheduled.set(false);
+		List<Receipt> receipts = new ArrayList<Receipt>();
+		for (String watermark : pendingReceipts.keySet()) {
+			Receipt receipt = pendingReceipts.remove(watermark);
+			if (receipt != null)
+				receipts.add(receipt);
+		}
+		//Splitting the receipts into batches the server records in full
+		for (int from = 0; from < receipts.size(); from += ReceiptBatch.MAX_RECEIPTS)
+			connection.sendReceipts(receipts.subList(from, Math.min(from + ReceiptBatch.MAX_RECEIPTS, receipts.size())));
+	}
+
+	/**
+	 * Stops acknowledging the pushed chats, sending the receipts still held.
+	 */
+	@Override
+	public void close() {
+		connection.removeListener(this);
+		flush();
+	}
+
+	//Method holding a receipt until the next batch, unless a later one of its watermark is held already
+	private void record(String sender, Receipt.Type type, LocalDateTime upTo) {
+		User currentUser = connection.getCurrentUser();
+		if (currentUser == null || sender.equalsIgnoreCase(currentUser.getUsername()))
+			return;
+		Receipt receipt = new Receipt(currentUser.getUsername(), sender, type, upTo);
+		pendingReceipts.merge(receipt.watermark(), receipt, (pending, later) ->
+		pending.getUpTo().isAfter(later.getUpTo()) ? pending : later);
+		//Only the first receipt of a batch scheduling it, writing to the connection off the timer thread
+		if (batchScheduled.compareAndSet(false, true))
+			timer.schedule(() -> CompletableFuture.runAsync(this::flush), interval, TimeUnit.NANOSECONDS);
+	}
+}
@@ -0,0 +1,75 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code ReceiptLedger} class holds the {@code Receipt}s the server received but has not written to
+ * storage yet, and writes them behind, periodically (as a task of the storage thread) and all at once.
+ * Only the latest receipt of each watermark is held, so however many receipts the clients send,
+ * storage is written once per watermark and run rather than once per chat and reader. The receipts
+ * received since the last run are lost should the server crash, the clients acknowledging the chats
+ * again the next time they receive or read any.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class ReceiptLedger implements Runnable {
+
+	private final StorageEngine storageEngine;
+	//Latest unwritten receipt of each watermark
+	private final ConcurrentHashMap<String, Receipt> unwrittenReceipts;
+
+	/**
+	 * Creates new, empty {@code ReceiptLedger}.
+	 *
+	 * @param storageEngine Storage the receipts are written to
+	 */
+	ReceiptLedger(StorageEngine storageEngine) {
+		this.storageEngine = storageEngine;
+		unwrittenReceipts = new ConcurrentHashMap<String, Receipt>();
+	}
+
+	/**
+	 * Records a receipt to be written on the next run, unless its watermark has reached further already.
+	 *
+	 * @param receipt The receipt
+	 */
+	void record(Receipt receipt) {
+		unwrittenReceipts.merge(receipt.watermark(), receipt, (unwritten, later) ->
+		later.getUpTo().isAfter(unwritten.getUpTo()) ? later : unwritten);
+	}
+
+	@Override
+	public void run() {
+		try {
+			flush();
+		}
+		catch (SQLException ex) {
+			try {
+				Server.logInformation("Failed to store receipts: (" + ex + ")", false);
+			}
+			catch (IOException e) {
+				System.err.println("Failed to write to log file: (" + e + ")");
+			}
+		}
+	}
+
+	/**
+	 * Writes the unwritten receipts to storage, keeping them for the next run should storage fail.
+	 *
+	 * @throws SQLException If the receipts cannot be written
+	 */
+	void flush() throws SQLException {
+		if (unwrittenReceipts.isEmpty())
+			return;
+		List<Receipt> receipts = new ArrayList<Receipt>(unwrittenReceipts.values());
+		storageEngine.storeReceipts(receipts);
+		//Forgetting the receipts written, unless a later receipt of the same watermark arrived meanwhile
+		for (Receipt receipt : receipts)
+			unwrittenReceipts.remove(receipt.watermark(), receipt);
+	}
+}
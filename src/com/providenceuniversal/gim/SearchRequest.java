@@ -0,0 +1,80 @@
+package com.providenceuniversal.gim;
+
+import java.time.LocalDateTime;
+
+/**
+ * The {@code SearchRequest} class represents a request for the chats of the logged in user's
+ * conversations containing every word of a query, newest first, one page at a time. The request for
+ * the following page is obtained from the {@code SearchResults} of the previous one.
+ * <p>
+ * The chats the server has moved to its archive (see the {@code archive-after} setting) are searched
+ * as well.
+ * It is one of the types of {@code ClientMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class SearchRequest implements ClientMessage {
+
+	private static final long serialVersionUID = -8452781320694129867L;
+	//Number of results per page unless specified
+	static final int DEFAULT_PAGE_SIZE = 20;
+	private final String query;
+	private final int pageSize;
+	//Time stamp and ID of the last result of the previous page, which this page starts after
+	private final LocalDateTime before;
+	private final int beforeId;
+
+	/**
+	 * Creates new {@code SearchRequest} for the first page of results of the given query.
+	 *
+	 * @param query Words the chats must contain
+	 */
+	public SearchRequest(String query) {
+		this(query, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Creates new {@code SearchRequest} for the first page of results of the given query.
+	 *
+	 * @param query Words the chats must contain
+	 * @param pageSize Maximum number of results per page
+	 */
+	public SearchRequest(String query, int pageSize) {
+		this(query, pageSize, null, 0);
+	}
+
+	/**
+	 * Creates new {@code SearchRequest} for the page of results following the given result.
+	 *
+	 * @param query Words the chats must contain
+	 * @param pageSize Maximum number of results per page
+	 * @param before Time stamp of the last result of the previous page, or {@code null} for the first page
+	 * @param beforeId ID of the last result of the previous page
+	 */
+	SearchRequest(String query, int pageSize, LocalDateTime before, int beforeId) {
+		super();
+		this.query = query;
+		this.pageSize = pageSize;
+		this.before = before;
+		this.beforeId = beforeId;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getQuery() {
+		return query;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	LocalDateTime getBefore() {
+		return before;
+	}
+
+	int getBeforeId() {
+		return beforeId;
+	}
+}
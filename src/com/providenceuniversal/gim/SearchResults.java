@@ -0,0 +1,63 @@
+package com.providenceuniversal.gim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code SearchResults} class stores a page of the chats matching a {@code SearchRequest}, newest
+ * first, along with the request for the following page if there is one.
+ * It is one of the types of {@code ServerMessage}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class SearchResults implements ServerMessage {
+
+	private static final long serialVersionUID = 2263715402916577319L;
+	private final ArrayList<ChatMessage> chats;
+	private final SearchRequest nextPage;
+
+	/**
+	 * Creates new {@code SearchResults} object with the given page of results.
+	 *
+	 * @param chats Matching chats, newest first
+	 * @param nextPage Request for the following page, or {@code null} if this is the last page
+	 */
+	SearchResults(List<ChatMessage> chats, SearchRequest nextPage) {
+		this.chats = new ArrayList<ChatMessage>(chats);
+		this.nextPage = nextPage;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public List<ChatMessage> getChats() {
+		return Collections.unmodifiableList(chats);
+	}
+
+	/**
+	 * Returns the request for the following page of results.
+	 *
+	 * @return The request, or {@code null} if this is the last page
+	 */
+	public SearchRequest getNextPage() {
+		return nextPage;
+	}
+
+	//____________________________________________________________________________________________________
+
+	/**
+	 * Returns a {@code String} representation of the search results in the given format: <br>
+	 * Search Results:<br>
+	 * {@code ChatMessage}<br>
+	 * .<br>
+	 * .<br>
+	 * .
+	 */
+	@Override
+	public String toString() {
+		return "Search Results:\n" + (chats.isEmpty() ? "No chats match your search."
+				: chats.stream().map(chat -> chat.toString()).collect(Collectors.joining("\n")));
+	}
+}
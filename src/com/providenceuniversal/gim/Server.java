@@ -5,21 +5,34 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.sql.ResultSet;
+import java.nio.channels.ServerSocketChannel;
 import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.sql.Statement;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import storage.Database;
 
@@ -38,23 +51,64 @@ public class Server{
 	//Static variables to store users logged in and logged out of the system (respectively)
 	private static ServerSocket serverSocket;
 	private static FileWriter logFileWriter;
-	private static Database database;
-	private static HashMap<String, ClientRequestHandler> onlineUsers;
-	private static HashMap<String, LocalDateTime> offlineUsers;
-	private static volatile ExecutorService commandExecutor, clientsExecutor,
-											listenersExecutor, notificationsExecutor;
+	//Handlers of the users logged in on this server, keyed by user ID
+	static IdMap<ClientRequestHandler> onlineUsers;
+	//Dictionary of the user IDs, which the server's structures key users by
+	static UserDirectory userDirectory;
+	//Every user of the system sorted by name, which contacts are searched and paged through
+	static ContactIndex contactIndex;
+	private static volatile ExecutorService commandExecutor, clientsExecutor, notificationsExecutor, ephemeralExecutor,
+			attachmentExecutor;
+	//Relays of the typing indicators and of the receipts pushed to the senders of chats, which are coalesced
+	private static CoalescingRelay<TypingIndicator> typingRelay;
+	private static CoalescingRelay<Receipt> receiptRelay;
+	//Receipts awaiting their periodic write to storage
+	private static ReceiptLedger receiptLedger;
+	//Handlers of all the connected clients, whether or not a user is logged in
+	static final Set<ClientRequestHandler> connectedClients = ConcurrentHashMap.newKeySet();
+	//Storage of the users, groups and chats, and the executor of its periodic upkeep (archiving or flushing)
+	static StorageEngine storageEngine;
+	private static ScheduledExecutorService storageExecutor;
+	//Full-text index of the chats, searched by SearchRequests, if the chats are stored in the database
+	static MessageIndex messageIndex;
+	//Server of the attachment transfers, or null if attachments are disabled
+	private static AttachmentServer attachmentServer;
+	//Timer running the idle timeouts of all the connections
+	private static final TimingWheel timingWheel = new TimingWheel("idle-timeouts", 100, TimeUnit.MILLISECONDS, 512);
+	private static ScheduledExecutorService metricsExecutor;
+	//Runtime statistics of the server and the file they are periodically dumped to
+	static final ServerMetrics metrics = new ServerMetrics();
+	private static File metricsFile;
+	private static final long METRICS_DUMP_INTERVAL = 60;
+	//Seconds after which idle pool threads end, and milliseconds after which refused clients are advised to retry
+	private static final long POOL_KEEP_ALIVE = 60, REFUSED_RETRY_AFTER = 1000;
+	//Startup parameters of the server
+	static ServerConfiguration configuration = new ServerConfiguration();
+	//Node of the server cluster this server belongs to (a cluster of one if the server runs standalone)
+	static ClusterNode cluster;
+	//Limits turning requests away when clients send them too quickly or the server is overloaded
+	static AdmissionControl admissionControl = new AdmissionControl(configuration, metrics, timingWheel);
 	
 	//Static initializer to instantiate the server's static variables and initiate logger
 	static {
-		onlineUsers = new HashMap<String, ClientRequestHandler>();
-		offlineUsers = new HashMap<String, LocalDateTime>();
+		userDirectory = new UserDirectory();
+		onlineUsers = new IdMap<ClientRequestHandler>();
+		contactIndex = new ContactIndex();
 		commandExecutor = Executors.newSingleThreadExecutor();
-		clientsExecutor = Executors.newCachedThreadPool();
-		listenersExecutor = Executors.newCachedThreadPool();
-		notificationsExecutor = Executors.newCachedThreadPool();
+		createThreadPools();
+		//Standing alone until the startup parameters say otherwise, for the handlers used without main
+		cluster = new ClusterNode(new ClusterDelivery(), notificationsExecutor);
+		createRelays();
+		metricsExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			//Daemon thread so that the periodic dumps never keep the JVM alive on their own
+			Thread metricsThread = new Thread(runnable, "metrics-dumper");
+			metricsThread.setDaemon(true);
+			return metricsThread;
+		});
 		
 		//Creating new file object referencing the location of the relevant log file
 		File logFile = new File(System.getProperty("user.home") + "/G-Instant Messenger/logs/logFile.log");
+		metricsFile = new File(logFile.getParentFile(), "metrics.log");
 		//Creating the log file in case it does not exist
 		if (!logFile.exists())
 			logFile.getParentFile().mkdirs();
@@ -62,6 +116,9 @@ public class Server{
 			FileWriter logFileWriter = new FileWriter(logFile, true);
 			Server.logFileWriter = logFileWriter;
 			commandExecutor.execute(() -> commandListener());
+			//Periodically dumping the server statistics to the metrics file
+			metricsExecutor.scheduleAtFixedRate(() -> dumpMetrics(), METRICS_DUMP_INTERVAL,
+					METRICS_DUMP_INTERVAL, TimeUnit.SECONDS);
 		}
 		catch (IOException ex) {
 			System.err.println("Fatal server error: (" + ex + ")");
@@ -71,22 +128,131 @@ public class Server{
 	
 	public static void main(String[] args) {
 		
+		//Reading the startup parameters
+		try {
+			configuration = new ServerConfiguration(args);
+			admissionControl = new AdmissionControl(configuration, metrics, timingWheel);
+		}
+		catch (IllegalArgumentException ex) {
+			System.err.println("Invalid server parameters: (" + ex + ")");
+			System.exit(1);
+		}
+		//Resizing the thread pools, which have not been used yet, per the startup parameters
+		clientsExecutor.shutdown();
+		notificationsExecutor.shutdown();
+		ephemeralExecutor.shutdown();
+		attachmentExecutor.shutdown();
+		createThreadPools();
+		//Creating this server's node of the cluster, which only starts once the storage is set up
+		cluster = configuration.getClusterAddresses().isEmpty() ? new ClusterNode(new ClusterDelivery(), notificationsExecutor)
+				: new ClusterNode(configuration.getNodeId(), configuration.getClusterAddresses().size(),
+						new SocketTransport(configuration.getNodeId(), configuration.getClusterAddresses()),
+						new ClusterDelivery(), notificationsExecutor);
+		createRelays();
+		
 		//Try-with-resources block setting up the resources to be used by the server
-		try(ServerSocket serverSocket = new ServerSocket(4279);
-			Database database = new Database("g_im.db");){
+		//The database is not opened at all if everything is stored in memory
+		try(ServerSocket serverSocket = new ServerSocket(configuration.getPort(), configuration.getAcceptBacklog());
+			Database database = configuration.getStorage() == ServerConfiguration.Storage.MEMORY ? null
+					: new Database("g_im.db");){
 			
 			//Referencing static resources to the local instances
 			Server.serverSocket = serverSocket;
-			Server.database = database;
+			storageExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread storageThread = new Thread(runnable, "chat-storage");
+				storageThread.setDaemon(true);
+				return storageThread;
+			});
+			//Creating the tables of the users, chats and group conversations, if they do not exist yet
+			if (database != null)
+				DatabaseStorageEngine.createTables(database.getDatabaseMetaData().getConnection());
+			//Keeping everything in memory, for benchmarks and load tests
+			if (database == null) {
+				storageEngine = new MemoryStorageEngine(userDirectory);
+				logInformation("Storing users and chats in memory; they will be lost when the server stops", false);
+			}
+			//Opening the message log, and periodically forcing the chats appended to it to disk
+			else if (configuration.getStorage() == ServerConfiguration.Storage.LOG) {
+				MessageLog messageLog = new MessageLog(configuration.getLogDirectory(), configuration.getLogSegmentSize(),
+						userDirectory);
+				storageEngine = new DatabaseStorageEngine(database, messageLog, metrics);
+				logInformation("Storing chats in the message log at " + configuration.getLogDirectory(), false);
+				storageExecutor.scheduleWithFixedDelay(() -> {
+					try {
+						messageLog.flush();
+					}
+					catch (IOException ex) {
+						System.err.println("Failed to flush the message log: (" + ex + ")");
+					}
+				}, configuration.getLogFlushInterval(), configuration.getLogFlushInterval(), TimeUnit.MILLISECONDS);
+			}
+			else {
+				//Opening the archive, which the search index reads the archived chats it finds from
+				MessageArchive messageArchive = new MessageArchive(configuration.getArchiveDirectory());
+				//Building the search index from the stored chats the first time the server runs with it
+				messageIndex = new MessageIndex(database.getDatabaseMetaData().getConnection(), messageArchive, metrics);
+				if (messageIndex.create()) {
+					logInformation("Building the search index ...", false);
+					logInformation("Indexed " + messageIndex.rebuild() + " chats for searches", false);
+				}
+				//Periodically moving the chats of the configured age into the archive
+				storageEngine = new DatabaseStorageEngine(database,
+						new DatabaseChatStore(database, messageIndex, messageArchive, metrics), metrics);
+				if (!configuration.getArchiveAfter().isZero()) {
+					storageExecutor.scheduleWithFixedDelay(new ChatArchiver(database.getDatabaseMetaData().getConnection(),
+							messageArchive, messageIndex, configuration.getArchiveAfter(), metrics), 0,
+							configuration.getArchiveInterval().toMillis(), TimeUnit.MILLISECONDS);
+				}
+			}
 			
-			//Table of results obtained from database containing all users of G-Instant Messenger
-			ResultSet users = database.retrieveRecords(new String[] {"Users"}, true);
+			//Writing the receipts behind, many at a time, rather than as each arrives
+			receiptLedger = new ReceiptLedger(storageEngine);
+			storageExecutor.scheduleWithFixedDelay(receiptLedger, configuration.getReceiptInterval(),
+					configuration.getReceiptInterval(), TimeUnit.MILLISECONDS);
 			
-			//Loop to fill the offline users collection with the users ResultSet
-			while(users.next()) {
-				offlineUsers.put(users.getString(1), Timestamp.valueOf(users.getString(3)).toLocalDateTime());
+			//Accepting the attachment transfers on a port and threads of their own, apart from the chats
+			if (configuration.getAttachmentPort() != 0) {
+				ServerSocketChannel attachmentChannel = ServerSocketChannel.open();
+				attachmentChannel.bind(new InetSocketAddress(configuration.getAttachmentPort()),
+						configuration.getAcceptBacklog());
+				attachmentServer = new AttachmentServer(attachmentChannel,
+						new AttachmentStore(configuration.getAttachmentDirectory()), attachmentExecutor, timingWheel,
+						configuration.getIdleTimeout(), TimeUnit.SECONDS, configuration.getAttachmentChunkSize(),
+						configuration.getAttachmentMaxSize(), metrics);
+				Thread attachmentThread = new Thread(attachmentServer, "attachment-acceptor");
+				attachmentThread.setDaemon(true);
+				attachmentThread.start();
+				//Discarding the uploads left unfinished, each between one and two expiry periods after its last chunk
+				Duration partialExpiry = configuration.getAttachmentPartialExpiry();
+				storageExecutor.scheduleWithFixedDelay(() -> {
+					try {
+						attachmentServer.expirePartials(partialExpiry);
+					}
+					catch (IOException ex) {
+						System.err.println("Failed to discard the unfinished uploads: (" + ex + ")");
+					}
+				}, partialExpiry.toMillis(), partialExpiry.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			
+			//Filling the user directory and the contact index with all users of G-Instant Messenger
+			Map<String, LocalDateTime> lastSeenTimes = storageEngine.lastSeenTimes();
+			lastSeenTimes.keySet().forEach(userDirectory::register);
+			contactIndex.offline(lastSeenTimes);
+			//Joining the server cluster, if configured
+			if (!configuration.getClusterAddresses().isEmpty()) {
+				/*Letting the servers sharing the database file (all on this machine, as the configuration
+				 *ensures) read while another writes, and wait for each other's writes rather than fail
+				 */
+				try (Statement statement = database.getDatabaseMetaData().getConnection().createStatement()) {
+					statement.execute("PRAGMA journal_mode = WAL");
+					statement.execute("PRAGMA busy_timeout = 5000");
+				}
+				cluster.start();
+				//Listing the users already online on the other servers, whose later changes are broadcast
+				cluster.onlineUsers().keySet().forEach(contactIndex::online);
+				logInformation("Node " + configuration.getNodeId() + " of a cluster of "
+						+ cluster.getNodeCount() + " servers", false);
 			}
-			users.close();
 			//Logging initial messages
 			logInformation("Server running on '" + InetAddress.getLocalHost().getHostName() +
 			"' (" + InetAddress.getLocalHost().getHostAddress() + ") and listening on port " +
@@ -98,7 +264,13 @@ public class Server{
 				try {
 					Socket handlerSocket = serverSocket.accept();
 					//Creation and execution of separate handler thread upon connection
-					clientsExecutor.execute(new Server.ClientRequestHandler(handlerSocket));
+					try {
+						clientsExecutor.execute(new Server.ClientRequestHandler(handlerSocket));
+					}
+					//Turning the client away in case the server is serving as many clients as it can
+					catch (RejectedExecutionException ex) {
+						refuseConnection(handlerSocket);
+					}
 				}
 				catch (SocketException ex) {
 					//Throwing exception if exception was not caused by the shutting down of the serverSocket
@@ -112,7 +284,6 @@ public class Server{
 						break;
 					}
 				}
-				catch (RejectedExecutionException ex) {}
 			}
 		}
 		/*Terminate server in case there is an error communicating with 
@@ -140,6 +311,54 @@ public class Server{
 		}
 	}
 	
+	/*Method creating the thread pools serving the clients, bounded per the startup parameters. Clients
+	 *the handler pools cannot take on are refused, while deliveries the notification pool cannot take on
+	 *are made by the thread submitting them, slowing it down to the pace of the deliveries. Ephemeral
+	 *messages (typing indicators and receipts) the ephemeral pool cannot take on are dropped instead
+	 */
+	private static void createThreadPools() {
+		clientsExecutor = boundedPool("client-handler", configuration.getMaxClients(), configuration.getClientQueue(),
+				new ThreadPoolExecutor.AbortPolicy());
+		notificationsExecutor = boundedPool("notifications", configuration.getNotificationThreads(),
+				configuration.getNotificationQueue(), new ThreadPoolExecutor.CallerRunsPolicy());
+		ephemeralExecutor = boundedPool("ephemeral", 1, configuration.getEphemeralQueue(),
+				new ThreadPoolExecutor.AbortPolicy());
+		attachmentExecutor = boundedPool("attachments", configuration.getAttachmentThreads(), 0,
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+	
+	//Method creating the relays coalescing the ephemeral messages, pushed through the cluster on the ephemeral pool
+	private static void createRelays() {
+		typingRelay = new CoalescingRelay<TypingIndicator>("typing", timingWheel, configuration.getTypingWindow(),
+				TimeUnit.MILLISECONDS, ephemeralExecutor, indicator -> cluster.route(indicator.getRecipient(), indicator),
+				metrics);
+		receiptRelay = new CoalescingRelay<Receipt>("receipts", timingWheel, configuration.getReceiptInterval(),
+				TimeUnit.MILLISECONDS, ephemeralExecutor, receipt -> cluster.route(receipt.getSender(), receipt), metrics);
+	}
+	
+	//Method creating a thread pool of a bounded number of threads and waiting tasks, whose idle threads end
+	private static ThreadPoolExecutor boundedPool(String name, int threads, int queueCapacity,
+			RejectedExecutionHandler rejectionPolicy) {
+		BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<Runnable>()
+				: new ArrayBlockingQueue<Runnable>(queueCapacity);
+		AtomicInteger threadCounter = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, POOL_KEEP_ALIVE, TimeUnit.SECONDS, queue,
+				runnable -> new Thread(runnable, name + "-" + threadCounter.incrementAndGet()), rejectionPolicy);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	
+	//Method turning a client away with an error, then closing its socket
+	private static void refuseConnection(Socket socket) {
+		metrics.connectionRefused();
+		try (Socket refusedSocket = socket;
+			ObjectOutputStream refusal = new ObjectOutputStream(refusedSocket.getOutputStream())) {
+			refusal.writeObject(new ServerBusyError(REFUSED_RETRY_AFTER));
+			refusal.flush();
+		}
+		catch (IOException ex) {}
+	}
+	
 	//Method logging information to display and log file
 	static void logInformation(String logEntry, boolean returnBeforeLogging) throws IOException {
 		String timestampedLogEntry = LocalDateTime.now().toString() + "> " + logEntry;
@@ -167,6 +386,44 @@ public class Server{
 				catch (IOException e) {}
 				break;
 			}
+			//Execute if stats command is passed
+			else if (command.equalsIgnoreCase("stats")) {
+				System.out.println(metrics.report());
+			}
+			//Execute if stats reset command is passed
+			else if (command.equalsIgnoreCase("stats reset")) {
+				metrics.reset();
+				System.out.println("Server statistics have been reset.");
+			}
+			//Execute if connections command is passed
+			else if (command.equalsIgnoreCase("connections")) {
+				System.out.println(metrics.connectionsReport());
+			}
+			//Execute if reindex command is passed, rebuilding the search index from the stored chats
+			else if (command.equalsIgnoreCase("reindex")) {
+				if (messageIndex == null) {
+					System.out.println("Chats are only indexed for searches when stored in the database.");
+				}
+				else {
+					try {
+						System.out.println("Indexed " + metrics.timeDatabaseCall("Message_Terms.rebuild",
+								() -> messageIndex.rebuild()) + " chats for searches.");
+					}
+					catch (SQLException ex) {
+						System.err.println("Failed to rebuild the search index: (" + ex + ")");
+					}
+				}
+			}
+		}
+	}
+
+	//Method to dump the server statistics to the metrics file
+	static void dumpMetrics() {
+		try {
+			metrics.dump(metricsFile);
+		}
+		catch (IOException ex) {
+			System.err.println("Failed to write to metrics file: (" + ex + ")");
 		}
 	}
 	
@@ -183,11 +440,33 @@ public class Server{
 		//Shutting down all running threads
 		try {
 			notificationsExecutor.shutdown();
-			listenersExecutor.shutdown();
+			ephemeralExecutor.shutdown();
+			//Refusing further transfers, those under way finishing on their own threads
+			if (attachmentServer != null)
+				attachmentServer.close();
+			attachmentExecutor.shutdown();
 			clientsExecutor.shutdown();
+			//Closing every connection, each handler then logging its user out
+			for (ClientRequestHandler handler : connectedClients)
+				handler.closeConnection();
 			notificationsExecutor.awaitTermination(5, TimeUnit.SECONDS);
-			listenersExecutor.awaitTermination(2, TimeUnit.SECONDS);
 			clientsExecutor.awaitTermination(2, TimeUnit.SECONDS);
+			timingWheel.close();
+			//Letting a running archiving run finish before the database closes, then closing the chat store
+			storageExecutor.shutdown();
+			storageExecutor.awaitTermination(5, TimeUnit.SECONDS);
+			receiptLedger.run();
+			try {
+				storageEngine.close();
+			}
+			catch (IOException ex) {
+				System.err.println("Failed to close the storage engine: (" + ex + ")");
+			}
+			//Leaving the server cluster
+			cluster.close();
+			//Stopping the periodic dumps and writing the final statistics
+			metricsExecutor.shutdown();
+			dumpMetrics();
 		}
 		//In case the shutdown sequence incurs some errors
 		catch (InterruptedException ex) {
@@ -209,26 +488,46 @@ public class Server{
 	 * @author Garikai Gumbo<br>
 	 * Providence Universal Studios®<br>
 	 */
-	private static class ClientRequestHandler implements Runnable{
+	static class ClientRequestHandler implements Runnable{
 		
 		//Instance variables for given client handler
 		private final Socket handlerSocket;
 		private ObjectOutputStream outgoingServerMessages;
+		//Socket stream beneath outgoingServerMessages, which pre-encoded frames are written to
+		private OutputStream socketOutput;
+		//Whether a frame was written since outgoingServerMessages last wrote, having reset the client's stream
+		private boolean frameWritten;
+		//Rate limit of the requests sent over this connection
+		private final TokenBucket requestBucket;
+		//Rate limit of the typing indicators and receipts sent over this connection, apart from its requests
+		private final TokenBucket ephemeralBucket;
 		private String currentUser;
+		//Payload compression negotiated by the client's handshake
+		private Handshake.Compression compression = Handshake.Compression.NONE;
+		//Time (System.nanoTime) anything was last received from the client, and the timeout checking it
+		private volatile long lastActivity;
+		private volatile TimingWheel.Timeout idleTimeout;
 		
 		//Constructor assigning the handler's handlerSocket reference
 		ClientRequestHandler(Socket handlerSocket) throws SQLException{
 			this.handlerSocket = handlerSocket;
-			listenersExecutor.execute(() -> checkForShutdownStatus());
+			requestBucket = admissionControl.newConnectionBucket();
+			ephemeralBucket = admissionControl.newEphemeralBucket();
 		}
 		
 		@Override
 		public void run() {
+			connectedClients.add(this);
+			//Timing out the client from now on, including while it sends its stream header
+			lastActivity = System.nanoTime();
+			scheduleIdleTimeout(configuration.getIdleTimeout(), TimeUnit.SECONDS);
 			//Try-with-resources block setting up the resources to be used by the handler
 			try(ObjectOutputStream outgoingResponses = new ObjectOutputStream(handlerSocket.getOutputStream());
 				ObjectInputStream incomingRequests = new ObjectInputStream(handlerSocket.getInputStream());){
 				
 				outgoingServerMessages = outgoingResponses;
+				socketOutput = handlerSocket.getOutputStream();
+				metrics.connectionOpened();
 				
 				//Logging client connection
 				try {
@@ -240,68 +539,113 @@ public class Server{
 					System.err.println("Failed to write to log file: (" + ex + ")");
 				}
 				
-				int timeoutCounter = 1;
-				//Loop to listen for client requests
+				//Loop to listen for client requests, until the connection fails, is closed or times out
 				while(true) {
 					try {
 						ClientMessage request = (ClientMessage) incomingRequests.readObject();
-						sendServerMessage(handleRequest(request));
-					}
-					catch (IOException | ClassNotFoundException ex) {
-						/*Incrementing the timeout counter in case 
-						 *there is an error communicating with client socket
+						lastActivity = System.nanoTime();
+						//Answering heartbeats at once, as they only keep the connection alive
+						if (request instanceof Heartbeat) {
+							sendServerMessage(new Heartbeat());
+							continue;
+						}
+						/*Relaying typing indicators and recording receipts without a response, since clients do not
+						 *await one, silently dropping those over the connection's limit for the same reason
 						 */
-						if (timeoutCounter < 3) {
-							timeoutCounter++;
-							try {
-								if (!clientsExecutor.isShutdown()) {
-									Thread.sleep(3000);
-								}
-								else {
-									break;
-								}
-							}
-							catch (InterruptedException e) {}
+						if (request instanceof TypingIndicator) {
+							if (admissionControl.admitUnanswered(ephemeralBucket))
+								relayTypingIndicator((TypingIndicator) request);
+							continue;
+						}
+						if (request instanceof ReceiptBatch) {
+							if (admissionControl.admitUnanswered(ephemeralBucket))
+								recordReceipts((ReceiptBatch) request);
+							continue;
+						}
+						//Turning the request away at once if it exceeds the limits, without touching the database
+						ServerBusyError rejection = admissionControl.admit(request, requestBucket, currentUser);
+						if (rejection != null) {
+							sendServerMessage(rejection);
+							continue;
+						}
+						//Handling the request and recording how long it took
+						long start = System.nanoTime();
+						ServerMessage response;
+						try {
+							response = handleRequest(request);
+						}
+						finally {
+							admissionControl.complete();
+						}
+						metrics.recordRequest(request, System.nanoTime() - start, response);
+						sendServerMessage(encodeResponse(response));
+					}
+					//Skipping requests of classes the server does not know, the stream remaining intact
+					catch (ClassNotFoundException ex) {
+						lastActivity = System.nanoTime();
+						sendServerMessage(new ServerError("Invalid request type"));
+					}
+					//Answering a request that failed unexpectedly with an error, rather than dropping the client
+					catch (RuntimeException ex) {
+						try {
+							logInformation("Failed to handle a request from client " + handlerSocket.getInetAddress()
+									+ ": (" + ex + ")", false);
 						}
-						//Throwing new IOException if the timeout has expired
-						else {
-							throw new IOException();
+						catch (IOException e) {
+							System.err.println("Failed to write to log file: (" + e + ")");
 						}
+						sendServerMessage(new ServerError("Unable to handle your request: "
+								+ "There was an error at the G-Instant Messenger server"));
 					}
 				}
 			}
-			//In case there is an error setting up resources or timeout expires
+			//In case there is an error setting up resources or communicating with the client
 			catch(IOException ex) {
 				/*Disconnecting the client
 				 *
 				 */
 				disconnectClient();
 			}
+			finally {
+				idleTimeout.cancel();
+				connectedClients.remove(this);
+				if (outgoingServerMessages != null)
+					metrics.connectionClosed();
+			}
 		}
-
-		//Method to check if shutdown sequence is in progress
-		private void checkForShutdownStatus() {
-			while(true) {
-				//Checking if the client has been disconnected
-				if (!handlerSocket.isClosed()) {
-					if (listenersExecutor.isShutdown()) {
-						disconnectClient();
-					}
-				}
-				//Break out of the loop if the client has been disconnected
-				else {
-					break;
+		
+		/*Method scheduling the check of whether the client has been idle for the idle timeout. The check
+		 *runs on the timing wheel, so instead of logging the user out it closes the socket, which fails
+		 *the handler's read and so makes the handler disconnect the client
+		 */
+		private void scheduleIdleTimeout(long delay, TimeUnit unit) {
+			idleTimeout = timingWheel.schedule(() -> {
+				long timeout = TimeUnit.SECONDS.toNanos(configuration.getIdleTimeout());
+				long idle = System.nanoTime() - lastActivity;
+				if (idle < timeout) {
+					scheduleIdleTimeout(timeout - idle, TimeUnit.NANOSECONDS);
 				}
-				try {
-					Thread.sleep(1);
+				else if (!handlerSocket.isClosed()) {
+					metrics.connectionTimedOut();
+					closeConnection();
 				}
-				catch (InterruptedException e) {}
+			}, delay, unit);
+		}
+		
+		//Method closing the client's socket, without blocking, so that its handler disconnects the client
+		void closeConnection() {
+			try {
+				handlerSocket.close();
 			}
+			catch (IOException ex) {}
 		}
 
 		//Method to handle a particular client request
-		private ServerMessage handleRequest(ClientMessage request) {
+		ServerMessage handleRequest(ClientMessage request) {
 			
+			//Turning away requests missing a field the server needs, which only a faulty client sends
+			if (request != null && !isComplete(request))
+				return new ServerError("Invalid request: a required field is missing");
 			//If-else if block to determine the request type
 			if (request instanceof Authentication) { //Executes if the client request is Authentication
 				Authentication authenticationRequest = (Authentication) request;
@@ -319,6 +663,10 @@ public class Server{
 					return deleteAccount(authenticationRequest);
 				}
 			}
+			//Executes if the client request is GroupMessage (checked before ChatMessage, which it extends)
+			else if (request instanceof GroupMessage) {
+				return sendGroupMessage((GroupMessage) request);
+			}
 			//Executes if the client request is ChatMessage
 			else if(request instanceof ChatMessage){
 				return sendChat((ChatMessage) request);
@@ -335,40 +683,98 @@ public class Server{
 			else if (request instanceof ContactsRequest) {
 				return retrieveContacts((ContactsRequest) request);
 			}
+			//Executes if the client request is Handshake
+			else if (request instanceof Handshake) {
+				return negotiate((Handshake) request);
+			}
+			//Executes if the client request is GroupRequest
+			else if (request instanceof GroupRequest) {
+				return manageGroup((GroupRequest) request);
+			}
+			//Executes if the client request is GroupHistoryRequest
+			else if (request instanceof GroupHistoryRequest) {
+				return retrieveGroupChats((GroupHistoryRequest) request);
+			}
+			//Executes if the client request is SearchRequest
+			else if (request instanceof SearchRequest) {
+				return searchChats((SearchRequest) request);
+			}
+			//Executes if the client request is ConversationsRequest
+			else if (request instanceof ConversationsRequest) {
+				return retrieveConversations((ConversationsRequest) request);
+			}
+			//Executes if the client request is AttachmentRequest
+			else if (request instanceof AttachmentRequest) {
+				return issueAttachmentTicket((AttachmentRequest) request);
+			}
 			//Executes in case request type is invalid
 			else {
 				return new ServerError("Invalid request type");
 			}
 		}
 
+		//Method checking that a request has every field its handling needs, the optional ones aside
+		private boolean isComplete(ClientMessage request) {
+			if (request instanceof Authentication) {
+				Authentication authentication = (Authentication) request;
+				return authentication.getAuthenticationType() != null && authentication.getUsername() != null
+						&& authentication.getPassword() != null;
+			}
+			if (request instanceof GroupMessage) {
+				GroupMessage message = (GroupMessage) request;
+				return message.getGroup() != null && message.getBody() != null && message.getTimeStamp() != null;
+			}
+			if (request instanceof ChatMessage) {
+				ChatMessage chat = (ChatMessage) request;
+				return chat.getSender() != null && chat.getRecipient() != null && chat.getBody() != null
+						&& chat.getTimeStamp() != null;
+			}
+			if (request instanceof UserDisconnection)
+				return ((UserDisconnection) request).getDisconnectionTime() != null;
+			if (request instanceof ChatHistoryRequest) {
+				ChatHistoryRequest history = (ChatHistoryRequest) request;
+				return history.getParticipant1() != null && history.getParticipant2() != null;
+			}
+			if (request instanceof ContactsRequest)
+				return ((ContactsRequest) request).getPrefix() != null;
+			if (request instanceof Handshake)
+				return !((Handshake) request).getCompressions().contains(null);
+			if (request instanceof GroupRequest) {
+				GroupRequest group = (GroupRequest) request;
+				return group.getRequestType() != null && !group.getMembers().contains(null);
+			}
+			return true;
+		}
+
 		//Method retrieving contacts per ContactRequest
 		private ServerMessage retrieveContacts(ContactsRequest request) {
-			HashMap<String, String> contactsMap = new HashMap<String, String>();
-			
-			//Populating the contactsMap with contacts stored in the server static variables
-			for (String onlineUser: onlineUsers.keySet()) {
-				contactsMap.put(onlineUser, "Online");
-			}	
-			for (String offlineUser: offlineUsers.keySet()){
-				contactsMap.put(offlineUser,"Last seen " + offlineUsers
-						.get(offlineUser)
-						.format(DateTimeFormatter
-						.ofPattern("dd MMMM yy, HH:mm")).toString());
-			}
-			contactsMap.remove(currentUser);
-			return new ContactList(contactsMap); //Returning new ContactList object
+			//Serving no more contacts at a time than configured, however many the client asks for
+			int pageSize = configuration.getContactsPageSize();
+			if (request.getPageSize() > 0)
+				pageSize = Math.min(request.getPageSize(), pageSize);
+			return contactIndex.page(request, pageSize, currentUser); //Returning a page of the contact index
 		}
 
 		//Method retrieving chats per ChatHistoryRequest
 		private ServerMessage retrieveChats(ChatHistoryRequest request) {
 			try {
-				//Table of results storing chats between the two participants in the request
-				ResultSet chatsQuery = database.retrieveRecords(new String[] { "Chat_Messages" },
-				"(Sender = '" + request.getParticipant1() + "' AND Receiver = '" + request.getParticipant2()
-				+ "') OR (Receiver = '" + request.getParticipant1() + "'AND Sender = '"
-				+ request.getParticipant2() + "')", true, new String[] { "Timestamp" });
-
-				return new ChatHistory(chatsQuery); //Returning new ChatHistory object 
+				//Only retrieving the chats the client does not hold yet, if it holds any
+				ChatHistory chatHistory = new ChatHistory(storageEngine.getChatStore().retrieve(request.getParticipant1(),
+						request.getParticipant2(), request.getSince()));
+				markConversationRead(request);
+				return chatHistory;
+			}
+			//Returning an error response in case the chat files (the archive or the message log) cannot be read
+			catch (IOException ex) {
+				try {
+					logInformation("Error reading the stored chats for client " + handlerSocket.getInetAddress() +
+							": " + ex, false);
+				}
+				catch (IOException e) {
+					System.err.println("Failed to write to log file: " + e);
+				}
+				return new ServerError("Unable to retrieve your chats: "
+						+ "There was an error reading the G-Instant Messenger chat files");
 			}
 			//Returning an error response in case there is failure communicating with the database
 			catch (SQLException ex) {
@@ -385,17 +791,140 @@ public class Server{
 			}
 		}
 
+		//Method recording that the logged in user has read a conversation they opened, per ChatHistoryRequest
+		private void markConversationRead(ChatHistoryRequest request) {
+			String currentUser = this.currentUser;
+			String partner = request.getParticipant1().equalsIgnoreCase(currentUser) ? request.getParticipant2()
+					: request.getParticipant2().equalsIgnoreCase(currentUser) ? request.getParticipant1() : null;
+			if (partner == null)
+				return;
+			//The history being returned all the same in case the summary fails to be updated
+			try {
+				storageEngine.markConversationRead(currentUser, partner);
+			}
+			catch (SQLException ex) {
+				logDatabaseError(ex);
+			}
+		}
+
+		//Method retrieving the summaries of the logged in user's conversations per ConversationsRequest
+		private ServerMessage retrieveConversations(ConversationsRequest request) {
+			String currentUser = this.currentUser;
+			if (currentUser == null)
+				return new ServerError("Please log in to view your conversations.");
+			try {
+				return new ConversationList(storageEngine.findConversations(currentUser));
+			}
+			//Returning an error response in case there is failure communicating with the database
+			catch (SQLException ex) {
+				logDatabaseError(ex);
+				return new ServerError("Unable to retrieve your conversations: "
+						+ "There was an error communicating with the G-Instant Messenger database");
+			}
+		}
+
+		//Method granting the logged in user the transfer of an attachment per AttachmentRequest
+		private ServerMessage issueAttachmentTicket(AttachmentRequest request) {
+			String currentUser = this.currentUser;
+			if (currentUser == null)
+				return new ServerError("Please log in to send or receive attachments.");
+			if (attachmentServer == null)
+				return new ServerError("This server does not accept attachments.");
+			try {
+				return attachmentServer.issue(currentUser, request);
+			}
+			//Returning an error response in case the uploaded bytes cannot be read
+			catch (IOException ex) {
+				try {
+					logInformation("Failed to read an attachment: (" + ex + ")", false);
+				}
+				catch (IOException e) {
+					System.err.println("Failed to write to log file: (" + e + ")");
+				}
+				return new ServerError("Unable to transfer the attachment: There was an error reading the"
+						+ " G-Instant Messenger attachments");
+			}
+		}
+
+		//Method relaying a typing indicator from the logged in user, dropping it if it is incomplete
+		private void relayTypingIndicator(TypingIndicator request) {
+			String currentUser = this.currentUser;
+			if (currentUser != null && request.getRecipient() != null && request.getActivity() != null)
+				typingRelay.relay(TypingIndicator.conversation(currentUser, request.getRecipient()),
+						new TypingIndicator(currentUser, request.getRecipient(), request.getActivity()));
+		}
+
+		/*Method recording the receipts of the logged in user, to be written to storage on the next run of
+		 *the ledger and pushed to the senders of the chats once per interval, dropping incomplete ones, those
+		 *beyond the largest batch, and those acknowledging the user's own chats or users who do not exist
+		 */
+		private void recordReceipts(ReceiptBatch request) {
+			String currentUser = this.currentUser;
+			if (currentUser == null || request.getReceipts() == null)
+				return;
+			List<Receipt> receipts = request.getReceipts();
+			for (Receipt receipt : receipts.subList(0, Math.min(receipts.size(), ReceiptBatch.MAX_RECEIPTS))) {
+				if (receipt == null || receipt.getSender() == null || receipt.getType() == null
+						|| receipt.getUpTo() == null || receipt.getSender().equalsIgnoreCase(currentUser))
+					continue;
+				String sender = contactIndex.find(receipt.getSender());
+				if (sender == null)
+					continue;
+				Receipt recorded = new Receipt(currentUser, sender, receipt.getType(), receipt.getUpTo());
+				receiptLedger.record(recorded);
+				receiptRelay.relay(recorded.watermark(), recorded);
+			}
+		}
+
+		//Method searching the logged in user's chats per SearchRequest
+		private ServerMessage searchChats(SearchRequest request) {
+			//Reading the user once, since the shutdown sequence may log them out concurrently
+			String currentUser = this.currentUser;
+			if (currentUser == null)
+				return new ServerError("Please log in to search your chats.");
+			if (messageIndex == null)
+				return new ServerError("Searching chats is not available on this server.");
+			if (MessageIndex.terms(request.getQuery()).isEmpty())
+				return new ServerError("Please enter at least one word to search for.");
+			try {
+				return messageIndex.search(currentUser, request);
+			}
+			//Returning an error response in case there is failure communicating with the database
+			catch (SQLException ex) {
+				logDatabaseError(ex);
+				return new ServerError("Unable to search your chats: "
+						+ "There was an error communicating with the G-Instant Messenger database");
+			}
+			//Returning an error response in case the archived chats found cannot be read
+			catch (IOException ex) {
+				try {
+					logInformation("Error reading the archived chats for client " + handlerSocket.getInetAddress() +
+							": " + ex, false);
+				}
+				catch (IOException e) {
+					System.err.println("Failed to write to log file: " + e);
+				}
+				return new ServerError("Unable to search your chats: "
+						+ "There was an error reading the G-Instant Messenger chat files");
+			}
+		}
+
 		//Method disconnecting/logging out user from network
 		private ServerMessage disconnectUser(UserDisconnection request) {
+			//Reading the user once, since the shutdown sequence may log them out concurrently
+			String currentUser = this.currentUser;
+			//Nothing to do in case no user is logged in on this client
+			if (currentUser == null)
+				return new CommitMessage("Successfully logged you out of the network");
 			try {
-				//Updating log out time of user in database
-				database.updateRecord("Users", new String[] { "Last_Seen" },
-						new String[] { Timestamp.valueOf(request.getDisconnectionTime()).toString() },
-						"Username = '" + currentUser + "'");
+				//Updating log out time of user in storage
+				storageEngine.updateLastSeen(currentUser, request.getDisconnectionTime());
 
 				//Updating server contact lists
-				onlineUsers.remove(currentUser);
-				offlineUsers.put(currentUser, request.getDisconnectionTime());
+				onlineUsers.remove(userDirectory.find(currentUser));
+				cluster.release(currentUser);
+				admissionControl.release(currentUser);
+				contactIndex.offline(currentUser, request.getDisconnectionTime());
 
 				//Logging the user disconnection
 				try {
@@ -407,11 +936,12 @@ public class Server{
 				}
 
 				//Notifying all clients that the user has logged off
-				String offlineUser = currentUser;
+				ServerNotification offlineNotification = new PresenceNotification("User '" + currentUser
+						+ "', is now offline.", currentUser, PresenceNotification.Status.OFFLINE,
+						request.getDisconnectionTime());
 				if (!notificationsExecutor.isShutdown())
-					notificationsExecutor.execute(() -> sendNotification(
-							new ServerNotification("User '" + offlineUser + "', is now offline.")));
-				currentUser = null;
+					notificationsExecutor.execute(() -> sendNotification(offlineNotification));
+				this.currentUser = null;
 				//Returning confirmation of success
 				return new CommitMessage("Successfully logged you out of the network");
 			}
@@ -433,13 +963,29 @@ public class Server{
 		//Method sending chat message to specific user per ChatMessage request
 		private ServerMessage sendChat(ChatMessage request) {
 			try {
-				//Adding the chat message to the database
-				database.addRecord("Chat_Messages", Integer.toString(request.hashCode()),
-						request.getSender(), request.getRecipient(),
-						request.getBody().replace("'","''"),
-						Timestamp.valueOf(request.getTimeStamp()).toString());
+				//Storing the chat message
+				storageEngine.getChatStore().store(request);
+				//Updating the participants' conversation summaries, the chat being sent all the same if this fails
+				try {
+					storageEngine.updateConversations(request);
+				}
+				catch (SQLException ex) {
+					logDatabaseError(ex);
+				}
 
-				//Notifying recipient of new message
+				//Letting the recipient download the attachments the chat shares, should the sender have them
+				String currentUser = this.currentUser;
+				if (attachmentServer != null && currentUser != null) {
+					try {
+						attachmentServer.share(currentUser, request);
+					}
+					catch (IOException ex) {
+						System.err.println("Failed to share the attachments of a chat: (" + ex + ")");
+					}
+				}
+
+				//Notifying recipient of new message, which supersedes the sender's pending typing indicator
+				typingRelay.discard(TypingIndicator.conversation(request.getSender(), request.getRecipient()));
 				if (!notificationsExecutor.isShutdown())
 					notificationsExecutor.execute(() -> sendNotification(request));
 				//Returning confirmation of success
@@ -458,25 +1004,32 @@ public class Server{
 				return new ServerError("Unable to send your message: "
 						+ "There was an error communicating with the G-Instant Messenger database");
 			} 
+			//Returning an error response in case the message log cannot be written
+			catch (IOException ex) {
+				try {
+					logInformation("Error writing the message log for client " + handlerSocket.getInetAddress() +
+							": " + ex, false);
+				}
+				catch (IOException e) {
+					System.err.println("Failed to write to log file: " + e);
+				}
+				return new ServerError("Unable to send your message: "
+						+ "There was an error writing the G-Instant Messenger chat files");
+			}
 		}
 
 		//Method deleting account as specified in the Authentication request credentials
 		private ServerMessage deleteAccount(Authentication request) {
 			try {
-				//Checking if account is already logged in on another client
-				if (!onlineUsers.containsKey(database.retrieveRecords(new String[] {"Users"}, "Username = '" +
-					request.getUsername() + "'", false).getString(1))) {
+				//Checking if account is already logged in on another client (of any server in the cluster)
+				String username = storageEngine.findUser(request.getUsername());
+				if (username == null || cluster.locate(username) == ClusterNode.NOWHERE) {
 					
-					//Table of results to store the user retrieved from database matching credentials in request
-					ResultSet matches = database.retrieveRecords(new String[] { "Users" }, "Username = '"
-					+ request.getUsername() + "' AND  Password = '" + request.getPassword() + "'", false);
-
-					//Deleting user from database and updating server contact lists in case there are matches
-					if (matches.next()) {
-						database.deleteRecords("Users", "Username = '" + request.getUsername()
-						+ "' AND  Password = '" + request.getPassword() + "'");
-						onlineUsers.remove(request.getUsername());
-						offlineUsers.remove(request.getUsername());
+					//Deleting user from storage and updating server contact lists in case the credentials match
+					if (storageEngine.authenticate(request.getUsername(), request.getPassword()) != null) {
+						storageEngine.deleteUser(request.getUsername());
+						onlineUsers.remove(userDirectory.find(request.getUsername()));
+						contactIndex.remove(request.getUsername());
 						
 						//Logging the account deletion
 						try {
@@ -488,9 +1041,11 @@ public class Server{
 						}
 
 						//Notifying all clients that the user has deleted their account
+						ServerNotification deletionNotification = new PresenceNotification("User '" +
+								request.getUsername() + "', has deleted their account", request.getUsername(),
+								PresenceNotification.Status.DELETED, LocalDateTime.now());
 						if (!notificationsExecutor.isShutdown())
-							notificationsExecutor.execute(() -> sendNotification(new ServerNotification("User '" +
-							request.getUsername() + "', has deleted their account")));
+							notificationsExecutor.execute(() -> sendNotification(deletionNotification));
 						//Returning confirmation of success
 						return new CommitMessage("Successfully deleted the user.");
 					}
@@ -517,25 +1072,29 @@ public class Server{
 				return new ServerError("Unable to delete your account: "
 						+ "There was an error communicating with the G-Instant Messenger database");
 			} 
+			//Returning an error response in case the server cluster cannot tell whether the user is online
+			catch (IOException ex) {
+				logClusterError(ex);
+				return new ServerError("Unable to delete your account: "
+						+ "There was an error communicating with the G-Instant Messenger servers");
+			}
 		}
 
 		//Method logging account in as specified in the Authentication request credentials
 		private ServerMessage login(Authentication request) {
 			try {
-				//Table of results to store the user retrieved from database matching credentials in request
-				ResultSet matches = database.retrieveRecords(new String[] {"Users"},
-				"Username = '" + request.getUsername() +
-				"' AND Password = '" + request.getPassword() + "'", false);
+				//Username of the user retrieved from storage matching credentials in request
+				String username = storageEngine.authenticate(request.getUsername(), request.getPassword());
 				
 				/*Updating server contact lists and reassigning handler's
 				 *currentUser instance variable in case there are matches
 				 */
-				if (matches.next()) {
-					//Checking if account is already online
-					if (!onlineUsers.containsKey(matches.getString(1))) {
-						offlineUsers.remove(matches.getString(1));
-						onlineUsers.put(matches.getString(1), this);
-						currentUser = matches.getString(1);
+				if (username != null) {
+					//Checking if account is already online, on this or any other server in the cluster
+					if (cluster.claim(username)) {
+						contactIndex.online(username);
+						onlineUsers.put(userDirectory.register(username), this);
+						currentUser = username;
 						//Logging the login
 						try {
 							logInformation("User, " + currentUser + ", has logged in at client, "
@@ -545,9 +1104,11 @@ public class Server{
 							System.err.println("Failed to write to log file: (" + ex + ")");
 						}
 						//Notifying all clients that the user has logged in
+						ServerNotification onlineNotification = new PresenceNotification("User '" +
+								currentUser + "', is now online.", currentUser, PresenceNotification.Status.ONLINE,
+								LocalDateTime.now());
 						if (!notificationsExecutor.isShutdown())
-							notificationsExecutor.execute(() -> sendNotification(new ServerNotification("User '" +
-							currentUser.toString() + "', is now online.")));
+							notificationsExecutor.execute(() -> sendNotification(onlineNotification));
 						return new User(currentUser); //Returning user object
 					}
 					else {
@@ -573,19 +1134,31 @@ public class Server{
 				return new ServerError("Unable to log you in: "
 						+ "There was an error communicating with the G-Instant Messenger database");
 			}
+			//Returning an error response in case the server cluster cannot tell whether the user is online
+			catch (IOException ex) {
+				logClusterError(ex);
+				return new ServerError("Unable to log you in: "
+						+ "There was an error communicating with the G-Instant Messenger servers");
+			}
 		}
 
 		//Method creating user as specified in the Authentication request credentials
 		private ServerMessage createAccount(Authentication request) {
 			try {
 				//Checking if username is already taken
-				if (!database.retrieveRecords(new String[] {"Users"}, "Username = '" +
-					request.getUsername() + "'", false).next()) {
+				if (storageEngine.findUser(request.getUsername()) == null
+						&& cluster.claim(request.getUsername())) {
 			
-					//Adding user to database and onlineUsers list
-					database.addRecord("Users", new String[] {request.getUsername(), request.getPassword(),
-					Timestamp.valueOf(LocalDateTime.now()).toString()});
-					onlineUsers.put(request.getUsername(), this);
+					//Adding user to storage and onlineUsers list
+					try {
+						storageEngine.createUser(request.getUsername(), request.getPassword(), LocalDateTime.now());
+					}
+					catch (SQLException ex) {
+						cluster.release(request.getUsername());
+						throw ex;
+					}
+					onlineUsers.put(userDirectory.register(request.getUsername()), this);
+					contactIndex.online(request.getUsername());
 					//Assigning user's username to handler's current username instance variable
 					currentUser = request.getUsername();
 
@@ -599,9 +1172,11 @@ public class Server{
 					}
 
 					//Notifying all clients that the user has joined the network
+					ServerNotification onlineNotification = new PresenceNotification("User '" +
+							currentUser + "', is now online", currentUser, PresenceNotification.Status.ONLINE,
+							LocalDateTime.now());
 					if (!notificationsExecutor.isShutdown())
-						notificationsExecutor.execute(() -> sendNotification(new ServerNotification("User '" +
-						currentUser.toString() + "', is now online")));
+						notificationsExecutor.execute(() -> sendNotification(onlineNotification));
 					
 					return new User(currentUser);
 				}
@@ -624,18 +1199,56 @@ public class Server{
 				return new ServerError("Unable to create your account: "
 						+ "There was an error communicating with the G-Instant Messenger database");
 			}
+			//Returning an error response in case the server cluster cannot register the user
+			catch (IOException ex) {
+				logClusterError(ex);
+				return new ServerError("Unable to create your account: "
+						+ "There was an error communicating with the G-Instant Messenger servers");
+			}
+		}
+		
+		//Method selecting the connection options per Handshake
+		private ServerMessage negotiate(Handshake request) {
+			//Compressing with the configured codec if the client supports it
+			compression = request.getCompressions().contains(configuration.getCompression())
+					? configuration.getCompression() : Handshake.Compression.NONE;
+			return new Handshake(TimeUnit.SECONDS.toMillis(configuration.getHeartbeatInterval()), compression);
+		}
+		
+		/*Method encoding the potentially large responses (chat histories, contact and conversation lists) for
+		 *clients which negotiated compression, compressing them if their serialized size reaches the threshold
+		 */
+		private ServerMessage encodeResponse(ServerMessage response) throws IOException {
+			if (compression == Handshake.Compression.NONE
+					|| !(response instanceof ChatHistory || response instanceof ContactList
+					|| response instanceof ConversationList))
+				return response;
+			byte[] serialized = EncodedMessage.serialize(response);
+			if (serialized.length < configuration.getCompressionThreshold()) {
+				metrics.recordUncompressedResponse(serialized.length);
+				return new EncodedMessage(serialized, false);
+			}
+			long start = System.nanoTime();
+			byte[] compressed = EncodedMessage.compress(serialized);
+			metrics.recordCompressedResponse(serialized.length, compressed.length, System.nanoTime() - start);
+			//Sending the response uncompressed in the unlikely case compression does not pay off
+			return compressed.length < serialized.length ? new EncodedMessage(compressed, true)
+					: new EncodedMessage(serialized, false);
 		}
 		
 		//Method disconnecting the client
 		private void disconnectClient() {
 			//Logging user out first in case the client terminated with an account logged in
+			String currentUser = this.currentUser;
 			if (currentUser != null) {
 				ServerMessage userDisconnectResponse = disconnectUser(new UserDisconnection());
 				//Execute in case user disconnection fails
 				if(userDisconnectResponse instanceof ServerError) {
-					onlineUsers.remove(currentUser);
-					offlineUsers.put(currentUser, LocalDateTime.now());
-					currentUser = null;
+					onlineUsers.remove(userDirectory.find(currentUser));
+					cluster.release(currentUser);
+					admissionControl.release(currentUser);
+					contactIndex.offline(currentUser, LocalDateTime.now());
+					this.currentUser = null;
 				}
 			}
 			try {
@@ -656,34 +1269,304 @@ public class Server{
 		
 		//Method to send server message to client
 		synchronized void sendServerMessage(ServerMessage message) throws IOException {
+			//Writing frames encoded once for many recipients as they are, beneath the object stream
+			if (message instanceof MessageFrame) {
+				((MessageFrame) message).writeTo(socketOutput);
+				frameWritten = true;
+				return;
+			}
+			//Resetting the stream in step with the client's, which the last frame reset
+			if (frameWritten) {
+				outgoingServerMessages.reset();
+				frameWritten = false;
+			}
 			outgoingServerMessages.writeObject(message);
 			outgoingServerMessages.flush();
 		}
 		
-		//Method to send notification to client(s)
+		//Method to send notification to client(s), wherever in the cluster they are connected
 		private void sendNotification(ServerMessage notification) {
 			//If notification is a chat message
 			if (notification instanceof ChatMessage) {
-				ChatMessage chat = (ChatMessage) notification;
-				//Send message if the user is online
-				if (onlineUsers.containsKey(chat.getRecipient())) {
-					try {
-						onlineUsers.get(chat.getRecipient()).sendServerMessage(notification);
-					}
-					catch (IOException ex) {}
-				}
+				cluster.route(((ChatMessage) notification).getRecipient(), notification);
 			}
 			//If the notifications is a broadcast server notification
 			else if (notification instanceof ServerNotification) {
-				onlineUsers.forEach((k, v) -> {
-					if (!k.equals(currentUser)) {
-						try {
-							v.sendServerMessage(notification);
-						} catch (IOException ex) {
-						}
+				cluster.broadcast((ServerNotification) notification, currentUser);
+			}
+		}
+		
+		//Method logging a failure to communicate with the other servers of the cluster
+		private void logClusterError(IOException ex) {
+			try {
+				logInformation("Cluster error at handler for client " + handlerSocket.getInetAddress() +
+						": " + ex, false);
+			}
+			catch (IOException e) {
+				System.err.println("Failed to write to log file: " + e);
+			}
+		}
+		
+		//__________________________________________Group conversations__________________________________________
+
+		//Method creating, adding members to, leaving or listing group conversations per GroupRequest
+		private ServerMessage manageGroup(GroupRequest request) {
+			//Reading the user once, since the shutdown sequence may log them out concurrently
+			String currentUser = this.currentUser;
+			if (currentUser == null)
+				return new ServerError("Please log in to take part in group conversations.");
+			try {
+				switch (request.getRequestType()) {
+				case CREATION:
+					return createGroup(request, currentUser);
+				case ADDITION:
+					return addGroupMembers(request, currentUser);
+				case DEPARTURE:
+					return leaveGroup(request, currentUser);
+				default:
+					return listGroups(currentUser);
+				}
+			}
+			//Returning an error response in case there is failure communicating with the database
+			catch (SQLException ex) {
+				logDatabaseError(ex);
+				return new ServerError("Unable to update your groups: "
+						+ "There was an error communicating with the G-Instant Messenger database");
+			}
+		}
+
+		//Method creating a group made up of the current user and the requested members
+		private ServerMessage createGroup(GroupRequest request, String currentUser) throws SQLException {
+			String group = request.getGroup() == null ? "" : request.getGroup().trim();
+			//Sanity checking the group name
+			if (group.isEmpty() || group.length() > 45)
+				return new ServerError("Group names must be between 1 and 45 characters long.");
+			if (findGroupName(group) != null)
+				return new ServerError("Unable to create the group. The provided group name is already in use.");
+			List<String> members = new ArrayList<String>();
+			members.add(currentUser);
+			String unknownUser = addUsers(request.getMembers(), members);
+			if (unknownUser != null)
+				return new ServerError("Unable to create the group. The user '" + unknownUser + "' does not exist.");
+
+			//Adding the group and its members to storage
+			storageEngine.createGroup(group, currentUser, LocalDateTime.now());
+			storageEngine.addGroupMembers(group, members);
+			notifyNewMembers(group, members.subList(1, members.size()), currentUser);
+			return new Group(group, members);
+		}
+
+		//Method adding the requested members to a group the current user is a member of
+		private ServerMessage addGroupMembers(GroupRequest request, String currentUser) throws SQLException {
+			String group = findGroupName(request.getGroup());
+			List<String> members = group == null ? new ArrayList<String>() : findGroupMembers(group);
+			if (!isMember(members, currentUser))
+				return new ServerError("You are not a member of the group '" + request.getGroup() + "'.");
+			int existingMembers = members.size();
+			String unknownUser = addUsers(request.getMembers(), members);
+			if (unknownUser != null)
+				return new ServerError("Unable to add the members. The user '" + unknownUser + "' does not exist.");
+
+			//Adding the new members to storage
+			List<String> newMembers = members.subList(existingMembers, members.size());
+			storageEngine.addGroupMembers(group, newMembers);
+			notifyNewMembers(group, newMembers, currentUser);
+			return new Group(group, members);
+		}
+
+		//Method removing the current user from a group, deleting the group once its last member leaves
+		private ServerMessage leaveGroup(GroupRequest request, String currentUser) throws SQLException {
+			String group = findGroupName(request.getGroup());
+			List<String> members = group == null ? new ArrayList<String>() : findGroupMembers(group);
+			if (!isMember(members, currentUser))
+				return new ServerError("You are not a member of the group '" + request.getGroup() + "'.");
+			storageEngine.removeGroupMember(group, currentUser);
+			if (members.size() == 1)
+				storageEngine.deleteGroup(group);
+			return new CommitMessage("You have left the group '" + group + "'.");
+		}
+
+		//Method listing the groups the current user is a member of, along with their members
+		private ServerMessage listGroups(String currentUser) throws SQLException {
+			List<Group> groupList = new ArrayList<Group>();
+			storageEngine.findGroups(currentUser).forEach((group, members) -> groupList.add(new Group(group, members)));
+			return new GroupList(groupList);
+		}
+
+		//Method sending a message to a group the current user is a member of per GroupMessage request
+		private ServerMessage sendGroupMessage(GroupMessage request) {
+			String currentUser = this.currentUser;
+			if (currentUser == null)
+				return new ServerError("Please log in to take part in group conversations.");
+			try {
+				List<String> members = findGroupMembers(request.getGroup());
+				if (!isMember(members, currentUser))
+					return new ServerError("You are not a member of the group '" + request.getGroup() + "'.");
+				GroupMessage message = new GroupMessage(currentUser, request.getGroup(), request.getBody(),
+						request.getTimeStamp());
+
+				//Storing the message, once for all the members
+				storageEngine.storeGroupMessage(message);
+
+				//Notifying the other members of the new message
+				if (!notificationsExecutor.isShutdown())
+					notificationsExecutor.execute(() -> sendGroupNotification(message, members));
+				//Returning confirmation of success
+				return new CommitMessage("Message was successfully sent.");
+			}
+			//Returning an error response in case there is failure communicating with the database
+			catch (SQLException ex) {
+				logDatabaseError(ex);
+				return new ServerError("Unable to send your message: "
+						+ "There was an error communicating with the G-Instant Messenger database");
+			}
+		}
+
+		//Method retrieving the messages of a group the current user is a member of per GroupHistoryRequest
+		private ServerMessage retrieveGroupChats(GroupHistoryRequest request) {
+			String currentUser = this.currentUser;
+			if (currentUser == null)
+				return new ServerError("Please log in to take part in group conversations.");
+			try {
+				if (!isMember(findGroupMembers(request.getGroup()), currentUser))
+					return new ServerError("You are not a member of the group '" + request.getGroup() + "'.");
+				//Only retrieving the messages the client does not hold yet, if it holds any
+				return new ChatHistory(storageEngine.retrieveGroupMessages(request.getGroup(), request.getSince()));
+			}
+			//Returning an error response in case there is failure communicating with the database
+			catch (SQLException ex) {
+				logDatabaseError(ex);
+				return new ServerError("Unable to retrieve the group's messages: "
+						+ "There was an error communicating with the G-Instant Messenger database");
+			}
+		}
+
+		//Method retrieving the stored name of a group, or null if there is no such group
+		private String findGroupName(String group) throws SQLException {
+			return group == null ? null : storageEngine.findGroup(group);
+		}
+
+		//Method retrieving the members of a group, which is empty if there is no such group
+		private List<String> findGroupMembers(String group) throws SQLException {
+			return group == null ? new ArrayList<String>() : storageEngine.findGroupMembers(group);
+		}
+
+		/*Method adding the stored names of the given users to a list of members, skipping those already in it.
+		 *Returns the first of the users who does not exist, or null if they all exist
+		 */
+		private String addUsers(List<String> users, List<String> members) throws SQLException {
+			for (String user : users) {
+				String username = storageEngine.findUser(user);
+				if (username == null)
+					return user;
+				if (!isMember(members, username))
+					members.add(username);
+			}
+			return null;
+		}
+
+		//Method notifying users who were added to a group, wherever in the cluster they are connected
+		private void notifyNewMembers(String group, List<String> newMembers, String currentUser) {
+			ServerNotification additionNotification = new ServerNotification("User '" + currentUser
+					+ "', has added you to the group '" + group + "'.");
+			List<String> recipients = new ArrayList<String>(newMembers);
+			if (!notificationsExecutor.isShutdown())
+				notificationsExecutor.execute(() -> recipients.forEach(member -> cluster.route(member,
+						additionNotification)));
+		}
+
+		/*Method pushing a group message to the other members of the group, wherever in the cluster they are
+		 *connected. The message is serialized once, and the same frame written to every member's connection
+		 */
+		private void sendGroupNotification(GroupMessage message, List<String> members) {
+			MessageFrame frame = MessageFrame.encode(message);
+			for (String member : members) {
+				if (!member.equalsIgnoreCase(message.getSender()))
+					cluster.route(member, frame);
+			}
+		}
+
+		//Method checking whether a user is one of the given members, usernames being case insensitive
+		private static boolean isMember(List<String> members, String username) {
+			return members.stream().anyMatch(member -> member.equalsIgnoreCase(username));
+		}
+
+		//Method logging a failure to communicate with the database
+		private void logDatabaseError(SQLException ex) {
+			try {
+				logInformation("Error at handler for client " + handlerSocket.getInetAddress() +
+						": " + ex, false);
+			}
+			catch (IOException e) {
+				System.err.println("Failed to write to log file: " + e);
+			}
+		}
+	}
+	
+	/**
+	 * The {@code ClusterDelivery} nested class delivers the chat messages and notifications routed
+	 * through the server cluster to the clients connected to this server
+	 * @author Garikai Gumbo<br>
+	 * Providence Universal Studios®<br>
+	 */
+	private static class ClusterDelivery implements ClusterNode.LocalDelivery {
+		
+		@Override
+		public boolean deliver(String recipient, ServerMessage message) {
+			ClientRequestHandler recipientHandler = onlineUsers.get(userDirectory.find(recipient));
+			//Execute if the recipient is not connected to this server
+			if (recipientHandler == null)
+				return false;
+			long start = System.nanoTime();
+			int failures = 0;
+			try {
+				recipientHandler.sendServerMessage(message);
+			}
+			catch (IOException ex) {
+				failures++;
+			}
+			//Recording the delivery
+			metrics.recordNotification(System.nanoTime() - start, 1 - failures, failures);
+			return true;
+		}
+		
+		@Override
+		public void broadcast(ServerNotification notification, String excludedUser) {
+			long start = System.nanoTime();
+			int recipients = 0, failures = 0;
+			//Serializing the notification once, whatever the number of recipients
+			MessageFrame frame = MessageFrame.encode(notification);
+			ClientRequestHandler excludedHandler = excludedUser == null ? null
+					: onlineUsers.get(userDirectory.find(excludedUser));
+			for (ClientRequestHandler onlineUser : onlineUsers.values()) {
+				if (onlineUser != excludedHandler) {
+					recipients++;
+					try {
+						onlineUser.sendServerMessage(frame);
 					}
-				});
-			} 
+					catch (IOException ex) {
+						failures++;
+					}
+				}
+			}
+			//Recording the fan-out
+			metrics.recordNotification(System.nanoTime() - start, recipients - failures, failures);
+		}
+		
+		@Override
+		public void presenceChanged(PresenceNotification presence) {
+			//Keeping the activity status of users connected to other servers up to date
+			switch (presence.getStatus()) {
+			case ONLINE:
+				contactIndex.online(presence.getUsername());
+				break;
+			case OFFLINE:
+				contactIndex.offline(presence.getUsername(), presence.getTime());
+				break;
+			case DELETED:
+				contactIndex.remove(presence.getUsername());
+				break;
+			}
 		}
 	}
 }
@@ -0,0 +1,32 @@
+package com.providenceuniversal.gim;
+
+/**
+ * The {@code ServerBusyError} class represents a message notifying the client that a request was
+ * turned away without being handled, because the client sent requests too quickly or the server is
+ * overloaded, and how long to wait before retrying it.
+ * It is one of the types of {@code ServerError}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ServerBusyError extends ServerError {
+
+	private static final long serialVersionUID = 2794430591758105336L;
+	private final long retryAfterMillis;
+
+	/**
+	 * Creates {@code ServerBusyError} object advising the client to retry after the given time.
+	 *
+	 * @param retryAfterMillis Time in milliseconds after which the request may be retried
+	 */
+	ServerBusyError(long retryAfterMillis) {
+		super("The server is busy, please retry after " + retryAfterMillis + " ms.");
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
@@ -0,0 +1,402 @@
+package com.providenceuniversal.gim;
+
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code ServerConfiguration} class holds the startup parameters of the {@code Server}.
+ * <p>
+ * Parameters are passed as {@code --name=value} arguments:
+ * <ul>
+ * <li>{@code port} (4279): Port clients connect to</li>
+ * <li>{@code cluster} (none): Comma separated {@code host:port} cluster addresses of all the nodes of a
+ * server cluster, in node order; the server runs standalone if omitted. The nodes share the users through
+ * one SQLite database file, which is only safe for processes of the same machine, so every address must
+ * be one of this machine's</li>
+ * <li>{@code node-id} (0): Position of this server's address in {@code cluster}</li>
+ * <li>{@code compression} (deflate): Codec offered to clients during the handshake ({@code deflate} or
+ * {@code none})</li>
+ * <li>{@code compression-threshold} (4096): Serialized size in bytes from which chat histories and
+ * contact lists are compressed</li>
+ * <li>{@code connection-rate} (20): Requests per second each connection may sustain</li>
+ * <li>{@code connection-burst} (40): Requests each connection may send at once</li>
+ * <li>{@code user-rate} (20): Requests per second each user may sustain, over all their connections</li>
+ * <li>{@code user-burst} (40): Requests each user may send at once</li>
+ * <li>{@code ephemeral-rate} (10): Typing indicators and receipt batches per second each connection may
+ * sustain, apart from its requests, further ones being dropped</li>
+ * <li>{@code ephemeral-burst} (20): Typing indicators and receipt batches each connection may send at once</li>
+ * <li>{@code max-in-flight} (64): Requests the server handles at a time, further requests being turned away</li>
+ * <li>{@code max-clients} (1024): Clients served at a time, each by its own handler thread</li>
+ * <li>{@code client-queue} (32): Accepted clients waiting for a handler thread, further clients being
+ * turned away with an error</li>
+ * <li>{@code accept-backlog} (50): Connections the operating system queues until the server accepts them</li>
+ * <li>{@code notification-threads} (8): Threads delivering pushed messages and notifications</li>
+ * <li>{@code notification-queue} (10000): Deliveries waiting for a notification thread, further deliveries
+ * being made by the thread submitting them</li>
+ * <li>{@code typing-window} (300): Milliseconds over which the typing indicators a user sends another are
+ * coalesced, only the latest being delivered</li>
+ * <li>{@code receipt-interval} (1000): Milliseconds over which the delivery and read receipts of a
+ * conversation are coalesced before being pushed to the sender, and between two writes of the receipts
+ * to storage</li>
+ * <li>{@code ephemeral-queue} (1000): Typing indicators and receipts waiting to be pushed, further ones
+ * being dropped</li>
+ * <li>{@code heartbeat-interval} (15): Seconds after which idle clients send a heartbeat</li>
+ * <li>{@code idle-timeout} (45): Seconds after which clients that sent nothing, not even a heartbeat,
+ * are disconnected</li>
+ * <li>{@code archive-after} (90): Age in days from which chats are moved out of the database into the
+ * compressed archive, or 0 to keep every chat in the database</li>
+ * <li>{@code archive-interval} (60): Minutes between two runs of the archiver</li>
+ * <li>{@code archive-directory} (archive): Directory of the archived chats</li>
+ * <li>{@code storage} (database): Storage engine, {@code database}, {@code log} (chats stored in an
+ * append-only message log, where they are neither searchable nor archived, and users in the database)
+ * or {@code memory} (everything held in memory and lost when the server stops, for benchmarks and load
+ * tests; not available to a server cluster)</li>
+ * <li>{@code log-directory} (messages): Directory of the message log</li>
+ * <li>{@code log-segment-size} (64): Size in MiB of the message log's segment files</li>
+ * <li>{@code log-flush-interval} (1000): Milliseconds between two forces of the message log to disk, the
+ * chats sent in between being lost should the machine crash</li>
+ * <li>{@code attachment-port} (port + 1): Port attachments are transferred on, or 0 to disable attachments</li>
+ * <li>{@code attachment-directory} (attachments): Directory of the attachments, which the nodes of a server
+ * cluster must share</li>
+ * <li>{@code attachment-max-size} (100): Size in MiB of the largest attachment accepted</li>
+ * <li>{@code attachment-chunk-size} (256): Size in KiB of the largest chunk uploaded at a time</li>
+ * <li>{@code attachment-threads} (16): Attachments transferred at a time, further transfer connections
+ * being closed</li>
+ * <li>{@code attachment-partial-expiry} (24): Hours after its last chunk an unfinished upload is discarded</li>
+ * <li>{@code contacts-page-size} (50): Largest page of contacts returned per request, however many the client
+ * asks for</li>
+ * </ul>
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class ServerConfiguration {
+
+	/**
+	 * Enumeration which stores the storage engines
+	 */
+	enum Storage {DATABASE, LOG, MEMORY}
+
+	private final int port, nodeId;
+	private final List<InetSocketAddress> clusterAddresses;
+	private final Handshake.Compression compression;
+	private final int compressionThreshold;
+	private final double connectionRate, userRate, ephemeralRate;
+	private final int connectionBurst, userBurst, ephemeralBurst, maxRequestsInFlight;
+	private final int maxClients, clientQueue, acceptBacklog, notificationThreads, notificationQueue, ephemeralQueue;
+	private final long typingWindow, receiptInterval, heartbeatInterval, idleTimeout;
+	private final Duration archiveAfter, archiveInterval;
+	private final Path archiveDirectory;
+	private final Storage storage;
+	private final Path logDirectory;
+	private final int logSegmentSize;
+	private final long logFlushInterval;
+	private final int attachmentPort, attachmentMaxSize, attachmentChunkSize, attachmentThreads;
+	private final Path attachmentDirectory;
+	private final Duration attachmentPartialExpiry;
+	private final int contactsPageSize;
+
+	/**
+	 * Creates new {@code ServerConfiguration} with the default parameters.
+	 */
+	ServerConfiguration() {
+		this(new String[0]);
+	}
+
+	/**
+	 * Creates new {@code ServerConfiguration} from the server's command line arguments.
+	 *
+	 * @param args {@code --name=value} arguments
+	 * @throws IllegalArgumentException If a parameter value is invalid
+	 */
+	ServerConfiguration(String[] args) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		for (String argument : args) {
+			//Parsing each --name=value argument
+			if (argument.startsWith("--") && argument.contains("=")) {
+				parameters.put(argument.substring(2, argument.indexOf('=')), argument.substring(argument.indexOf('=') + 1));
+			}
+			else {
+				System.err.println("Ignoring unrecognized argument: " + argument);
+			}
+		}
+		port = Integer.parseInt(parameters.getOrDefault("port", "4279"));
+		nodeId = Integer.parseInt(parameters.getOrDefault("node-id", "0"));
+		clusterAddresses = new ArrayList<InetSocketAddress>();
+		if (parameters.containsKey("cluster")) {
+			for (String address : parameters.get("cluster").split(",")) {
+				int separator = address.lastIndexOf(':');
+				if (separator < 0)
+					throw new IllegalArgumentException("Cluster address without a port: " + address);
+				InetSocketAddress clusterAddress = new InetSocketAddress(address.substring(0, separator).trim(),
+						Integer.parseInt(address.substring(separator + 1).trim()));
+				if (!isLocal(clusterAddress))
+					throw new IllegalArgumentException("Cluster address not on this machine, with which it could not"
+							+ " share the database file: " + address);
+				clusterAddresses.add(clusterAddress);
+			}
+			if (nodeId < 0 || nodeId >= clusterAddresses.size())
+				throw new IllegalArgumentException("Node " + nodeId + " has no cluster address");
+		}
+		compression = Handshake.Compression.valueOf(parameters.getOrDefault("compression", "deflate").toUpperCase());
+		compressionThreshold = Integer.parseInt(parameters.getOrDefault("compression-threshold", "4096"));
+		connectionRate = Double.parseDouble(parameters.getOrDefault("connection-rate", "20"));
+		connectionBurst = Integer.parseInt(parameters.getOrDefault("connection-burst", "40"));
+		userRate = Double.parseDouble(parameters.getOrDefault("user-rate", "20"));
+		userBurst = Integer.parseInt(parameters.getOrDefault("user-burst", "40"));
+		ephemeralRate = Double.parseDouble(parameters.getOrDefault("ephemeral-rate", "10"));
+		ephemeralBurst = Integer.parseInt(parameters.getOrDefault("ephemeral-burst", "20"));
+		maxRequestsInFlight = Integer.parseInt(parameters.getOrDefault("max-in-flight", "64"));
+		if (connectionRate <= 0 || userRate <= 0 || ephemeralRate <= 0 || connectionBurst < 1 || userBurst < 1
+				|| ephemeralBurst < 1 || maxRequestsInFlight < 1)
+			throw new IllegalArgumentException("Request limits must be positive");
+		maxClients = Integer.parseInt(parameters.getOrDefault("max-clients", "1024"));
+		clientQueue = Integer.parseInt(parameters.getOrDefault("client-queue", "32"));
+		acceptBacklog = Integer.parseInt(parameters.getOrDefault("accept-backlog", "50"));
+		notificationThreads = Integer.parseInt(parameters.getOrDefault("notification-threads", "8"));
+		notificationQueue = Integer.parseInt(parameters.getOrDefault("notification-queue", "10000"));
+		if (maxClients < 1 || notificationThreads < 1 || clientQueue < 0 || acceptBacklog < 1 || notificationQueue < 0)
+			throw new IllegalArgumentException("Thread pool sizes must be positive");
+		typingWindow = Long.parseLong(parameters.getOrDefault("typing-window", "300"));
+		receiptInterval = Long.parseLong(parameters.getOrDefault("receipt-interval", "1000"));
+		ephemeralQueue = Integer.parseInt(parameters.getOrDefault("ephemeral-queue", "1000"));
+		if (typingWindow < 1 || receiptInterval < 1 || ephemeralQueue < 0)
+			throw new IllegalArgumentException("The typing and receipt intervals and the ephemeral queue must be positive");
+		heartbeatInterval = Long.parseLong(parameters.getOrDefault("heartbeat-interval", "15"));
+		idleTimeout = Long.parseLong(parameters.getOrDefault("idle-timeout", "45"));
+		if (heartbeatInterval < 1 || idleTimeout <= heartbeatInterval)
+			throw new IllegalArgumentException("The idle timeout must exceed the positive heartbeat interval");
+		archiveAfter = Duration.ofMillis((long) (Double.parseDouble(parameters.getOrDefault("archive-after", "90"))
+				* Duration.ofDays(1).toMillis()));
+		archiveInterval = Duration.ofMillis((long) (Double.parseDouble(parameters.getOrDefault("archive-interval", "60"))
+				* Duration.ofMinutes(1).toMillis()));
+		archiveDirectory = Paths.get(parameters.getOrDefault("archive-directory", "archive"));
+		if (archiveAfter.isNegative() || archiveInterval.isNegative() || archiveInterval.isZero())
+			throw new IllegalArgumentException("Archiving periods must be positive");
+		storage = Storage.valueOf(parameters.getOrDefault("storage", "database").toUpperCase());
+		//Servers of a cluster share their users through the database
+		if (storage == Storage.MEMORY && !clusterAddresses.isEmpty())
+			throw new IllegalArgumentException("A server cluster cannot store its users in memory");
+		logDirectory = Paths.get(parameters.getOrDefault("log-directory", "messages"));
+		logSegmentSize = Integer.parseInt(parameters.getOrDefault("log-segment-size", "64"));
+		logFlushInterval = Long.parseLong(parameters.getOrDefault("log-flush-interval", "1000"));
+		//Keeping segments large enough for the longest chat, and small enough to be addressed by an int
+		if (logSegmentSize < 1 || logSegmentSize > 1024 || logFlushInterval < 1)
+			throw new IllegalArgumentException("The log segment size must be 1 to 1024 MiB and its flush interval positive");
+		attachmentPort = Integer.parseInt(parameters.getOrDefault("attachment-port", Integer.toString(port + 1)));
+		attachmentDirectory = Paths.get(parameters.getOrDefault("attachment-directory", "attachments"));
+		attachmentMaxSize = Integer.parseInt(parameters.getOrDefault("attachment-max-size", "100"));
+		attachmentChunkSize = Integer.parseInt(parameters.getOrDefault("attachment-chunk-size", "256"));
+		attachmentThreads = Integer.parseInt(parameters.getOrDefault("attachment-threads", "16"));
+		attachmentPartialExpiry = Duration.ofMillis((long) (Double.parseDouble(
+				parameters.getOrDefault("attachment-partial-expiry", "24")) * Duration.ofHours(1).toMillis()));
+		//Keeping the sizes small enough to be counted in bytes by an int
+		if (attachmentPort < 0 || attachmentMaxSize < 1 || attachmentMaxSize > 2047 || attachmentChunkSize < 1
+				|| attachmentChunkSize > 65536 || attachmentThreads < 1 || attachmentPartialExpiry.isNegative()
+				|| attachmentPartialExpiry.isZero())
+			throw new IllegalArgumentException("The attachment sizes must be positive (up to 2047 MiB and 64 MiB)"
+					+ " and so must the attachment threads and the expiry of unfinished uploads");
+		contactsPageSize = Integer.parseInt(parameters.getOrDefault("contacts-page-size", "50"));
+		if (contactsPageSize < 1)
+			throw new IllegalArgumentException("The contacts page size must be positive");
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	int getPort() {
+		return port;
+	}
+
+	int getNodeId() {
+		return nodeId;
+	}
+
+	//Method telling whether an address is one of this machine's, on which the database file can be shared
+	private static boolean isLocal(InetSocketAddress address) {
+		if (address.isUnresolved())
+			return false;
+		if (address.getAddress().isLoopbackAddress() || address.getAddress().isAnyLocalAddress())
+			return true;
+		try {
+			return NetworkInterface.getByInetAddress(address.getAddress()) != null;
+		}
+		catch (SocketException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the cluster addresses of all the nodes, or an empty list if the server runs standalone.
+	 *
+	 * @return Cluster addresses in node order
+	 */
+	List<InetSocketAddress> getClusterAddresses() {
+		return Collections.unmodifiableList(clusterAddresses);
+	}
+
+	Handshake.Compression getCompression() {
+		return compression;
+	}
+
+	int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	double getConnectionRate() {
+		return connectionRate;
+	}
+
+	int getConnectionBurst() {
+		return connectionBurst;
+	}
+
+	double getUserRate() {
+		return userRate;
+	}
+
+	int getUserBurst() {
+		return userBurst;
+	}
+
+	double getEphemeralRate() {
+		return ephemeralRate;
+	}
+
+	int getEphemeralBurst() {
+		return ephemeralBurst;
+	}
+
+	int getMaxRequestsInFlight() {
+		return maxRequestsInFlight;
+	}
+
+	int getMaxClients() {
+		return maxClients;
+	}
+
+	int getClientQueue() {
+		return clientQueue;
+	}
+
+	int getAcceptBacklog() {
+		return acceptBacklog;
+	}
+
+	int getNotificationThreads() {
+		return notificationThreads;
+	}
+
+	int getNotificationQueue() {
+		return notificationQueue;
+	}
+
+	long getTypingWindow() {
+		return typingWindow;
+	}
+
+	long getReceiptInterval() {
+		return receiptInterval;
+	}
+
+	int getEphemeralQueue() {
+		return ephemeralQueue;
+	}
+
+	long getHeartbeatInterval() {
+		return heartbeatInterval;
+	}
+
+	long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Returns the age from which chats are archived.
+	 *
+	 * @return The age, zero if chats are never archived
+	 */
+	Duration getArchiveAfter() {
+		return archiveAfter;
+	}
+
+	Duration getArchiveInterval() {
+		return archiveInterval;
+	}
+
+	Path getArchiveDirectory() {
+		return archiveDirectory;
+	}
+
+	Storage getStorage() {
+		return storage;
+	}
+
+	Path getLogDirectory() {
+		return logDirectory;
+	}
+
+	/**
+	 * Returns the size of the message log's segment files.
+	 *
+	 * @return The size in bytes
+	 */
+	int getLogSegmentSize() {
+		return logSegmentSize << 20;
+	}
+
+	long getLogFlushInterval() {
+		return logFlushInterval;
+	}
+
+	/**
+	 * Returns the port attachments are transferred on.
+	 *
+	 * @return The port, zero if attachments are disabled
+	 */
+	int getAttachmentPort() {
+		return attachmentPort;
+	}
+
+	Path getAttachmentDirectory() {
+		return attachmentDirectory;
+	}
+
+	/**
+	 * Returns the size of the largest attachment accepted.
+	 *
+	 * @return The size in bytes
+	 */
+	long getAttachmentMaxSize() {
+		return (long) attachmentMaxSize << 20;
+	}
+
+	/**
+	 * Returns the size of the largest chunk uploaded at a time.
+	 *
+	 * @return The size in bytes
+	 */
+	int getAttachmentChunkSize() {
+		return attachmentChunkSize << 10;
+	}
+
+	int getAttachmentThreads() {
+		return attachmentThreads;
+	}
+
+	Duration getAttachmentPartialExpiry() {
+		return attachmentPartialExpiry;
+	}
+
+	int getContactsPageSize() {
+		return contactsPageSize;
+	}
+}
@@ -0,0 +1,30 @@
+package com.providenceuniversal.gim;
+
+/**
+ * The {@code ServerErrorException} class is the exception a {@code ClientConnection} request completes
+ * with when the server answers it with a {@code ServerError}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class ServerErrorException extends Exception {
+
+	private static final long serialVersionUID = 3390581216403526018L;
+	private final ServerError serverError;
+
+	/**
+	 * Creates new {@code ServerErrorException} wrapping the server's error response.
+	 *
+	 * @param serverError The error returned by the server
+	 */
+	public ServerErrorException(ServerError serverError) {
+		super(serverError.getErrorMessage());
+		this.serverError = serverError;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public ServerError getServerError() {
+		return serverError;
+	}
+}
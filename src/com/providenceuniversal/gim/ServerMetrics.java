@@ -0,0 +1,433 @@
+package com.providenceuniversal.gim;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ServerMetrics} class collects the server's runtime statistics: request counts and
+ * latencies per {@code ClientMessage} type, database call latencies, notification fan-out latencies,
+ * ephemeral messages (e.g. typing indicators) coalesced and dropped, response compression ratio and
+ * cost, attachment bytes transferred, requests turned away by admission control, and connection counts.
+ * All recording methods are lock-free (built on {@code LongAdder}s and {@code LatencyHistogram}s) so
+ * that instrumentation does not serialize the client handlers.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class ServerMetrics {
+
+	/**
+	 * Functional interface representing a database call to be timed by
+	 * {@link ServerMetrics#timeDatabaseCall(String, DatabaseCall)}.
+	 *
+	 * @param <T> Result type of the call
+	 */
+	@FunctionalInterface
+	interface DatabaseCall<T> {
+		T call() throws SQLException;
+	}
+
+	/**
+	 * Functional interface representing a database update (a call without a result) to be timed by
+	 * {@link ServerMetrics#timeDatabaseUpdate(String, DatabaseUpdate)}.
+	 */
+	@FunctionalInterface
+	interface DatabaseUpdate {
+		void run() throws SQLException;
+	}
+
+	/**
+	 * The {@code Timer} class pairs a latency histogram with an error counter for a single
+	 * kind of operation.
+	 */
+	static final class Timer {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LongAdder errors = new LongAdder();
+
+		void record(long nanos, boolean failed) {
+			latency.record(nanos);
+			if (failed)
+				errors.increment();
+		}
+
+		LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		long getErrors() {
+			return errors.sum();
+		}
+
+		void reset() {
+			latency.reset();
+			errors.reset();
+		}
+
+		@Override
+		public String toString() {
+			return latency + " errors=" + errors.sum();
+		}
+	}
+
+	private volatile LocalDateTime since;
+	private final ConcurrentHashMap<String, Timer> requestTimers, databaseTimers;
+	private final Timer notificationTimer;
+	private final LongAdder notificationsDelivered, connectionsOpened, connectionsClosed, connectionsRefused,
+			connectionsTimedOut;
+	//Ephemeral messages coalesced and dropped, per relay
+	private final ConcurrentHashMap<String, LongAdder> coalescedMessages, droppedMessages;
+	private final LongAdder encodedResponses, compressedResponses, uncompressedBytes, bytesBeforeCompression,
+							bytesAfterCompression, compressionNanos;
+	private final LongAdder attachmentBytesUploaded, attachmentBytesDownloaded, deduplicatedAttachments;
+	private final AtomicInteger activeConnections, peakConnections;
+	private final EnumMap<AdmissionControl.Limit, LongAdder> rejections;
+
+	/**
+	 * Creates new {@code ServerMetrics} object with all statistics zeroed.
+	 */
+	ServerMetrics() {
+		since = LocalDateTime.now();
+		requestTimers = new ConcurrentHashMap<String, Timer>();
+		databaseTimers = new ConcurrentHashMap<String, Timer>();
+		notificationTimer = new Timer();
+		notificationsDelivered = new LongAdder();
+		connectionsOpened = new LongAdder();
+		connectionsClosed = new LongAdder();
+		connectionsRefused = new LongAdder();
+		connectionsTimedOut = new LongAdder();
+		coalescedMessages = new ConcurrentHashMap<String, LongAdder>();
+		droppedMessages = new ConcurrentHashMap<String, LongAdder>();
+		encodedResponses = new LongAdder();
+		compressedResponses = new LongAdder();
+		uncompressedBytes = new LongAdder();
+		bytesBeforeCompression = new LongAdder();
+		bytesAfterCompression = new LongAdder();
+		compressionNanos = new LongAdder();
+		attachmentBytesUploaded = new LongAdder();
+		attachmentBytesDownloaded = new LongAdder();
+		deduplicatedAttachments = new LongAdder();
+		activeConnections = new AtomicInteger();
+		peakConnections = new AtomicInteger();
+		rejections = new EnumMap<AdmissionControl.Limit, LongAdder>(AdmissionControl.Limit.class);
+		for (AdmissionControl.Limit limit : AdmissionControl.Limit.values()) {
+			rejections.put(limit, new LongAdder());
+		}
+	}
+
+	//______________________________________________Recording______________________________________________
+
+	/**
+	 * Records the handling of a single client request.
+	 *
+	 * @param request The handled request
+	 * @param nanos Time taken to handle the request
+	 * @param response The response produced for the request
+	 */
+	void recordRequest(ClientMessage request, long nanos, ServerMessage response) {
+		timer(requestTimers, requestType(request)).record(nanos, response instanceof ServerError);
+	}
+
+	/**
+	 * Runs and times a database call under the given operation name.
+	 *
+	 * @param operation Name under which the call is recorded (e.g. "Users.select")
+	 * @param call The database call
+	 * @return Result of the call
+	 * @throws SQLException If the call fails (the failure is recorded before rethrowing)
+	 */
+	<T> T timeDatabaseCall(String operation, DatabaseCall<T> call) throws SQLException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = call.call();
+			failed = false;
+			return result;
+		}
+		finally {
+			timer(databaseTimers, operation).record(System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Runs and times a database update under the given operation name.
+	 *
+	 * @param operation Name under which the update is recorded (e.g. "Users.insert")
+	 * @param update The database update
+	 * @throws SQLException If the update fails (the failure is recorded before rethrowing)
+	 */
+	void timeDatabaseUpdate(String operation, DatabaseUpdate update) throws SQLException {
+		timeDatabaseCall(operation, () -> {
+			update.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Records a notification fan-out.
+	 *
+	 * @param nanos Time taken to deliver the notification to all of its recipients
+	 * @param recipients Number of recipients the notification was written to
+	 * @param failures Number of recipients the notification could not be written to
+	 */
+	void recordNotification(long nanos, int recipients, int failures) {
+		notificationTimer.record(nanos, failures > 0);
+		notificationsDelivered.add(recipients);
+	}
+
+	/**
+	 * Records an ephemeral message replaced by a later one before it was delivered.
+	 *
+	 * @param relay Name of the relay of the message (e.g. typing)
+	 */
+	void recordCoalesced(String relay) {
+		coalescedMessages.computeIfAbsent(relay, name -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Records an ephemeral message dropped because the server was too busy to deliver it.
+	 *
+	 * @param relay Name of the relay of the message (e.g. typing)
+	 */
+	void recordDropped(String relay) {
+		droppedMessages.computeIfAbsent(relay, name -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Records an encoded response sent without compression (below the compression threshold).
+	 *
+	 * @param bytes Serialized size of the response
+	 */
+	void recordUncompressedResponse(int bytes) {
+		encodedResponses.increment();
+		uncompressedBytes.add(bytes);
+	}
+
+	/**
+	 * Records the compression of an encoded response.
+	 *
+	 * @param originalBytes Serialized size of the response
+	 * @param compressedBytes Compressed size of the response
+	 * @param nanos Time taken to compress the response
+	 */
+	void recordCompressedResponse(int originalBytes, int compressedBytes, long nanos) {
+		encodedResponses.increment();
+		compressedResponses.increment();
+		bytesBeforeCompression.add(originalBytes);
+		bytesAfterCompression.add(compressedBytes);
+		compressionNanos.add(nanos);
+	}
+
+	/**
+	 * Records a chunk of an attachment uploaded.
+	 *
+	 * @param bytes Length of the chunk
+	 */
+	void recordAttachmentUpload(long bytes) {
+		attachmentBytesUploaded.add(bytes);
+	}
+
+	/**
+	 * Records a chunk of an attachment downloaded.
+	 *
+	 * @param bytes Length of the chunk
+	 */
+	void recordAttachmentDownload(long bytes) {
+		attachmentBytesDownloaded.add(bytes);
+	}
+
+	/**
+	 * Records an upload spared because the attachment was stored already.
+	 */
+	void recordDeduplicatedAttachment() {
+		deduplicatedAttachments.increment();
+	}
+
+	/**
+	 * Records a request turned away by admission control.
+	 *
+	 * @param limit The limit the request exceeded
+	 */
+	void recordRejection(AdmissionControl.Limit limit) {
+		rejections.get(limit).increment();
+	}
+
+	void connectionOpened() {
+		connectionsOpened.increment();
+		int active = activeConnections.incrementAndGet();
+		peakConnections.accumulateAndGet(active, Math::max);
+	}
+
+	void connectionClosed() {
+		connectionsClosed.increment();
+		activeConnections.decrementAndGet();
+	}
+
+	void connectionRefused() {
+		connectionsRefused.increment();
+	}
+
+	void connectionTimedOut() {
+		connectionsTimedOut.increment();
+	}
+
+	/**
+	 * Resets all counters and histograms, except for the currently active connection count.
+	 */
+	void reset() {
+		requestTimers.values().forEach(Timer::reset);
+		databaseTimers.values().forEach(Timer::reset);
+		notificationTimer.reset();
+		notificationsDelivered.reset();
+		connectionsOpened.reset();
+		connectionsClosed.reset();
+		connectionsRefused.reset();
+		connectionsTimedOut.reset();
+		coalescedMessages.values().forEach(LongAdder::reset);
+		droppedMessages.values().forEach(LongAdder::reset);
+		encodedResponses.reset();
+		compressedResponses.reset();
+		uncompressedBytes.reset();
+		bytesBeforeCompression.reset();
+		bytesAfterCompression.reset();
+		compressionNanos.reset();
+		attachmentBytesUploaded.reset();
+		attachmentBytesDownloaded.reset();
+		deduplicatedAttachments.reset();
+		rejections.values().forEach(LongAdder::reset);
+		peakConnections.set(activeConnections.get());
+		since = LocalDateTime.now();
+	}
+
+	//______________________________________________Reporting______________________________________________
+
+	/**
+	 * Returns the connection statistics in the given format: <br>
+	 * Connections: active=[active] peak=[peak] opened=[opened] closed=[closed] refused=[refused]
+	 * timed_out=[timed out]
+	 *
+	 * @return Connection statistics
+	 */
+	String connectionsReport() {
+		return "Connections: active=" + activeConnections.get() + " peak=" + peakConnections.get()
+		+ " opened=" + connectionsOpened.sum() + " closed=" + connectionsClosed.sum()
+		+ " refused=" + connectionsRefused.sum() + " timed_out=" + connectionsTimedOut.sum();
+	}
+
+	/**
+	 * Returns the compression statistics in the given format: <br>
+	 * Compression: encoded=[responses] compressed=[responses] ratio=[original/compressed]
+	 * in=[bytes] out=[bytes] cpu=[us per compressed response] ([us per MB]) uncompressed=[bytes]
+	 *
+	 * @return Compression statistics
+	 */
+	String compressionReport() {
+		long compressed = compressedResponses.sum(), in = bytesBeforeCompression.sum(),
+				out = bytesAfterCompression.sum(), nanos = compressionNanos.sum();
+		return String.format("Compression: encoded=%d compressed=%d ratio=%.2f in=%dB out=%dB cpu=%.1fus"
+				+ " (%.1fus/MB) uncompressed=%dB", encodedResponses.sum(), compressed,
+				out == 0 ? 0.0 : (double) in / out, in, out, compressed == 0 ? 0.0 : nanos / 1000.0 / compressed,
+				in == 0 ? 0.0 : nanos / 1000.0 / (in / 1048576.0), uncompressedBytes.sum());
+	}
+
+	/**
+	 * Returns the attachment statistics in the given format: <br>
+	 * Attachments: uploaded=[bytes] downloaded=[bytes] deduplicated=[uploads spared]
+	 *
+	 * @return Attachment statistics
+	 */
+	String attachmentsReport() {
+		return "Attachments: uploaded=" + attachmentBytesUploaded.sum() + "B downloaded="
+				+ attachmentBytesDownloaded.sum() + "B deduplicated=" + deduplicatedAttachments.sum();
+	}
+
+	/**
+	 * Returns the admission control statistics in the given format: <br>
+	 * Rejections: connection_rate=[requests] user_rate=[requests] concurrency=[requests]
+	 *
+	 * @return Admission control statistics
+	 */
+	String rejectionsReport() {
+		StringBuilder report = new StringBuilder("Rejections:");
+		rejections.forEach((limit, rejected) -> report.append(' ').append(limit.name().toLowerCase())
+		.append('=').append(rejected.sum()));
+		return report.toString();
+	}
+
+	/**
+	 * Returns a full report of all statistics collected since startup (or the last reset).
+	 *
+	 * @return Statistics report
+	 */
+	String report() {
+		long uptimeSeconds = Math.max(1, Duration.between(since, LocalDateTime.now()).getSeconds());
+		StringBuilder report = new StringBuilder();
+		report.append("Server statistics (last ").append(uptimeSeconds).append("s)")
+		.append(System.lineSeparator());
+		report.append(connectionsReport()).append(System.lineSeparator());
+		report.append("Requests:").append(System.lineSeparator());
+		appendTimers(report, requestTimers, uptimeSeconds);
+		report.append("Database calls:").append(System.lineSeparator());
+		appendTimers(report, databaseTimers, uptimeSeconds);
+		report.append("Notifications:").append(System.lineSeparator())
+		.append("  fan-out ").append(notificationTimer)
+		.append(" delivered=").append(notificationsDelivered.sum()).append(System.lineSeparator())
+		.append("  coalesced").append(countersReport(coalescedMessages))
+		.append(" dropped").append(countersReport(droppedMessages)).append(System.lineSeparator());
+		report.append(compressionReport()).append(System.lineSeparator());
+		report.append(attachmentsReport()).append(System.lineSeparator());
+		report.append(rejectionsReport());
+		return report.toString();
+	}
+
+	/**
+	 * Appends a timestamped report to the given metrics file.
+	 *
+	 * @param metricsFile File to append the report to
+	 * @throws IOException If the file cannot be written
+	 */
+	void dump(File metricsFile) throws IOException {
+		try (FileWriter metricsFileWriter = new FileWriter(metricsFile, true)) {
+			metricsFileWriter.write(LocalDateTime.now().toString() + "> " + report()
+			+ System.lineSeparator() + System.lineSeparator());
+		}
+	}
+
+	//Method appending a sorted table of timers with their throughput
+	private static void appendTimers(StringBuilder report, Map<String, Timer> timers, long uptimeSeconds) {
+		new TreeMap<String, Timer>(timers).forEach((name, timer) -> report.append("  ").append(name)
+		.append(": ").append(timer).append(" rate=")
+		.append(timer.getLatency().getCount() / uptimeSeconds).append("/s")
+		.append(System.lineSeparator()));
+	}
+
+	//Method listing named counters in name order, e.g. " receipts=3 typing=12"
+	private static String countersReport(ConcurrentHashMap<String, LongAdder> counters) {
+		StringBuilder report = new StringBuilder();
+		new TreeMap<String, LongAdder>(counters).forEach((name, counter) -> report.append(' ').append(name)
+		.append('=').append(counter.sum()));
+		return report.length() == 0 ? " none" : report.toString();
+	}
+
+	//Method returning the timer registered under the given name, creating it on first use
+	private static Timer timer(ConcurrentHashMap<String, Timer> timers, String name) {
+		Timer timer = timers.get(name);
+		return timer != null ? timer : timers.computeIfAbsent(name, key -> new Timer());
+	}
+
+	//Method deriving the name under which a request is recorded
+	private static String requestType(ClientMessage request) {
+		if (request instanceof Authentication)
+			return "Authentication." + ((Authentication) request).getAuthenticationType();
+		return request == null ? "null" : request.getClass().getSimpleName();
+	}
+}
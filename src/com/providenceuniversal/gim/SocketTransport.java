@@ -0,0 +1,168 @@
+package com.providenceuniversal.gim;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * The {@code SocketTransport} class links the nodes of a server cluster over TCP. Every node listens on
+ * its own cluster address, and opens one outgoing connection to each peer it sends messages to, so that
+ * the messages from one node to another travel over a single, ordered stream. A node announces itself to
+ * all its peers when it starts, so that peers restarted in a rolling restart are told who is online.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class SocketTransport implements ClusterTransport {
+
+	/**
+	 * The {@code Link} class is the outgoing connection to one peer, re-established on demand.
+	 */
+	private static final class Link {
+		private Socket socket;
+		private ObjectOutputStream output;
+
+		void close() {
+			try {
+				if (socket != null)
+					socket.close();
+			}
+			catch (IOException ex) {}
+			socket = null;
+			output = null;
+		}
+	}
+
+	private final int nodeId;
+	private final List<InetSocketAddress> addresses;
+	private final Link[] links;
+	private ServerSocket listener;
+	private volatile ClusterNode node;
+
+	/**
+	 * Creates new {@code SocketTransport} for the given node.
+	 *
+	 * @param nodeId Identifier of the local node
+	 * @param addresses Cluster addresses of all the nodes, the address of node {@code n} being at index {@code n}
+	 */
+	SocketTransport(int nodeId, List<InetSocketAddress> addresses) {
+		this.nodeId = nodeId;
+		this.addresses = addresses;
+		links = new Link[addresses.size()];
+		for (int peer = 0; peer < links.length; peer++) {
+			links[peer] = new Link();
+		}
+	}
+
+	@Override
+	public void start(ClusterNode node) throws IOException {
+		this.node = node;
+		listener = new ServerSocket(addresses.get(nodeId).getPort());
+		daemon("cluster-listener", this::acceptPeers).start();
+		//Announcing this node to its peers, those not running yet announce themselves when they start
+		daemon("cluster-hello", () -> {
+			for (int peer = 0; peer < links.length; peer++) {
+				try {
+					if (peer != nodeId)
+						send(peer, new ClusterMessage(ClusterMessage.Type.HELLO, nodeId, 0, null, null));
+				}
+				catch (IOException ex) {}
+			}
+		}).start();
+	}
+
+	@Override
+	public void send(int peer, ClusterMessage message) throws IOException {
+		Link link = links[peer];
+		synchronized (link) {
+			//Retrying once over a new connection, in case the peer restarted since the last message
+			for (int attempt = 1; ; attempt++) {
+				try {
+					if (link.output == null)
+						connect(peer, link);
+					link.output.writeObject(message);
+					link.output.reset();
+					link.output.flush();
+					return;
+				}
+				catch (IOException ex) {
+					link.close();
+					if (attempt == 2 || node == null)
+						throw ex;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		node = null;
+		try {
+			if (listener != null)
+				listener.close();
+		}
+		catch (IOException ex) {}
+		for (Link link : links) {
+			synchronized (link) {
+				link.close();
+			}
+		}
+	}
+
+	//Method opening the outgoing connection to a peer, which starts by announcing this node
+	private void connect(int peer, Link link) throws IOException {
+		link.socket = new Socket();
+		link.socket.connect(addresses.get(peer));
+		link.socket.setTcpNoDelay(true);
+		link.output = new ObjectOutputStream(new BufferedOutputStream(link.socket.getOutputStream()));
+		link.output.writeObject(new ClusterMessage(ClusterMessage.Type.HELLO, nodeId, 0, null, null));
+	}
+
+	//Method accepting the incoming connections of peers, reading each on its own thread
+	private void acceptPeers() {
+		while (node != null) {
+			try {
+				Socket socket = listener.accept();
+				daemon("cluster-reader", () -> readFromPeer(socket)).start();
+			}
+			catch (IOException ex) {
+				if (listener.isClosed())
+					break;
+			}
+		}
+	}
+
+	//Method passing the messages of a peer to the local node until the connection closes
+	private void readFromPeer(Socket socket) {
+		int peer = ClusterNode.NOWHERE;
+		try (ObjectInputStream input = new ObjectInputStream(socket.getInputStream())) {
+			while (true) {
+				ClusterMessage message = (ClusterMessage) input.readObject();
+				ClusterNode node = this.node;
+				if (node == null)
+					break;
+				//The first message of a connection identifies the peer
+				if (peer == ClusterNode.NOWHERE) {
+					peer = message.getOrigin();
+					node.peerUp(peer);
+				}
+				node.receive(message);
+			}
+		}
+		catch (IOException | ClassNotFoundException | RuntimeException ex) {}
+		ClusterNode node = this.node;
+		if (peer != ClusterNode.NOWHERE && node != null)
+			node.peerDown(peer);
+	}
+
+	private static Thread daemon(String name, Runnable task) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,224 @@
+package com.providenceuniversal.gim;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code StorageEngine} interface is everything the {@code Server} stores: the users and their
+ * credentials, the time each user was last seen online, group conversations, the one-to-one chats
+ * (through its {@code ChatStore}) and the summaries of each user's conversations. The engine is
+ * selected when the server starts (see {@link ServerConfiguration#getStorage()}): the SQLite database
+ * (its chats kept in {@code Chat_Messages} or in the message log), or memory for benchmarks and load
+ * tests, which then involve no disk I/O.
+ * <p>
+ * Usernames and group names are case insensitive; methods finding them return them as they were
+ * stored. Engines are safe for use by any number of handler threads at once.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+interface StorageEngine {
+
+	//_____________________________________________Users______________________________________________
+
+	/**
+	 * Finds a user.
+	 *
+	 * @param username The username, in any case
+	 * @return The stored username, or {@code null} if there is no such user
+	 * @throws SQLException If the users cannot be read
+	 */
+	String findUser(String username) throws SQLException;
+
+	/**
+	 * Finds the user matching the given credentials.
+	 *
+	 * @param username The username, in any case
+	 * @param password The password
+	 * @return The stored username, or {@code null} if the credentials do not match a user
+	 * @throws SQLException If the users cannot be read
+	 */
+	String authenticate(String username, String password) throws SQLException;
+
+	/**
+	 * Creates a user.
+	 *
+	 * @param username The username, which no user has yet
+	 * @param password The password
+	 * @param lastSeen Time the user signed up
+	 * @throws SQLException If the user cannot be stored, or the username is taken
+	 */
+	void createUser(String username, String password, LocalDateTime lastSeen) throws SQLException;
+
+	/**
+	 * Deletes a user.
+	 *
+	 * @param username The username, in any case
+	 * @throws SQLException If the user cannot be deleted
+	 */
+	void deleteUser(String username) throws SQLException;
+
+	//____________________________________________Presence____________________________________________
+
+	/**
+	 * Records the time a user was last seen online (i.e. logged out).
+	 *
+	 * @param username The stored username
+	 * @param lastSeen The time
+	 * @throws SQLException If the time cannot be stored
+	 */
+	void updateLastSeen(String username, LocalDateTime lastSeen) throws SQLException;
+
+	/**
+	 * Returns every user along with the time they were last seen online.
+	 *
+	 * @return The times keyed by stored username
+	 * @throws SQLException If the users cannot be read
+	 */
+	Map<String, LocalDateTime> lastSeenTimes() throws SQLException;
+
+	//____________________________________________Messages____________________________________________
+
+	/**
+	 * Returns the store of the one-to-one chats.
+	 *
+	 * @return The chat store
+	 */
+	ChatStore getChatStore();
+
+	/**
+	 * Stores a message sent to a group.
+	 *
+	 * @param message The message
+	 * @throws SQLException If the message cannot be stored
+	 */
+	void storeGroupMessage(GroupMessage message) throws SQLException;
+
+	/**
+	 * Retrieves the messages sent to a group at or after the given time.
+	 *
+	 * @param group The group name, in any case
+	 * @param since Time stamp of the earliest message to retrieve, or {@code null} for all of them
+	 * @return The messages, in chronological order
+	 * @throws SQLException If the messages cannot be read
+	 */
+	List<ChatMessage> retrieveGroupMessages(String group, LocalDateTime since) throws SQLException;
+
+	//__________________________________________Conversations_________________________________________
+
+	/**
+	 * Records a chat in the summaries its sender and recipient keep of their conversation: it becomes
+	 * the last message of both (unless a later one was recorded first), and one more message the
+	 * recipient has not read.
+	 *
+	 * @param chat The chat, already stored
+	 * @throws SQLException If the summaries cannot be stored
+	 */
+	void updateConversations(ChatMessage chat) throws SQLException;
+
+	/**
+	 * Records that a user has read all the messages of one of their conversations.
+	 *
+	 * @param username The stored username
+	 * @param partner Username of the other participant, in any case
+	 * @throws SQLException If the summary cannot be stored
+	 */
+	void markConversationRead(String username, String partner) throws SQLException;
+
+	/**
+	 * Stores the latest receipts of the users' conversations, never moving a watermark back. A read
+	 * receipt reaching the last message of its conversation also clears the reader's unread messages.
+	 *
+	 * @param receipts The receipts, at most one per watermark
+	 * @throws SQLException If the receipts cannot be stored
+	 */
+	void storeReceipts(List<Receipt> receipts) throws SQLException;
+
+	/**
+	 * Returns the summaries of a user's conversations, along with how far the other participants have
+	 * received and read the user's chats, in time proportional to their number rather than to the
+	 * number of chats.
+	 *
+	 * @param username The stored username
+	 * @return The summaries, the most recently active conversation first
+	 * @throws SQLException If the summaries cannot be read
+	 */
+	List<ConversationSummary> findConversations(String username) throws SQLException;
+
+	//_____________________________________________Groups_____________________________________________
+
+	/**
+	 * Finds a group.
+	 *
+	 * @param group The group name, in any case
+	 * @return The stored group name, or {@code null} if there is no such group
+	 * @throws SQLException If the groups cannot be read
+	 */
+	String findGroup(String group) throws SQLException;
+
+	/**
+	 * Creates a group, without members.
+	 *
+	 * @param group The group name, which no group has yet
+	 * @param creator The stored username of the user creating the group
+	 * @param created Time the group is created
+	 * @throws SQLException If the group cannot be stored, or the name is taken
+	 */
+	void createGroup(String group, String creator, LocalDateTime created) throws SQLException;
+
+	/**
+	 * Deletes a group along with its messages.
+	 *
+	 * @param group The stored group name
+	 * @throws SQLException If the group cannot be deleted
+	 */
+	void deleteGroup(String group) throws SQLException;
+
+	/**
+	 * Returns the members of a group.
+	 *
+	 * @param group The group name, in any case
+	 * @return The stored usernames of the members, which is empty if there is no such group
+	 * @throws SQLException If the members cannot be read
+	 */
+	List<String> findGroupMembers(String group) throws SQLException;
+
+	/**
+	 * Returns the groups a user is a member of, along with their members.
+	 *
+	 * @param username The stored username
+	 * @return The members keyed by stored group name
+	 * @throws SQLException If the groups cannot be read
+	 */
+	Map<String, List<String>> findGroups(String username) throws SQLException;
+
+	/**
+	 * Adds members to a group.
+	 *
+	 * @param group The stored group name
+	 * @param members The stored usernames of the users, none of which is a member yet
+	 * @throws SQLException If the members cannot be stored
+	 */
+	void addGroupMembers(String group, List<String> members) throws SQLException;
+
+	/**
+	 * Removes a member from a group.
+	 *
+	 * @param group The stored group name
+	 * @param member The stored username of the member
+	 * @throws SQLException If the member cannot be removed
+	 */
+	void removeGroupMember(String group, String member) throws SQLException;
+
+	//_______________________________________________________________________________________________
+
+	/**
+	 * Closes the chat store, flushing whatever files it holds open.
+	 *
+	 * @throws IOException If a file cannot be flushed or closed
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,162 @@
+package com.providenceuniversal.gim;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code TimingWheel} class is a hashed timing wheel, running the timeouts of any number of
+ * connections (e.g. idle timeouts and heartbeats) on a single timer thread. The wheel is a ring of
+ * buckets, each holding the timeouts that expire when the wheel's hand reaches it, the hand moving one
+ * bucket per tick; timeouts further away than a full turn wait for the number of turns they are due in.
+ * Scheduling and cancelling a timeout thus cost constant time however many timeouts are pending, at
+ * the price of running them up to a tick late.
+ * <p>
+ * Tasks run on the timer thread, so they must be short and never block (e.g. closing a socket rather
+ * than logging a user out).
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class TimingWheel implements AutoCloseable {
+
+	/**
+	 * The {@code Timeout} class is a task scheduled on the wheel, which can be cancelled until it runs.
+	 */
+	static final class Timeout {
+		private final Runnable task;
+		//Time the timeout expires, in nanoseconds since the wheel started
+		private final long deadline;
+		//Turns of the wheel left before the timeout expires, only used by the timer thread
+		private long remainingTurns;
+		private volatile boolean cancelled;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the timeout, having no effect if it already ran.
+		 */
+		void cancel() {
+			cancelled = true;
+		}
+	}
+
+	private final long tickDuration, startTime;
+	private final int mask;
+	private final List<ArrayDeque<Timeout>> buckets;
+	//Timeouts scheduled since the last tick, which only the timer thread moves into the buckets
+	private final Queue<Timeout> scheduledTimeouts;
+	private final Thread timer;
+	private long tick;
+	private volatile boolean closed;
+
+	/**
+	 * Creates new {@code TimingWheel} and starts its timer thread.
+	 *
+	 * @param name Name of the timer thread
+	 * @param tickDuration Time the hand of the wheel takes to move one bucket
+	 * @param unit Unit of the tick duration
+	 * @param wheelSize Number of buckets, a power of two
+	 */
+	TimingWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0 || wheelSize < 1 || Integer.bitCount(wheelSize) != 1)
+			throw new IllegalArgumentException("Invalid timing wheel: tick " + tickDuration + ", size " + wheelSize);
+		this.tickDuration = unit.toNanos(tickDuration);
+		mask = wheelSize - 1;
+		buckets = new ArrayList<ArrayDeque<Timeout>>(wheelSize);
+		for (int index = 0; index < wheelSize; index++)
+			buckets.add(new ArrayDeque<Timeout>());
+		scheduledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+		startTime = System.nanoTime();
+		timer = new Thread(this::turn, name);
+		//Daemon thread so that pending timeouts never keep the JVM alive on their own
+		timer.setDaemon(true);
+		timer.start();
+	}
+
+	/**
+	 * Schedules a task to run once after the given delay.
+	 *
+	 * @param task The task
+	 * @param delay Time after which the task runs
+	 * @param unit Unit of the delay
+	 * @return The timeout, by which the task can be cancelled
+	 */
+	Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+		scheduledTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stops the timer thread, pending timeouts never running.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		timer.interrupt();
+	}
+
+	//Method moving the hand of the wheel one bucket per tick, running the timeouts it reaches
+	private void turn() {
+		while (!closed) {
+			try {
+				awaitNextTick();
+			}
+			catch (InterruptedException ex) {
+				continue;
+			}
+			transferScheduledTimeouts();
+			expire(buckets.get((int) (tick & mask)));
+			tick++;
+		}
+	}
+
+	//Method sleeping until the time the current tick ends
+	private void awaitNextTick() throws InterruptedException {
+		long wait = startTime + (tick + 1) * tickDuration - System.nanoTime();
+		if (wait > 0)
+			TimeUnit.NANOSECONDS.sleep(wait);
+	}
+
+	//Method placing the newly scheduled timeouts in the buckets they expire in
+	private void transferScheduledTimeouts() {
+		for (Timeout timeout = scheduledTimeouts.poll(); timeout != null; timeout = scheduledTimeouts.poll()) {
+			if (timeout.cancelled)
+				continue;
+			long expiryTick = timeout.deadline / tickDuration;
+			timeout.remainingTurns = (expiryTick - tick) / buckets.size();
+			//Timeouts already overdue expire in the current tick
+			buckets.get((int) (Math.max(expiryTick, tick) & mask)).add(timeout);
+		}
+	}
+
+	//Method running the timeouts of a bucket that are due in this turn of the wheel
+	private void expire(ArrayDeque<Timeout> bucket) {
+		for (Iterator<Timeout> timeouts = bucket.iterator(); timeouts.hasNext();) {
+			Timeout timeout = timeouts.next();
+			if (timeout.cancelled) {
+				timeouts.remove();
+			}
+			else if (timeout.remainingTurns <= 0) {
+				timeouts.remove();
+				try {
+					timeout.task.run();
+				}
+				catch (RuntimeException ex) {
+					System.err.println("Timeout task failed: (" + ex + ")");
+				}
+			}
+			else {
+				timeout.remainingTurns--;
+			}
+		}
+	}
+}
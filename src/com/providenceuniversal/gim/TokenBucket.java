@@ -0,0 +1,69 @@
+package com.providenceuniversal.gim;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code TokenBucket} class is a rate limiter holding up to a given number of tokens, refilled
+ * continuously at a given rate. Every admitted request takes one token, so bursts of up to the bucket's
+ * capacity are admitted at once while the sustained rate is capped at the refill rate.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class TokenBucket {
+
+	private final double capacity, nanosPerToken;
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * Creates new, full {@code TokenBucket}.
+	 *
+	 * @param rate Tokens added per second
+	 * @param capacity Maximum number of tokens held
+	 */
+	TokenBucket(double rate, int capacity) {
+		if (rate <= 0 || capacity < 1)
+			throw new IllegalArgumentException("Invalid token bucket: rate " + rate + ", capacity " + capacity);
+		this.capacity = capacity;
+		nanosPerToken = TimeUnit.SECONDS.toNanos(1) / rate;
+		tokens = capacity;
+		lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token if one is available.
+	 *
+	 * @return 0 if a token was taken, otherwise the time in nanoseconds until one is available
+	 */
+	synchronized long tryAcquire() {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+		lastRefill = now;
+		if (tokens >= 1) {
+			tokens--;
+			return 0;
+		}
+		return (long) Math.ceil((1 - tokens) * nanosPerToken);
+	}
+
+	/**
+	 * Returns whether the bucket has refilled completely, in which case replacing it with a new bucket
+	 * would change nothing.
+	 *
+	 * @return Whether the bucket is full
+	 */
+	synchronized boolean isFull() {
+		return nanosUntilFull() == 0;
+	}
+
+	/**
+	 * Returns the time until the bucket has refilled completely, should no token be taken meanwhile.
+	 *
+	 * @return Time in nanoseconds until the bucket is full, 0 if it already is
+	 */
+	synchronized long nanosUntilFull() {
+		double missing = capacity - tokens - (System.nanoTime() - lastRefill) / nanosPerToken;
+		return missing <= 0 ? 0 : (long) Math.ceil(missing * nanosPerToken);
+	}
+}
@@ -0,0 +1,63 @@
+package com.providenceuniversal.gim;
+
+import java.util.Locale;
+
+/**
+ * The {@code TypingIndicator} class is an ephemeral event telling a user what the sender is doing in
+ * their conversation (e.g. typing). Clients send it without awaiting a response, and the server relays
+ * it to the recipient only if they are online, never storing it: indicators sent in quick succession
+ * are coalesced, only the latest being delivered, and indicators are dropped rather than queued when
+ * the server is busy.
+ * It is one of the types of {@code ClientMessage}, and is pushed to the recipient as a
+ * {@code ServerNotification}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+public class TypingIndicator extends ServerNotification implements ClientMessage {
+
+	/**
+	 * Enumeration which stores the activities a user can be engaged in
+	 */
+	public static enum Activity {TYPING, STOPPED}
+
+	private static final long serialVersionUID = -3518204735625418891L;
+	private final String sender;
+	private final String recipient;
+	private final Activity activity;
+
+	/**
+	 * Creates new {@code TypingIndicator} and initializes its fields with the parameter values.
+	 *
+	 * @param sender User engaged in the activity
+	 * @param recipient User the sender is conversing with
+	 * @param activity The sender's activity
+	 */
+	public TypingIndicator(String sender, String recipient, Activity activity) {
+		super(activity == Activity.TYPING ? sender + " is typing..." : sender + " stopped typing.");
+		this.sender = sender;
+		this.recipient = recipient;
+		this.activity = activity;
+	}
+
+	//_________________________________Getters and setters for each field_________________________________
+
+	public String getSender() {
+		return sender;
+	}
+
+	public String getRecipient() {
+		return recipient;
+	}
+
+	public Activity getActivity() {
+		return activity;
+	}
+
+	//____________________________________________________________________________________________________
+
+	//Method returning the key of the conversation the indicator is about, a later indicator of the same key superseding it
+	static String conversation(String sender, String recipient) {
+		return sender.toLowerCase(Locale.ROOT) + '\n' + recipient.toLowerCase(Locale.ROOT);
+	}
+}
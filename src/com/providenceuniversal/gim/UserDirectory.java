@@ -0,0 +1,133 @@
+package com.providenceuniversal.gim;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code UserDirectory} class is the dictionary of the server's users, giving each user a small
+ * integer ID the first time they are seen. The server's structures key users by their IDs (see
+ * {@link IdMap}) rather than by their names, and usernames are only resolved where requests arrive and
+ * responses leave, so each name is held once however many chats, conversations and connections refer to
+ * it. IDs are never reused while the server runs, so a user keeps theirs even after deleting their account.
+ * <p>
+ * Usernames are case insensitive, as everywhere else on the server; the directory holds each user's name
+ * as it was stored.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+final class UserDirectory {
+
+	//ID of the users the directory has never seen
+	static final int UNKNOWN = -1;
+	//IDs of the users, keyed by lower case username
+	private final ConcurrentHashMap<String, Integer> ids;
+	//Stored usernames, by ID
+	private volatile String[] names;
+	private int size;
+
+	/**
+	 * Creates new, empty {@code UserDirectory}.
+	 */
+	UserDirectory() {
+		ids = new ConcurrentHashMap<String, Integer>();
+		names = new String[64];
+	}
+
+	/**
+	 * Returns the ID of a user, giving them the next ID if the directory has not seen them yet.
+	 *
+	 * @param username The username, regardless of case
+	 * @return The ID
+	 */
+	int id(String username) {
+		Integer id = ids.get(key(username));
+		if (id != null)
+			return id;
+		synchronized (this) {
+			id = ids.get(key(username));
+			return id != null ? id : assign(size, username);
+		}
+	}
+
+	/**
+	 * Returns the ID of a user, giving them the next ID if the directory has not seen them yet, and holds
+	 * their name as it is stored now, in case the account was deleted and signed up for again.
+	 *
+	 * @param username The stored username of the user
+	 * @return The ID
+	 */
+	int register(String username) {
+		int id = id(username);
+		if (!names[id].equals(username)) {
+			synchronized (this) {
+				names[id] = username;
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Restores the ID a user was given before, by the directory of an earlier run of the server.
+	 *
+	 * @param id The ID
+	 * @param username The stored username of the user
+	 * @throws IllegalStateException If the ID or the user already have another entry
+	 */
+	synchronized void restore(int id, String username) {
+		Integer current = ids.get(key(username));
+		if (current != null && current == id)
+			return;
+		if (current != null || id < 0 || (id < names.length && names[id] != null))
+			throw new IllegalStateException("User " + username + " cannot be given ID " + id);
+		assign(id, username);
+	}
+
+	/**
+	 * Finds the ID of a user.
+	 *
+	 * @param username The username, regardless of case
+	 * @return The ID, or {@link #UNKNOWN} if the directory has not seen the user
+	 */
+	int find(String username) {
+		Integer id = ids.get(key(username));
+		return id == null ? UNKNOWN : id;
+	}
+
+	/**
+	 * Returns the stored username of a user.
+	 *
+	 * @param id The ID of the user
+	 * @return The username, the same instance every time, or {@code null} if no user has the ID
+	 */
+	String name(int id) {
+		String[] names = this.names;
+		return id >= 0 && id < names.length ? names[id] : null;
+	}
+
+	/**
+	 * Returns the key of the conversation between two users, the same whichever user is named first.
+	 *
+	 * @param id1 The ID of one of the users
+	 * @param id2 The ID of the other user
+	 * @return The key
+	 */
+	static long conversation(int id1, int id2) {
+		return (long) Math.min(id1, id2) << 32 | Math.max(id1, id2);
+	}
+
+	//Method giving a user an ID, growing the names as needed, before publishing the ID
+	private int assign(int id, String username) {
+		if (id >= names.length)
+			names = Arrays.copyOf(names, Math.max(names.length * 2, id + 1));
+		names[id] = username;
+		size = Math.max(size, id + 1);
+		ids.put(key(username), id);
+		return id;
+	}
+
+	private static String key(String username) {
+		return username.toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,138 @@
+package com.providenceuniversal.gim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests a cluster of three {@code ClusterNode}s linked in process by {@code LoopbackTransport}s.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+class ClusterNodeTest {
+
+	/**
+	 * The {@code Clients} class stands in for the clients connected to one node, recording what is
+	 * delivered to them.
+	 */
+	private static final class Clients implements ClusterNode.LocalDelivery {
+		private final Set<String> connected = ConcurrentHashMap.newKeySet();
+		private final BlockingQueue<ServerMessage> delivered = new LinkedBlockingQueue<ServerMessage>();
+		private final BlockingQueue<ServerNotification> broadcasts = new LinkedBlockingQueue<ServerNotification>();
+
+		@Override
+		public boolean deliver(String recipient, ServerMessage message) {
+			if (!connected.contains(recipient.toLowerCase(Locale.ROOT)))
+				return false;
+			delivered.add(message);
+			return true;
+		}
+
+		@Override
+		public void broadcast(ServerNotification notification, String excludedUser) {
+			broadcasts.add(notification);
+		}
+
+		@Override
+		public void presenceChanged(PresenceNotification presence) {}
+
+		void connect(String username) {
+			connected.add(username.toLowerCase(Locale.ROOT));
+		}
+	}
+
+	private static final int NODE_COUNT = 3;
+	private ClusterNode[] nodes;
+	private Clients[] clients;
+
+	@BeforeEach
+	void startCluster() throws IOException {
+		LoopbackTransport[] network = LoopbackTransport.network(NODE_COUNT);
+		nodes = new ClusterNode[NODE_COUNT];
+		clients = new Clients[NODE_COUNT];
+		for (int node = 0; node < NODE_COUNT; node++) {
+			clients[node] = new Clients();
+			nodes[node] = new ClusterNode(node, NODE_COUNT, network[node], clients[node], Runnable::run);
+			nodes[node].start();
+		}
+	}
+
+	@AfterEach
+	void stopCluster() {
+		for (ClusterNode node : nodes)
+			node.close();
+	}
+
+	@Test
+	void claimsAreExclusiveWhateverTheCase() throws IOException {
+		assertTrue(nodes[0].claim("Alice"));
+		assertFalse(nodes[1].claim("alice"));
+		assertFalse(nodes[2].claim("ALICE"));
+		assertEquals(0, nodes[2].locate("aLiCe"));
+	}
+
+	@Test
+	void releasingFreesTheUserWhateverTheCase() throws IOException {
+		assertTrue(nodes[1].claim("Bob"));
+		nodes[1].release("BOB");
+		assertEquals(ClusterNode.NOWHERE, awaitLocation(nodes[0], "bob", ClusterNode.NOWHERE));
+		assertTrue(nodes[2].claim("bob"));
+		assertEquals(2, nodes[0].locate("Bob"));
+	}
+
+	@Test
+	void onlineUsersKeepTheirStoredNames() throws IOException {
+		for (int node = 0; node < NODE_COUNT; node++)
+			assertTrue(nodes[node].claim("User" + node));
+		Map<String, Integer> onlineUsers = nodes[0].onlineUsers();
+		assertEquals(NODE_COUNT, onlineUsers.size());
+		for (int node = 0; node < NODE_COUNT; node++)
+			assertEquals(node, onlineUsers.get("User" + node));
+	}
+
+	@Test
+	void messagesReachTheRecipientsNode() throws Exception {
+		assertTrue(nodes[2].claim("Carol"));
+		clients[2].connect("Carol");
+		ChatMessage chat = new ChatMessage("dave", "carol", "Hello", LocalDateTime.now());
+		nodes[0].route("CAROL", chat);
+		assertSame(chat, clients[2].delivered.poll(5, TimeUnit.SECONDS));
+		assertTrue(clients[0].delivered.isEmpty());
+		assertTrue(clients[1].delivered.isEmpty());
+	}
+
+	@Test
+	void notificationsReachEveryNode() throws Exception {
+		ServerNotification notification = new ServerNotification("Maintenance tonight");
+		nodes[1].broadcast(notification, null);
+		for (Clients node : clients)
+			assertSame(notification, node.broadcasts.poll(5, TimeUnit.SECONDS));
+	}
+
+	//Method polling a user's location until it is the expected one, since releases are not acknowledged
+	private static int awaitLocation(ClusterNode node, String username, int expected) throws IOException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		int location = node.locate(username);
+		while (location != expected && System.nanoTime() < deadline) {
+			Thread.yield();
+			location = node.locate(username);
+		}
+		return location;
+	}
+}
@@ -0,0 +1,106 @@
+package com.providenceuniversal.gim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the pages of contacts a {@code ContactIndex} lists.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+class ContactIndexTest {
+
+	private static final int PAGE_SIZE = 3;
+	private ContactIndex index;
+
+	@BeforeEach
+	void createIndex() {
+		index = new ContactIndex();
+		for (String username : Arrays.asList("amy", "Andrew", "anna", "Ben", "bella", "Carl", "dave"))
+			index.offline(username, LocalDateTime.of(2024, 1, 1, 12, 0));
+		index.online("anna");
+		index.online("Carl");
+	}
+
+	@Test
+	void pagesListEveryoneOnceInOrder() {
+		assertEquals(Arrays.asList("amy", "Andrew", "anna", "bella", "Ben", "Carl", "dave"),
+				allPages(new ContactsRequest("", false, PAGE_SIZE), null));
+	}
+
+	@Test
+	void pagesListOnlyMatchingNames() {
+		assertEquals(Arrays.asList("amy", "Andrew", "anna"), allPages(new ContactsRequest("A", false, PAGE_SIZE), null));
+		assertEquals(Arrays.asList("bella", "Ben"), allPages(new ContactsRequest("b", false, PAGE_SIZE), null));
+		assertTrue(allPages(new ContactsRequest("e", false, PAGE_SIZE), null).isEmpty());
+	}
+
+	@Test
+	void lastPageOffersNoNextPage() {
+		ContactList page = index.page(new ContactsRequest("A", false, PAGE_SIZE), PAGE_SIZE, null);
+		assertEquals(3, page.getTotalNumberOfContacts());
+		assertNull(page.getNextPage());
+	}
+
+	@Test
+	void currentUserIsNeverListed() {
+		assertEquals(Arrays.asList("amy", "anna", "bella", "Ben", "Carl", "dave"),
+				allPages(new ContactsRequest("", false, PAGE_SIZE), "ANDREW"));
+	}
+
+	@Test
+	void onlineOnlyPagesListOnlineUsers() {
+		ContactList page = index.page(new ContactsRequest("", true, PAGE_SIZE), PAGE_SIZE, null);
+		assertEquals(2, page.getTotalNumberOfContacts());
+		assertEquals("anna", page.getContactName(1));
+		assertTrue(page.isOnline(1));
+		assertEquals("Carl", page.getContactName(2));
+		assertNull(page.getNextPage());
+
+		index.offline("Carl", LocalDateTime.of(2024, 1, 2, 12, 0));
+		assertEquals(Arrays.asList("anna"), allPages(new ContactsRequest("", true, PAGE_SIZE), null));
+		assertFalse(index.page(new ContactsRequest("c", false, PAGE_SIZE), PAGE_SIZE, null).isOnline(1));
+	}
+
+	@Test
+	void pagesNeitherRepeatNorSkipAsUsersComeAndGo() {
+		ContactList first = index.page(new ContactsRequest("", false, PAGE_SIZE), PAGE_SIZE, null);
+		assertEquals("anna", first.getContactName(3));
+		//Users joining and leaving before the last name of the page shift nothing after it
+		index.remove("amy");
+		index.offline("aaron", LocalDateTime.of(2024, 1, 3, 12, 0));
+		index.offline("bob", LocalDateTime.of(2024, 1, 3, 12, 0));
+		List<String> rest = new ArrayList<String>();
+		for (ContactsRequest request = first.getNextPage(); request != null;) {
+			ContactList page = index.page(request, PAGE_SIZE, null);
+			for (int position = 1; position <= page.getTotalNumberOfContacts(); position++)
+				rest.add(page.getContactName(position));
+			request = page.getNextPage();
+		}
+		assertEquals(Arrays.asList("bella", "Ben", "bob", "Carl", "dave"), rest);
+	}
+
+	//Method following a request's pages to the last, returning the names they list
+	private List<String> allPages(ContactsRequest request, String currentUser) {
+		List<String> names = new ArrayList<String>();
+		while (request != null) {
+			ContactList page = index.page(request, PAGE_SIZE, currentUser);
+			assertTrue(page.getTotalNumberOfContacts() <= PAGE_SIZE);
+			for (int position = 1; position <= page.getTotalNumberOfContacts(); position++)
+				names.add(page.getContactName(position));
+			request = page.getNextPage();
+		}
+		return names;
+	}
+}
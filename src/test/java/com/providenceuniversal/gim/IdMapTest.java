@@ -0,0 +1,103 @@
+package com.providenceuniversal.gim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@code IdMap} against a {@code HashMap} receiving the same operations.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+class IdMapTest {
+
+	@Test
+	void randomPutsAndRemovesMatchAHashMap() {
+		Random random = new Random(42);
+		IdMap<Long> map = new IdMap<Long>();
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		//Few enough keys that the stripes fill up, grow and keep long probe sequences through the deletes
+		for (int operation = 0; operation < 200_000; operation++) {
+			long key = random.nextInt(4096);
+			switch (random.nextInt(4)) {
+			case 0:
+			case 1:
+				long value = random.nextLong();
+				assertEquals(expected.put(key, value), map.put(key, value));
+				break;
+			case 2:
+				assertEquals(expected.remove(key), map.remove(key));
+				break;
+			default:
+				assertEquals(expected.get(key), map.get(key));
+			}
+		}
+		assertSameContents(expected, map, 4096);
+	}
+
+	@Test
+	void conditionalRemovesMatchAHashMap() {
+		Random random = new Random(7);
+		IdMap<Long> map = new IdMap<Long>();
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		for (int operation = 0; operation < 100_000; operation++) {
+			long key = UserDirectory.conversation(random.nextInt(64), random.nextInt(64));
+			Long value = (long) random.nextInt(4);
+			if (random.nextBoolean())
+				assertEquals(expected.computeIfAbsent(key, k -> value), map.computeIfAbsent(key, k -> value));
+			else
+				assertEquals(expected.remove(key, value), map.remove(key, value));
+		}
+		for (long id1 = 0; id1 < 64; id1++) {
+			for (long id2 = 0; id2 < 64; id2++) {
+				long key = UserDirectory.conversation((int) id1, (int) id2);
+				assertEquals(expected.get(key), map.get(key));
+			}
+		}
+		assertEquals(expected.size(), map.size());
+	}
+
+	@Test
+	void removingEveryKeyEmptiesTheMap() {
+		IdMap<String> map = new IdMap<String>();
+		List<Long> keys = new ArrayList<Long>();
+		for (long key = 0; key < 10_000; key++) {
+			map.put(key, "value" + key);
+			keys.add(key);
+		}
+		//Removing in a different order than the keys were added, so that shifted entries are removed later
+		Collections.shuffle(keys, new Random(3));
+		for (int index = 0; index < keys.size(); index++) {
+			assertEquals("value" + keys.get(index), map.remove(keys.get(index)));
+			if (index % 1000 == 0) {
+				for (long key : keys.subList(index + 1, keys.size()))
+					assertEquals("value" + key, map.get(key));
+			}
+		}
+		assertEquals(0, map.size());
+		assertTrue(map.values().isEmpty());
+		assertNull(map.get(0));
+	}
+
+	//Method checking that the map holds exactly the expected entries among the keys below the given bound
+	private static void assertSameContents(Map<Long, Long> expected, IdMap<Long> map, long keys) {
+		for (long key = 0; key < keys; key++)
+			assertEquals(expected.get(key), map.get(key));
+		assertEquals(expected.size(), map.size());
+		List<Long> values = map.values();
+		List<Long> expectedValues = new ArrayList<Long>(expected.values());
+		values.sort(null);
+		expectedValues.sort(null);
+		assertEquals(expectedValues, values);
+	}
+}
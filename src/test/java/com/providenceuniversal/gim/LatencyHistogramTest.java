@@ -0,0 +1,74 @@
+package com.providenceuniversal.gim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the percentiles a {@code LatencyHistogram} reports against the exact ones.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+class LatencyHistogramTest {
+
+	@Test
+	void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 0; value < 16; value++)
+			histogram.record(value);
+		assertEquals(7, histogram.percentile(0.5));
+		assertEquals(15, histogram.percentile(1));
+		assertEquals(0, histogram.percentile(0));
+	}
+
+	@Test
+	void percentilesAreWithinTheirRelativeError() {
+		Random random = new Random(11);
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] values = new long[100_000];
+		for (int index = 0; index < values.length; index++) {
+			//Spread over six orders of magnitude, as latencies from microseconds to seconds are
+			values[index] = (long) Math.pow(10, 3 + random.nextDouble() * 6);
+			histogram.record(values[index]);
+		}
+		Arrays.sort(values);
+		for (double fraction : new double[] {0.1, 0.5, 0.9, 0.99, 0.999}) {
+			long exact = values[(int) Math.ceil(fraction * values.length) - 1];
+			long reported = histogram.percentile(fraction);
+			//Reported as the upper bound of the exact value's bucket, a sixteenth of its power of two wide
+			assertTrue(reported >= exact && reported <= exact * 17 / 16 + 1,
+					fraction + ": exact " + exact + ", reported " + reported);
+		}
+		assertEquals(values[values.length - 1], histogram.percentile(1));
+		assertEquals(values[values.length - 1], histogram.getMax());
+		assertEquals(values.length, histogram.getCount());
+		assertEquals((long) Arrays.stream(values).average().getAsDouble(), histogram.getMean(), 1);
+	}
+
+	@Test
+	void hugeAndNegativeValuesAreClamped() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(0, histogram.percentile(0.5));
+		//Reported as the bound of the last bucket, since the histogram tracks nothing longer
+		long reported = histogram.percentile(1);
+		assertTrue(reported >= 1L << 41 && reported < 1L << 42, "reported " + reported);
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+	}
+
+	@Test
+	void resetClearsTheRecordings() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.percentile(0.99));
+	}
+}
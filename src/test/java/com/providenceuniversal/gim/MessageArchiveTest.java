@@ -0,0 +1,176 @@
+package com.providenceuniversal.gim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a {@code MessageArchive} reads back the segments it appends, drops an index entry cut short,
+ * tells apart the chats sharing an ID and still reads the segments of its first format.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+class MessageArchiveTest {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@TempDir
+	Path directory;
+	private MessageArchive archive;
+
+	@AfterEach
+	void closeArchive() throws IOException {
+		if (archive != null)
+			archive.close();
+		archive = null;
+	}
+
+	@Test
+	void segmentsAreReadByConversationAndTime() throws IOException {
+		Map<Integer, ChatMessage> first = chats(1, "Alice", "Bob", 0, 3), second = chats(4, "Bob", "Alice", 3, 3);
+		Map<Integer, ChatMessage> other = chats(7, "Alice", "Carol", 0, 2);
+		reopen();
+		archive.append("Alice", "Bob", first);
+		archive.append("Alice", "Carol", other);
+		archive.append("Alice", "Bob", second);
+		reopen();
+		Map<Integer, ChatMessage> both = new LinkedHashMap<Integer, ChatMessage>(first);
+		both.putAll(second);
+		assertEquals(values(both), archive.read("Bob", "Alice", null));
+		assertEquals(values(other), archive.read("Carol", "Alice", null));
+		assertEquals(values(chats(5, "Bob", "Alice", 4, 2)), archive.read("Alice", "Bob", START.plusSeconds(4)));
+		assertTrue(archive.read("Bob", "Carol", null).isEmpty());
+	}
+
+	@Test
+	void indexEntryCutShortIsDropped() throws IOException {
+		Map<Integer, ChatMessage> first = chats(1, "Alice", "Bob", 0, 2), second = chats(3, "Alice", "Bob", 2, 2);
+		reopen();
+		archive.append("Alice", "Bob", first);
+		closeArchive();
+		//Appending the start of an entry whose segment a crash kept from being listed
+		ByteArrayOutputStream entry = new ByteArrayOutputStream();
+		try (DataOutputStream fields = new DataOutputStream(entry)) {
+			fields.writeUTF("Alice");
+			fields.writeUTF("Bob");
+			fields.writeLong(1);
+		}
+		Path index = directory.resolve("index");
+		long validLength = Files.size(index);
+		Files.write(index, entry.toByteArray(), StandardOpenOption.APPEND);
+
+		reopen();
+		assertEquals(validLength, Files.size(index));
+		assertEquals(values(first), archive.read("Alice", "Bob", null));
+		archive.append("Alice", "Bob", second);
+		reopen();
+		Map<Integer, ChatMessage> both = new LinkedHashMap<Integer, ChatMessage>(first);
+		both.putAll(second);
+		assertEquals(values(both), archive.read("Alice", "Bob", null));
+	}
+
+	@Test
+	void longBodiesAreArchivedWhole() throws IOException {
+		char[] body = new char[70_000];
+		Arrays.fill(body, '\u20ac');
+		Map<Integer, ChatMessage> chats = new LinkedHashMap<Integer, ChatMessage>();
+		chats.put(1, new ChatMessage("Alice", "Bob", new String(body), START));
+		chats.put(2, new ChatMessage("Bob", "Alice", "", START.plusSeconds(1)));
+		reopen();
+		archive.append("Alice", "Bob", chats);
+		reopen();
+		assertEquals(values(chats), archive.read("Alice", "Bob", null));
+	}
+
+	@Test
+	void segmentsOfTheFirstFormatAreRead() throws IOException {
+		Map<Integer, ChatMessage> chats = chats(1, "Alice", "Bob", 0, 2);
+		//A segment writing the bodies as modified UTF-8, listed in the index as segment 0
+		ByteArrayOutputStream segment = new ByteArrayOutputStream();
+		try (DataOutputStream records = new DataOutputStream(new DeflaterOutputStream(segment))) {
+			records.writeInt(0x47494D53);
+			records.writeInt(1);
+			records.writeInt(chats.size());
+			for (Map.Entry<Integer, ChatMessage> chat : chats.entrySet()) {
+				records.writeInt(chat.getKey());
+				records.writeUTF(chat.getValue().getSender());
+				records.writeUTF(chat.getValue().getRecipient());
+				records.writeUTF(chat.getValue().getBody());
+				records.writeUTF(Timestamp.valueOf(chat.getValue().getTimeStamp()).toString());
+			}
+		}
+		ByteArrayOutputStream entry = new ByteArrayOutputStream();
+		try (DataOutputStream fields = new DataOutputStream(entry)) {
+			fields.writeUTF("Alice");
+			fields.writeUTF("Bob");
+			fields.writeLong(0);
+			fields.writeUTF(Timestamp.valueOf(START).toString());
+			fields.writeUTF(Timestamp.valueOf(START.plusSeconds(1)).toString());
+		}
+		Files.write(directory.resolve("0.seg"), segment.toByteArray());
+		Files.write(directory.resolve("index"), entry.toByteArray());
+
+		Map<Integer, ChatMessage> later = chats(3, "Alice", "Bob", 2, 1);
+		reopen();
+		assertEquals(values(chats), archive.read("Alice", "Bob", null));
+		archive.append("Alice", "Bob", later);
+		reopen();
+		Map<Integer, ChatMessage> both = new LinkedHashMap<Integer, ChatMessage>(chats);
+		both.putAll(later);
+		assertEquals(values(both), archive.read("Alice", "Bob", null));
+	}
+
+	@Test
+	void chatsSharingAnIdAreOnlyMergedWhenEqual() throws IOException {
+		Map<Integer, ChatMessage> first = chats(1, "Alice", "Bob", 0, 2);
+		//A later chat taking the ID of an archived one, and a chat archived again by an interrupted run
+		Map<Integer, ChatMessage> second = chats(1, "Bob", "Alice", 5, 1);
+		second.put(2, first.get(2));
+		reopen();
+		archive.append("Alice", "Bob", first);
+		archive.append("Alice", "Bob", second);
+		reopen();
+		assertEquals(Arrays.asList(first.get(1), first.get(2), second.get(1)), archive.read("Bob", "Alice", null));
+	}
+
+	//Method closing the archive, if it is open, and opening it again as a restarted server would
+	private void reopen() throws IOException {
+		closeArchive();
+		archive = new MessageArchive(directory);
+	}
+
+	//Method listing chats in the order the archive reads them back
+	private static List<ChatMessage> values(Map<Integer, ChatMessage> chats) {
+		return new ArrayList<ChatMessage>(chats.values());
+	}
+
+	//Method returning consecutive chats a second apart, keyed by consecutive IDs
+	private static Map<Integer, ChatMessage> chats(int firstId, String sender, String recipient, int firstSecond,
+			int count) {
+		Map<Integer, ChatMessage> chats = new LinkedHashMap<Integer, ChatMessage>();
+		for (int index = 0; index < count; index++) {
+			chats.put(firstId + index, new ChatMessage(sender, recipient, "Chat " + (firstSecond + index),
+					START.plusSeconds(firstSecond + index)));
+		}
+		return chats;
+	}
+}
@@ -0,0 +1,142 @@
+package com.providenceuniversal.gim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a {@code MessageIndex} finds the chats of a user's conversations, whether they are still in
+ * {@code Chat_Messages} or were moved to the {@code MessageArchive}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+class MessageIndexTest {
+
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@TempDir
+	Path directory;
+	private Connection connection;
+	private MessageArchive archive;
+	private MessageIndex index;
+	private final ServerMetrics metrics = new ServerMetrics();
+
+	@BeforeEach
+	void openDatabase() throws SQLException, IOException {
+		connection = DriverManager.getConnection("jdbc:sqlite:" + directory.resolve("g_im.db"));
+		DatabaseStorageEngine.createTables(connection);
+		reopenArchive();
+	}
+
+	@AfterEach
+	void closeDatabase() throws SQLException, IOException {
+		archive.close();
+		connection.close();
+	}
+
+	@Test
+	void archivedChatsAreFound() throws SQLException, IOException {
+		ChatMessage oldest = store(1, new ChatMessage("Alice", "Bob", "Lunch on Friday?", START));
+		ChatMessage other = store(2, new ChatMessage("Carol", "Alice", "No lunch for me", START.plusDays(1)));
+		ChatMessage unrelated = store(3, new ChatMessage("Bob", "Carol", "Lunch?", START.plusDays(2)));
+		ChatMessage newest = store(4, new ChatMessage("Bob", "Alice", "Friday lunch it is", START.plusDays(30)));
+		assertEquals(3, new ChatArchiver(connection, archive, index, Duration.ZERO, metrics)
+				.archive(START.plusDays(10)));
+		assertEquals(1, count("Chat_Messages"));
+
+		assertEquals(Arrays.asList(newest, other, oldest), allPages("Alice", "lunch", 2));
+		assertEquals(Arrays.asList(newest, oldest), allPages("alice", "FRIDAY lunch", 1));
+		assertEquals(Arrays.asList(newest, unrelated, oldest), allPages("Bob", "lunch", 1));
+		//Archived chats staying found once the server restarts and rebuilds the index
+		reopenArchive();
+		assertEquals(1, index.rebuild());
+		assertEquals(Arrays.asList(newest, other, oldest), allPages("Alice", "lunch", 10));
+	}
+
+	@Test
+	void chatsLeftInBothTiersAreFoundOnce() throws SQLException, IOException {
+		ChatMessage chat = store(1, new ChatMessage("Alice", "Bob", "Lunch on Friday?", START));
+		//Archiving the chat as a run interrupted before deleting it from Chat_Messages would have
+		archive.append("Alice", "Bob", Collections.singletonMap(1, chat));
+		assertEquals(1, new ChatArchiver(connection, archive, index, Duration.ZERO, metrics)
+				.archive(START.plusDays(10)));
+		assertEquals(Arrays.asList(chat), allPages("Bob", "lunch", 10));
+	}
+
+	@Test
+	void idTakenAgainAfterArchivingFindsBothChats() throws SQLException, IOException {
+		ChatMessage archived = store(1, new ChatMessage("Alice", "Bob", "Lunch on Friday?", START));
+		assertEquals(1, new ChatArchiver(connection, archive, index, Duration.ZERO, metrics)
+				.archive(START.plusDays(10)));
+		//A later chat whose ID is the one the archived chat left free
+		ChatMessage hot = store(1, new ChatMessage("Bob", "Alice", "Lunch is late", START.plusDays(30)));
+		assertEquals(Arrays.asList(hot, archived), allPages("Alice", "lunch", 10));
+		assertEquals(Arrays.asList(archived), allPages("Bob", "friday", 10));
+		reopenArchive();
+		assertEquals(1, index.rebuild());
+		assertEquals(Arrays.asList(hot, archived), allPages("Alice", "lunch", 10));
+	}
+
+	//Method closing the archive, if it is open, and opening it and the index again as a restarted server would
+	private void reopenArchive() throws SQLException, IOException {
+		if (archive != null)
+			archive.close();
+		archive = new MessageArchive(directory.resolve("archive"));
+		index = new MessageIndex(connection, archive, metrics);
+		index.create();
+	}
+
+	//Method storing and indexing a chat as the DatabaseChatStore does
+	private ChatMessage store(int id, ChatMessage chat) throws SQLException {
+		try (PreparedStatement insertion = connection.prepareStatement(
+				"INSERT INTO Chat_Messages (ID, Sender, Receiver, Body, Timestamp) VALUES (?, ?, ?, ?, ?)")) {
+			insertion.setInt(1, id);
+			insertion.setString(2, chat.getSender());
+			insertion.setString(3, chat.getRecipient());
+			insertion.setString(4, chat.getBody());
+			insertion.setString(5, Timestamp.valueOf(chat.getTimeStamp()).toString());
+			insertion.executeUpdate();
+		}
+		index.index(id, chat);
+		return chat;
+	}
+
+	private int count(String table) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+			return rows.getInt(1);
+		}
+	}
+
+	//Method following a search's pages to the last, returning the chats they list
+	private List<ChatMessage> allPages(String username, String query, int pageSize)
+			throws SQLException, IOException {
+		List<ChatMessage> chats = new ArrayList<ChatMessage>();
+		for (SearchRequest request = new SearchRequest(query, pageSize); request != null;) {
+			SearchResults page = index.search(username, request);
+			chats.addAll(page.getChats());
+			request = page.getNextPage();
+		}
+		return chats;
+	}
+}
@@ -0,0 +1,200 @@
+package com.providenceuniversal.gim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that a {@code MessageLog} reads back what it stores, recovers from a torn last segment and still
+ * reads the records of its earlier formats.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+class MessageLogTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 12, 0, 0, 500);
+
+	@TempDir
+	Path directory;
+	private MessageLog log;
+
+	@AfterEach
+	void closeLog() throws IOException {
+		if (log != null)
+			log.close();
+		log = null;
+	}
+
+	@Test
+	void chatsSurviveReopening() throws IOException {
+		List<ChatMessage> chats = new ArrayList<ChatMessage>();
+		reopen();
+		//Enough chats to fill several segments
+		for (int index = 0; index < 200; index++) {
+			ChatMessage chat = chat(index % 2 == 0 ? "Alice" : "bob", index % 2 == 0 ? "bob" : "Alice", index);
+			log.store(chat);
+			chats.add(chat);
+		}
+		assertEquals(chats, log.retrieve("alice", "BOB", null));
+		reopen();
+		assertEquals(chats, log.retrieve("Alice", "bob", null));
+		assertEquals(chats.subList(150, 200), log.retrieve("bob", "alice", START.plusSeconds(150)));
+	}
+
+	@Test
+	void tornTailIsDroppedAndOverwritten() throws IOException {
+		List<ChatMessage> chats = new ArrayList<ChatMessage>();
+		reopen();
+		for (int index = 0; index < 3; index++) {
+			chats.add(chat("Alice", "Bob", index));
+			log.store(chats.get(index));
+		}
+		closeLog();
+		//Writing the start of a record that a crash cut short after the last complete one
+		Path segment = directory.resolve("0.log");
+		try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			file.write(ByteBuffer.wrap(ByteBuffer.allocate(12).putInt(100).putInt(12345).putInt(0x01020304).array()),
+					endOfRecords(segment));
+		}
+		reopen();
+		assertEquals(chats, log.retrieve("Alice", "Bob", null));
+		chats.add(chat("Bob", "Alice", 3));
+		log.store(chats.get(3));
+		reopen();
+		assertEquals(chats, log.retrieve("Alice", "Bob", null));
+	}
+
+	@Test
+	void chatsAfterACorruptRecordStayDropped() throws IOException {
+		reopen();
+		for (int index = 0; index < 3; index++)
+			log.store(chat("Alice", "Bob", index));
+		closeLog();
+		//Flipping the last byte of the second of the three records, all of the same length
+		Path segment = directory.resolve("0.log");
+		byte[] contents = Files.readAllBytes(segment);
+		contents[endOfRecords(segment) / 3 * 2 - 1] ^= 0x7F;
+		Files.write(segment, contents);
+		reopen();
+		assertEquals(Collections.singletonList(chat("Alice", "Bob", 0)), log.retrieve("Alice", "Bob", null));
+		//Appending a record exactly over the corrupt one, which must not bring back the record after it
+		log.store(chat("Bob", "Alice", 3));
+		reopen();
+		assertEquals(Arrays.asList(chat("Alice", "Bob", 0), chat("Bob", "Alice", 3)), log.retrieve("Alice", "Bob", null));
+	}
+
+	@Test
+	void longBodiesAreStoredWhole() throws IOException {
+		StringBuilder body = new StringBuilder();
+		while (body.length() < 100_000)
+			body.append("\u00dcn\u00efc\u00f6d\u00e9 ").append(body.length());
+		ChatMessage longChat = new ChatMessage("Alice", "Bob", body.toString(), START);
+		ChatMessage shortChat = chat("Bob", "Alice", 1);
+		reopen();
+		log.store(longChat);
+		log.store(shortChat);
+		reopen();
+		assertEquals(Arrays.asList(longChat, shortChat), log.retrieve("Alice", "Bob", null));
+	}
+
+	@Test
+	void recordsOfEarlierFormatsAreRead() throws IOException {
+		ChatMessage byName = chat("Carol", "Alice", 0), byId = chat("Alice", "Bob", 1);
+		//A record naming the users in full, written before the dictionary existed
+		ByteArrayOutputStream nameRecord = new ByteArrayOutputStream();
+		try (DataOutputStream fields = new DataOutputStream(nameRecord)) {
+			fields.writeUTF(byName.getSender());
+			fields.writeUTF(byName.getRecipient());
+			fields.writeUTF(byName.getBody());
+			writeTimeStamp(fields, byName.getTimeStamp());
+		}
+		//A record naming the users by ID, with its body as modified UTF-8
+		ByteArrayOutputStream idRecord = new ByteArrayOutputStream();
+		try (DataOutputStream fields = new DataOutputStream(idRecord)) {
+			fields.writeByte(1);
+			fields.writeInt(0);
+			fields.writeInt(1);
+			fields.writeUTF(byId.getBody());
+			writeTimeStamp(fields, byId.getTimeStamp());
+		}
+		Files.write(directory.resolve("users.dict"), concat(dictionaryEntry(0, "Alice"), dictionaryEntry(1, "Bob")));
+		Files.write(directory.resolve("0.log"), concat(frame(nameRecord.toByteArray()), frame(idRecord.toByteArray())));
+
+		ChatMessage appended = chat("Bob", "Carol", 2);
+		reopen();
+		assertEquals(Collections.singletonList(byName), log.retrieve("alice", "carol", null));
+		assertEquals(Collections.singletonList(byId), log.retrieve("bob", "alice", null));
+		log.store(appended);
+		reopen();
+		assertEquals(Collections.singletonList(byName), log.retrieve("Alice", "Carol", null));
+		assertEquals(Collections.singletonList(byId), log.retrieve("Alice", "Bob", null));
+		assertEquals(Collections.singletonList(appended), log.retrieve("Carol", "Bob", null));
+	}
+
+	//Method closing the log, if it is open, and opening it again as a restarted server would
+	private void reopen() throws IOException {
+		closeLog();
+		log = new MessageLog(directory, SEGMENT_SIZE, new UserDirectory());
+	}
+
+	private static ChatMessage chat(String sender, String recipient, int number) {
+		return new ChatMessage(sender, recipient, "Chat " + number, START.plusSeconds(number));
+	}
+
+	//Method returning the position the last complete record of a segment ends at
+	private static int endOfRecords(Path segment) throws IOException {
+		ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(segment));
+		int position = 0;
+		while (position + 8 <= contents.limit() && contents.getInt(position) > 0)
+			position += 8 + contents.getInt(position);
+		return position;
+	}
+
+	private static void writeTimeStamp(DataOutputStream fields, LocalDateTime timeStamp) throws IOException {
+		fields.writeLong(timeStamp.toEpochSecond(ZoneOffset.UTC));
+		fields.writeInt(timeStamp.getNano());
+	}
+
+	private static byte[] dictionaryEntry(int id, String username) throws IOException {
+		ByteArrayOutputStream entry = new ByteArrayOutputStream();
+		try (DataOutputStream fields = new DataOutputStream(entry)) {
+			fields.writeInt(id);
+			fields.writeUTF(username);
+		}
+		return frame(entry.toByteArray());
+	}
+
+	//Method prefixing a payload with its length and checksum, as the log frames its records
+	private static byte[] frame(byte[] payload) {
+		CRC32 checksum = new CRC32();
+		checksum.update(payload);
+		return ByteBuffer.allocate(8 + payload.length).putInt(payload.length).putInt((int) checksum.getValue())
+				.put(payload).array();
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] both = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, both, first.length, second.length);
+		return both;
+	}
+}
@@ -0,0 +1,59 @@
+package com.providenceuniversal.gim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the bursts, waits and refills of a {@code TokenBucket}.
+ *
+ * @author Garikai Gumbo<br>
+ * Providence Universal Studios®<br>
+ */
+class TokenBucketTest {
+
+	@Test
+	void burstOfCapacityIsAdmittedAtOnce() {
+		//A refill slow enough that no token comes back while the test runs
+		TokenBucket bucket = new TokenBucket(0.001, 5);
+		assertTrue(bucket.isFull());
+		for (int request = 0; request < 5; request++)
+			assertEquals(0, bucket.tryAcquire());
+		assertFalse(bucket.isFull());
+		long wait = bucket.tryAcquire();
+		assertTrue(wait > TimeUnit.SECONDS.toNanos(990) && wait <= TimeUnit.SECONDS.toNanos(1000), "wait " + wait);
+	}
+
+	@Test
+	void tokensAreRefilledAtTheRate() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(100, 1);
+		assertEquals(0, bucket.tryAcquire());
+		long wait = bucket.tryAcquire();
+		assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(10), "wait " + wait);
+		TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(1));
+		assertTrue(bucket.isFull());
+		assertEquals(0, bucket.tryAcquire());
+	}
+
+	@Test
+	void timeUntilFullCountsEveryMissingToken() {
+		TokenBucket bucket = new TokenBucket(0.001, 5);
+		assertEquals(0, bucket.nanosUntilFull());
+		for (int request = 0; request < 3; request++)
+			bucket.tryAcquire();
+		long untilFull = bucket.nanosUntilFull();
+		assertTrue(untilFull > TimeUnit.SECONDS.toNanos(2990) && untilFull <= TimeUnit.SECONDS.toNanos(3000),
+				"until full " + untilFull);
+	}
+
+	@Test
+	void invalidBucketsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+		assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+	}
+}